@@ -0,0 +1,127 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.benchmarks;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.FusedProcessor;
+import ca.uqac.lif.cep.Fusion;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.tmf.BlackHole;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of a linear chain of {@link ApplyFunction}
+ * processors, each evaluating a small arithmetic {@link FunctionTree}.
+ * Compared to {@link PassthroughBenchmark}, this adds the cost of function
+ * evaluation (and of the boxing of its numerical results) to that of the
+ * plumbing. Each chain is measured as is, and after its processors have
+ * been merged into a {@link FusedProcessor}.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ApplyFunctionBenchmark
+{
+  /**
+   * The number of processors in the chain
+   */
+  @Param({"1", "10"})
+  public int m_depth;
+
+  /**
+   * Whether the chain is fused into a single processor
+   */
+  @Param({"false", "true"})
+  public boolean m_fused;
+
+  /**
+   * The pushable at the upstream end of the push chain
+   */
+  protected Pushable m_pushable;
+
+  /**
+   * The pullable at the downstream end of the pull chain
+   */
+  protected Pullable m_pullable;
+
+  /**
+   * The event pushed into the chain
+   */
+  protected Object m_event;
+
+  @Setup
+  public void setup()
+  {
+    m_event = 3;
+    Processor[] push_chain = Chains.functions(m_depth);
+    Connector.connect(push_chain[push_chain.length - 1], new BlackHole());
+    m_pushable = push_chain[0].getPushableInput(0);
+    QueueSource source = Chains.numbers(16);
+    Processor[] pull_chain = Chains.functions(m_depth);
+    Connector.connect(source, pull_chain[0]);
+    m_pullable = pull_chain[pull_chain.length - 1].getPullableOutput(0);
+    if (m_fused)
+    {
+      List<FusedProcessor> fused = Fusion.fuse(push_chain[0]);
+      if (!fused.isEmpty())
+      {
+        m_pushable = fused.get(0).getPushableInput(0);
+      }
+      fused = Fusion.fuse(source);
+      if (!fused.isEmpty())
+      {
+        m_pullable = fused.get(0).getPullableOutput(0);
+      }
+    }
+  }
+
+  @Benchmark
+  public Pushable push()
+  {
+    return m_pushable.push(m_event);
+  }
+
+  @Benchmark
+  public Object pull()
+  {
+    return m_pullable.pull();
+  }
+}
@@ -0,0 +1,142 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.benchmarks;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Utility methods to build the processor chains used by the benchmarks.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class Chains
+{
+  /**
+   * Utility classes should not have public constructors
+   */
+  private Chains()
+  {
+    throw new IllegalAccessError("Utility class");
+  }
+
+  /**
+   * Creates an endless source looping over a fixed set of events
+   * 
+   * @param events
+   *          The events to output
+   * @return The source
+   */
+  public static QueueSource source(Object ... events)
+  {
+    QueueSource source = new QueueSource(1);
+    source.setEvents(events);
+    source.loop(true);
+    return source;
+  }
+
+  /**
+   * Creates an endless source of integers, from 0 to <i>n</i>-1
+   * 
+   * @param n
+   *          The number of distinct integers to output
+   * @return The source
+   */
+  public static QueueSource numbers(int n)
+  {
+    return source(numberArray(n));
+  }
+
+  /**
+   * Creates an array of integers from 0 to <i>n</i>-1
+   * 
+   * @param n
+   *          The size of the array
+   * @return The array
+   */
+  public static Object[] numberArray(int n)
+  {
+    Object[] events = new Object[n];
+    for (int i = 0; i < n; i++)
+    {
+      events[i] = i;
+    }
+    return events;
+  }
+
+  /**
+   * Creates a chain of connected {@link Passthrough} processors
+   * 
+   * @param depth
+   *          The number of processors in the chain
+   * @return The processors of the chain, from upstream to downstream
+   */
+  public static Processor[] passthroughs(int depth)
+  {
+    Processor[] chain = new Processor[depth];
+    for (int i = 0; i < depth; i++)
+    {
+      chain[i] = new Passthrough();
+    }
+    connect(chain);
+    return chain;
+  }
+
+  /**
+   * Creates a chain of connected {@link ApplyFunction} processors, each of
+   * which evaluates the function tree <i>x</i>&times;2+1 on its input
+   * 
+   * @param depth
+   *          The number of processors in the chain
+   * @return The processors of the chain, from upstream to downstream
+   */
+  public static Processor[] functions(int depth)
+  {
+    Processor[] chain = new Processor[depth];
+    for (int i = 0; i < depth; i++)
+    {
+      chain[i] = new ApplyFunction(new FunctionTree(Numbers.addition,
+          new FunctionTree(Numbers.multiplication, new StreamVariable(0), new Constant(2)),
+          new Constant(1)));
+    }
+    connect(chain);
+    return chain;
+  }
+
+  /**
+   * Connects an array of processors one after the other
+   * 
+   * @param chain
+   *          The processors
+   */
+  protected static void connect(Processor[] chain)
+  {
+    for (int i = 1; i < chain.length; i++)
+    {
+      Connector.connect(chain[i - 1], chain[i]);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.benchmarks;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.tmf.BlackHole;
+import ca.uqac.lif.cep.tmf.Filter;
+import ca.uqac.lif.cep.tmf.Fork;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.util.Numbers;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the classical "fork and filter" pattern: a
+ * {@link Fork} sends each event to a {@link Filter}, and to an
+ * {@link ApplyFunction} that decides whether the filter lets the event
+ * through. Half of the events are discarded.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@org.openjdk.jmh.annotations.Fork(1)
+@State(Scope.Thread)
+public class ForkFilterBenchmark
+{
+  /**
+   * The pushable of the fork in push mode
+   */
+  protected Pushable m_pushable;
+
+  /**
+   * The pullable of the filter in pull mode
+   */
+  protected Pullable m_pullable;
+
+  /**
+   * The events pushed into the fork
+   */
+  protected Object[] m_events;
+
+  /**
+   * The index of the next event to push
+   */
+  protected int m_index;
+
+  @Setup
+  public void setup()
+  {
+    m_events = Chains.numberArray(16);
+    m_index = 0;
+    Fork push_fork = new Fork(2);
+    Processor push_filter = forkFilter(push_fork);
+    Connector.connect(push_filter, new BlackHole());
+    m_pushable = push_fork.getPushableInput(0);
+    QueueSource source = Chains.numbers(16);
+    Fork pull_fork = new Fork(2);
+    Connector.connect(source, pull_fork);
+    m_pullable = forkFilter(pull_fork).getPullableOutput(0);
+  }
+
+  @Benchmark
+  public Pushable push()
+  {
+    Object e = m_events[m_index];
+    m_index = (m_index + 1) % m_events.length;
+    return m_pushable.push(e);
+  }
+
+  @Benchmark
+  public Object pull()
+  {
+    return m_pullable.pull();
+  }
+
+  /**
+   * Connects a fork to a filter that keeps only the even numbers
+   * 
+   * @param fork
+   *          The fork
+   * @return The filter
+   */
+  protected static Processor forkFilter(Fork fork)
+  {
+    Filter filter = new Filter();
+    Connector.connect(fork, 0, filter, 0);
+    ApplyFunction even = new ApplyFunction(Numbers.isEven);
+    Connector.connect(fork, 1, even, 0);
+    Connector.connect(even, 0, filter, 1);
+    return filter;
+  }
+}
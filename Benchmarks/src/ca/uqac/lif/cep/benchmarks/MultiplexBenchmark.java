@@ -0,0 +1,112 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.benchmarks;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.BlackHole;
+import ca.uqac.lif.cep.tmf.Multiplex;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of a {@link Multiplex} merging the events of
+ * several input streams into a single one.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultiplexBenchmark
+{
+  /**
+   * The number of input streams of the multiplexer
+   */
+  @Param({"2", "8"})
+  public int m_arity;
+
+  /**
+   * The pushables at the upstream end of each input stream
+   */
+  protected Pushable[] m_pushables;
+
+  /**
+   * The pullable of the multiplexer in pull mode
+   */
+  protected Pullable m_pullable;
+
+  /**
+   * The index of the next input stream to push to
+   */
+  protected int m_index;
+
+  /**
+   * The event pushed into the multiplexer
+   */
+  protected Object m_event;
+
+  @Setup
+  public void setup()
+  {
+    m_event = "A";
+    m_index = 0;
+    Multiplex push_mux = new Multiplex(m_arity);
+    Connector.connect(push_mux, new BlackHole());
+    m_pushables = new Pushable[m_arity];
+    Multiplex pull_mux = new Multiplex(m_arity);
+    for (int i = 0; i < m_arity; i++)
+    {
+      Passthrough pt = new Passthrough();
+      Connector.connect(pt, 0, push_mux, i);
+      m_pushables[i] = pt.getPushableInput(0);
+      Connector.connect(Chains.source("A", "B", "C", "D"), 0, pull_mux, i);
+    }
+    m_pullable = pull_mux.getPullableOutput(0);
+  }
+
+  @Benchmark
+  public Pushable push()
+  {
+    Pushable p = m_pushables[m_index];
+    m_index = (m_index + 1) % m_pushables.length;
+    return p.push(m_event);
+  }
+
+  @Benchmark
+  public Object pull()
+  {
+    return m_pullable.pull();
+  }
+}
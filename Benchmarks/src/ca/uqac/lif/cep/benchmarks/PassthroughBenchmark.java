@@ -0,0 +1,141 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.benchmarks;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.BlackHole;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of a linear chain of {@link Passthrough}
+ * processors. This is the baseline cost of BeepBeep's plumbing: since a
+ * passthrough does no computation, everything that is measured here is
+ * spent in the {@link Pushable} and {@link Pullable} objects of the chain.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PassthroughBenchmark
+{
+  /**
+   * The number of events pushed (or pulled) at once by {@link #pushAll()}
+   * and {@link #pullBatch()}
+   */
+  protected static final int BATCH_SIZE = 1024;
+
+  /**
+   * The number of passthrough processors in the chain
+   */
+  @Param({"1", "10"})
+  public int m_depth;
+
+  /**
+   * The pushable at the upstream end of the push chain
+   */
+  protected Pushable m_pushable;
+
+  /**
+   * The pullable at the downstream end of the pull chain
+   */
+  protected Pullable m_pullable;
+
+  /**
+   * The event pushed into the chain
+   */
+  protected Object m_event;
+
+  /**
+   * The batch of events pushed into the chain
+   */
+  protected Object[] m_batch;
+
+  /**
+   * The array receiving the events pulled from the chain
+   */
+  protected Object[] m_pulled;
+
+  @Setup
+  public void setup()
+  {
+    m_event = "A";
+    m_batch = new Object[BATCH_SIZE];
+    m_pulled = new Object[BATCH_SIZE];
+    for (int i = 0; i < BATCH_SIZE; i++)
+    {
+      m_batch[i] = m_event;
+    }
+    // Push chain: passthroughs ending in a black hole
+    Processor[] push_chain = Chains.passthroughs(m_depth);
+    Connector.connect(push_chain[push_chain.length - 1], new BlackHole());
+    m_pushable = push_chain[0].getPushableInput(0);
+    // Pull chain: an endless source followed by passthroughs
+    QueueSource source = Chains.source("A", "B", "C", "D");
+    Processor[] pull_chain = Chains.passthroughs(m_depth);
+    Connector.connect(source, pull_chain[0]);
+    m_pullable = pull_chain[pull_chain.length - 1].getPullableOutput(0);
+  }
+
+  @Benchmark
+  public Pushable push()
+  {
+    return m_pushable.push(m_event);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public Pushable pushAll()
+  {
+    return m_pushable.pushAll(m_batch, 0, BATCH_SIZE);
+  }
+
+  @Benchmark
+  public Object pull()
+  {
+    return m_pullable.pull();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public int pullBatch()
+  {
+    return m_pullable.pullBatch(m_pulled, BATCH_SIZE);
+  }
+}
@@ -0,0 +1,123 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.benchmarks;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.functions.IdentityFunction;
+import ca.uqac.lif.cep.tmf.BlackHole;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.tmf.Slice;
+import ca.uqac.lif.cep.util.Numbers;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of a {@link Slice} computing a cumulative sum for
+ * each distinct input value, for various numbers of distinct values (and
+ * hence of slices).
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SliceBenchmark
+{
+  /**
+   * The number of distinct slice keys
+   */
+  @Param({"10", "1000"})
+  public int m_keys;
+
+  /**
+   * The pushable of the slice in push mode
+   */
+  protected Pushable m_pushable;
+
+  /**
+   * The pullable of the slice in pull mode
+   */
+  protected Pullable m_pullable;
+
+  /**
+   * The events pushed into the slice, one for each key
+   */
+  protected Object[] m_events;
+
+  /**
+   * The index of the next event to push
+   */
+  protected int m_index;
+
+  @Setup
+  public void setup()
+  {
+    m_events = Chains.numberArray(m_keys);
+    m_index = 0;
+    Slice push_slice = slice();
+    Connector.connect(push_slice, new BlackHole());
+    m_pushable = push_slice.getPushableInput(0);
+    QueueSource source = Chains.numbers(m_keys);
+    Slice pull_slice = slice();
+    Connector.connect(source, pull_slice);
+    m_pullable = pull_slice.getPullableOutput(0);
+  }
+
+  @Benchmark
+  public Pushable push()
+  {
+    Object e = m_events[m_index];
+    m_index = (m_index + 1) % m_events.length;
+    return m_pushable.push(e);
+  }
+
+  @Benchmark
+  public Object pull()
+  {
+    return m_pullable.pull();
+  }
+
+  /**
+   * Creates a slice that sums the events of each slice
+   * 
+   * @return The slice
+   */
+  protected static Slice slice()
+  {
+    return new Slice(new IdentityFunction(1),
+        new Cumulate(new CumulativeFunction<Number>(Numbers.addition)));
+  }
+}
@@ -0,0 +1,112 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.benchmarks;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.tmf.BlackHole;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.tmf.Window;
+import ca.uqac.lif.cep.util.Numbers;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of a {@link Window} computing a sum over a
+ * sliding window of numbers, for various window widths.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WindowBenchmark
+{
+  /**
+   * The width of the window
+   */
+  @Param({"10", "100", "1000"})
+  public int m_width;
+
+  /**
+   * The pushable of the window in push mode
+   */
+  protected Pushable m_pushable;
+
+  /**
+   * The pullable of the window in pull mode
+   */
+  protected Pullable m_pullable;
+
+  /**
+   * The event pushed into the window
+   */
+  protected Object m_event;
+
+  @Setup
+  public void setup()
+  {
+    m_event = 3;
+    Window push_win = new Window(sum(), m_width);
+    Connector.connect(push_win, new BlackHole());
+    m_pushable = push_win.getPushableInput(0);
+    QueueSource source = Chains.numbers(16);
+    Window pull_win = new Window(sum(), m_width);
+    Connector.connect(source, pull_win);
+    m_pullable = pull_win.getPullableOutput(0);
+  }
+
+  @Benchmark
+  public Pushable push()
+  {
+    return m_pushable.push(m_event);
+  }
+
+  @Benchmark
+  public Object pull()
+  {
+    return m_pullable.pull();
+  }
+
+  /**
+   * Creates a processor computing the cumulative sum of its input
+   * 
+   * @return The processor
+   */
+  protected static Cumulate sum()
+  {
+    return new Cumulate(new CumulativeFunction<Number>(Numbers.addition));
+  }
+}
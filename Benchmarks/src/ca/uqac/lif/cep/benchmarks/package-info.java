@@ -0,0 +1,35 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Micro-benchmarks for BeepBeep's core processors, written with
+ * <a href="https://openjdk.java.net/projects/code-tools/jmh/">JMH</a>.
+ * Each benchmark class measures the cost of moving a single event through
+ * a small chain of processors, either by pushing it from the upstream end
+ * or by pulling it from the downstream end. One benchmark operation
+ * always corresponds to one event entering (push) or leaving (pull) the
+ * chain, so that the throughput reported by JMH can be read directly in
+ * events per second.
+ * <p>
+ * These classes are not part of the library's distribution; they are
+ * compiled and run by the Ant script located in the <tt>Benchmarks</tt>
+ * folder.
+ * 
+ * @author Sylvain Hallé
+ */
+package ca.uqac.lif.cep.benchmarks;
@@ -18,17 +18,90 @@
 package ca.uqac.lif.cep;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Processor that handles its inputs asynchronously.
+ * <p>
+ * In push mode, each instance owns a bounded <em>mailbox</em>. Pushing an
+ * event simply deposits it in the mailbox; the events of the mailbox are
+ * then taken out one by one, in the order they were received, and handed to
+ * {@link #compute(Object[], Queue) compute()} by a task running on an
+ * {@link Executor}. The resulting events are pushed downstream from that
+ * task. At any moment, at most one such task is running for a given
+ * processor, so that descendants of this class do not need to worry about
+ * thread safety: <tt>compute()</tt> is never called concurrently on the
+ * same instance.
+ * <p>
+ * A task emptying a mailbox never waits for the processors downstream: the
+ * resulting events are handed to them with
+ * {@link Pushable#pushFast(Object) pushFast()}, and the end of the trace and
+ * watermarks follow them in the same order. Hence, when asynchronous
+ * processors are chained, each of them works on its own events at the same
+ * time as the others, and a chain can run on an executor with a single
+ * thread. Only a thread that is not running such a task, such as the one
+ * pushing events into the first processor, ever waits.
+ * <p>
+ * The executor can be any object implementing the {@link Executor}
+ * interface (a thread pool, an executor of virtual threads, etc.); by
+ * default, all asynchronous processors share a pool of daemon threads. The
+ * future returned by {@link Pushable#pushFast(Object) pushFast()} is done
+ * once the event has gone through <tt>compute()</tt> and its outputs have
+ * been pushed downstream; {@link Pushable#push(Object) push()} waits, in
+ * addition, until the processors downstream are done with the resulting
+ * events. When the mailbox is full, both methods block until some room is
+ * made, which slows down upstream processors to the pace of this one. The
+ * exception is a processor pushing from a task emptying its own mailbox:
+ * it first tries to empty the full mailbox itself, and if another thread is
+ * already doing it, its events are accepted over the capacity rather than
+ * risking a deadlock on a small executor.
+ * <p>
+ * In pull mode, there is no other thread to hand the work to, and events are
+ * computed in the thread of the caller.
+ * 
  * @author Sylvain Hallé
  * @since 0.9
  */
+@SuppressWarnings("squid:S2160")
 public abstract class AsynchronousProcessor extends Processor 
 {
+  /**
+   * The default capacity of a processor's mailbox
+   * @since 0.11
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * The maximum number of messages a task processes before giving its
+   * thread back to the executor
+   * @since 0.11
+   */
+  protected static final int MAX_MESSAGES_PER_TASK = 256;
+
+  /**
+   * The executor used by default by all asynchronous processors, and by the
+   * other processors of the library that hand tasks to threads
+   * @since 0.11
+   */
+  public static final ExecutorService s_defaultExecutor = Executors
+      .newCachedThreadPool(new DaemonThreadFactory());
+
   /**
    * A queue object that will be passed to the {@link #compute(Object[], Queue)}
    * method
@@ -45,11 +118,6 @@ public abstract class AsynchronousProcessor extends Processor
    */
   protected transient Pullable[] m_outputPullables;
 
-  /**
-   * Indicates whether the processor has been notified of the end of trace or not
-   */
-  protected boolean m_hasBeenNotifiedOfEndOfTrace;
-
   /**
    * Counts how many input fronts have been processed
    */
@@ -60,6 +128,50 @@ public abstract class AsynchronousProcessor extends Processor
    */
   protected int[] m_inputEventsReceived;
 
+  /**
+   * The executor running the tasks that empty the mailbox
+   * @since 0.11
+   */
+  protected transient Executor m_executor;
+
+  /**
+   * The mailbox where pushed events wait to be processed
+   * @since 0.11
+   */
+  protected final transient BlockingQueue<Message> m_mailbox;
+
+  /**
+   * The room left in the mailbox
+   * @since 0.11
+   */
+  protected final transient Semaphore m_room;
+
+  /**
+   * The message being processed by the current thread, if it is running a
+   * task emptying a mailbox
+   */
+  private static final ThreadLocal<Message> s_current = new ThreadLocal<Message>();
+
+  /**
+   * Whether a task emptying the mailbox has been handed to the executor
+   * and has not finished yet
+   * @since 0.11
+   */
+  protected final transient AtomicBoolean m_scheduled;
+
+  /**
+   * The task that empties the mailbox
+   * @since 0.11
+   */
+  protected final transient Runnable m_drainer;
+
+  /**
+   * A lock ensuring that the processor's state is modified by one thread at
+   * a time
+   * @since 0.11
+   */
+  protected final transient Object m_computeLock;
+
   /**
    * Initializes a processor
    * 
@@ -69,6 +181,26 @@ public abstract class AsynchronousProcessor extends Processor
    *          The output arity
    */
   public AsynchronousProcessor(int in_arity, int out_arity)
+  {
+    this(in_arity, out_arity, s_defaultExecutor, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Initializes a processor
+   * 
+   * @param in_arity
+   *          The input arity
+   * @param out_arity
+   *          The output arity
+   * @param executor
+   *          The executor running the computations of this processor
+   * @param capacity
+   *          The maximum number of events that can wait in the processor's
+   *          mailbox
+   * @since 0.11
+   */
+  public AsynchronousProcessor(int in_arity, int out_arity, /*@ non_null @*/ Executor executor,
+      int capacity)
   {
     super(in_arity, out_arity);
     m_tempQueue = new ArrayDeque<Object[]>(1);
@@ -76,17 +208,61 @@ public abstract class AsynchronousProcessor extends Processor
     m_outputPullables = new Pullable[out_arity];
     m_inFrontsProcessed = 0;
     m_inputEventsReceived = new int[in_arity];
-    m_hasBeenNotifiedOfEndOfTrace = false;
+    m_executor = executor;
+    m_mailbox = new LinkedBlockingQueue<Message>();
+    m_room = new Semaphore(capacity);
+    m_scheduled = new AtomicBoolean(false);
+    m_drainer = new Drainer();
+    m_computeLock = new Object();
+  }
+
+  /**
+   * Sets the executor running the computations of this processor. This
+   * should be done before any event is pushed.
+   * 
+   * @param executor
+   *          The executor
+   * @return This processor
+   * @since 0.11
+   */
+  public AsynchronousProcessor setExecutor(/*@ non_null @*/ Executor executor)
+  {
+    m_executor = executor;
+    return this;
+  }
+
+  /**
+   * Gets the executor running the computations of this processor
+   * 
+   * @return The executor
+   * @since 0.11
+   */
+  /*@ pure non_null @*/ public Executor getExecutor()
+  {
+    return m_executor;
+  }
+
+  /**
+   * Gets the number of events currently waiting in the processor's mailbox
+   * 
+   * @return The number of events
+   * @since 0.11
+   */
+  public int getMailboxSize()
+  {
+    return m_mailbox.size();
   }
 
   @Override
   public void reset()
   {
-    super.reset();
-    m_outputPullables = new Pullable[m_outputArity];
-    m_inFrontsProcessed = 0;
-    m_inputEventsReceived = new int[m_inputArity];
-    m_hasBeenNotifiedOfEndOfTrace = false;
+    synchronized (m_computeLock)
+    {
+      super.reset();
+      m_outputPullables = new Pullable[m_outputArity];
+      m_inFrontsProcessed = 0;
+      m_inputEventsReceived = new int[m_inputArity];
+    }
   }
 
   @Override
@@ -109,6 +285,357 @@ public abstract class AsynchronousProcessor extends Processor
     return m_outputPullables[index];
   }
 
+  /**
+   * Puts a message into the mailbox, and makes sure that a task emptying the
+   * mailbox is scheduled. When the mailbox is full, a thread that is not
+   * emptying a mailbox waits for some room. A thread that is emptying a
+   * mailbox never waits: it empties this one itself if no other thread does,
+   * and otherwise puts the message over the capacity of the mailbox.
+   * Moreover, the message is recorded as forwarded by the message this
+   * thread is processing.
+   * 
+   * @param message
+   *          The message
+   * @since 0.11
+   */
+  protected void post(Message message)
+  {
+    Message current = s_current.get();
+    if (current == null)
+    {
+      try
+      {
+        m_room.acquire();
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new Pushable.PushableException(e, this);
+      }
+      message.m_hasRoom = true;
+    }
+    else
+    {
+      current.forward(message);
+      boolean room = m_room.tryAcquire();
+      while (!room && m_scheduled.compareAndSet(false, true))
+      {
+        // No other thread is emptying the mailbox: do it here
+        m_drainer.run();
+        room = m_room.tryAcquire();
+      }
+      message.m_hasRoom = room;
+    }
+    m_mailbox.add(message);
+    schedule();
+  }
+
+  /**
+   * Hands a task emptying the mailbox to the executor, unless one is already
+   * scheduled.
+   * @since 0.11
+   */
+  protected void schedule()
+  {
+    if (m_scheduled.compareAndSet(false, true))
+    {
+      m_executor.execute(m_drainer);
+    }
+  }
+
+  /**
+   * Waits for a message of the mailbox to be done, as well as everything
+   * this message has forwarded to the processors downstream, and rethrows
+   * any exception that occurred in the meantime.
+   * 
+   * @param f
+   *          The future of the message
+   * @since 0.11
+   */
+  protected void awaitAll(Future<Pushable> f)
+  {
+    await(f);
+    if (f instanceof Message)
+    {
+      for (Future<Pushable> forwarded : ((Message) f).m_forwarded)
+      {
+        awaitAll(forwarded);
+      }
+    }
+  }
+
+  /**
+   * Waits for a task of the mailbox to be done, and rethrows any exception
+   * that occurred while running it.
+   * 
+   * @param f
+   *          The future of the task
+   * @since 0.11
+   */
+  protected void await(Future<Pushable> f)
+  {
+    try
+    {
+      f.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new Pushable.PushableException(e, this);
+    }
+    catch (ExecutionException e)
+    {
+      Throwable t = e.getCause();
+      if (t instanceof Pushable.PushableException)
+      {
+        throw (Pushable.PushableException) t;
+      }
+      throw new Pushable.PushableException(t, this);
+    }
+  }
+
+  /**
+   * Processes an event received on one of the processor's inputs. If an
+   * event is now available on every input, the processor computes its
+   * output and pushes it downstream.
+   * 
+   * @param index
+   *          The index of the input
+   * @param o
+   *          The event
+   * @since 0.11
+   */
+  protected void processEvent(int index, Object o)
+  {
+    synchronized (m_computeLock)
+    {
+      m_inputEventsReceived[index]++;
+      m_inputQueues[index].add(o);
+      while (true)
+      {
+        for (int i = 0; i < m_inputArity; i++)
+        {
+          if (m_inputQueues[i].isEmpty())
+          {
+            if (m_inputArity > 1)
+            {
+              // A watermark may have been waiting for the last front
+              outputWatermark();
+            }
+            return;
+          }
+        }
+        Object[] inputs = new Object[m_inputArity];
+        for (int i = 0; i < m_inputArity; i++)
+        {
+          inputs[i] = m_inputQueues[i].remove();
+        }
+        m_inFrontsProcessed++;
+        m_tempQueue.clear();
+        boolean outs;
+        try
+        {
+          outs = compute(inputs, m_tempQueue);
+        }
+        catch (ProcessorException e)
+        {
+          throw new Pushable.PushableException(e, this);
+        }
+        outputEvents(outs);
+      }
+    }
+  }
+
+  /**
+   * Processes a watermark received on one of the processor's inputs. This
+   * method is called by the thread that empties the mailbox.
+   * 
+   * @param index
+   *          The index of the input
+   * @param watermark
+   *          The watermark
+   * @since 0.11
+   */
+  protected void processWatermark(int index, long watermark)
+  {
+    synchronized (m_computeLock)
+    {
+      if (setInputWatermark(index, watermark))
+      {
+        outputWatermark();
+      }
+    }
+  }
+
+  /**
+   * Lets the processor act on the watermark of its inputs, and passes it on
+   * to its outputs. This is deferred as long as some input events received
+   * before the watermark are waiting in the input queues.
+   */
+  private void outputWatermark()
+  {
+    long watermark = getInputWatermark();
+    if (watermark <= m_outputWatermark)
+    {
+      return;
+    }
+    for (int i = 0; i < m_inputArity; i++)
+    {
+      if (!m_inputQueues[i].isEmpty())
+      {
+        return;
+      }
+    }
+    m_tempQueue.clear();
+    boolean outs;
+    try
+    {
+      outs = onWatermark(watermark, m_tempQueue);
+    }
+    catch (ProcessorException e)
+    {
+      throw new Pushable.PushableException(e, this);
+    }
+    outputEvents(outs);
+    forwardWatermark(watermark);
+  }
+
+  /**
+   * Processes the end of the trace: computes the last output events (if any),
+   * pushes them downstream and notifies the downstream pushables.
+   * @since 0.11
+   */
+  protected void processEndOfTrace()
+  {
+    synchronized (m_computeLock)
+    {
+      if (m_hasBeenNotifiedOfEndOfTrace)
+      {
+        return;
+      }
+      m_hasBeenNotifiedOfEndOfTrace = true;
+      m_tempQueue.clear();
+      boolean outs;
+      try
+      {
+        outs = onEndOfTrace(m_tempQueue);
+      }
+      catch (ProcessorException e)
+      {
+        throw new Pushable.PushableException(e, this);
+      }
+      outputEvents(outs);
+      for (int i = 0; i < m_outputPushables.length; i++)
+      {
+        Pushable p = m_outputPushables[i];
+        if (p == null)
+        {
+          throw new Pushable.PushableException("Output " + i
+              + " of this processor is connected to nothing", this);
+        }
+        p.notifyEndOfTrace();
+      }
+    }
+  }
+
+  /**
+   * Pushes the contents of the temporary queue to the output pushables
+   * 
+   * @param outs
+   *          Set to <tt>true</tt> to enable the output of an event,
+   *          <tt>false</tt> otherwise
+   */
+  private void outputEvents(boolean outs)
+  {
+    if (outs)
+    {
+      for (Object[] evt : m_tempQueue)
+      {
+        if (evt == null)
+        {
+          continue;
+        }
+        for (int i = 0; i < m_outputPushables.length; i++)
+        {
+          Pushable p = m_outputPushables[i];
+          if (p == null)
+          {
+            throw new Pushable.PushableException("Output " + i + " of processor "
+                + AsynchronousProcessor.this + " is connected to nothing", this);
+          }
+          forward(p.pushFast(evt[i]));
+        }
+      }
+    }
+    m_tempQueue.clear();
+  }
+
+  /**
+   * Records that an event has been handed to a pushable downstream, so that
+   * a thread waiting for the current message can also wait for this event
+   * to be processed
+   * 
+   * @param f
+   *          The future returned by the pushable
+   */
+  private static void forward(Future<Pushable> f)
+  {
+    Message current = s_current.get();
+    if (current != null && !(f instanceof Message) && !f.isDone())
+    {
+      // Messages of asynchronous processors record themselves when posted
+      current.forward(f);
+    }
+  }
+
+  /**
+   * Task emptying the processor's mailbox. To avoid monopolizing a thread
+   * of the executor, the task hands itself back to the executor after
+   * processing a fixed number of messages.
+   */
+  protected class Drainer implements Runnable
+  {
+    @Override
+    public void run()
+    {
+      while (true)
+      {
+        int processed = 0;
+        Message task = m_mailbox.poll();
+        while (task != null)
+        {
+          Message previous = s_current.get();
+          s_current.set(task);
+          try
+          {
+            task.run();
+          }
+          finally
+          {
+            s_current.set(previous);
+            if (task.m_hasRoom)
+            {
+              m_room.release();
+            }
+          }
+          processed++;
+          if (processed >= MAX_MESSAGES_PER_TASK)
+          {
+            m_executor.execute(this);
+            return;
+          }
+          task = m_mailbox.poll();
+        }
+        m_scheduled.set(false);
+        // A message may have arrived after the last poll
+        if (m_mailbox.isEmpty() || !m_scheduled.compareAndSet(false, true))
+        {
+          return;
+        }
+      }
+    }
+  }
+
   protected class InputPushable implements Pushable
   {
     /**
@@ -125,21 +652,88 @@ public abstract class AsynchronousProcessor extends Processor
     @Override
     public Pushable push(Object o)
     {
-      // TODO Auto-generated method stub
-      return null;
+      Future<Pushable> f = pushFast(o);
+      if (s_current.get() == null)
+      {
+        awaitAll(f);
+      }
+      return this;
     }
 
     @Override
-    public Future<Pushable> pushFast(Object o)
+    public Future<Pushable> pushFast(final Object o)
     {
-      push(o);
-      return Pushable.NULL_FUTURE;
+      Message task = new Message(new Callable<Pushable>()
+      {
+        @Override
+        public Pushable call()
+        {
+          processEvent(m_index, o);
+          return InputPushable.this;
+        }
+      });
+      post(task);
+      return task;
+    }
+
+    @Override
+    public Pushable pushAll(Object[] events, int offset, int length)
+    {
+      List<Future<Pushable>> futures = new ArrayList<Future<Pushable>>(length);
+      for (int i = offset; i < offset + length; i++)
+      {
+        futures.add(pushFast(events[i]));
+      }
+      if (s_current.get() == null)
+      {
+        for (Future<Pushable> f : futures)
+        {
+          awaitAll(f);
+        }
+      }
+      return this;
     }
 
     @Override
     public void notifyEndOfTrace() throws PushableException
     {
-      // TODO Auto-generated method stub
+      // The end of trace is processed after all the events already in the
+      // mailbox
+      Message task = new Message(new Callable<Pushable>()
+      {
+        @Override
+        public Pushable call()
+        {
+          processEndOfTrace();
+          return InputPushable.this;
+        }
+      });
+      post(task);
+      if (s_current.get() == null)
+      {
+        awaitAll(task);
+      }
+    }
+
+    @Override
+    public void notifyWatermark(final long watermark) throws PushableException
+    {
+      // Like the end of trace, the watermark is processed after all the
+      // events already in the mailbox
+      Message task = new Message(new Callable<Pushable>()
+      {
+        @Override
+        public Pushable call()
+        {
+          processWatermark(m_index, watermark);
+          return InputPushable.this;
+        }
+      });
+      post(task);
+      if (s_current.get() == null)
+      {
+        awaitAll(task);
+      }
     }
 
     @Override
@@ -162,6 +756,11 @@ public abstract class AsynchronousProcessor extends Processor
      */
     protected int m_index;
 
+    /**
+     * The last watermark returned by {@link #getWatermark()}
+     */
+    protected long m_watermark = NO_WATERMARK;
+
     public OutputPullable(int index)
     {
       super();
@@ -171,78 +770,275 @@ public abstract class AsynchronousProcessor extends Processor
     @Override
     public Iterator<Object> iterator()
     {
-      // TODO Auto-generated method stub
-      return null;
+      return this;
     }
 
     @Override
     public Object pullSoft() 
     {
-      // TODO Auto-generated method stub
-      return null;
+      synchronized (m_computeLock)
+      {
+        if (hasNextSoft() != NextStatus.YES)
+        {
+          return null;
+        }
+        return m_outputQueues[m_index].remove();
+      }
     }
 
     @Override
     public Object pull() 
     {
-      // TODO Auto-generated method stub
-      return null;
+      synchronized (m_computeLock)
+      {
+        if (!hasNext())
+        {
+          throw new NoSuchElementException();
+        }
+        return m_outputQueues[m_index].remove();
+      }
     }
 
     @Override
+    @SuppressWarnings("squid:S2272") // since() pull throws the exception
     public Object next()
     {
-      // TODO Auto-generated method stub
-      return null;
+      return pull();
     }
 
     @Override
     public NextStatus hasNextSoft()
     {
-      // TODO Auto-generated method stub
-      return null;
+      synchronized (m_computeLock)
+      {
+        if (!m_outputQueues[m_index].isEmpty())
+        {
+          return NextStatus.YES;
+        }
+        for (int i = 0; i < m_inputArity; i++)
+        {
+          NextStatus status = getInputPullable(i).hasNextSoft();
+          if (status == NextStatus.NO)
+          {
+            return endOfTrace() ? NextStatus.YES : NextStatus.NO;
+          }
+          if (status == NextStatus.MAYBE)
+          {
+            return NextStatus.MAYBE;
+          }
+        }
+        Object[] inputs = new Object[m_inputArity];
+        for (int i = 0; i < m_inputArity; i++)
+        {
+          inputs[i] = m_inputPullables[i].pullSoft();
+        }
+        if (!computeFront(inputs))
+        {
+          return NextStatus.NO;
+        }
+        return m_outputQueues[m_index].isEmpty() ? NextStatus.MAYBE : NextStatus.YES;
+      }
     }
 
     @Override
     public boolean hasNext() 
     {
-      // TODO Auto-generated method stub
-      return false;
+      synchronized (m_computeLock)
+      {
+        for (int tries = 0; tries < MAX_PULL_RETRIES; tries++)
+        {
+          if (!m_outputQueues[m_index].isEmpty())
+          {
+            return true;
+          }
+          for (int i = 0; i < m_inputArity; i++)
+          {
+            if (!getInputPullable(i).hasNext())
+            {
+              return endOfTrace();
+            }
+          }
+          Object[] inputs = new Object[m_inputArity];
+          for (int i = 0; i < m_inputArity; i++)
+          {
+            inputs[i] = m_inputPullables[i].pull();
+          }
+          if (!computeFront(inputs))
+          {
+            return false;
+          }
+        }
+        return false;
+      }
+    }
+
+    @Override
+    public int pullBatch(Object[] dst, int max)
+    {
+      synchronized (m_computeLock)
+      {
+        int n = 0;
+        while (n < max && hasNext())
+        {
+          dst[n++] = m_outputQueues[m_index].remove();
+        }
+        return n;
+      }
+    }
+
+    /**
+     * Gets the pullable connected to one of the processor's inputs
+     * 
+     * @param i
+     *          The index of the input
+     * @return The pullable
+     */
+    private Pullable getInputPullable(int i)
+    {
+      Pullable p = m_inputPullables[i];
+      if (p == null)
+      {
+        throw new PullableException("Input " + i + " of processor "
+            + AsynchronousProcessor.this + " is connected to nothing", getProcessor());
+      }
+      return p;
+    }
+
+    /**
+     * Computes the output fronts for a front of input events and adds them
+     * to the output queues
+     * 
+     * @param inputs
+     *          The input front
+     * @return <tt>false</tt> if the processor will not produce any other
+     *         event, <tt>true</tt> otherwise
+     */
+    private boolean computeFront(Object[] inputs)
+    {
+      m_inFrontsProcessed++;
+      m_tempQueue.clear();
+      boolean computed;
+      try
+      {
+        computed = compute(inputs, m_tempQueue);
+      }
+      catch (ProcessorException e)
+      {
+        throw new PullableException(e);
+      }
+      if (computed)
+      {
+        addToOutputQueues(m_tempQueue);
+      }
+      m_tempQueue.clear();
+      return computed;
+    }
+
+    @Override
+    public long getWatermark()
+    {
+      synchronized (m_computeLock)
+      {
+        long watermark = pullInputWatermark();
+        if (m_inputArity > 0 && watermark > m_outputWatermark)
+        {
+          m_tempQueue.clear();
+          boolean outs;
+          try
+          {
+            outs = onWatermark(watermark, m_tempQueue);
+          }
+          catch (ProcessorException e)
+          {
+            throw new PullableException(e);
+          }
+          if (outs)
+          {
+            addToOutputQueues(m_tempQueue);
+          }
+          m_tempQueue.clear();
+          m_outputWatermark = watermark;
+        }
+        // The events waiting in the output queue come before the watermark
+        if (m_outputQueues[m_index].isEmpty())
+        {
+          m_watermark = m_outputWatermark;
+        }
+        return m_watermark;
+      }
+    }
+
+    /**
+     * Handles the end of the input trace in pull mode
+     * 
+     * @return <tt>true</tt> if the end of the trace produced new output
+     *         events, <tt>false</tt> otherwise
+     */
+    private boolean endOfTrace()
+    {
+      if (m_hasBeenNotifiedOfEndOfTrace)
+      {
+        return false;
+      }
+      m_hasBeenNotifiedOfEndOfTrace = true;
+      Queue<Object[]> last_queue = new ArrayDeque<Object[]>();
+      if (!onEndOfTrace(last_queue))
+      {
+        return false;
+      }
+      addToOutputQueues(last_queue);
+      return !m_outputQueues[m_index].isEmpty();
+    }
+
+    /**
+     * Adds a set of output fronts to the output queues
+     * 
+     * @param fronts
+     *          The fronts
+     */
+    private void addToOutputQueues(Queue<Object[]> fronts)
+    {
+      for (Object[] front : fronts)
+      {
+        if (front == null)
+        {
+          continue;
+        }
+        for (int j = 0; j < m_outputArity; j++)
+        {
+          m_outputQueues[j].add(front[j]);
+        }
+      }
     }
 
     @Override
     public Processor getProcessor() 
     {
-      // TODO Auto-generated method stub
-      return null;
+      return AsynchronousProcessor.this;
     }
 
     @Override
     public int getPosition()
     {
-      // TODO Auto-generated method stub
-      return 0;
+      return m_index;
     }
 
     @Override
     public void start()
     {
-      // TODO Auto-generated method stub
-
+      AsynchronousProcessor.this.start();
     }
 
     @Override
     public void stop()
     {
-      // TODO Auto-generated method stub
-
+      AsynchronousProcessor.this.stop();
     }
 
     @Override
     public void dispose()
     {
-      // TODO Auto-generated method stub
-
+      // Nothing to do
     }
     
     @Override
@@ -268,4 +1064,66 @@ public abstract class AsynchronousProcessor extends Processor
    */
   protected abstract boolean compute(Object[] inputs, Queue<Object[]> outputs);
 
+  /**
+   * A message of a processor's mailbox: an event, a watermark or the end of
+   * the trace, to be processed by the task emptying the mailbox
+   * @since 0.11
+   */
+  protected static class Message extends FutureTask<Pushable>
+  {
+    /**
+     * The futures of what processing this message has handed to the
+     * processors downstream without waiting for it
+     */
+    protected final List<Future<Pushable>> m_forwarded = new ArrayList<Future<Pushable>>(1);
+
+    /**
+     * Whether the message took some of the room of the mailbox, or was put
+     * over its capacity
+     */
+    protected boolean m_hasRoom = false;
+
+    /**
+     * Creates a new message
+     * 
+     * @param c
+     *          The computation processing the message
+     */
+    public Message(Callable<Pushable> c)
+    {
+      super(c);
+    }
+
+    /**
+     * Records the future of something this message has handed downstream
+     * 
+     * @param f
+     *          The future
+     */
+    protected void forward(Future<Pushable> f)
+    {
+      m_forwarded.add(f);
+    }
+  }
+
+  /**
+   * Thread factory producing daemon threads, so that idle threads of the
+   * default executor do not prevent the JVM from exiting.
+   * @since 0.11
+   */
+  public static class DaemonThreadFactory implements ThreadFactory
+  {
+    /**
+     * The factory creating the threads before they are made daemons
+     */
+    private final ThreadFactory m_factory = Executors.defaultThreadFactory();
+
+    @Override
+    public Thread newThread(Runnable r)
+    {
+      Thread t = m_factory.newThread(r);
+      t.setDaemon(true);
+      return t;
+    }
+  }
 }
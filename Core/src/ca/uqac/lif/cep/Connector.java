@@ -17,6 +17,7 @@
  */
 package ca.uqac.lif.cep;
 
+import ca.uqac.lif.cep.util.Tuples;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -164,6 +165,8 @@ public class Connector
     {
       // Same as above
     }
+    // Tell p2 the schema of the tuples it receives, if p1 knows it
+    Tuples.connectSchema(p1, i, p2, j);
     if (tracker != null)
     {
       tracker.setConnection(p1.getId(), i, p2.getId(), j);
@@ -0,0 +1,154 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import java.util.Set;
+
+/**
+ * A single processor standing for a linear chain of {@link UniformProcessor}s
+ * of input and output arity 1. Pushing an event into a fused processor has
+ * the same result as pushing it into the first processor of the chain;
+ * however, the processors are not connected through pushables and
+ * pullables: the fused processor simply calls their
+ * {@link UniformProcessor#compute(Object[], Object[]) compute()} method one
+ * after the other. This saves, for each processor of the chain, a
+ * synchronized call to a pushable and a virtual call to the next one.
+ * <p>
+ * Each processor of the chain keeps its own state, counters and event
+ * tracker, so that the lineage of events recorded by an {@link EventTracker}
+ * is the same as with the original chain. Fused processors are normally
+ * created by {@link Fusion#fuse(Processor)}, which substitutes them for the
+ * chains they stand for in a processor graph.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class FusedProcessor extends UniformProcessor
+{
+  /**
+   * The processors of the chain, in the order in which events go through
+   * them
+   */
+  protected UniformProcessor[] m_chain;
+
+  /**
+   * The arrays in which each processor of the chain writes its output, and
+   * which the next processor receives as its input. The last processor
+   * writes directly into the output array of the fused processor.
+   */
+  protected transient Object[][] m_buffers;
+
+  /**
+   * Creates a new fused processor
+   * 
+   * @param chain
+   *          The processors of the chain, in the order in which events go
+   *          through them. They must all have an input and output arity of 1.
+   */
+  public FusedProcessor(UniformProcessor ... chain)
+  {
+    super(1, 1);
+    m_chain = chain;
+    m_buffers = new Object[chain.length][];
+    for (int i = 0; i < chain.length; i++)
+    {
+      m_buffers[i] = new Object[1];
+    }
+  }
+
+  /**
+   * Gets the processors of the chain this processor stands for
+   * 
+   * @return The processors
+   */
+  public UniformProcessor[] getChain()
+  {
+    return m_chain;
+  }
+
+  /**
+   * Computes the output of the chain. If a processor of the chain produces
+   * no output for an event (i.e. its <tt>compute()</tt> method returns
+   * <tt>false</tt>), the processors after it are not called, and the fused
+   * processor produces no output either.
+   */
+  @Override
+  protected boolean compute(Object[] inputs, Object[] outputs)
+  {
+    int last = m_chain.length - 1;
+    Object[] in = inputs;
+    for (int i = 0; i <= last; i++)
+    {
+      Object[] out = i == last ? outputs : m_buffers[i];
+      if (!m_chain[i].compute(in, out))
+      {
+        return false;
+      }
+      in = out;
+    }
+    return true;
+  }
+
+  @Override
+  protected boolean onEndOfTrace(Object[] outputs)
+  {
+    // Only processors that produce nothing at the end of the trace are
+    // fused; they just need to know that the trace has ended
+    for (UniformProcessor p : m_chain)
+    {
+      p.m_hasBeenNotifiedOfEndOfTrace = true;
+    }
+    return false;
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    for (UniformProcessor p : m_chain)
+    {
+      p.reset();
+    }
+  }
+
+  @Override
+  public void getInputTypesFor(Set<Class<?>> classes, int index)
+  {
+    m_chain[0].getInputTypesFor(classes, index);
+  }
+
+  @Override
+  public Class<?> getOutputType(int index)
+  {
+    return m_chain[m_chain.length - 1].getOutputType(index);
+  }
+
+  @Override
+  public FusedProcessor duplicate(boolean with_state)
+  {
+    UniformProcessor[] chain = new UniformProcessor[m_chain.length];
+    for (int i = 0; i < m_chain.length; i++)
+    {
+      chain[i] = (UniformProcessor) m_chain[i].duplicate(with_state);
+    }
+    FusedProcessor fp = new FusedProcessor(chain);
+    fp.m_eventTracker = m_eventTracker;
+    return fp;
+  }
+}
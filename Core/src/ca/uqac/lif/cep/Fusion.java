@@ -0,0 +1,273 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import ca.uqac.lif.cep.Connector.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optimizes a processor graph by fusing linear chains of
+ * {@link UniformProcessor}s into {@link FusedProcessor}s. A processor can
+ * be part of such a chain if:
+ * <ul>
+ * <li>it is a uniform processor of input and output arity 1;</li>
+ * <li>it produces nothing when notified of the end of the trace, i.e. it does
+ * not override {@link UniformProcessor#onEndOfTrace(Object[])
+ * onEndOfTrace()}.</li>
+ * </ul>
+ * Two such processors are part of the same chain when the output of the
+ * first is connected to the input of the second, in both push and pull
+ * modes. Every chain of two processors or more is replaced in the graph by a
+ * fused processor: the processor upstream of the chain is connected to the
+ * fused processor, which is itself connected to the processor downstream of
+ * the chain.
+ * <p>
+ * The fusion must be done once the graph is completely connected, and before
+ * events start flowing through it. Afterwards, the pushable of the first
+ * processor of a chain and the pullable of the last one must no longer be
+ * used directly; they must be obtained from the fused processor instead.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class Fusion
+{
+  /**
+   * Utility classes should not have public constructors
+   */
+  private Fusion()
+  {
+    throw new IllegalAccessError("Utility class");
+  }
+
+  /**
+   * Fuses all the chains of uniform processors in the graph a processor
+   * belongs to
+   * 
+   * @param start
+   *          Any processor of the graph
+   * @return The list of fused processors that have been inserted in the
+   *         graph
+   */
+  public static List<FusedProcessor> fuse(Processor start)
+  {
+    ProcessorCollector collector = new ProcessorCollector();
+    collector.crawl(start);
+    Map<Integer,Processor> processors = collector.m_processors;
+    Set<Processor> fused = new HashSet<Processor>();
+    List<FusedProcessor> out = new ArrayList<FusedProcessor>();
+    for (Processor p : collector.m_order)
+    {
+      if (fused.contains(p) || !isFusable(p)
+          || getLinked(p, processors, false) != null)
+      {
+        // Not the first processor of a chain
+        continue;
+      }
+      List<UniformProcessor> chain = new ArrayList<UniformProcessor>();
+      Processor current = p;
+      while (current != null && !fused.contains(current))
+      {
+        chain.add((UniformProcessor) current);
+        fused.add(current);
+        current = getLinked(current, processors, true);
+      }
+      if (chain.size() < 2)
+      {
+        continue;
+      }
+      FusedProcessor fp = substitute(chain);
+      if (fp != null)
+      {
+        out.add(fp);
+      }
+    }
+    return out;
+  }
+
+  /**
+   * Determines if a processor can be part of a chain of fused processors
+   * 
+   * @param p
+   *          The processor
+   * @return <tt>true</tt> if the processor can be fused, <tt>false</tt>
+   *         otherwise
+   */
+  public static boolean isFusable(Processor p)
+  {
+    return p instanceof UniformProcessor && p.getInputArity() == 1
+        && p.getOutputArity() == 1 && !overridesEndOfTrace(p.getClass());
+  }
+
+  /**
+   * Determines if a class of processors defines its own behavior at the end
+   * of the trace
+   * 
+   * @param c
+   *          The class
+   * @return <tt>true</tt> if the class or one of its ancestors below
+   *         {@link UniformProcessor} overrides
+   *         {@link UniformProcessor#onEndOfTrace(Object[]) onEndOfTrace()}
+   */
+  protected static boolean overridesEndOfTrace(Class<?> c)
+  {
+    Class<?> current = c;
+    while (current != null && !current.equals(UniformProcessor.class))
+    {
+      try
+      {
+        current.getDeclaredMethod("onEndOfTrace", Object[].class);
+        return true;
+      }
+      catch (NoSuchMethodException e)
+      {
+        current = current.getSuperclass();
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Finds the fusable processor linked to another one, upstream or
+   * downstream
+   * 
+   * @param p
+   *          The processor
+   * @param processors
+   *          A map from processor IDs to the processors of the graph
+   * @param downstream
+   *          Set to <tt>true</tt> to look downstream of the processor,
+   *          <tt>false</tt> to look upstream
+   * @return The linked processor, or <tt>null</tt> if there is none
+   */
+  protected static Processor getLinked(Processor p, Map<Integer,Processor> processors,
+      boolean downstream)
+  {
+    for (Connection c : Connector.getConnections(p))
+    {
+      int id = downstream ? c.m_destinationProcessorId : c.m_sourceProcessorId;
+      int other_id = downstream ? c.m_sourceProcessorId : c.m_destinationProcessorId;
+      if (other_id != p.getId() || id == p.getId())
+      {
+        continue;
+      }
+      Processor q = processors.get(id);
+      if (q == null || !isFusable(q))
+      {
+        continue;
+      }
+      if (downstream ? isLinked(p, q) : isLinked(q, p))
+      {
+        return q;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Determines if the output of a processor is connected to the input of
+   * another, in both push and pull modes
+   * 
+   * @param p1
+   *          The first processor
+   * @param p2
+   *          The second processor
+   * @return <tt>true</tt> if the processors are linked
+   */
+  protected static boolean isLinked(Processor p1, Processor p2)
+  {
+    return p1.getPushableOutput(0) == p2.getPushableInput(0)
+        && p2.getPullableInput(0) == p1.getPullableOutput(0);
+  }
+
+  /**
+   * Replaces a chain of processors by a fused processor in the graph
+   * 
+   * @param chain
+   *          The chain
+   * @return The fused processor, or <tt>null</tt> if the chain could not be
+   *         replaced
+   */
+  protected static FusedProcessor substitute(List<UniformProcessor> chain)
+  {
+    UniformProcessor first = chain.get(0);
+    UniformProcessor last = chain.get(chain.size() - 1);
+    Pullable in = first.getPullableInput(0);
+    Pushable out = last.getPushableOutput(0);
+    Processor upstream = in == null ? null : in.getProcessor();
+    Processor downstream = out == null ? null : out.getProcessor();
+    // Make sure the neighbours of the chain can be rewired safely
+    if (upstream != null
+        && upstream.getPushableOutput(in.getPosition()) != first.getPushableInput(0))
+    {
+      return null;
+    }
+    if (downstream != null
+        && downstream.getPullableInput(out.getPosition()) != last.getPullableOutput(0))
+    {
+      return null;
+    }
+    FusedProcessor fp = new FusedProcessor(chain.toArray(new UniformProcessor[chain.size()]));
+    fp.m_eventTracker = first.getEventTracker();
+    if (in != null)
+    {
+      fp.setPullableInput(0, in);
+      if (upstream != null)
+      {
+        upstream.setPushableOutput(in.getPosition(), fp.getPushableInput(0));
+      }
+    }
+    if (out != null)
+    {
+      fp.setPushableOutput(0, out);
+      if (downstream != null)
+      {
+        downstream.setPullableInput(out.getPosition(), fp.getPullableOutput(0));
+      }
+    }
+    return fp;
+  }
+
+  /**
+   * Crawler collecting the processors of a graph
+   */
+  protected static class ProcessorCollector extends PipeCrawler
+  {
+    /**
+     * The processors, indexed by their ID
+     */
+    protected final Map<Integer,Processor> m_processors = new HashMap<Integer,Processor>();
+
+    /**
+     * The processors, in the order in which they have been visited
+     */
+    protected final List<Processor> m_order = new ArrayList<Processor>();
+
+    @Override
+    public void visit(Processor p)
+    {
+      m_processors.put(p.getId(), p);
+      m_order.add(p);
+    }
+  }
+}
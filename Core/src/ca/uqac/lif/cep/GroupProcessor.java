@@ -553,6 +553,18 @@ public class GroupProcessor extends Processor
       return m_pullable.hasNext();
     }
 
+    @Override
+    public synchronized int pullBatch(Object[] dst, int max)
+    {
+      return m_pullable.pullBatch(dst, max);
+    }
+
+    @Override
+    public synchronized long getWatermark()
+    {
+      return m_pullable.getWatermark();
+    }
+
     @Override
     public synchronized Processor getProcessor()
     {
@@ -645,8 +657,37 @@ public class GroupProcessor extends Processor
     @Override
     public synchronized Future<Pushable> pushFast(Object o)
     {
-      push(o);
-      return Pushable.NULL_FUTURE;
+      if (m_notifySources)
+      {
+        push(o);
+        return Pushable.NULL_FUTURE;
+      }
+      // The future is the one of the processor inside the group
+      return m_pushable.pushFast(o);
+    }
+
+    @Override
+    public synchronized Pushable pushAll(Object[] events, int offset, int length)
+    {
+      if (m_notifySources)
+      {
+        // Sources must be notified after each event, so no batching here
+        for (int i = offset; i < offset + length; i++)
+        {
+          push(events[i]);
+        }
+        return m_pushable;
+      }
+      m_pushable.pushAll(events, offset, length);
+      return m_pushable;
+    }
+
+    @Override
+    public synchronized void notifyWatermark(long watermark)
+    {
+      // The processors inside the group pass the watermark on to the
+      // outputs of the group themselves
+      m_pushable.notifyWatermark(watermark);
     }
 
     /**
@@ -0,0 +1,931 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import ca.uqac.lif.cep.util.PendingQueue;
+import ca.uqac.lif.cep.util.RingBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a graph of processors in push mode, using one thread for each of
+ * several <em>stages</em>.
+ * <p>
+ * The runner is given one or more processors of the graph; it finds all the
+ * other processors with a {@link PipeCrawler}, sorts them so that every
+ * processor comes after those that push events to it, and partitions this
+ * sequence into a number of stages of roughly equal size. Wherever a
+ * processor pushes events to a processor of another stage, the connection is
+ * replaced by a bounded {@link RingBuffer}: the upstream stage puts events
+ * into the buffer, and the downstream stage takes them out and pushes them to
+ * their destination. Within a stage, processors are called as usual, in the
+ * thread running that stage.
+ * <p>
+ * The events are produced by the processors of the graph that have an input
+ * arity of 0 (typically {@link ca.uqac.lif.cep.tmf.Source Source}s); the
+ * stage containing such a processor repeatedly pulls batches of events from
+ * it, and pushes them downstream. These are the only entry points of the
+ * graph: events must not be pushed to the processors by other means while
+ * the runner is active.
+ * <p>
+ * A typical use of the runner is:
+ * <pre>
+ * PipelineRunner runner = new PipelineRunner(source).setStages(4);
+ * runner.start();
+ * ...
+ * runner.drain();
+ * </pre>
+ * Method {@link #drain()} waits until all the sources have produced their
+ * last event and all these events have been processed, while {@link #stop()}
+ * interrupts the sources early. In both cases, the original connections
+ * between processors are restored when the runner ends.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class PipelineRunner
+{
+  /**
+   * The default capacity of the queues between stages
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * The default number of events read from a source or a queue at once
+   */
+  public static final int DEFAULT_BATCH_SIZE = 64;
+
+  /**
+   * The processors from which the graph is crawled
+   */
+  protected final Processor[] m_startPoints;
+
+  /**
+   * The number of stages to partition the graph into
+   */
+  protected int m_numStages;
+
+  /**
+   * The capacity of the queues between stages
+   */
+  protected int m_capacity = DEFAULT_CAPACITY;
+
+  /**
+   * The number of events read from a source or a queue at once
+   */
+  protected int m_batchSize = DEFAULT_BATCH_SIZE;
+
+  /**
+   * The executor providing the threads running the stages
+   */
+  protected Executor m_executor = AsynchronousProcessor.s_defaultExecutor;
+
+  /**
+   * The stages of the graph, once it has been partitioned
+   */
+  protected List<Stage> m_stages;
+
+  /**
+   * The boundaries inserted between stages
+   */
+  protected List<Boundary> m_boundaries;
+
+  /**
+   * The processors of the graph
+   */
+  protected List<Processor> m_processors;
+
+  /**
+   * A latch counting the stages that are still running
+   */
+  protected CountDownLatch m_running;
+
+  /**
+   * Whether the sources should stop producing events
+   */
+  protected volatile boolean m_stopping;
+
+  /**
+   * The first exception thrown by a stage, if any
+   */
+  protected volatile RuntimeException m_error;
+
+  /**
+   * Creates a new pipeline runner
+   * 
+   * @param start
+   *          One or more processors of the graph to run. The other
+   *          processors are found by crawling the graph from these.
+   */
+  public PipelineRunner(Processor ... start)
+  {
+    super();
+    m_startPoints = start;
+    m_numStages = Math.max(1, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Sets the number of stages the graph should be partitioned into. The
+   * default is the number of available processors.
+   * 
+   * @param n
+   *          The number of stages
+   * @return This runner
+   */
+  public PipelineRunner setStages(int n)
+  {
+    m_numStages = Math.max(1, n);
+    return this;
+  }
+
+  /**
+   * Sets the capacity of the queues inserted between stages
+   * 
+   * @param capacity
+   *          The capacity; it is rounded up to the next power of two
+   * @return This runner
+   */
+  public PipelineRunner setCapacity(int capacity)
+  {
+    m_capacity = capacity;
+    return this;
+  }
+
+  /**
+   * Sets the number of events read from a source or a queue at once
+   * 
+   * @param size
+   *          The number of events
+   * @return This runner
+   */
+  public PipelineRunner setBatchSize(int size)
+  {
+    m_batchSize = Math.max(1, size);
+    return this;
+  }
+
+  /**
+   * Sets the executor providing the threads running the stages. The executor
+   * must be able to run all the stages at the same time. By default, the
+   * runner uses the same pool of threads as the
+   * {@link AsynchronousProcessor}s.
+   * 
+   * @param executor
+   *          The executor
+   * @return This runner
+   */
+  public PipelineRunner setExecutor(/*@ non_null @*/ Executor executor)
+  {
+    m_executor = executor;
+    return this;
+  }
+
+  /**
+   * Gets the partition of the graph into stages
+   * 
+   * @return A list of stages, each of which is given as the list of its
+   *         processors
+   */
+  public synchronized List<List<Processor>> getStages()
+  {
+    if (m_stages == null)
+    {
+      partition();
+    }
+    List<List<Processor>> out = new ArrayList<List<Processor>>(m_stages.size());
+    for (Stage s : m_stages)
+    {
+      out.add(Collections.unmodifiableList(s.m_processors));
+    }
+    return out;
+  }
+
+  /**
+   * Determines if the runner is active
+   * 
+   * @return <tt>true</tt> if the runner has been started and some of its
+   *         stages are still running, <tt>false</tt> otherwise
+   */
+  public synchronized boolean isRunning()
+  {
+    return m_running != null && m_running.getCount() > 0;
+  }
+
+  /**
+   * Partitions the graph, inserts queues between stages and starts one
+   * thread for each stage. Method {@link Processor#start()} is called on
+   * every processor of the graph beforehand.
+   */
+  public synchronized void start()
+  {
+    if (isRunning())
+    {
+      return;
+    }
+    partition();
+    m_stopping = false;
+    m_error = null;
+    insertBoundaries();
+    for (Processor p : m_processors)
+    {
+      p.start();
+    }
+    m_running = new CountDownLatch(m_stages.size());
+    for (Stage s : m_stages)
+    {
+      m_executor.execute(s);
+    }
+  }
+
+  /**
+   * Waits until the sources of the graph have produced all their events, and
+   * these events have been processed by every stage. The end of the trace
+   * is then notified to the processors of the graph as usual, the original
+   * connections between processors are restored, and {@link Processor#stop()}
+   * is called on every processor.
+   * <p>
+   * If the graph has sources that never end, this method never returns;
+   * use {@link #stop()} instead.
+   */
+  public void drain()
+  {
+    await();
+  }
+
+  /**
+   * Stops the runner. The sources stop producing events, and the events
+   * already sent are processed by the stages before their threads end. The
+   * end of the trace is not notified to the processors. The original
+   * connections between processors are then restored, and
+   * {@link Processor#stop()} is called on every processor.
+   */
+  public void stop()
+  {
+    m_stopping = true;
+    await();
+  }
+
+  /**
+   * Waits for all stages to end, and restores the graph to its original
+   * state.
+   */
+  protected void await()
+  {
+    CountDownLatch latch;
+    synchronized (this)
+    {
+      latch = m_running;
+    }
+    if (latch == null)
+    {
+      return;
+    }
+    try
+    {
+      latch.await();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new ProcessorException(e);
+    }
+    synchronized (this)
+    {
+      if (m_running == latch)
+      {
+        removeBoundaries();
+        for (Processor p : m_processors)
+        {
+          p.stop();
+        }
+        m_running = null;
+      }
+    }
+    RuntimeException e = m_error;
+    if (e != null)
+    {
+      throw e;
+    }
+  }
+
+  /**
+   * Crawls the graph and partitions its processors into stages
+   */
+  protected void partition()
+  {
+    final Set<Processor> found = new HashSet<Processor>();
+    PipeCrawler crawler = new PipeCrawler()
+    {
+      @Override
+      public void visit(Processor p)
+      {
+        found.add(p);
+      }
+    };
+    for (Processor p : m_startPoints)
+    {
+      if (!found.contains(p))
+      {
+        crawler.crawl(p);
+      }
+    }
+    m_processors = sort(found);
+    int num_stages = Math.min(m_numStages, m_processors.size());
+    m_stages = new ArrayList<Stage>(num_stages);
+    int size = m_processors.size();
+    for (int i = 0; i < num_stages; i++)
+    {
+      Stage s = new Stage(i);
+      s.m_processors.addAll(m_processors.subList(i * size / num_stages, (i + 1) * size / num_stages));
+      m_stages.add(s);
+    }
+  }
+
+  /**
+   * Sorts processors so that each one comes after the processors that push
+   * events to it. Processors that are part of a cycle are put at the end.
+   * 
+   * @param procs
+   *          The processors
+   * @return The sorted list of processors
+   */
+  protected static List<Processor> sort(Set<Processor> procs)
+  {
+    Map<Processor,Integer> in_degree = new HashMap<Processor,Integer>();
+    for (Processor p : procs)
+    {
+      if (!in_degree.containsKey(p))
+      {
+        in_degree.put(p, 0);
+      }
+      for (Processor q : getSuccessors(p))
+      {
+        Integer d = in_degree.get(q);
+        in_degree.put(q, d == null ? 1 : d + 1);
+      }
+    }
+    List<Processor> sorted = new ArrayList<Processor>(procs.size());
+    Queue<Processor> ready = new LinkedList<Processor>();
+    for (Processor p : procs)
+    {
+      if (in_degree.get(p) == 0)
+      {
+        ready.add(p);
+      }
+    }
+    while (!ready.isEmpty())
+    {
+      Processor p = ready.remove();
+      sorted.add(p);
+      for (Processor q : getSuccessors(p))
+      {
+        int d = in_degree.get(q) - 1;
+        in_degree.put(q, d);
+        if (d == 0)
+        {
+          ready.add(q);
+        }
+      }
+    }
+    for (Processor p : procs)
+    {
+      if (in_degree.get(p) > 0)
+      {
+        sorted.add(p);
+      }
+    }
+    return sorted;
+  }
+
+  /**
+   * Gets the processors to which a processor pushes events
+   * 
+   * @param p
+   *          The processor
+   * @return The list of processors, in the order of the outputs of
+   *         <tt>p</tt>; a processor appears once for each connection
+   */
+  protected static List<Processor> getSuccessors(Processor p)
+  {
+    List<Processor> succ = new ArrayList<Processor>(p.getOutputArity());
+    for (int i = 0; i < p.getOutputArity(); i++)
+    {
+      Pushable ps = p.getPushableOutput(i);
+      if (ps != null && ps.getProcessor() != null)
+      {
+        succ.add(ps.getProcessor());
+      }
+    }
+    return succ;
+  }
+
+  /**
+   * Replaces every connection between processors of different stages by a
+   * queue
+   */
+  protected void insertBoundaries()
+  {
+    Map<Processor,Stage> stage_of = new HashMap<Processor,Stage>();
+    for (Stage s : m_stages)
+    {
+      s.m_inbound.clear();
+      s.m_sources.clear();
+      for (Processor p : s.m_processors)
+      {
+        stage_of.put(p, s);
+        if (p.getInputArity() == 0 && p.getOutputArity() > 0)
+        {
+          s.m_sources.add(p);
+        }
+      }
+    }
+    m_boundaries = new ArrayList<Boundary>();
+    for (Stage s : m_stages)
+    {
+      for (Processor p : s.m_processors)
+      {
+        for (int i = 0; i < p.getOutputArity(); i++)
+        {
+          Pushable target = p.getPushableOutput(i);
+          if (target == null)
+          {
+            continue;
+          }
+          Stage t_stage = stage_of.get(target.getProcessor());
+          if (t_stage == null || t_stage == s)
+          {
+            continue;
+          }
+          Boundary b = new Boundary(p, i, target, m_capacity);
+          p.setPushableOutput(i, b);
+          s.m_outbound.add(b);
+          t_stage.m_inbound.add(b);
+          m_boundaries.add(b);
+        }
+      }
+    }
+  }
+
+  /**
+   * Restores the connections replaced by queues
+   */
+  protected void removeBoundaries()
+  {
+    for (Boundary b : m_boundaries)
+    {
+      b.m_source.setPushableOutput(b.m_sourceIndex, b.m_target);
+    }
+    for (Stage s : m_stages)
+    {
+      s.m_outbound.clear();
+      s.m_inbound.clear();
+    }
+    m_boundaries.clear();
+  }
+
+  /**
+   * Waits a little when a stage has nothing to do
+   * 
+   * @param idle
+   *          The number of consecutive times the stage had nothing to do
+   */
+  protected static void backOff(int idle)
+  {
+    RingBuffer.WaitStrategy.PARK.idle(idle);
+  }
+
+  /**
+   * A connection between two processors of different stages. The
+   * boundary takes the place of the downstream pushable in the upstream
+   * processor; it puts events into a queue, from which they are taken out by
+   * the downstream stage.
+   */
+  protected static class Boundary implements Pushable
+  {
+    /**
+     * The upstream processor
+     */
+    protected final Processor m_source;
+
+    /**
+     * The index of the upstream processor's output
+     */
+    protected final int m_sourceIndex;
+
+    /**
+     * The pushable to which events are eventually delivered
+     */
+    protected final Pushable m_target;
+
+    /**
+     * The queue holding events in transit
+     */
+    protected final RingBuffer m_queue;
+
+    /**
+     * The events pushed with {@link #pushFast(Object)} that are waiting for
+     * room in the queue
+     */
+    protected final PendingQueue m_pending;
+
+    /**
+     * Whether the end of the trace has been notified by the upstream
+     * processor
+     */
+    protected volatile boolean m_endOfTrace = false;
+
+    /**
+     * Whether the upstream stage has ended
+     */
+    protected volatile boolean m_closed = false;
+
+    /**
+     * Whether the downstream stage has ended prematurely
+     */
+    protected volatile boolean m_abandoned = false;
+
+    /**
+     * Whether the end of the trace has been delivered to the target
+     */
+    protected boolean m_delivered = false;
+
+    /**
+     * Creates a new boundary
+     * 
+     * @param source
+     *          The upstream processor
+     * @param index
+     *          The index of the upstream processor's output
+     * @param target
+     *          The pushable to which events are eventually delivered
+     * @param capacity
+     *          The capacity of the queue
+     */
+    public Boundary(Processor source, int index, Pushable target, int capacity)
+    {
+      super();
+      m_source = source;
+      m_sourceIndex = index;
+      m_target = target;
+      m_queue = new RingBuffer(capacity);
+      m_pending = new PendingQueue(m_queue, this, RingBuffer.WaitStrategy.PARK);
+    }
+
+    @Override
+    public Pushable push(Object o)
+    {
+      // Wait for the downstream stage to make room
+      Future<Pushable> f = m_pending.offer(o);
+      for (int idle = 0; !f.isDone(); idle++)
+      {
+        if (m_abandoned)
+        {
+          // Nobody will ever read this event
+          m_pending.clear();
+          return this;
+        }
+        backOff(idle);
+      }
+      return this;
+    }
+
+    /**
+     * Pushes an event without waiting for the downstream stage. The future
+     * is done once the event is in the queue.
+     */
+    @Override
+    public Future<Pushable> pushFast(Object o)
+    {
+      if (m_abandoned)
+      {
+        return Pushable.NULL_FUTURE;
+      }
+      return m_pending.offer(o);
+    }
+
+    @Override
+    public Pushable pushAll(Object[] events, int offset, int length)
+    {
+      int idle = 0;
+      while (length > 0 && m_pending.size() == 0)
+      {
+        int n = m_queue.offerAll(events, offset, length);
+        offset += n;
+        length -= n;
+        if (n > 0)
+        {
+          idle = 0;
+          continue;
+        }
+        if (m_abandoned)
+        {
+          return this;
+        }
+        backOff(idle++);
+      }
+      for (int i = offset; i < offset + length; i++)
+      {
+        push(events[i]);
+      }
+      return this;
+    }
+
+    @Override
+    public void notifyEndOfTrace()
+    {
+      m_endOfTrace = true;
+    }
+
+    /**
+     * Puts the watermark into the queue, so that the downstream stage
+     * receives it after the events pushed before it.
+     */
+    @Override
+    public void notifyWatermark(long watermark)
+    {
+      push(new Watermark(watermark));
+    }
+
+    @Override
+    public Processor getProcessor()
+    {
+      return m_target.getProcessor();
+    }
+
+    @Override
+    public int getPosition()
+    {
+      return m_target.getPosition();
+    }
+
+    /**
+     * Delivers to the target a batch of events from the queue. When the
+     * queue is empty and the upstream processor has notified the end of the
+     * trace, this end of trace is delivered instead.
+     * 
+     * @param buffer
+     *          An array used to hold the events
+     * @return <tt>true</tt> if some event was delivered, <tt>false</tt>
+     *         otherwise
+     */
+    protected boolean deliver(Object[] buffer)
+    {
+      // Flags must be read before looking at the queue
+      boolean eot = m_endOfTrace;
+      int n = m_queue.drainTo(buffer, buffer.length);
+      m_pending.flush();
+      if (n > 0)
+      {
+        // Deliver the events between watermarks as batches
+        int start = 0;
+        for (int i = 0; i < n; i++)
+        {
+          if (buffer[i] instanceof Watermark)
+          {
+            if (i > start)
+            {
+              m_target.pushAll(buffer, start, i - start);
+            }
+            m_target.notifyWatermark(((Watermark) buffer[i]).m_watermark);
+            start = i + 1;
+          }
+        }
+        if (n > start)
+        {
+          m_target.pushAll(buffer, start, n - start);
+        }
+        Arrays.fill(buffer, 0, n, null);
+        return true;
+      }
+      if (eot && !m_delivered && m_queue.isEmpty() && m_pending.size() == 0)
+      {
+        m_delivered = true;
+        m_target.notifyEndOfTrace();
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Determines if no more event will ever come out of this boundary
+     * 
+     * @return <tt>true</tt> if the boundary is exhausted
+     */
+    protected boolean isExhausted()
+    {
+      // Flags must be read before looking at the queue
+      boolean closed = m_closed;
+      boolean eot = m_endOfTrace;
+      if (!m_queue.isEmpty() || m_pending.size() > 0)
+      {
+        return false;
+      }
+      if (eot)
+      {
+        return m_delivered;
+      }
+      return closed;
+    }
+  }
+
+  /**
+   * A watermark in transit through a {@link Boundary}
+   */
+  protected static class Watermark
+  {
+    /**
+     * The value of the watermark
+     */
+    protected final long m_watermark;
+
+    /**
+     * Creates a new watermark
+     * 
+     * @param watermark
+     *          The value of the watermark
+     */
+    public Watermark(long watermark)
+    {
+      super();
+      m_watermark = watermark;
+    }
+  }
+
+  /**
+   * A set of processors run by the same thread
+   */
+  protected class Stage implements Runnable
+  {
+    /**
+     * The index of this stage
+     */
+    protected final int m_index;
+
+    /**
+     * The processors of this stage
+     */
+    protected final List<Processor> m_processors = new ArrayList<Processor>();
+
+    /**
+     * The processors of this stage that produce events
+     */
+    protected final List<Processor> m_sources = new ArrayList<Processor>();
+
+    /**
+     * The boundaries from which this stage receives events
+     */
+    protected final List<Boundary> m_inbound = new ArrayList<Boundary>();
+
+    /**
+     * The boundaries to which this stage sends events
+     */
+    protected final List<Boundary> m_outbound = new ArrayList<Boundary>();
+
+    /**
+     * Creates a new stage
+     * 
+     * @param index
+     *          The index of this stage
+     */
+    public Stage(int index)
+    {
+      super();
+      m_index = index;
+    }
+
+    @Override
+    public void run()
+    {
+      try
+      {
+        loop();
+      }
+      catch (RuntimeException e)
+      {
+        if (m_error == null)
+        {
+          m_error = e;
+        }
+        m_stopping = true;
+      }
+      finally
+      {
+        for (Boundary b : m_outbound)
+        {
+          b.m_closed = true;
+        }
+        for (Boundary b : m_inbound)
+        {
+          b.m_abandoned = true;
+        }
+        m_running.countDown();
+      }
+    }
+
+    /**
+     * Reads events from the sources and the inbound queues of the stage and
+     * pushes them to their destination, until no more events can come.
+     */
+    protected void loop()
+    {
+      Object[] buffer = new Object[m_batchSize];
+      List<Processor> sources = new ArrayList<Processor>(m_sources);
+      int idle = 0;
+      while (true)
+      {
+        boolean progress = false;
+        for (int i = sources.size() - 1; i >= 0; i--)
+        {
+          Processor src = sources.get(i);
+          if (m_stopping || !pumpSource(src, buffer))
+          {
+            sources.remove(i);
+          }
+          else
+          {
+            progress = true;
+          }
+        }
+        boolean exhausted = true;
+        for (Boundary b : m_inbound)
+        {
+          progress |= b.deliver(buffer);
+          exhausted &= b.isExhausted();
+        }
+        if (sources.isEmpty() && exhausted)
+        {
+          return;
+        }
+        if (progress)
+        {
+          idle = 0;
+        }
+        else
+        {
+          backOff(idle++);
+        }
+      }
+    }
+
+    /**
+     * Pulls a batch of events from a source and pushes them downstream.
+     * When the source has no more events, the end of the trace is notified
+     * downstream instead.
+     * 
+     * @param src
+     *          The source
+     * @param buffer
+     *          An array used to hold the events
+     * @return <tt>false</tt> if the source has no more events,
+     *         <tt>true</tt> otherwise
+     */
+    protected boolean pumpSource(Processor src, Object[] buffer)
+    {
+      int arity = src.getOutputArity();
+      int n = src.getPullableOutput(0).pullBatch(buffer, buffer.length);
+      if (n == 0)
+      {
+        for (int i = 0; i < arity; i++)
+        {
+          src.getPushableOutput(i).notifyEndOfTrace();
+        }
+        return false;
+      }
+      src.getPushableOutput(0).pushAll(buffer, 0, n);
+      for (int i = 1; i < arity; i++)
+      {
+        // The fronts pulled from output 0 are waiting in the other queues
+        int m = src.getPullableOutput(i).pullBatch(buffer, n);
+        src.getPushableOutput(i).pushAll(buffer, 0, m);
+      }
+      Arrays.fill(buffer, 0, n, null);
+      return true;
+    }
+  }
+}
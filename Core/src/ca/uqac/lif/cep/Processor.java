@@ -28,6 +28,7 @@ import ca.uqac.lif.petitpoucet.NodeFunction;
 import ca.uqac.lif.petitpoucet.ProvenanceNode;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -157,6 +158,28 @@ public abstract class Processor implements DuplicableProcessor,
    */
   protected boolean m_hasBeenNotifiedOfEndOfTrace;
 
+  /**
+   * The value of a watermark that guarantees nothing. This is the watermark
+   * of every input and output of a processor until some watermark is
+   * received.
+   * @since 0.11
+   */
+  public static final long NO_WATERMARK = Long.MIN_VALUE;
+
+  /**
+   * The watermark received on each input of the processor. A watermark is a
+   * timestamp <i>t</i> telling that no event older than <i>t</i> will be
+   * received on that input from now on.
+   * @since 0.11
+   */
+  protected transient long[] m_inputWatermarks;
+
+  /**
+   * The last watermark sent by the processor on its outputs
+   * @since 0.11
+   */
+  protected transient long m_outputWatermark = NO_WATERMARK;
+
   /**
    * Initializes a processor. This has for effect of executing the basic
    * operations common to every processor:
@@ -201,6 +224,8 @@ public abstract class Processor implements DuplicableProcessor,
     m_inputPullables = new Pullable[m_inputArity];
     m_outputPushables = new Pushable[m_outputArity];
     m_hasBeenNotifiedOfEndOfTrace = false;
+    m_inputWatermarks = new long[m_inputArity];
+    Arrays.fill(m_inputWatermarks, NO_WATERMARK);
   }
   
   /**
@@ -329,6 +354,117 @@ public abstract class Processor implements DuplicableProcessor,
     m_hasBeenNotifiedOfEndOfTrace = false;
     m_inputCount = 0;
     m_outputCount = 0;
+    Arrays.fill(m_inputWatermarks, NO_WATERMARK);
+    m_outputWatermark = NO_WATERMARK;
+  }
+
+  /**
+   * Gets the watermark of the processor's inputs, that is, the smallest of
+   * the watermarks received on each of them
+   * 
+   * @return The watermark, or {@link #NO_WATERMARK} if the processor has no
+   *         input
+   * @since 0.11
+   */
+  public long getInputWatermark()
+  {
+    if (m_inputArity == 0)
+    {
+      return NO_WATERMARK;
+    }
+    long w = m_inputWatermarks[0];
+    for (int i = 1; i < m_inputArity; i++)
+    {
+      w = Math.min(w, m_inputWatermarks[i]);
+    }
+    return w;
+  }
+
+  /**
+   * Gets the last watermark sent by the processor on its outputs
+   * 
+   * @return The watermark
+   * @since 0.11
+   */
+  public long getOutputWatermark()
+  {
+    return m_outputWatermark;
+  }
+
+  /**
+   * Records a watermark received on one of the processor's inputs. Watermarks
+   * never move backwards: a watermark older than the one already received on
+   * the same input is ignored.
+   * 
+   * @param index
+   *          The index of the input
+   * @param watermark
+   *          The watermark
+   * @return <tt>true</tt> if the watermark of the processor's inputs is now
+   *         past the last watermark sent on its outputs, <tt>false</tt>
+   *         otherwise
+   * @since 0.11
+   */
+  protected boolean setInputWatermark(int index, long watermark)
+  {
+    if (watermark <= m_inputWatermarks[index])
+    {
+      return false;
+    }
+    m_inputWatermarks[index] = watermark;
+    return getInputWatermark() > m_outputWatermark;
+  }
+
+  /**
+   * Gets the watermarks of the {@link Pullable}s connected to the
+   * processor's inputs, and records them as the watermarks of these inputs.
+   * This is the pull-mode counterpart of receiving watermarks through
+   * {@link Pushable#notifyWatermark(long)}.
+   * 
+   * @return The watermark of the processor's inputs
+   * @since 0.11
+   */
+  protected long pullInputWatermark()
+  {
+    for (int i = 0; i < m_inputArity; i++)
+    {
+      Pullable p = m_inputPullables[i];
+      if (p != null)
+      {
+        setInputWatermark(i, p.getWatermark());
+      }
+    }
+    return getInputWatermark();
+  }
+
+  /**
+   * Sends a watermark to the {@link Pushable}s connected to the processor's
+   * outputs. By default, processors call this method with the watermark of
+   * their inputs as soon as it moves forward, once the events received
+   * before it have been processed; this passes watermarks through
+   * processors that have no use for them. Outputs that are connected to
+   * nothing are skipped.
+   * 
+   * @param watermark
+   *          The watermark. If it is not later than the last watermark sent,
+   *          nothing happens.
+   * @since 0.11
+   */
+  protected void forwardWatermark(long watermark)
+  {
+    if (watermark <= m_outputWatermark)
+    {
+      return;
+    }
+    m_outputWatermark = watermark;
+    for (int i = 0; i < m_outputPushables.length; i++)
+    {
+      Pushable p = m_outputPushables[i];
+      if (p != null)
+      {
+        p.notifyWatermark(watermark);
+      }
+    }
   }
 
   /**
@@ -727,6 +863,33 @@ public abstract class Processor implements DuplicableProcessor,
     return false;
   }
 
+  /**
+   * Allows to describe a specific behavior when the watermark of the
+   * processor's inputs moves forward (see
+   * {@link Pushable#notifyWatermark(long)}). This method is called once all
+   * the input events received before the watermark have been processed, and
+   * before the watermark is passed on to the processor's outputs. Processors
+   * that hold events according to time can use it to output the events that
+   * the watermark allows them to release, and to free the corresponding
+   * state.
+   *
+   * @param watermark
+   *          The new watermark of the processor's inputs
+   * @param outputs
+   *          A queue of arrays of objects, where the processor should push
+   *          the output fronts it produces
+   * @return true if the processor should output one or several output fronts,
+   *         false otherwise and by default.
+   * @throws ProcessorException
+   *           An exception thrown when a problem occurs with the operation
+   * @since 0.11
+   */
+  protected boolean onWatermark(long watermark, Queue<Object[]> outputs)
+      throws ProcessorException
+  {
+    return false;
+  }
+
   /**
    * Gets the number of event fronts received so far by this processor
    * @return The number of fronts
@@ -151,6 +151,45 @@ public interface Pullable extends Iterator<Object>, Iterable<Object>
   @Override
   public boolean hasNext();
 
+  /**
+   * Pulls a batch of events from the processor's output. The events are
+   * written at the beginning of the destination array, in the order in which
+   * successive calls to {@link #pull()} would have returned them. Like
+   * {@link #pull()}, the method waits until at least one event is available,
+   * or until it is certain that no more event will ever be produced.
+   * <p>
+   * The method may return fewer than <code>max</code> events even if more
+   * events could be produced; it may also fetch more events from upstream
+   * than it returns, and keep them for subsequent calls. Implementations are
+   * encouraged to fetch events from their upstream pullables in chunks,
+   * rather than one at a time.
+   * 
+   * @param dst
+   *          The array where the events are written. Its length must be at
+   *          least <code>max</code>.
+   * @param max
+   *          The maximum number of events to pull
+   * @return The number of events written to the array. The value 0 indicates
+   *         that no more event will ever be produced (i.e. that
+   *         {@link #hasNext()} would return <code>false</code>).
+   * @since 0.11
+   */
+  public int pullBatch(Object[] dst, int max);
+
+  /**
+   * Gets the watermark of this pullable, that is, a timestamp <i>t</i> such
+   * that no event older than <i>t</i> will be pulled from it from now on.
+   * This is the pull-mode counterpart of
+   * {@link Pushable#notifyWatermark(long)}. Asking a pullable for its
+   * watermark also asks the pullables upstream of it, which gives
+   * processors that hold events according to time a chance to output them.
+   * 
+   * @return The watermark, or {@link Processor#NO_WATERMARK} if the
+   *         pullable gives no such guarantee
+   * @since 0.11
+   */
+  public long getWatermark();
+
   /**
    * Gets the processor instance this Pullable is linked to
    * 
@@ -289,6 +328,18 @@ public interface Pullable extends Iterator<Object>, Iterable<Object>
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public int pullBatch(Object[] dst, int max)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getWatermark()
+    {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public Processor getProcessor()
     {
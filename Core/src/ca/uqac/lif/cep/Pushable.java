@@ -60,10 +60,38 @@ public interface Pushable
    *          behaviour in this case is undefined. It <code>may</code> be
    *          interpreted as if you are passing no event.
    * @return A {@link Future} object that can be used to wait until the call to
-   *         <tt>pushFast</tt> is finished.
+   *         <tt>pushFast</tt> is finished. A pushable that processes events
+   *         synchronously can return a future that is already done. A
+   *         pushable backed by a queue or by another thread returns a
+   *         future that is done once the event has been accepted; when its
+   *         buffer is full, this lets the producer either wait or be told
+   *         that it should slow down, instead of piling up events.
    */
   public Future<Pushable> pushFast(Object o);
 
+  /**
+   * Pushes a batch of events into one of the processor's input trace. The
+   * result must be the same as calling {@link #push(Object)} successively on
+   * each event of the batch. However, implementations are encouraged to
+   * process the whole batch at once (for example by acquiring a lock only
+   * once). A processor should still push each of its output events
+   * downstream before computing the next one, as it may modify an object it
+   * has already output.
+   * Like {@link #push(Object)}, this method returns only when the push
+   * operation is completely done.
+   *
+   * @param events
+   *          An array containing the events to push. The array is not
+   *          modified, and no reference to it is kept after the call returns.
+   * @param offset
+   *          The index in the array of the first event to push
+   * @param length
+   *          The number of events to push
+   * @return The same instance of pushable
+   * @since 0.11
+   */
+  public Pushable pushAll(Object[] events, int offset, int length);
+
   /**
    * Notifies the pushable that there is no more event to be pushed, i.e. the
    * trace of events has ended at this point.
@@ -73,6 +101,25 @@ public interface Pushable
    */
   public void notifyEndOfTrace() throws PushableException;
 
+  /**
+   * Notifies the pushable of a watermark, that is, a timestamp <i>t</i>
+   * telling that no event older than <i>t</i> will be pushed from now on.
+   * What the timestamp of an event is depends on the processors that make
+   * use of watermarks; other processors simply pass them on to their outputs,
+   * after the events pushed before the watermark. A watermark that is not
+   * later than the last one received is ignored.
+   * <p>
+   * Watermarks let processors that group events according to time free
+   * their state as soon as possible, rather than at the end of the trace.
+   * 
+   * @param watermark
+   *          The watermark
+   * @throws PushableException Exception thrown when the operation fails
+   * for some reason
+   * @since 0.11
+   */
+  public void notifyWatermark(long watermark) throws PushableException;
+
   /**
    * Gets the processor instance this Pushable is linked to
    * 
@@ -166,12 +213,24 @@ public interface Pushable
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public Pushable pushAll(Object[] events, int offset, int length)
+    {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public void notifyEndOfTrace() throws PushableException
     {
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public void notifyWatermark(long watermark) throws PushableException
+    {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public Processor getProcessor()
     {
@@ -118,6 +118,24 @@ public abstract class SynchronousProcessor extends Processor
    */
   protected abstract boolean compute(Object[] inputs, Queue<Object[]> outputs);
 
+  /**
+   * Determines if all the input queues of the processor are empty
+   * 
+   * @return <tt>true</tt> if no input event is waiting to be processed
+   * @since 0.11
+   */
+  protected boolean inputQueuesEmpty()
+  {
+    for (int i = 0; i < m_inputArity; i++)
+    {
+      if (!m_inputQueues[i].isEmpty())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Implementation of a {@link Pushable} for a single processor.
    * 
@@ -137,7 +155,7 @@ public abstract class SynchronousProcessor extends Processor
      *          The index of the trace. Should be between 0 and the processor's
      *          input arity - 1. This is not checked by the constructor, so beware.
      */
-    InputPushable(int index)
+    protected InputPushable(int index)
     {
       super();
       m_index = index;
@@ -199,9 +217,106 @@ public abstract class SynchronousProcessor extends Processor
       }
       // put everything in outputEvent, because of duplicated code in notifyEndOfTrace
       outputEvent(outs);
+      if (m_inputArity > 1)
+      {
+        // A watermark may have been waiting for this front
+        outputWatermark();
+      }
       return this;
     }
 
+    @Override
+    public synchronized Pushable pushAll(Object[] events, int offset, int length)
+    {
+      Queue<Object> q;
+      try
+      {
+        q = m_inputQueues[m_index];
+      }
+      catch (ArrayIndexOutOfBoundsException e)
+      {
+        throw new PushableException(e);
+      }
+      for (int k = offset; k < offset + length; k++)
+      {
+        q.add(events[k]);
+        // Check if each input queue has an event ready
+        boolean ready = true;
+        for (int i = 0; i < m_inputArity; i++)
+        {
+          if (m_inputQueues[i].isEmpty())
+          {
+            ready = false;
+            break;
+          }
+        }
+        if (!ready)
+        {
+          continue;
+        }
+        Object[] inputs = new Object[m_inputArity];
+        for (int i = 0; i < m_inputArity; i++)
+        {
+          inputs[i] = m_inputQueues[i].remove();
+        }
+        m_tempQueue.clear();
+        boolean outs;
+        try
+        {
+          outs = compute(inputs, m_tempQueue);
+        }
+        catch (ProcessorException e)
+        {
+          throw new PushableException(e);
+        }
+        // Each front is pushed before the next one is computed, as a
+        // processor may modify an object it has already output
+        outputEvent(outs);
+        m_tempQueue.clear();
+      }
+      if (m_inputArity > 1)
+      {
+        outputWatermark();
+      }
+      return this;
+    }
+
+    @Override
+    public synchronized void notifyWatermark(long watermark)
+    {
+      if (setInputWatermark(m_index, watermark))
+      {
+        outputWatermark();
+      }
+    }
+
+    /**
+     * Lets the processor act on the watermark of its inputs, and passes it
+     * on to its outputs. This is deferred as long as some input events
+     * received before the watermark are waiting in the input queues.
+     */
+    private final void outputWatermark()
+    {
+      long watermark = getInputWatermark();
+      if (watermark <= m_outputWatermark || !inputQueuesEmpty())
+      {
+        return;
+      }
+      m_tempQueue.clear();
+      boolean outs;
+      try
+      {
+        outs = onWatermark(watermark, m_tempQueue);
+      }
+      catch (ProcessorException e)
+      {
+        throw new PushableException(e);
+      }
+      outputEvent(outs);
+      m_tempQueue.clear();
+      forwardWatermark(watermark);
+    }
+
     @Override
     public void notifyEndOfTrace()
     {
@@ -243,7 +358,7 @@ public abstract class SynchronousProcessor extends Processor
      * @param outs Set to <tt>true</tt> to enable the output of an event,
      * <tt>false</tt> otherwise.
      */
-    private final void outputEvent(boolean outs)
+    protected final void outputEvent(boolean outs)
     {
       if (outs && !m_tempQueue.isEmpty())
       {
@@ -287,6 +402,11 @@ public abstract class SynchronousProcessor extends Processor
      */
     private final int m_index;
 
+    /**
+     * The last watermark returned by {@link #getWatermark()}
+     */
+    private long m_watermark = NO_WATERMARK;
+
     /**
      * Creates a pullable associated to some of a processor's output traces.
      * 
@@ -460,6 +580,166 @@ public abstract class SynchronousProcessor extends Processor
       return false;
     }
 
+    @Override
+    public synchronized int pullBatch(Object[] dst, int max)
+    {
+      Queue<Object> out_queue = m_outputQueues[m_index];
+      int n = 0;
+      int tries = 0;
+      boolean more = true;
+      while (true)
+      {
+        while (n < max && !out_queue.isEmpty())
+        {
+          dst[n++] = out_queue.remove();
+        }
+        if (n == max || !more)
+        {
+          break;
+        }
+        if (m_inputArity > 1)
+        {
+          // Fronts must be aligned across inputs: pull them one at a time
+          more = hasNext();
+        }
+        else
+        {
+          more = fetchBatch(max - n);
+        }
+        if (more && out_queue.isEmpty() && (n > 0 || ++tries >= Processor.MAX_PULL_RETRIES))
+        {
+          // The batch produced no output; don't look further if we
+          // already have something to return
+          break;
+        }
+      }
+      return n;
+    }
+
+    /**
+     * Fetches a batch of events from the processor's single input (or,
+     * for a processor of input arity 0, asks it to produce a batch of
+     * events), computes the corresponding output fronts and adds them
+     * to the output queues.
+     * 
+     * @param size
+     *          The number of input events to fetch
+     * @return <tt>false</tt> if the processor will not produce any other
+     *         event, <tt>true</tt> otherwise
+     */
+    protected boolean fetchBatch(int size)
+    {
+      Object[] in_batch = null;
+      int count = size;
+      if (m_inputArity == 1)
+      {
+        Pullable p = m_inputPullables[0];
+        if (p == null)
+        {
+          throw new PullableException("Input 0 of processor " + SynchronousProcessor.this
+              + " is connected to nothing", getProcessor());
+        }
+        in_batch = new Object[size];
+        count = p.pullBatch(in_batch, size);
+        if (count == 0)
+        {
+          if (m_hasBeenNotifiedOfEndOfTrace)
+          {
+            return false;
+          }
+          Queue<Object[]> last_queue = new ArrayDeque<Object[]>();
+          boolean b = onEndOfTrace(last_queue);
+          m_hasBeenNotifiedOfEndOfTrace = true;
+          if (b)
+          {
+            for (Object[] front : last_queue)
+            {
+              for (int j = 0; j < m_outputArity; j++)
+              {
+                m_outputQueues[j].add(front[j]);
+              }
+            }
+          }
+          return b;
+        }
+      }
+      for (int k = 0; k < count; k++)
+      {
+        Object[] inputs = new Object[m_inputArity];
+        if (in_batch != null)
+        {
+          inputs[0] = in_batch[k];
+        }
+        m_tempQueue.clear();
+        boolean computed;
+        try
+        {
+          computed = compute(inputs, m_tempQueue);
+        }
+        catch (ProcessorException e)
+        {
+          throw new PullableException(e);
+        }
+        if (!computed)
+        {
+          m_tempQueue.clear();
+          return false;
+        }
+        for (Object[] evt : m_tempQueue)
+        {
+          if (evt == null)
+          {
+            // This source will NEVER output anything again
+            m_tempQueue.clear();
+            return false;
+          }
+          for (int j = 0; j < m_outputArity; j++)
+          {
+            m_outputQueues[j].add(evt[j]);
+          }
+        }
+      }
+      m_tempQueue.clear();
+      return true;
+    }
+
+    @Override
+    public synchronized long getWatermark()
+    {
+      long watermark = pullInputWatermark();
+      if (m_inputArity > 0 && watermark > m_outputWatermark && inputQueuesEmpty())
+      {
+        m_tempQueue.clear();
+        boolean outs;
+        try
+        {
+          outs = onWatermark(watermark, m_tempQueue);
+        }
+        catch (ProcessorException e)
+        {
+          throw new PullableException(e);
+        }
+        if (outs)
+        {
+          for (Object[] front : m_tempQueue)
+          {
+            for (int j = 0; j < m_outputArity; j++)
+            {
+              m_outputQueues[j].add(front[j]);
+            }
+          }
+        }
+        m_tempQueue.clear();
+        m_outputWatermark = watermark;
+      }
+      // The events waiting in the output queue come before the watermark
+      if (m_outputQueues[m_index].isEmpty())
+      {
+        m_watermark = m_outputWatermark;
+      }
+      return m_watermark;
+    }
+
     @Override
     public synchronized NextStatus hasNextSoft()
     {
@@ -91,6 +91,18 @@ public class TypedPullable<T> implements Pullable
     return m_pullable.hasNext();
   }
 
+  @Override
+  public int pullBatch(Object[] dst, int max)
+  {
+    return m_pullable.pullBatch(dst, max);
+  }
+
+  @Override
+  public long getWatermark()
+  {
+    return m_pullable.getWatermark();
+  }
+
   @Override
   public Processor getProcessor()
   {
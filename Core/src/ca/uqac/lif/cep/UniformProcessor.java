@@ -123,6 +123,18 @@ public abstract class UniformProcessor extends SynchronousProcessor
     return false;
   }
 
+  /**
+   * A uniform processor produces exactly one output front for each input
+   * front, and hence nothing when the watermark of its inputs moves forward.
+   * 
+   * @since 0.11
+   */
+  @Override
+  protected final boolean onWatermark(long watermark, Queue<Object[]> outputs)
+  {
+    return false;
+  }
+
   @Override
   public Pullable getPullableOutput(int index)
   {
@@ -172,9 +184,10 @@ public abstract class UniformProcessor extends SynchronousProcessor
     @Override
     public synchronized Pushable push(Object o)
     {
+      boolean b;
       try
       {
-        compute(new Object[] { o }, m_outputArray);
+        b = compute(new Object[] { o }, m_outputArray);
       }
       catch (ProcessorException e)
       {
@@ -185,7 +198,41 @@ public abstract class UniformProcessor extends SynchronousProcessor
         throw new PushableException(
             "Output 0 of processor " + getProcessor() + " is connected to nothing");
       }
-      m_outputPushables[0].push(m_outputArray[0]);
+      if (b)
+      {
+        // No output is produced if compute() returns false
+        m_outputPushables[0].push(m_outputArray[0]);
+      }
+      return this;
+    }
+
+    @Override
+    public synchronized Pushable pushAll(Object[] events, int offset, int length)
+    {
+      if (m_outputPushables[0] == null)
+      {
+        throw new PushableException(
+            "Output 0 of processor " + getProcessor() + " is connected to nothing");
+      }
+      Pushable out = m_outputPushables[0];
+      for (int i = offset; i < offset + length; i++)
+      {
+        boolean b;
+        try
+        {
+          b = compute(new Object[] { events[i] }, m_outputArray);
+        }
+        catch (ProcessorException e)
+        {
+          throw new PushableException(e);
+        }
+        if (b)
+        {
+          // Pushed right away, as the processor may modify an object it has
+          // already output
+          out.push(m_outputArray[0]);
+        }
+      }
       return this;
     }
 
@@ -221,6 +268,15 @@ public abstract class UniformProcessor extends SynchronousProcessor
       m_outputPushables[0].notifyEndOfTrace();
     }
 
+    @Override
+    public synchronized void notifyWatermark(long watermark)
+    {
+      if (setInputWatermark(0, watermark))
+      {
+        forwardWatermark(watermark);
+      }
+    }
+
     @Override
     public UniformProcessor getProcessor()
     {
@@ -246,6 +302,11 @@ public abstract class UniformProcessor extends SynchronousProcessor
    */
   public class UnaryPullable implements Pullable
   {
+    /**
+     * The array passed to {@link UniformProcessor#compute(Object[], Object[])
+     * compute()} for each event of a batch
+     */
+    protected final Object[] m_batchInput = new Object[1];
 
     @Override
     public Iterator<Object> iterator()
@@ -315,6 +376,67 @@ public abstract class UniformProcessor extends SynchronousProcessor
       return pull();
     }
 
+    @Override
+    public int pullBatch(Object[] dst, int max)
+    {
+      if (!m_inputQueues[0].isEmpty())
+      {
+        int n = 0;
+        while (n < max && !m_inputQueues[0].isEmpty())
+        {
+          dst[n++] = m_inputQueues[0].remove();
+        }
+        return n;
+      }
+      if (m_inputPullables[0] == null)
+      {
+        throw new PullableException("Input 0 of this processor is connected to nothing",
+            getProcessor());
+      }
+      // Input events are pulled directly into the destination array, and
+      // replaced in place by the corresponding output events; an input
+      // event that produces no output is skipped, and more input events are
+      // pulled if none of them does
+      int n = 0;
+      while (n == 0)
+      {
+        int count = m_inputPullables[0].pullBatch(dst, max);
+        if (count == 0)
+        {
+          return 0;
+        }
+        for (int i = 0; i < count; i++)
+        {
+          m_batchInput[0] = dst[i];
+          dst[i] = null;
+          try
+          {
+            if (m_batchInput[0] != null && compute(m_batchInput, m_outputArray))
+            {
+              dst[n++] = m_outputArray[0];
+            }
+          }
+          catch (ProcessorException e)
+          {
+            throw new PullableException(e);
+          }
+        }
+      }
+      m_batchInput[0] = null;
+      return n;
+    }
+
+    @Override
+    public long getWatermark()
+    {
+      long watermark = pullInputWatermark();
+      if (watermark > m_outputWatermark && m_inputQueues[0].isEmpty())
+      {
+        m_outputWatermark = watermark;
+      }
+      return m_outputWatermark;
+    }
+
     @Override
     public NextStatus hasNextSoft()
     {
@@ -51,6 +51,14 @@ public class ApplyFunction extends UniformProcessor
    */
   protected ShiftTracker m_shiftTracker;
 
+  /**
+   * The object actually evaluated on each input front. This is
+   * {@link #m_function} itself, or its compiled version if it is a
+   * {@link FunctionTree}. It is created on the first evaluation.
+   * @since 0.11
+   */
+  protected transient Function m_evaluator = null;
+
   /**
    * Instantiates a new function processor
    * 
@@ -76,7 +84,11 @@ public class ApplyFunction extends UniformProcessor
   {
     try
     {
-      m_function.evaluate(inputs, outputs, m_context, m_shiftTracker);
+      if (m_evaluator == null)
+      {
+        m_evaluator = CompiledFunction.compile(m_function);
+      }
+      m_evaluator.evaluate(inputs, outputs, m_context, m_shiftTracker);
       if (m_eventTracker != null)
       {
         for (int i = 0; i < inputs.length; i++)
@@ -139,6 +151,7 @@ public class ApplyFunction extends UniformProcessor
   {
     super.duplicateInto(af);
     af.m_function = m_function.duplicate(with_state);
+    af.m_evaluator = null;
   }
 
   /**
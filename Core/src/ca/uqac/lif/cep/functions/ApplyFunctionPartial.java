@@ -185,12 +185,40 @@ public class ApplyFunctionPartial extends Processor
       return Pushable.NULL_FUTURE;
     }
 
+    @Override
+    public Pushable pushAll(Object[] events, int offset, int length)
+    {
+      for (int i = offset; i < offset + length; i++)
+      {
+        push(events[i]);
+      }
+      return this;
+    }
+
     @Override
     public void notifyEndOfTrace() throws PushableException
     {
       // Nothing to do
     }
 
+    @Override
+    public void notifyWatermark(long watermark) throws PushableException
+    {
+      if (!setInputWatermark(m_index, watermark))
+      {
+        return;
+      }
+      // Wait until the events received before the watermark are processed
+      for (int i = 0; i < m_inputQueues.length; i++)
+      {
+        if (!m_inputQueues[i].isEmpty())
+        {
+          return;
+        }
+      }
+      forwardWatermark(getInputWatermark());
+    }
+
     @Override
     public Processor getProcessor()
     {
@@ -258,6 +286,23 @@ public class ApplyFunctionPartial extends Processor
       return false;
     }
 
+    @Override
+    public int pullBatch(Object[] dst, int max)
+    {
+      int n = 0;
+      while (n < max && hasNext())
+      {
+        dst[n++] = pull();
+      }
+      return n;
+    }
+
+    @Override
+    public long getWatermark()
+    {
+      return m_outputWatermark;
+    }
+
     @Override
     public ApplyFunctionPartial getProcessor() 
     {
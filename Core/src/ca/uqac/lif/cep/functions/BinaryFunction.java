@@ -135,6 +135,28 @@ public abstract class BinaryFunction<T, V, U> extends Function
     return null;
   }
 
+  /**
+   * Tells whether this function is associative, that is, whether
+   * <i>f</i>(<i>f</i>(<i>x</i>,<i>y</i>),<i>z</i>) =
+   * <i>f</i>(<i>x</i>,<i>f</i>(<i>y</i>,<i>z</i>)) for all arguments. When this
+   * is the case, a sequence of values can be combined by grouping them in any
+   * way, as long as their order is preserved; for example, a
+   * {@link ca.uqac.lif.cep.tmf.Window Window}
+   * over a {@link Cumulate} uses this to avoid recomputing the whole window
+   * on every event. Functions on floating-point numbers are considered
+   * associative even though the grouping may change the rounding of the
+   * result. You only need to override this method if the function is
+   * associative.
+   * 
+   * @return <tt>true</tt> if the function is associative, <tt>false</tt>
+   *         otherwise and by default
+   * @since 0.11
+   */
+  public boolean isAssociative()
+  {
+    return false;
+  }
+
   @Override
   public void reset()
   {
@@ -0,0 +1,759 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.functions;
+
+import ca.uqac.lif.cep.Context;
+import ca.uqac.lif.cep.EventTracker;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link FunctionTree} turned into a flat sequence of function calls. When
+ * a function tree is evaluated, it allocates an array for the values of its
+ * children, plus one array for the output of each child, and this
+ * recursively for every subtree. A compiled function performs the same calls,
+ * in the same order, but all the arrays it needs are allocated once, when
+ * the function is compiled:
+ * <ul>
+ * <li>each inner node of the tree becomes a call to its root function, with
+ * a preallocated array of arguments and a preallocated array of
+ * outputs;</li>
+ * <li>arguments that are {@link Constant}s are written into the array of
+ * arguments at compile time;</li>
+ * <li>arguments that are {@link StreamVariable}s, {@link ContextVariable}s
+ * or the result of a previous call are copied into that array before each
+ * call;</li>
+ * <li>any other function given as an argument is evaluated on the inputs of
+ * the tree, exactly as the tree itself would do.</li>
+ * </ul>
+ * A function compiled this way gives exactly the same results as the tree.
+ * <p>
+ * Optionally, the compiled function can also use the primitive forms of the
+ * functions (see {@link Primitives}). When a function has a primitive form,
+ * its arguments are {@link Long}s or {@link Double}s, and its result is
+ * passed to another function with a primitive form, it is called on
+ * <tt>long</tt>s or <tt>double</tt>s, and its result is kept as such for the
+ * next call. The last function of the tree, and any function whose result
+ * goes to a function without a primitive form, are evaluated as usual, so
+ * that the output of a compiled tree has the same type as that of the tree
+ * itself. For example, evaluating <i>x</i>&times;<i>y</i>+1 on two
+ * {@link Long}s creates a single {@link Float}, instead of one for each
+ * operation. A <tt>long</tt> operation that overflows is done again on
+ * <tt>double</tt>s. However, the primitive forms compute with a greater
+ * precision than the functions of {@link ca.uqac.lif.cep.util.Numbers
+ * Numbers}, which compute on <tt>float</tt>s; the results can therefore
+ * differ from those of the tree. This is why primitive forms are only used
+ * when asked for explicitly, with {@link FunctionTree#compile(boolean)}.
+ * <p>
+ * Since its arrays are reused from one evaluation to the next, a compiled
+ * function must not be evaluated by multiple threads at the same time. It
+ * shares the functions of the tree it was compiled from; resetting either
+ * one resets the other.
+ * <p>
+ * A compiled function is obtained by calling {@link FunctionTree#compile()}
+ * or {@link FunctionTree#compile(boolean)}.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class CompiledFunction extends Function
+{
+  /**
+   * Operand kind: a value written at compile time
+   */
+  protected static final int CONSTANT = 0;
+
+  /**
+   * Operand kind: one of the inputs
+   */
+  protected static final int INPUT = 1;
+
+  /**
+   * Operand kind: a value of the context
+   */
+  protected static final int CONTEXT = 2;
+
+  /**
+   * Operand kind: the result of a previous call
+   */
+  protected static final int RESULT = 3;
+
+  /**
+   * Primitive form: the function implements {@link LongUnaryFunction} or
+   * {@link LongBinaryFunction}
+   */
+  protected static final int LONG_FUNCTION = 1;
+
+  /**
+   * Primitive form: the function implements {@link DoubleUnaryFunction} or
+   * {@link DoubleBinaryFunction}
+   */
+  protected static final int DOUBLE_FUNCTION = 2;
+
+  /**
+   * Primitive form: the function implements {@link LongBinaryPredicate}
+   */
+  protected static final int LONG_PREDICATE = 4;
+
+  /**
+   * Primitive form: the function implements {@link DoubleBinaryPredicate}
+   */
+  protected static final int DOUBLE_PREDICATE = 8;
+
+  /**
+   * The tree this function has been compiled from
+   */
+  protected final FunctionTree m_tree;
+
+  /**
+   * Whether the primitive forms of the functions are used
+   */
+  protected final boolean m_primitive;
+
+  /**
+   * The function called by each step
+   */
+  protected Function[] m_functions;
+
+  /**
+   * For each step, whether the function is evaluated directly on the inputs
+   * of the tree rather than on an array of arguments
+   */
+  protected boolean[] m_direct;
+
+  /**
+   * For each step, the kind of each of its arguments
+   */
+  protected int[][] m_kinds;
+
+  /**
+   * For each step, the index of the input or of the step each argument comes
+   * from
+   */
+  protected int[][] m_indices;
+
+  /**
+   * For each step, the name of the context element each argument comes
+   * from
+   */
+  protected String[][] m_names;
+
+  /**
+   * For each step, the array of arguments passed to its function
+   */
+  protected Object[][] m_arguments;
+
+  /**
+   * For each step, the array where its function writes its outputs
+   */
+  protected Object[][] m_outputs;
+
+  /**
+   * For each step, the primitive forms of its function, as a combination of
+   * {@link #LONG_FUNCTION}, {@link #DOUBLE_FUNCTION}, {@link #LONG_PREDICATE}
+   * and {@link #DOUBLE_PREDICATE}
+   */
+  protected int[] m_forms;
+
+  /**
+   * For each step, the kind of its last result: {@link Primitives#LONG} or
+   * {@link Primitives#DOUBLE} if it is kept as a primitive,
+   * {@link Primitives#OTHER} if it is in {@link #m_outputs}
+   */
+  protected int[] m_resultKinds;
+
+  /**
+   * For each step, its last result if it is a <tt>long</tt>
+   */
+  protected long[] m_longResults;
+
+  /**
+   * For each step, its last result if it is a <tt>double</tt>
+   */
+  protected double[] m_doubleResults;
+
+  /**
+   * Compiles a function tree, without using the primitive forms of its
+   * functions
+   * 
+   * @param tree
+   *          The tree
+   * @throws UnsupportedOperationException
+   *           If the tree has a missing child
+   */
+  protected CompiledFunction(FunctionTree tree)
+  {
+    this(tree, false);
+  }
+
+  /**
+   * Compiles a function tree
+   * 
+   * @param tree
+   *          The tree
+   * @param primitive
+   *          Set to <tt>true</tt> to use the primitive forms of the
+   *          functions, <tt>false</tt> to get the same results as the tree
+   * @throws UnsupportedOperationException
+   *           If the tree has a missing child
+   */
+  protected CompiledFunction(FunctionTree tree, boolean primitive)
+  {
+    super();
+    m_tree = tree;
+    m_primitive = primitive;
+    List<Step> steps = new ArrayList<Step>();
+    addSteps(tree, steps);
+    int n = steps.size();
+    m_functions = new Function[n];
+    m_direct = new boolean[n];
+    m_kinds = new int[n][];
+    m_indices = new int[n][];
+    m_names = new String[n][];
+    m_arguments = new Object[n][];
+    m_outputs = new Object[n][];
+    m_forms = new int[n];
+    m_resultKinds = new int[n];
+    m_longResults = new long[n];
+    m_doubleResults = new double[n];
+    for (int i = 0; i < n; i++)
+    {
+      Step s = steps.get(i);
+      m_functions[i] = s.m_function;
+      m_direct[i] = s.m_direct;
+      m_kinds[i] = s.m_kinds;
+      m_indices[i] = s.m_indices;
+      m_names[i] = s.m_names;
+      m_arguments[i] = s.m_arguments;
+      m_outputs[i] = new Object[Math.max(1, s.m_function.getOutputArity())];
+      if (primitive && !s.m_direct)
+      {
+        m_forms[i] = getForms(s.m_function);
+      }
+    }
+    // A result is only kept as a primitive if the next call can take it as
+    // such; a predicate gives a Boolean in any case
+    boolean[] to_primitive = new boolean[n];
+    for (int i = 0; i < n; i++)
+    {
+      for (int j = 0; j < m_kinds[i].length; j++)
+      {
+        if (m_kinds[i][j] == RESULT)
+        {
+          to_primitive[m_indices[i][j]] = m_forms[i] != 0;
+        }
+      }
+    }
+    for (int i = 0; i < n; i++)
+    {
+      if (!to_primitive[i])
+      {
+        m_forms[i] &= LONG_PREDICATE | DOUBLE_PREDICATE;
+      }
+    }
+  }
+
+  /**
+   * Gets the primitive forms of a function
+   * 
+   * @param f
+   *          The function
+   * @return A combination of {@link #LONG_FUNCTION}, {@link #DOUBLE_FUNCTION},
+   *         {@link #LONG_PREDICATE} and {@link #DOUBLE_PREDICATE}
+   */
+  protected static int getForms(Function f)
+  {
+    int arity = f.getInputArity();
+    int forms = 0;
+    if (arity == 1)
+    {
+      if (f instanceof LongUnaryFunction)
+      {
+        forms |= LONG_FUNCTION;
+      }
+      if (f instanceof DoubleUnaryFunction)
+      {
+        forms |= DOUBLE_FUNCTION;
+      }
+    }
+    else if (arity == 2)
+    {
+      if (f instanceof LongBinaryFunction)
+      {
+        forms |= LONG_FUNCTION;
+      }
+      if (f instanceof DoubleBinaryFunction)
+      {
+        forms |= DOUBLE_FUNCTION;
+      }
+      if (f instanceof LongBinaryPredicate)
+      {
+        forms |= LONG_PREDICATE;
+      }
+      if (f instanceof DoubleBinaryPredicate)
+      {
+        forms |= DOUBLE_PREDICATE;
+      }
+    }
+    return forms;
+  }
+
+  /**
+   * Appends to a list the steps evaluating a tree, after the steps
+   * evaluating its children
+   * 
+   * @param tree
+   *          The tree
+   * @param steps
+   *          The list of steps
+   * @return The index of the step evaluating the root of the tree
+   */
+  protected static int addSteps(FunctionTree tree, List<Step> steps)
+  {
+    Function[] children = tree.m_children;
+    Step s = new Step(tree.m_function, children.length);
+    for (int i = 0; i < children.length; i++)
+    {
+      Function child = children[i];
+      if (child == null)
+      {
+        throw new UnsupportedOperationException("Child " + i + " of " + tree + " is not set");
+      }
+      Class<?> c = child.getClass();
+      if (c.equals(StreamVariable.class))
+      {
+        s.m_kinds[i] = INPUT;
+        s.m_indices[i] = ((StreamVariable) child).getIndex();
+      }
+      else if (c.equals(Constant.class))
+      {
+        s.m_kinds[i] = CONSTANT;
+        s.m_arguments[i] = ((Constant) child).getValue();
+      }
+      else if (c.equals(ContextVariable.class))
+      {
+        s.m_kinds[i] = CONTEXT;
+        s.m_names[i] = ((ContextVariable) child).getName();
+      }
+      else if (c.equals(FunctionTree.class))
+      {
+        s.m_kinds[i] = RESULT;
+        s.m_indices[i] = addSteps((FunctionTree) child, steps);
+      }
+      else
+      {
+        // Any other function is evaluated on the inputs of the tree
+        Step direct = new Step(child, 0);
+        direct.m_direct = true;
+        steps.add(direct);
+        s.m_kinds[i] = RESULT;
+        s.m_indices[i] = steps.size() - 1;
+      }
+    }
+    steps.add(s);
+    return steps.size() - 1;
+  }
+
+  @Override
+  public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+  {
+    int last = m_functions.length - 1;
+    for (int i = 0; i <= last; i++)
+    {
+      // The last step writes directly into the output array
+      Object[] out = i == last ? outputs : m_outputs[i];
+      if (m_forms[i] != 0 && evaluatePrimitive(i, inputs, context, out))
+      {
+        continue;
+      }
+      m_resultKinds[i] = Primitives.OTHER;
+      if (m_direct[i])
+      {
+        m_functions[i].evaluate(inputs, out, context);
+        continue;
+      }
+      Object[] args = m_arguments[i];
+      int[] kinds = m_kinds[i];
+      int[] indices = m_indices[i];
+      for (int j = 0; j < args.length; j++)
+      {
+        switch (kinds[j])
+        {
+        case INPUT:
+          args[j] = inputs[indices[j]];
+          break;
+        case RESULT:
+          args[j] = getResult(indices[j]);
+          break;
+        case CONTEXT:
+          String name = m_names[i][j];
+          args[j] = context == null || !context.containsKey(name) ? null : context.get(name);
+          break;
+        default:
+          // Constants are already in place
+          break;
+        }
+      }
+      m_functions[i].evaluate(args, out, context);
+    }
+  }
+
+  /**
+   * Evaluates a step with the primitive form of its function, if the kinds of
+   * its arguments allow it
+   * 
+   * @param i
+   *          The index of the step
+   * @param inputs
+   *          The inputs of the tree
+   * @param context
+   *          The context
+   * @param out
+   *          The array where the step writes its outputs
+   * @return <tt>true</tt> if the step has been evaluated, <tt>false</tt>
+   *         otherwise
+   */
+  protected boolean evaluatePrimitive(int i, Object[] inputs, Context context, Object[] out)
+  {
+    int arity = m_kinds[i].length;
+    int kind = Primitives.LONG;
+    for (int j = 0; j < arity; j++)
+    {
+      int k = getArgumentKind(i, j, inputs, context);
+      if (k == Primitives.OTHER)
+      {
+        return false;
+      }
+      kind = Math.max(kind, k);
+    }
+    int forms = m_forms[i];
+    Function f = m_functions[i];
+    if (kind == Primitives.LONG && (forms & (LONG_FUNCTION | LONG_PREDICATE)) != 0)
+    {
+      long x = getLongArgument(i, 0, inputs, context);
+      if ((forms & LONG_PREDICATE) != 0)
+      {
+        out[0] = ((LongBinaryPredicate) f).test(x, getLongArgument(i, 1, inputs, context));
+        m_resultKinds[i] = Primitives.OTHER;
+        return true;
+      }
+      try
+      {
+        m_longResults[i] = arity == 1 ? ((LongUnaryFunction) f).getLongValue(x)
+            : ((LongBinaryFunction) f).getLongValue(x, getLongArgument(i, 1, inputs, context));
+        m_resultKinds[i] = Primitives.LONG;
+        return true;
+      }
+      catch (ArithmeticException e)
+      {
+        // Overflow: try again on doubles
+      }
+    }
+    if ((forms & (DOUBLE_FUNCTION | DOUBLE_PREDICATE)) == 0)
+    {
+      return false;
+    }
+    double x = getDoubleArgument(i, 0, inputs, context);
+    if ((forms & DOUBLE_PREDICATE) != 0)
+    {
+      out[0] = ((DoubleBinaryPredicate) f).test(x, getDoubleArgument(i, 1, inputs, context));
+      m_resultKinds[i] = Primitives.OTHER;
+      return true;
+    }
+    m_doubleResults[i] = arity == 1 ? ((DoubleUnaryFunction) f).getDoubleValue(x)
+        : ((DoubleBinaryFunction) f).getDoubleValue(x, getDoubleArgument(i, 1, inputs, context));
+    m_resultKinds[i] = Primitives.DOUBLE;
+    return true;
+  }
+
+  /**
+   * Gets the kind of an argument of a step
+   * 
+   * @param i
+   *          The index of the step
+   * @param j
+   *          The index of the argument
+   * @param inputs
+   *          The inputs of the tree
+   * @param context
+   *          The context
+   * @return The kind of the argument, as defined in {@link Primitives}
+   */
+  protected int getArgumentKind(int i, int j, Object[] inputs, Context context)
+  {
+    if (m_kinds[i][j] == RESULT)
+    {
+      int step = m_indices[i][j];
+      if (m_resultKinds[step] != Primitives.OTHER)
+      {
+        return m_resultKinds[step];
+      }
+    }
+    return Primitives.getKind(getArgument(i, j, inputs, context));
+  }
+
+  /**
+   * Gets an argument of a step as a <tt>long</tt>, knowing that its kind is
+   * {@link Primitives#LONG}
+   * 
+   * @param i
+   *          The index of the step
+   * @param j
+   *          The index of the argument
+   * @param inputs
+   *          The inputs of the tree
+   * @param context
+   *          The context
+   * @return The argument
+   */
+  protected long getLongArgument(int i, int j, Object[] inputs, Context context)
+  {
+    if (m_kinds[i][j] == RESULT)
+    {
+      int step = m_indices[i][j];
+      if (m_resultKinds[step] == Primitives.LONG)
+      {
+        return m_longResults[step];
+      }
+    }
+    return ((Number) getArgument(i, j, inputs, context)).longValue();
+  }
+
+  /**
+   * Gets an argument of a step as a <tt>double</tt>, knowing that its kind
+   * is {@link Primitives#LONG} or {@link Primitives#DOUBLE}
+   * 
+   * @param i
+   *          The index of the step
+   * @param j
+   *          The index of the argument
+   * @param inputs
+   *          The inputs of the tree
+   * @param context
+   *          The context
+   * @return The argument
+   */
+  protected double getDoubleArgument(int i, int j, Object[] inputs, Context context)
+  {
+    if (m_kinds[i][j] == RESULT)
+    {
+      int step = m_indices[i][j];
+      if (m_resultKinds[step] == Primitives.LONG)
+      {
+        return m_longResults[step];
+      }
+      if (m_resultKinds[step] == Primitives.DOUBLE)
+      {
+        return m_doubleResults[step];
+      }
+    }
+    return ((Number) getArgument(i, j, inputs, context)).doubleValue();
+  }
+
+  /**
+   * Gets an argument of a step as an object
+   * 
+   * @param i
+   *          The index of the step
+   * @param j
+   *          The index of the argument
+   * @param inputs
+   *          The inputs of the tree
+   * @param context
+   *          The context
+   * @return The argument
+   */
+  protected Object getArgument(int i, int j, Object[] inputs, Context context)
+  {
+    switch (m_kinds[i][j])
+    {
+    case INPUT:
+      return inputs[m_indices[i][j]];
+    case RESULT:
+      return getResult(m_indices[i][j]);
+    case CONTEXT:
+      String name = m_names[i][j];
+      return context == null || !context.containsKey(name) ? null : context.get(name);
+    default:
+      return m_arguments[i][j];
+    }
+  }
+
+  /**
+   * Gets the result of a step as an object, creating a number object if the
+   * result is kept as a primitive
+   * 
+   * @param step
+   *          The index of the step
+   * @return The result
+   */
+  protected Object getResult(int step)
+  {
+    if (m_resultKinds[step] == Primitives.LONG)
+    {
+      m_outputs[step][0] = m_longResults[step];
+      m_resultKinds[step] = Primitives.OTHER;
+    }
+    else if (m_resultKinds[step] == Primitives.DOUBLE)
+    {
+      m_outputs[step][0] = m_doubleResults[step];
+      m_resultKinds[step] = Primitives.OTHER;
+    }
+    return m_outputs[step][0];
+  }
+
+  @Override
+  public int getInputArity()
+  {
+    return m_tree.getInputArity();
+  }
+
+  @Override
+  public int getOutputArity()
+  {
+    return m_tree.getOutputArity();
+  }
+
+  @Override
+  public void reset()
+  {
+    m_tree.reset();
+  }
+
+  @Override
+  public void getInputTypesFor(Set<Class<?>> classes, int index)
+  {
+    m_tree.getInputTypesFor(classes, index);
+  }
+
+  @Override
+  public Class<?> getOutputTypeFor(int index)
+  {
+    return m_tree.getOutputTypeFor(index);
+  }
+
+  /**
+   * Gets the tree this function has been compiled from
+   * 
+   * @return The tree
+   */
+  public FunctionTree getTree()
+  {
+    return m_tree;
+  }
+
+  @Override
+  public CompiledFunction duplicate(boolean with_state)
+  {
+    return new CompiledFunction(m_tree.duplicate(with_state), m_primitive);
+  }
+
+  @Override
+  public String toString()
+  {
+    return m_tree.toString();
+  }
+
+  /**
+   * Compiles a function if it is a function tree
+   * 
+   * @param f
+   *          The function
+   * @return The compiled function, or <tt>f</tt> itself if it is not a
+   *         function tree or if the tree cannot be compiled
+   */
+  public static Function compile(Function f)
+  {
+    if (f instanceof FunctionTree)
+    {
+      return ((FunctionTree) f).compile();
+    }
+    return f;
+  }
+
+  @Override
+  protected Object printState()
+  {
+    List<Object> list = new ArrayList<Object>(2);
+    list.add(m_tree);
+    list.add(m_primitive);
+    return list;
+  }
+
+  @Override
+  protected CompiledFunction readState(Object o)
+  {
+    List<?> list = (List<?>) o;
+    return new CompiledFunction((FunctionTree) list.get(0), (Boolean) list.get(1));
+  }
+
+  /**
+   * A call to a function during the evaluation, as built by the compiler
+   */
+  protected static class Step
+  {
+    /**
+     * The function called
+     */
+    protected final Function m_function;
+
+    /**
+     * Whether the function is evaluated on the inputs of the tree
+     */
+    protected boolean m_direct = false;
+
+    /**
+     * The kind of each argument
+     */
+    protected final int[] m_kinds;
+
+    /**
+     * The index of the input or step of each argument
+     */
+    protected final int[] m_indices;
+
+    /**
+     * The context element of each argument
+     */
+    protected final String[] m_names;
+
+    /**
+     * The array of arguments
+     */
+    protected final Object[] m_arguments;
+
+    /**
+     * Creates a new step
+     * 
+     * @param f
+     *          The function called
+     * @param arity
+     *          The number of arguments
+     */
+    protected Step(Function f, int arity)
+    {
+      super();
+      m_function = f;
+      m_kinds = new int[arity];
+      m_indices = new int[arity];
+      m_names = new String[arity];
+      m_arguments = new Object[arity];
+    }
+  }
+}
@@ -18,6 +18,8 @@
 package ca.uqac.lif.cep.functions;
 
 import ca.uqac.lif.petitpoucet.NodeFunction;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Creates a cumulative processor out of a cumulative function. This is simply a
@@ -28,6 +30,16 @@ import ca.uqac.lif.petitpoucet.NodeFunction;
  * <p>
  * <img src="{@docRoot}/doc-files/functions/Cumulate.png" alt="Cumulate">
  * <p>
+ * Optionally, the processor can cumulate {@link Long}s and {@link Double}s
+ * with the primitive forms of the binary function (see {@link Primitives}),
+ * through {@link CumulativeFunction#getLongValue(long)} and
+ * {@link CumulativeFunction#getDoubleValue(double)}. As with
+ * {@link FunctionTree#compile(boolean)}, this is only done when asked for
+ * explicitly, since the results then differ from those of the regular
+ * evaluation: the sum of {@link Long}s with
+ * {@link ca.uqac.lif.cep.util.Numbers#addition Numbers.addition} is output
+ * as {@link Long}s rather than {@link Float}s, for example.
+ * <p>
  * In earlier versions of the library, this class was called
  * <tt>CumulativeProcessor</tt>.
  * @author Sylvain Hallé
@@ -35,14 +47,37 @@ import ca.uqac.lif.petitpoucet.NodeFunction;
  */
 public class Cumulate extends ApplyFunction
 {
+  /**
+   * Whether the primitive forms of the binary function are used
+   * @since 0.11
+   */
+  protected boolean m_primitive = false;
+
   private Cumulate()
   {
     super(null);
   }
   
   public Cumulate(CumulativeFunction<?> f)
+  {
+    this(f, false);
+  }
+
+  /**
+   * Creates a new cumulative processor
+   * 
+   * @param f
+   *          The cumulative function
+   * @param primitive
+   *          Set to <tt>true</tt> to cumulate {@link Long}s and
+   *          {@link Double}s with the primitive forms of the binary function,
+   *          when it has them
+   * @since 0.11
+   */
+  public Cumulate(CumulativeFunction<?> f, boolean primitive)
   {
     super(f);
+    m_primitive = primitive;
   }
 
   @Override
@@ -51,7 +86,21 @@ public class Cumulate extends ApplyFunction
     // We override compute() from FunctionProcessor, only to complete the
     // association between input and output events (each output event depends on
     // the current input event and also the previous output event front)
-    boolean b = super.compute(inputs, outputs);
+    boolean b;
+    if (m_primitive && cumulatePrimitive(inputs[0], outputs))
+    {
+      if (m_eventTracker != null)
+      {
+        associateToInput(0, m_inputCount, 0, m_outputCount);
+      }
+      m_inputCount++;
+      m_outputCount++;
+      b = true;
+    }
+    else
+    {
+      b = super.compute(inputs, outputs);
+    }
     if (m_eventTracker != null)
     {
       for (int j = 0; j < outputs.length; j++)
@@ -81,6 +130,47 @@ public class Cumulate extends ApplyFunction
     return b;
   }
 
+  /**
+   * Cumulates a value with the primitive forms of the binary function, if it
+   * has one for the kind of this value
+   * 
+   * @param x
+   *          The value
+   * @param outputs
+   *          The array receiving the new accumulated value
+   * @return <tt>true</tt> if the value has been cumulated, <tt>false</tt> if
+   *         it must be cumulated by the regular evaluation
+   * @since 0.11
+   */
+  protected boolean cumulatePrimitive(Object x, Object[] outputs)
+  {
+    CumulativeFunction<?> cf = (CumulativeFunction<?>) m_function;
+    BinaryFunction<?, ?, ?> f = cf.getFunction();
+    int kind = Primitives.getKind(x);
+    if (kind == Primitives.LONG && f instanceof LongBinaryFunction)
+    {
+      try
+      {
+        outputs[0] = cf.getLongValue(((Long) x).longValue());
+        return true;
+      }
+      catch (IllegalStateException e)
+      {
+        // The accumulated value is not a whole number; use the double form
+      }
+      catch (ArithmeticException e)
+      {
+        // The result overflows a long; use the double form
+      }
+    }
+    if (kind != Primitives.OTHER && f instanceof DoubleBinaryFunction)
+    {
+      outputs[0] = cf.getDoubleValue(((Number) x).doubleValue());
+      return true;
+    }
+    return false;
+  }
+
   /**
    * Node function representing the start value defined for a particular function.
    */
@@ -169,7 +259,8 @@ public class Cumulate extends ApplyFunction
   @Override
   public Cumulate duplicate(boolean with_state)
   {
-    Cumulate c = new Cumulate((CumulativeFunction<?>) m_function.duplicate(with_state));
+    Cumulate c = new Cumulate((CumulativeFunction<?>) m_function.duplicate(with_state),
+        m_primitive);
     cloneInto(c, with_state);
     return c;
   }
@@ -180,16 +271,21 @@ public class Cumulate extends ApplyFunction
   @Override
   public Object printState()
   {
-    return m_function;
+    List<Object> list = new ArrayList<Object>(2);
+    list.add(m_function);
+    list.add(m_primitive);
+    return list;
   }
   
   /**
    * @since 0.10.2
    */
+  @SuppressWarnings("unchecked")
   @Override
   public Cumulate readState(Object o)
   {
-    CumulativeFunction<?> f = (CumulativeFunction<?>) o;
-    return new Cumulate(f);
+    List<Object> list = (List<Object>) o;
+    CumulativeFunction<?> f = (CumulativeFunction<?>) list.get(0);
+    return new Cumulate(f, (Boolean) list.get(1));
   }
 }
@@ -22,6 +22,14 @@ import java.util.List;
 
 /**
  * A function with memory.
+ * <p>
+ * Besides its regular evaluation, the function can cumulate <tt>long</tt>s
+ * or <tt>double</tt>s without boxing, with {@link #getLongValue(long)} and
+ * {@link #getDoubleValue(double)}, when the binary function has a primitive
+ * form (see {@link Primitives}); this is what a {@link Cumulate} does when
+ * it is asked to use primitive forms. The regular evaluation never takes
+ * this path, so that the type of its result is always that of the binary
+ * function's regular evaluation.
  * 
  * @author Sylvain Hallé
  * @since 0.1
@@ -38,6 +46,22 @@ public class CumulativeFunction<T> extends UnaryFunction<T, T>
    */
   private BinaryFunction<T, T, T> m_function;
 
+  /**
+   * The kind of the accumulated value, if it is kept as a primitive by the
+   * last call; {@link Primitives#OTHER} if it is {@link #m_lastValue}
+   */
+  private int m_kind = Primitives.OTHER;
+
+  /**
+   * The accumulated value, when its kind is {@link Primitives#LONG}
+   */
+  private long m_longValue;
+
+  /**
+   * The accumulated value, when its kind is {@link Primitives#DOUBLE}
+   */
+  private double m_doubleValue;
+
   /**
    * Instantiates a new cumulative function
    * @param function The function to cumulate
@@ -52,6 +76,7 @@ public class CumulativeFunction<T> extends UnaryFunction<T, T>
   @Override
   public T getValue(T x)
   {
+    box();
     if (m_lastValue == null)
     {
       // If the function did not provide a start value, use the
@@ -64,10 +89,119 @@ public class CumulativeFunction<T> extends UnaryFunction<T, T>
     return value;
   }
 
+  /**
+   * Cumulates a <tt>long</tt> without boxing it. The binary function must
+   * implement {@link LongBinaryFunction}, and the accumulated value must be
+   * a whole number.
+   * 
+   * @param x
+   *          The argument
+   * @return The new accumulated value
+   * @throws UnsupportedOperationException
+   *           If the binary function has no <tt>long</tt> form
+   * @throws IllegalStateException
+   *           If the accumulated value is not a whole number
+   * @throws ArithmeticException
+   *           If the binary function detects an overflow
+   * @since 0.11
+   */
+  public long getLongValue(long x)
+  {
+    if (!(m_function instanceof LongBinaryFunction))
+    {
+      throw new UnsupportedOperationException("Function " + m_function + " has no long form");
+    }
+    if (m_kind != Primitives.LONG)
+    {
+      box();
+      if (m_lastValue == null)
+      {
+        m_longValue = x;
+        m_kind = Primitives.LONG;
+        return x;
+      }
+      Number n = (Number) m_lastValue;
+      if (n.longValue() != n.doubleValue())
+      {
+        throw new IllegalStateException("The accumulated value " + n + " is not a long");
+      }
+      m_longValue = n.longValue();
+      m_kind = Primitives.LONG;
+    }
+    m_longValue = ((LongBinaryFunction) m_function).getLongValue(m_longValue, x);
+    return m_longValue;
+  }
+
+  /**
+   * Cumulates a <tt>double</tt> without boxing it. The binary function must
+   * implement {@link DoubleBinaryFunction}.
+   * 
+   * @param x
+   *          The argument
+   * @return The new accumulated value
+   * @throws UnsupportedOperationException
+   *           If the binary function has no <tt>double</tt> form
+   * @since 0.11
+   */
+  public double getDoubleValue(double x)
+  {
+    if (!(m_function instanceof DoubleBinaryFunction))
+    {
+      throw new UnsupportedOperationException("Function " + m_function + " has no double form");
+    }
+    if (m_kind == Primitives.LONG)
+    {
+      m_doubleValue = m_longValue;
+    }
+    else if (m_kind != Primitives.DOUBLE)
+    {
+      if (m_lastValue == null)
+      {
+        m_doubleValue = x;
+        m_kind = Primitives.DOUBLE;
+        return x;
+      }
+      m_doubleValue = ((Number) m_lastValue).doubleValue();
+    }
+    m_kind = Primitives.DOUBLE;
+    m_doubleValue = ((DoubleBinaryFunction) m_function).getDoubleValue(m_doubleValue, x);
+    return m_doubleValue;
+  }
+
+  /**
+   * Makes {@link #m_lastValue} the accumulated value again, if the last call
+   * kept it as a primitive
+   */
+  @SuppressWarnings("unchecked")
+  private void box()
+  {
+    if (m_kind == Primitives.LONG)
+    {
+      m_lastValue = (T) Long.valueOf(m_longValue);
+    }
+    else if (m_kind == Primitives.DOUBLE)
+    {
+      m_lastValue = (T) Double.valueOf(m_doubleValue);
+    }
+    m_kind = Primitives.OTHER;
+  }
+
+  /**
+   * Gets the binary function applied on each call
+   * 
+   * @return The function
+   * @since 0.11
+   */
+  public BinaryFunction<T, T, T> getFunction()
+  {
+    return m_function;
+  }
+
   @Override
   public void reset()
   {
     m_lastValue = m_function.getStartValue();
+    m_kind = Primitives.OTHER;
   }
 
   @Override
@@ -76,6 +210,7 @@ public class CumulativeFunction<T> extends UnaryFunction<T, T>
     CumulativeFunction<T> cf = new CumulativeFunction<T>(m_function.duplicate(with_state));
     if (with_state)
     {
+      box();
       cf.m_lastValue = m_lastValue;
     }
     return cf;
@@ -87,6 +222,7 @@ public class CumulativeFunction<T> extends UnaryFunction<T, T>
   @Override
   public Object printState()
   {
+    box();
     List<Object> list = new ArrayList<Object>(2);
     list.add(m_function);
     list.add(m_lastValue);
@@ -102,6 +102,77 @@ public class FunctionTree extends Function
     return this;
   }
 
+  /**
+   * Gets the function at the root of the tree
+   * 
+   * @return The function
+   * @since 0.11
+   */
+  public Function getFunction()
+  {
+    return m_function;
+  }
+
+  /**
+   * Gets the <i>i</i>-th child of the tree
+   * 
+   * @param index
+   *          The index
+   * @return The child, or <tt>null</tt> if it is not set
+   * @since 0.11
+   */
+  public Function getChild(int index)
+  {
+    return m_children[index];
+  }
+
+  /**
+   * Compiles this tree into a function that produces the same results, but
+   * that does not allocate arrays on every evaluation. See
+   * {@link CompiledFunction} for details. The tree itself should not be
+   * modified afterwards.
+   * 
+   * @return The compiled function, or this tree if it cannot be compiled
+   *         (for example if one of its children is not set)
+   * @since 0.11
+   */
+  public Function compile()
+  {
+    return compile(false);
+  }
+
+  /**
+   * Compiles this tree into a function that does not allocate arrays on
+   * every evaluation, and that optionally evaluates the functions that have
+   * a primitive form on <tt>long</tt>s and <tt>double</tt>s. In this case,
+   * the results may differ from those of the tree; see
+   * {@link CompiledFunction} for details. The tree itself should not be
+   * modified afterwards.
+   * 
+   * @param primitive
+   *          Set to <tt>true</tt> to use the primitive forms of the
+   *          functions
+   * @return The compiled function, or this tree if it cannot be compiled
+   *         (for example if one of its children is not set)
+   * @since 0.11
+   */
+  public Function compile(boolean primitive)
+  {
+    if (getClass() != FunctionTree.class)
+    {
+      // Descendants may evaluate the tree differently
+      return this;
+    }
+    try
+    {
+      return new CompiledFunction(this, primitive);
+    }
+    catch (UnsupportedOperationException e)
+    {
+      return this;
+    }
+  }
+
   @Override
   public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
   {
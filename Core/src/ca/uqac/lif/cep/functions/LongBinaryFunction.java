@@ -0,0 +1,44 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.functions;
+
+/**
+ * A function of two <tt>long</tt> arguments, computing its result without
+ * boxing. A {@link Function} implementing this interface promises that
+ * {@link #getLongValue(long, long)} computes the same operation as its
+ * regular evaluation on {@link Long} arguments, although possibly with a
+ * greater precision: the regular evaluation may compute on a narrower type,
+ * and box its result as another kind of number.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ * @see Primitives
+ */
+public interface LongBinaryFunction
+{
+  /**
+   * Computes the value of the function
+   * 
+   * @param x
+   *          The first argument
+   * @param y
+   *          The second argument
+   * @return The value
+   */
+  public long getLongValue(long x, long y);
+}
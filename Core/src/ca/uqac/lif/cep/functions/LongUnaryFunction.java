@@ -0,0 +1,42 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.functions;
+
+/**
+ * A function of one <tt>long</tt> argument, computing its result without
+ * boxing. A {@link Function} implementing this interface promises that
+ * {@link #getLongValue(long)} computes the same operation as its regular
+ * evaluation on a {@link Long} argument, although possibly with a greater
+ * precision: the regular evaluation may compute on a narrower type, and box
+ * its result as another kind of number.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ * @see Primitives
+ */
+public interface LongUnaryFunction
+{
+  /**
+   * Computes the value of the function
+   * 
+   * @param x
+   *          The argument
+   * @return The value
+   */
+  public long getLongValue(long x);
+}
@@ -0,0 +1,47 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.functions;
+
+/**
+ * A function of <tt>long</tt> arguments that reads them from a range of an
+ * existing array, without boxing them. A
+ * {@link ca.uqac.lif.cep.tmf.WindowFunction WindowFunction} whose function
+ * implements this interface keeps its window in a
+ * {@link ca.uqac.lif.cep.util.LongCircularBuffer LongCircularBuffer}, and
+ * evaluates the function directly on it.
+ * 
+ * @see ViewFunction
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public interface LongViewFunction
+{
+  /**
+   * Evaluates the function. The result must be the same as evaluating the
+   * function on an array of {@link Long}s containing the arguments.
+   * 
+   * @param values
+   *          The array containing the arguments. It must not be modified.
+   * @param offset
+   *          The index in the array of the first argument
+   * @param length
+   *          The number of arguments
+   * @return The value of the function
+   */
+  public long getLongValue(long[] values, int offset, int length);
+}
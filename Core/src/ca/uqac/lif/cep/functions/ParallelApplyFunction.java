@@ -0,0 +1,333 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.functions;
+
+import ca.uqac.lif.cep.AsynchronousProcessor;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.util.OrderedCompletion;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Applies a function to input events, evaluating it on multiple events at
+ * the same time. Like {@link ApplyFunction}, the processor produces one
+ * output front for each input front; however, each evaluation is handed to
+ * an {@link ExecutorService}, and up to a given number of input fronts can
+ * be evaluated at the same time. This is useful for expensive functions,
+ * such as parsing or calls to external services, whose evaluation on an
+ * event does not depend on the other events.
+ * <p>
+ * The output fronts are produced as the evaluations complete, in the thread
+ * that pushes (or pulls) the input fronts. In <em>ordered</em> mode (the
+ * default), the results are put back in the order of the input fronts
+ * before being output (see {@link OrderedCompletion}). In unordered mode, they are output as soon as they
+ * are available. In both cases, the remaining results are output when the
+ * end of the trace (or a watermark) is reached.
+ * <p>
+ * Function objects are not thread-safe in general; the processor therefore
+ * evaluates a distinct copy of the function in each evaluation running at
+ * the same time. As a consequence, the function should be stateless: a
+ * function whose output depends on the previous events it received will
+ * not behave as in an {@link ApplyFunction}.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class ParallelApplyFunction extends SynchronousProcessor
+{
+  /**
+   * The function to apply
+   */
+  protected Function m_function;
+
+  /**
+   * The maximum number of input fronts whose output has not been produced
+   * yet
+   */
+  protected int m_maxInFlight;
+
+  /**
+   * Whether the output fronts are produced in the order of the input fronts
+   */
+  protected boolean m_ordered = true;
+
+  /**
+   * The executor evaluating the function
+   */
+  protected transient ExecutorService m_executor = AsynchronousProcessor.s_defaultExecutor;
+
+  /**
+   * The evaluations whose output front has not been produced yet
+   */
+  protected transient OrderedCompletion<Object[]> m_tasks = null;
+
+  /**
+   * The copies of the function that are not being evaluated
+   */
+  protected transient BlockingQueue<Function> m_workers = null;
+
+  /**
+   * Creates a new parallel function processor
+   * 
+   * @param f
+   *          The function to apply
+   * @param max_in_flight
+   *          The maximum number of input fronts whose output has not been
+   *          produced yet. When this number is reached, the processor waits
+   *          for an evaluation to complete before accepting another input
+   *          front.
+   */
+  public ParallelApplyFunction(/* @ non_null @ */ Function f, int max_in_flight)
+  {
+    super(f.getInputArity(), f.getOutputArity());
+    if (max_in_flight < 1)
+    {
+      throw new IllegalArgumentException("The number of fronts in flight must be at least 1");
+    }
+    m_function = f;
+    m_maxInFlight = max_in_flight;
+  }
+
+  /**
+   * Creates a new parallel function processor, with up to twice as many
+   * input fronts in flight as there are processors on the machine
+   * 
+   * @param f
+   *          The function to apply
+   */
+  public ParallelApplyFunction(/* @ non_null @ */ Function f)
+  {
+    this(f, 2 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Sets whether the output fronts are produced in the order of the input
+   * fronts
+   * 
+   * @param b
+   *          <tt>true</tt> (the default) to preserve the order of the input
+   *          fronts, <tt>false</tt> to output the results as soon as they
+   *          are available
+   * @return This processor
+   */
+  public ParallelApplyFunction setOrdered(boolean b)
+  {
+    m_ordered = b;
+    m_tasks = null;
+    return this;
+  }
+
+  /**
+   * Sets the executor evaluating the function. By default, the processor
+   * uses the pool of daemon threads shared by all
+   * {@link AsynchronousProcessor}s.
+   * 
+   * @param executor
+   *          The executor
+   * @return This processor
+   */
+  public ParallelApplyFunction setExecutor(/* @ non_null @ */ ExecutorService executor)
+  {
+    m_executor = executor;
+    m_tasks = null;
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of input fronts whose output has not been
+   * produced yet
+   * 
+   * @return The number of fronts
+   */
+  public int getMaxInFlight()
+  {
+    return m_maxInFlight;
+  }
+
+  /**
+   * Gets the function associated to that processor
+   * 
+   * @return The function
+   */
+  public Function getFunction()
+  {
+    return m_function;
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    if (m_workers == null)
+    {
+      m_workers = new ArrayBlockingQueue<Function>(m_maxInFlight);
+      for (int i = 0; i < m_maxInFlight; i++)
+      {
+        m_workers.add(CompiledFunction.compile(m_function.duplicate()));
+      }
+    }
+    if (m_tasks == null)
+    {
+      m_tasks = new OrderedCompletion<Object[]>(m_executor, m_ordered);
+    }
+    submit(inputs);
+    // Output whatever is already available
+    Object[] outs = m_tasks.poll();
+    while (outs != null)
+    {
+      emit(outs, outputs);
+      outs = m_tasks.poll();
+    }
+    // Wait for room before accepting the next front
+    while (m_tasks.getInFlight() >= m_maxInFlight)
+    {
+      emit(m_tasks.take(), outputs);
+    }
+    return true;
+  }
+
+  @Override
+  protected boolean onEndOfTrace(Queue<Object[]> outputs)
+  {
+    return drain(outputs);
+  }
+
+  @Override
+  protected boolean onWatermark(long watermark, Queue<Object[]> outputs)
+  {
+    // The events received before the watermark must be output before it
+    return drain(outputs);
+  }
+
+  /**
+   * Hands an input front to the executor
+   * 
+   * @param inputs
+   *          The input front
+   */
+  protected void submit(final Object[] inputs)
+  {
+    m_tasks.submit(new Callable<Object[]>()
+    {
+      @Override
+      public Object[] call() throws InterruptedException
+      {
+        Function f = m_workers.take();
+        try
+        {
+          Object[] outs = new Object[f.getOutputArity()];
+          f.evaluate(inputs, outs, m_context);
+          return outs;
+        }
+        finally
+        {
+          m_workers.add(f);
+        }
+      }
+    });
+  }
+
+  /**
+   * Waits until all the input fronts submitted so far have been evaluated,
+   * and outputs their results
+   * 
+   * @param outputs
+   *          A queue where to add the output fronts
+   * @return <tt>true</tt> if output fronts were produced, <tt>false</tt>
+   *         otherwise
+   */
+  protected boolean drain(Queue<Object[]> outputs)
+  {
+    if (m_tasks == null)
+    {
+      return false;
+    }
+    boolean out = false;
+    Object[] outs = m_tasks.take();
+    while (outs != null)
+    {
+      emit(outs, outputs);
+      out = true;
+      outs = m_tasks.take();
+    }
+    return out;
+  }
+
+  /**
+   * Outputs the result of an evaluation
+   * 
+   * @param outs
+   *          The output front
+   * @param outputs
+   *          A queue where to add the output fronts
+   */
+  protected void emit(Object[] outs, Queue<Object[]> outputs)
+  {
+    outputs.add(outs);
+    m_inputCount++;
+    m_outputCount++;
+  }
+
+  @Override
+  public void reset()
+  {
+    // Evaluations still running are waited for and their results dropped
+    if (m_tasks != null)
+    {
+      m_tasks.clear();
+    }
+    super.reset();
+    m_function.reset();
+    m_workers = null;
+  }
+
+  @Override
+  public ParallelApplyFunction duplicate(boolean with_state)
+  {
+    ParallelApplyFunction out = new ParallelApplyFunction(m_function.duplicate(with_state),
+        m_maxInFlight);
+    out.m_ordered = m_ordered;
+    out.m_executor = m_executor;
+    duplicateInto(out);
+    return out;
+  }
+
+  @Override
+  public final void getInputTypesFor(/*@ non_null @*/ Set<Class<?>> classes, int index)
+  {
+    // The type is determined by that of the underlying function
+    m_function.getInputTypesFor(classes, index);
+  }
+
+  @Override
+  public final synchronized Class<?> getOutputType(int index)
+  {
+    // The type is determined by that of the underlying function
+    return m_function.getOutputTypeFor(index);
+  }
+
+  @Override
+  public String toString()
+  {
+    return m_function.toString();
+  }
+}
@@ -0,0 +1,115 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.functions;
+
+/**
+ * Decides when a numerical function can be evaluated on primitive values
+ * rather than on boxed numbers. Functions that can do so implement
+ * {@link LongUnaryFunction}, {@link LongBinaryFunction},
+ * {@link LongBinaryPredicate}, {@link DoubleUnaryFunction},
+ * {@link DoubleBinaryFunction} or {@link DoubleBinaryPredicate}. The
+ * unboxed path is only taken when the types of the arguments allow it:
+ * <ul>
+ * <li>if all the arguments are {@link Long}s, the function is evaluated on
+ * <tt>long</tt>s;</li>
+ * <li>if all the arguments are {@link Long}s or {@link Double}s, and at least
+ * one of them is a {@link Double} (or the function has no <tt>long</tt>
+ * form), it is evaluated on <tt>double</tt>s;</li>
+ * <li>in all other cases, the function is evaluated as usual.</li>
+ * </ul>
+ * The primitive forms only serve to chain evaluations without allocating a
+ * number object for every intermediate result. They never decide the type
+ * of a boxed result: what a function returns from its regular evaluation
+ * (for example, a {@link Float} for the functions of
+ * {@link ca.uqac.lif.cep.util.Numbers Numbers}) stays the same. Their
+ * values, however, can be more precise than those of the regular
+ * evaluation, which is why they are only used when asked for: by a tree
+ * compiled with {@link FunctionTree#compile(boolean)}, and by the unboxed
+ * methods of {@link CumulativeFunction}.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class Primitives
+{
+  /**
+   * Kind of a value that is neither a {@link Long} nor a {@link Double}
+   */
+  public static final int OTHER = 0;
+
+  /**
+   * Kind of a {@link Long}
+   */
+  public static final int LONG = 1;
+
+  /**
+   * Kind of a {@link Double}
+   */
+  public static final int DOUBLE = 2;
+
+  private Primitives()
+  {
+    throw new IllegalAccessError("Utility class");
+  }
+
+  /**
+   * Gets the kind of a value
+   * 
+   * @param o
+   *          The value
+   * @return {@link #LONG}, {@link #DOUBLE} or {@link #OTHER}
+   */
+  public static int getKind(Object o)
+  {
+    if (o instanceof Long)
+    {
+      return LONG;
+    }
+    if (o instanceof Double)
+    {
+      return DOUBLE;
+    }
+    return OTHER;
+  }
+
+  /**
+   * Gets the kind of the values on which a binary function is evaluated
+   * 
+   * @param x
+   *          The first value
+   * @param y
+   *          The second value
+   * @return {@link #LONG} if both values are {@link Long}s, {@link #DOUBLE}
+   *         if both are {@link Long}s or {@link Double}s but not both
+   *         {@link Long}s, {@link #OTHER} otherwise
+   */
+  public static int getKind(Object x, Object y)
+  {
+    int kx = getKind(x);
+    if (kx == OTHER)
+    {
+      return OTHER;
+    }
+    int ky = getKind(y);
+    if (ky == OTHER)
+    {
+      return OTHER;
+    }
+    return Math.max(kx, ky);
+  }
+}
@@ -0,0 +1,55 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.functions;
+
+import ca.uqac.lif.cep.Context;
+
+/**
+ * A function that can read its arguments from a range of an existing array,
+ * instead of requiring an array of its own. A processor that keeps its
+ * arguments in a larger array, such as the
+ * {@link ca.uqac.lif.cep.tmf.WindowFunction WindowFunction} with its
+ * {@link ca.uqac.lif.cep.util.CircularBuffer CircularBuffer}, can then
+ * evaluate the function without copying them.
+ * 
+ * @see DoubleViewFunction
+ * @see LongViewFunction
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public interface ViewFunction
+{
+  /**
+   * Evaluates the function. The result must be the same as calling
+   * {@link Function#evaluate(Object[], Object[], Context)} on an array
+   * containing the arguments.
+   * 
+   * @param values
+   *          The array containing the arguments. It must not be modified.
+   * @param offset
+   *          The index in the array of the first argument
+   * @param length
+   *          The number of arguments
+   * @param outputs
+   *          The array where the outputs are written
+   * @param context
+   *          The context (can be null)
+   */
+  public void evaluate(Object[] values, int offset, int length, Object[] outputs,
+      /*@ null @*/ Context context);
+}
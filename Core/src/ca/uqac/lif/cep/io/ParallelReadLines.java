@@ -0,0 +1,412 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import ca.uqac.lif.cep.AsynchronousProcessor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.functions.CompiledFunction;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.tmf.Source;
+import ca.uqac.lif.cep.util.OrderedCompletion;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Source that reads the lines of a file and applies a function to each of
+ * them, using multiple threads. The file is split into ranges of bytes;
+ * the lines starting in each range are read by a {@link ReadFileLines}, and
+ * the function is applied to them, in a task handed to an
+ * {@link ExecutorService}. The bounds of a range need not fall on line
+ * boundaries: each line of the file is read by the task of the range in
+ * which it starts.
+ * <p>
+ * The source produces one output front for each line of the file; its
+ * output arity is the output arity of the function, whose input arity must
+ * be 1. Typically, the function parses the line, as a
+ * {@link ca.uqac.lif.cep.util.Strings.SplitString SplitString} would. In
+ * <em>ordered</em> mode (the default), the output fronts of a range are
+ * kept until those of all previous ranges have been output (see
+ * {@link OrderedCompletion}), so that the
+ * source produces the same output as a {@link ReadFileLines} followed by an
+ * {@link ca.uqac.lif.cep.functions.ApplyFunction ApplyFunction}. In
+ * unordered mode, the output fronts of a range are output as soon as the
+ * range has been processed; the fronts of a range remain in the order of
+ * its lines.
+ * <p>
+ * Function objects are not thread-safe in general; each task therefore
+ * evaluates a distinct copy of the function, which should be stateless.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class ParallelReadLines extends Source
+{
+  /**
+   * The file to read from
+   */
+  protected File m_file;
+
+  /**
+   * The function applied to each line
+   */
+  protected Function m_function;
+
+  /**
+   * The size of the ranges of bytes the file is split into
+   */
+  protected int m_rangeSize = 1 << 22;
+
+  /**
+   * The maximum number of ranges whose output fronts have not been output
+   * yet
+   */
+  protected int m_maxInFlight;
+
+  /**
+   * Whether the output fronts are produced in the order of the lines of
+   * the file
+   */
+  protected boolean m_ordered = true;
+
+  /**
+   * Whether to trim each text line from leading and trailing spaces
+   */
+  protected boolean m_trim = false;
+
+  /**
+   * Whether to add a carriage return at the end of each line
+   */
+  protected boolean m_addCrlf = false;
+
+  /**
+   * Whether to pass each line to the function as a
+   * {@link ca.uqac.lif.cep.util.ByteSequence ByteSequence} rather than as a
+   * string
+   */
+  protected boolean m_outputViews = false;
+
+  /**
+   * The character separating the fields of a line, when lines are passed
+   * to the function as {@link ca.uqac.lif.cep.util.ByteRecord ByteRecord}s;
+   * -1 otherwise
+   */
+  protected int m_separator = -1;
+
+  /**
+   * The executor processing the ranges
+   */
+  protected transient ExecutorService m_executor = AsynchronousProcessor.s_defaultExecutor;
+
+  /**
+   * The ranges whose output fronts have not been output yet
+   */
+  protected transient OrderedCompletion<List<Object[]>> m_tasks = null;
+
+  /**
+   * The number of ranges the file is split into, or -1 if the file has not
+   * been opened yet
+   */
+  protected long m_rangeCount = -1;
+
+  /**
+   * Creates a new parallel line reader
+   * 
+   * @param file
+   *          The file to read from
+   * @param f
+   *          The function to apply to each line
+   */
+  public ParallelReadLines(/* @ non_null @ */ File file, /* @ non_null @ */ Function f)
+  {
+    super(f.getOutputArity());
+    if (f.getInputArity() != 1)
+    {
+      throw new IllegalArgumentException("The function must have an input arity of 1");
+    }
+    m_file = file;
+    m_function = f;
+    m_maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Creates a new parallel line reader
+   * 
+   * @param filename
+   *          The name of the file to read from
+   * @param f
+   *          The function to apply to each line
+   */
+  public ParallelReadLines(/* @ non_null @ */ String filename, /* @ non_null @ */ Function f)
+  {
+    this(new File(filename), f);
+  }
+
+  /**
+   * Sets the size of the ranges of bytes the file is split into
+   * 
+   * @param size
+   *          The size, in bytes. Must be greater than 0. The default is 4 MB.
+   * @return This reader
+   */
+  public ParallelReadLines setRangeSize(int size)
+  {
+    if (size < 1)
+    {
+      throw new IllegalArgumentException("The size of a range must be at least 1");
+    }
+    m_rangeSize = size;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of ranges whose output fronts have not been
+   * output yet. This bounds both the number of ranges processed at the same
+   * time and the number of results kept to put them back in order.
+   * 
+   * @param max
+   *          The number of ranges. Must be greater than 0. The default is
+   *          twice the number of processors on the machine.
+   * @return This reader
+   */
+  public ParallelReadLines setMaxInFlight(int max)
+  {
+    if (max < 1)
+    {
+      throw new IllegalArgumentException("The number of ranges in flight must be at least 1");
+    }
+    m_maxInFlight = max;
+    return this;
+  }
+
+  /**
+   * Sets whether the output fronts are produced in the order of the lines
+   * of the file
+   * 
+   * @param b
+   *          <tt>true</tt> (the default) to preserve the order of the lines,
+   *          <tt>false</tt> to output the fronts of each range as soon as it
+   *          has been processed
+   * @return This reader
+   */
+  public ParallelReadLines setOrdered(boolean b)
+  {
+    m_ordered = b;
+    m_tasks = null;
+    return this;
+  }
+
+  /**
+   * Tells the reader to trim each text line
+   * 
+   * @param b
+   *          true to trim, false otherwise
+   * @return This reader
+   */
+  public ParallelReadLines trim(boolean b)
+  {
+    m_trim = b;
+    return this;
+  }
+
+  /**
+   * Tells the reader to add a carriage return at the end of each line
+   * 
+   * @param b
+   *          true to add a CRLF, false otherwise
+   * @return This reader
+   */
+  public ParallelReadLines addCrlf(boolean b)
+  {
+    m_addCrlf = b;
+    return this;
+  }
+
+  /**
+   * Tells the reader to pass each line to the function as a
+   * {@link ca.uqac.lif.cep.util.ByteSequence ByteSequence} rather than as
+   * a {@link String}
+   * 
+   * @param b
+   *          true to pass byte sequences, false (the default) to pass
+   *          strings
+   * @return This reader
+   */
+  public ParallelReadLines outputViews(boolean b)
+  {
+    m_outputViews = b;
+    if (!b)
+    {
+      m_separator = -1;
+    }
+    return this;
+  }
+
+  /**
+   * Tells the reader to pass each line to the function as a
+   * {@link ca.uqac.lif.cep.util.ByteRecord ByteRecord}, whose fields are
+   * delimited by a given character
+   * 
+   * @param separator
+   *          The character separating the fields; must be an ASCII character
+   * @return This reader
+   */
+  public ParallelReadLines outputRecords(char separator)
+  {
+    if (separator > 127)
+    {
+      throw new IllegalArgumentException("The separator must be an ASCII character");
+    }
+    m_outputViews = true;
+    m_separator = separator;
+    return this;
+  }
+
+  /**
+   * Sets the executor processing the ranges. By default, the reader uses
+   * the pool of daemon threads shared by all {@link AsynchronousProcessor}s.
+   * 
+   * @param executor
+   *          The executor
+   * @return This reader
+   */
+  public ParallelReadLines setExecutor(/* @ non_null @ */ ExecutorService executor)
+  {
+    m_executor = executor;
+    m_tasks = null;
+    return this;
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    if (m_rangeCount < 0)
+    {
+      if (!m_file.isFile())
+      {
+        throw new ProcessorException(new FileNotFoundException(m_file.getPath()));
+      }
+      m_rangeCount = (m_file.length() + m_rangeSize - 1) / m_rangeSize;
+    }
+    if (m_tasks == null)
+    {
+      m_tasks = new OrderedCompletion<List<Object[]>>(m_executor, m_ordered);
+    }
+    for (;;)
+    {
+      while (m_tasks.getSubmitted() < m_rangeCount && m_tasks.getInFlight() < m_maxInFlight)
+      {
+        submit();
+      }
+      if (m_tasks.getEmitted() >= m_rangeCount)
+      {
+        return false;
+      }
+      // A range may contain no line at all: loop until some front is output
+      List<Object[]> fronts = m_tasks.take();
+      if (!fronts.isEmpty())
+      {
+        outputs.addAll(fronts);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Hands the next range of the file to the executor
+   */
+  protected void submit()
+  {
+    long start = m_tasks.getSubmitted() * m_rangeSize;
+    final ReadFileLines reader = new ReadFileLines(m_file)
+        .setRange(start, start + m_rangeSize).setRegionSize(m_rangeSize).trim(m_trim)
+        .addCrlf(m_addCrlf).outputViews(m_outputViews);
+    if (m_separator >= 0)
+    {
+      reader.outputRecords((char) m_separator);
+    }
+    final Function f = CompiledFunction.compile(m_function.duplicate());
+    m_tasks.submit(new Callable<List<Object[]>>()
+    {
+      @Override
+      public List<Object[]> call() throws IOException
+      {
+        List<Object[]> fronts = new ArrayList<Object[]>();
+        Object[] ins = new Object[1];
+        try
+        {
+          Object line = reader.nextLine();
+          while (line != null)
+          {
+            ins[0] = line;
+            Object[] outs = new Object[f.getOutputArity()];
+            f.evaluate(ins, outs, m_context);
+            fronts.add(outs);
+            line = reader.nextLine();
+          }
+          return fronts;
+        }
+        finally
+        {
+          reader.reset();
+        }
+      }
+    });
+  }
+
+  @Override
+  public void reset()
+  {
+    // Ranges still being processed are waited for and their results dropped
+    if (m_tasks != null)
+    {
+      m_tasks.clear();
+    }
+    super.reset();
+    m_function.reset();
+    m_rangeCount = -1;
+  }
+
+  @Override
+  public ParallelReadLines duplicate(boolean with_state)
+  {
+    ParallelReadLines r = new ParallelReadLines(m_file, m_function.duplicate(with_state));
+    r.m_rangeSize = m_rangeSize;
+    r.m_maxInFlight = m_maxInFlight;
+    r.m_ordered = m_ordered;
+    r.m_trim = m_trim;
+    r.m_addCrlf = m_addCrlf;
+    r.m_outputViews = m_outputViews;
+    r.m_separator = m_separator;
+    r.m_executor = m_executor;
+    return r;
+  }
+
+  @Override
+  public final synchronized Class<?> getOutputType(int index)
+  {
+    // The type is determined by that of the underlying function
+    return m_function.getOutputTypeFor(index);
+  }
+}
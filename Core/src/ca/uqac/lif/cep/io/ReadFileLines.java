@@ -0,0 +1,578 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.io;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.tmf.Source;
+import ca.uqac.lif.cep.util.ByteRecord;
+import ca.uqac.lif.cep.util.ByteSequence;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+
+/**
+ * Source that reads text lines from a file. Its output is the same as that
+ * of a {@link ReadLines} reading the file, but it reads much faster:
+ * <ul>
+ * <li>the file is memory-mapped, one region at a time, rather than read
+ * through an input stream;</li>
+ * <li>line ends are found by a hand-written scanner, which examines eight
+ * bytes at a time, rather than by a {@link java.util.Scanner} and its
+ * regular expressions;</li>
+ * <li>the bytes of a line are decoded from UTF-8 only when the line is
+ * output as a {@link String}. The source can also output each line as a
+ * {@link ByteSequence}, which refers to the bytes of the file and decodes
+ * them only if and when its characters are needed. It can also output
+ * each line as a {@link ByteRecord}, which in addition is split into fields
+ * only if one of its fields is asked for.</li>
+ * </ul>
+ * Lines are separated by <tt>\n</tt> or <tt>\r\n</tt>; a last line with
+ * no line separator is also output. The file is expected to be encoded in
+ * UTF-8 (or ASCII).
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class ReadFileLines extends Source
+{
+  /**
+   * Eight newline characters
+   */
+  private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+
+  /**
+   * Eight bytes of value 1
+   */
+  private static final long ONES = 0x0101010101010101L;
+
+  /**
+   * Eight bytes of value 0x80
+   */
+  private static final long HIGH_BITS = 0x8080808080808080L;
+
+  /**
+   * The file to read from
+   */
+  protected File m_file;
+
+  /**
+   * Whether to add a carriage return at the end of each line
+   */
+  protected boolean m_addCrlf = false;
+
+  /**
+   * Whether to trim each text line from leading and trailing spaces
+   */
+  protected boolean m_trim = false;
+
+  /**
+   * Whether to output lines as {@link ByteSequence}s rather than strings
+   */
+  protected boolean m_outputViews = false;
+
+  /**
+   * The character separating the fields of a line, when lines are output
+   * as {@link ByteRecord}s; -1 otherwise
+   */
+  protected int m_separator = -1;
+
+  /**
+   * The size of the regions of the file that are mapped in memory
+   */
+  protected int m_regionSize = 1 << 24;
+
+  /**
+   * The position in the file where reading starts
+   */
+  protected long m_startPosition = 0;
+
+  /**
+   * The position in the file where reading stops: lines that start at or
+   * after this position are not read
+   */
+  protected long m_endPosition = Long.MAX_VALUE;
+
+  /**
+   * The channel to the file, once it has been opened
+   */
+  protected transient FileChannel m_channel = null;
+
+  /**
+   * The size of the file
+   */
+  protected transient long m_fileSize;
+
+  /**
+   * The region of the file currently mapped in memory
+   */
+  protected transient ByteBuffer m_region = null;
+
+  /**
+   * A copy of the current region, used to read bytes in bulk without
+   * changing the position of the region
+   */
+  protected transient ByteBuffer m_regionCopy = null;
+
+  /**
+   * The position in the file of the first byte of the current region
+   */
+  protected transient long m_regionStart;
+
+  /**
+   * The position in the current region of the start of the next line
+   */
+  protected transient int m_position;
+
+  /**
+   * Whether the bytes up to the next newline must be skipped, because they
+   * belong to a line that starts before the start position
+   */
+  protected transient boolean m_skip = false;
+
+  /**
+   * An array where the bytes of a line are copied before being decoded
+   */
+  protected transient byte[] m_bytes = new byte[256];
+
+  /**
+   * Creates a new file line reader
+   * 
+   * @param file
+   *          The file to read from
+   */
+  public ReadFileLines(/* @ non_null @ */ File file)
+  {
+    super(1);
+    m_file = file;
+  }
+
+  /**
+   * Creates a new file line reader
+   * 
+   * @param filename
+   *          The name of the file to read from
+   */
+  public ReadFileLines(/* @ non_null @ */ String filename)
+  {
+    this(new File(filename));
+  }
+
+  /**
+   * Tells the reader to add a carriage return at the end of each output event
+   * 
+   * @param b
+   *          true to add a CRLF, false otherwise
+   * @return This reader
+   */
+  public ReadFileLines addCrlf(boolean b)
+  {
+    m_addCrlf = b;
+    return this;
+  }
+
+  /**
+   * Tells the reader to trim each text line
+   * 
+   * @param b
+   *          true to trim, false otherwise
+   * @return This reader
+   */
+  public ReadFileLines trim(boolean b)
+  {
+    m_trim = b;
+    return this;
+  }
+
+  /**
+   * Tells the reader to output each line as a {@link ByteSequence} rather
+   * than as a {@link String}
+   * 
+   * @param b
+   *          true to output byte sequences, false (the default) to output
+   *          strings
+   * @return This reader
+   */
+  public ReadFileLines outputViews(boolean b)
+  {
+    m_outputViews = b;
+    if (!b)
+    {
+      m_separator = -1;
+    }
+    return this;
+  }
+
+  /**
+   * Tells the reader to output each line as a {@link ByteRecord}, whose
+   * fields are delimited by a given character
+   * 
+   * @param separator
+   *          The character separating the fields; must be an ASCII character
+   * @return This reader
+   */
+  public ReadFileLines outputRecords(char separator)
+  {
+    if (separator > 127)
+    {
+      throw new IllegalArgumentException("The separator must be an ASCII character");
+    }
+    m_outputViews = true;
+    m_separator = separator;
+    return this;
+  }
+
+  /**
+   * Sets the size of the regions of the file that are mapped in memory at
+   * once. A region is automatically enlarged if a single line does not fit
+   * in it.
+   * 
+   * @param size
+   *          The size, in bytes. Must be greater than 0. The default is 16 MB.
+   * @return This reader
+   */
+  public ReadFileLines setRegionSize(int size)
+  {
+    m_regionSize = size;
+    return this;
+  }
+
+  /**
+   * Restricts the reader to the lines that start in a range of positions
+   * of the file. A line that starts before the range and ends inside it is
+   * not read; a line that starts inside the range and ends after it is read
+   * completely. Hence, readers given adjacent ranges read each line of the
+   * file exactly once, wherever the bounds of the ranges fall.
+   * 
+   * @param start
+   *          The position of the first byte of the range
+   * @param end
+   *          The position of the byte following the range
+   * @return This reader
+   */
+  public ReadFileLines setRange(long start, long end)
+  {
+    m_startPosition = start;
+    m_endPosition = end;
+    return this;
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    try
+    {
+      Object line = nextLine();
+      if (line == null)
+      {
+        return false;
+      }
+      outputs.add(new Object[] { line });
+      return true;
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  /**
+   * Reads the next line of the file
+   * 
+   * @return The line, or <tt>null</tt> if there are no more lines to read
+   * @throws IOException
+   *           If the file cannot be read
+   */
+  protected Object nextLine() throws IOException
+  {
+    if (m_channel == null)
+    {
+      if (m_region != null)
+      {
+        // The file has been read completely
+        return null;
+      }
+      open();
+    }
+    for (;;)
+    {
+      if (m_regionStart + m_position >= m_endPosition)
+      {
+        close();
+        return null;
+      }
+      int limit = m_region.limit();
+      int end = findNewline(m_region, m_position, limit);
+      if (end >= 0)
+      {
+        int start = m_position;
+        m_position = end + 1;
+        if (m_skip)
+        {
+          m_skip = false;
+          continue;
+        }
+        return getLine(start, end);
+      }
+      if (m_regionStart + limit >= m_fileSize)
+      {
+        // Last region of the file
+        if (m_position >= limit || m_skip)
+        {
+          close();
+          return null;
+        }
+        int start = m_position;
+        m_position = limit;
+        return getLine(start, limit);
+      }
+      if (m_skip)
+      {
+        map(m_regionStart + limit);
+        continue;
+      }
+      // The line continues past the region: map the next region, starting
+      // at this line
+      if (m_position == 0)
+      {
+        // The line is longer than a whole region
+        m_regionSize = (int) Math.min(2L * m_regionSize, Integer.MAX_VALUE);
+      }
+      map(m_regionStart + m_position);
+    }
+  }
+
+  /**
+   * Creates the output event for a line
+   * 
+   * @param start
+   *          The position of the first byte of the line in the current
+   *          region
+   * @param end
+   *          The position of the byte following the line (not counting the
+   *          line separator)
+   * @return The output event
+   */
+  protected Object getLine(int start, int end)
+  {
+    if (end > start && m_region.get(end - 1) == '\r')
+    {
+      end--;
+    }
+    if (m_trim)
+    {
+      while (start < end && (m_region.get(start) & 0xff) <= ' ')
+      {
+        start++;
+      }
+      while (end > start && (m_region.get(end - 1) & 0xff) <= ' ')
+      {
+        end--;
+      }
+    }
+    int length = end - start;
+    if (m_separator >= 0)
+    {
+      return new ByteRecord(m_region, start, length, m_addCrlf ? ReadLines.CRLF : null,
+          (char) m_separator);
+    }
+    if (m_outputViews)
+    {
+      return new ByteSequence(m_region, start, length, m_addCrlf ? ReadLines.CRLF : null);
+    }
+    if (m_bytes.length < length)
+    {
+      m_bytes = new byte[Math.max(length, 2 * m_bytes.length)];
+    }
+    m_regionCopy.position(start);
+    m_regionCopy.get(m_bytes, 0, length);
+    String line = new String(m_bytes, 0, length, ByteSequence.UTF8);
+    if (m_addCrlf)
+    {
+      line += ReadLines.CRLF;
+    }
+    return line;
+  }
+
+  /**
+   * Finds the next newline character in a buffer. The buffer is examined
+   * eight bytes at a time, using the fact that a byte <i>b</i> of a long
+   * <i>x</i> is zero when the corresponding byte of
+   * (<i>x</i> - 0x0101...) &amp; ~<i>x</i> &amp; 0x8080... has its highest
+   * bit set. This test gives no false positive for the first zero byte; the
+   * buffer must be in little-endian order so that this byte is the first in
+   * memory.
+   * 
+   * @param buffer
+   *          The buffer
+   * @param from
+   *          The position where to start looking
+   * @param limit
+   *          The position where to stop looking
+   * @return The position of the newline, or -1 if there is none
+   */
+  protected static int findNewline(ByteBuffer buffer, int from, int limit)
+  {
+    int i = from;
+    for (; i + 8 <= limit; i += 8)
+    {
+      long x = buffer.getLong(i) ^ NEWLINES;
+      long t = (x - ONES) & ~x & HIGH_BITS;
+      if (t != 0)
+      {
+        return i + (Long.numberOfTrailingZeros(t) >>> 3);
+      }
+    }
+    for (; i < limit; i++)
+    {
+      if (buffer.get(i) == '\n')
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Opens the file and maps its first region. If the region cannot be
+   * mapped, the file is closed.
+   * 
+   * @throws IOException
+   *           If the file cannot be opened
+   */
+  protected void open() throws IOException
+  {
+    RandomAccessFile raf = new RandomAccessFile(m_file, "r");
+    m_channel = raf.getChannel();
+    boolean opened = false;
+    try
+    {
+      m_fileSize = m_channel.size();
+      if (m_startPosition > 0)
+      {
+        // Start at the byte before, so that a line starting exactly at the
+        // start position is not skipped
+        m_skip = true;
+        map(m_startPosition - 1);
+      }
+      else
+      {
+        map(0);
+      }
+      opened = true;
+    }
+    finally
+    {
+      if (!opened)
+      {
+        closeQuietly();
+      }
+    }
+  }
+
+  /**
+   * Maps a region of the file in memory
+   * 
+   * @param start
+   *          The position in the file of the start of the region
+   * @throws IOException
+   *           If the region cannot be mapped
+   */
+  protected void map(long start) throws IOException
+  {
+    long size = Math.max(0, Math.min(m_regionSize, m_fileSize - start));
+    m_region = m_channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+    m_region.order(ByteOrder.LITTLE_ENDIAN);
+    m_regionCopy = m_region.duplicate();
+    m_regionStart = start;
+    m_position = 0;
+  }
+
+  /**
+   * Closes the file. The mapped regions remain valid as long as some
+   * {@link ByteSequence} refers to them.
+   * 
+   * @throws IOException
+   *           If the file cannot be closed
+   */
+  protected void close() throws IOException
+  {
+    if (m_channel != null)
+    {
+      m_channel.close();
+      m_channel = null;
+    }
+  }
+
+  /**
+   * Closes the file after an error, without hiding this error if closing
+   * the file fails as well
+   */
+  protected void closeQuietly()
+  {
+    try
+    {
+      close();
+    }
+    catch (IOException e)
+    {
+      // The error that made us close the file is the one to report
+      m_channel = null;
+    }
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    try
+    {
+      close();
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    m_region = null;
+    m_regionCopy = null;
+    m_skip = false;
+  }
+
+  @Override
+  public ReadFileLines duplicate(boolean with_state)
+  {
+    ReadFileLines r = new ReadFileLines(m_file);
+    r.m_addCrlf = m_addCrlf;
+    r.m_trim = m_trim;
+    r.m_outputViews = m_outputViews;
+    r.m_separator = m_separator;
+    r.m_regionSize = m_regionSize;
+    r.m_startPosition = m_startPosition;
+    r.m_endPosition = m_endPosition;
+    if (with_state && m_region != null && !m_skip)
+    {
+      // The copy starts reading at the next line
+      r.m_startPosition = m_regionStart + m_position;
+    }
+    return r;
+  }
+}
@@ -17,6 +17,7 @@
  */
 package ca.uqac.lif.cep.tmf;
 
+import ca.uqac.lif.cep.AsynchronousProcessor;
 import ca.uqac.lif.cep.Connector;
 import ca.uqac.lif.cep.Processor;
 import ca.uqac.lif.cep.ProcessorException;
@@ -24,15 +25,21 @@ import ca.uqac.lif.cep.Pushable;
 import ca.uqac.lif.cep.SynchronousProcessor;
 import ca.uqac.lif.cep.functions.Function;
 import ca.uqac.lif.cep.functions.FunctionException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Separates an input trace into different "slices". The slicer takes as input a
@@ -56,6 +63,28 @@ import java.util.concurrent.Future;
  * The function <i>f</i> may return <code>null</code>, or the special object
  * {@link ToAllSlices}. This indicates that no new slice must be created, but
  * that the incoming event must be dispatched to <em>all</em> slices one by one.
+ * <p>
+ * The processors of the slices can be run by multiple threads; see
+ * {@link #setParallelism(int)}. Slices are split into shards according to
+ * the hash code of their ID, and all the events of a given slice are given to
+ * its processor by the same thread, in the order in which they were received.
+ * The outputs of the slices are then handled in the same order as if they had
+ * been processed one by one, so that the output of the slicer is the same
+ * regardless of the number of threads.
+ * <p>
+ * Unless a cleaning function removes them, slices are kept forever. When the
+ * number of slice IDs is large, slices can also be evicted when there are
+ * too many of them (see {@link #setMaxSlices(int)}), or when they have not
+ * received an event for some time (see {@link #setIdleTimeout(long)}). The
+ * processor of an evicted slice is discarded, unless a {@link SliceStore} is
+ * given; in such a case, it is put in the store, and brought back when its
+ * slice ID appears again.
+ * <p>
+ * Creating the processor of a new slice requires a call to
+ * {@link Processor#duplicate()}, which can be costly for large processors.
+ * When slices are frequently created and removed, the processors of removed
+ * slices can be reset and kept in a pool, from which new slices take their
+ * processor (see {@link #setPoolSize(int)}).
  * 
  * @author Sylvain Hallé
  * @since 0.10.2
@@ -100,6 +129,75 @@ public abstract class AbstractSlice extends SynchronousProcessor
    * collection as a slice id.
    */
   protected boolean m_explodeArrays = false;
+
+  /**
+   * The number of threads that process the slices
+   */
+  protected int m_parallelism = 1;
+
+  /**
+   * The executor used to run the shards of slices when more than one thread
+   * is used
+   */
+  protected transient Executor m_executor = AsynchronousProcessor.s_defaultExecutor;
+
+  /**
+   * A map associating slice IDs to the last time they received an event.
+   * The map is in access order, so that it iterates from the least recently
+   * used slice to the most recently used.
+   */
+  protected LinkedHashMap<Object, Long> m_lastSeen;
+
+  /**
+   * The current time, used to determine how long slices have been idle
+   */
+  protected long m_clock = 0;
+
+  /**
+   * The maximum number of slices; 0 means no maximum
+   */
+  protected int m_maxSlices = 0;
+
+  /**
+   * The time after which an idle slice is evicted; 0 means never
+   */
+  protected long m_idleTimeout = 0;
+
+  /**
+   * The function computing the timestamp of an input front. If
+   * <tt>null</tt>, the time is the number of input fronts received so far.
+   */
+  protected Function m_timestampFunction = null;
+
+  /**
+   * Where evicted slices are stored. If <tt>null</tt>, they are discarded.
+   */
+  protected SliceStore m_store = null;
+
+  /**
+   * The number of slices evicted so far
+   */
+  protected long m_evictionCount = 0;
+
+  /**
+   * Processors of removed slices, ready to be reused
+   */
+  protected ArrayDeque<PooledSlice> m_pool;
+
+  /**
+   * The maximum number of processors in the pool; 0 disables the pool
+   */
+  protected int m_poolSize = 0;
+
+  /**
+   * The number of processors created so far for new slices
+   */
+  protected long m_createdCount = 0;
+
+  /**
+   * The number of processors taken from the pool so far for new slices
+   */
+  protected long m_recycledCount = 0;
   
   /**
    * Creates a dummy abstract slice. This constructor is only used for
@@ -131,6 +229,8 @@ public abstract class AbstractSlice extends SynchronousProcessor
     m_slices = new HashMap<Object, Processor>();
     m_sinks = new HashMap<Object, QueueSink>();
     m_sliceIndices = new HashMap<Object, List<Integer>>();
+    m_lastSeen = new LinkedHashMap<Object, Long>(16, 0.75f, true);
+    m_pool = new ArrayDeque<PooledSlice>();
   }
   
   /**
@@ -146,10 +246,253 @@ public abstract class AbstractSlice extends SynchronousProcessor
     return this;
   }
   
+  /**
+   * Sets the number of threads that process the slices. With more than one
+   * thread, an event that is dispatched to multiple slices, as well as a batch
+   * of events given to {@link Pushable#pushAll(Object[], int, int) pushAll()},
+   * are processed by up to that many slices at the same time.
+   * 
+   * @param n
+   *          The number of threads. The default is 1, which processes all
+   *          slices in the calling thread
+   * @return This slicer
+   * @since 0.11
+   */
+  public AbstractSlice setParallelism(int n)
+  {
+    if (n < 1)
+    {
+      throw new IllegalArgumentException("The number of threads must be at least 1");
+    }
+    m_parallelism = n;
+    return this;
+  }
+
+  /**
+   * Gets the number of threads that process the slices
+   * 
+   * @return The number of threads
+   * @since 0.11
+   */
+  public int getParallelism()
+  {
+    return m_parallelism;
+  }
+
+  /**
+   * Sets the executor used to run the shards of slices when more than one
+   * thread is used. By default, the slicer uses the pool of daemon threads
+   * shared by all {@link AsynchronousProcessor}s.
+   * 
+   * @param executor
+   *          The executor
+   * @return This slicer
+   * @since 0.11
+   */
+  public AbstractSlice setExecutor(/* @ non_null @ */ Executor executor)
+  {
+    m_executor = executor;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of slices. When a new slice is created and this
+   * number is exceeded, the least recently used slice is evicted.
+   * 
+   * @param n
+   *          The maximum number of slices; 0 (the default) means no maximum
+   * @return This slicer
+   * @since 0.11
+   */
+  public AbstractSlice setMaxSlices(int n)
+  {
+    m_maxSlices = n;
+    return this;
+  }
+
+  /**
+   * Evicts the slices that have not received an event in the last
+   * <i>n</i> input fronts.
+   * 
+   * @param n
+   *          The number of input fronts; 0 (the default) means slices are
+   *          never evicted for being idle
+   * @return This slicer
+   * @since 0.11
+   */
+  public AbstractSlice setIdleTimeout(long n)
+  {
+    return setIdleTimeout(null, n);
+  }
+
+  /**
+   * Evicts the slices that have not received an event for some time,
+   * according to the timestamps of the input fronts.
+   * 
+   * @param timestamp
+   *          The function that computes the timestamp of an input front. It
+   *          must return a number. If <tt>null</tt>, the timestamp of a
+   *          front is its position in the input stream.
+   * @param timeout
+   *          The time after which an idle slice is evicted; 0 means never
+   * @return This slicer
+   * @since 0.11
+   */
+  public AbstractSlice setIdleTimeout(/* @ null @ */ Function timestamp, long timeout)
+  {
+    m_timestampFunction = timestamp;
+    m_idleTimeout = timeout;
+    return this;
+  }
+
+  /**
+   * Sets where the processors of evicted slices are kept. When an input
+   * front is sent to a slice ID that has no processor, the slicer first
+   * looks for one in the store, and only creates a new processor if none is
+   * found.
+   * 
+   * @param store
+   *          The store, or <tt>null</tt> to discard evicted slices (the
+   *          default)
+   * @return This slicer
+   * @since 0.11
+   */
+  public AbstractSlice setSliceStore(/* @ null @ */ SliceStore store)
+  {
+    m_store = store;
+    return this;
+  }
+
+  /**
+   * Gets the number of slices evicted so far
+   * 
+   * @return The number of slices
+   * @since 0.11
+   */
+  public long getEvictedSliceCount()
+  {
+    return m_evictionCount;
+  }
+
+  /**
+   * Sets the maximum number of processors of removed slices that are kept
+   * for reuse. A slice is removed when the cleaning function says so, when
+   * it is evicted and there is no {@link SliceStore}, or when the slicer is
+   * reset. Its processor is then reset and, if the pool is not full, given
+   * to the next new slice instead of duplicating the slicer's processor.
+   * 
+   * @param n
+   *          The maximum number of processors; 0 (the default) disables the
+   *          pool
+   * @return This slicer
+   * @since 0.11
+   */
+  public AbstractSlice setPoolSize(int n)
+  {
+    m_poolSize = n;
+    while (m_pool.size() > n)
+    {
+      m_pool.remove();
+    }
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of processors kept for reuse
+   * 
+   * @return The number of processors
+   * @since 0.11
+   */
+  public int getPoolSize()
+  {
+    return m_poolSize;
+  }
+
+  /**
+   * Gets the number of processors currently in the pool
+   * 
+   * @return The number of processors
+   * @since 0.11
+   */
+  public int getPooledCount()
+  {
+    return m_pool.size();
+  }
+
+  /**
+   * Gets the number of processors created so far by duplicating the
+   * slicer's processor
+   * 
+   * @return The number of processors
+   * @since 0.11
+   */
+  public long getCreatedCount()
+  {
+    return m_createdCount;
+  }
+
+  /**
+   * Gets the number of new slices that reused a processor from the pool
+   * 
+   * @return The number of slices
+   * @since 0.11
+   */
+  public long getRecycledCount()
+  {
+    return m_recycledCount;
+  }
+
+  @Override
+  public synchronized Pushable getPushableInput(int index)
+  {
+    if (m_inputPushables[index] == null)
+    {
+      m_inputPushables[index] = new SlicePushable(index);
+    }
+    return m_inputPushables[index];
+  }
+
   @Override
   protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
   {
-    int output_arity = getOutputArity();
+    advanceClock(inputs);
+    Object[] slice_vals = getSliceValues(inputs);
+    if (slice_vals == null)
+    {
+      // This event applies to no slice; don't bother processing it
+      return produceReturn(outputs);
+    }
+    for (Object slice_id : slice_vals)
+    {
+      List<Object> slices_to_process = getSlicesToProcess(slice_id);
+      if (m_parallelism > 1 && slices_to_process.size() > 1)
+      {
+        processInParallel(slices_to_process, inputs, outputs);
+        continue;
+      }
+      for (Object s_id : slices_to_process)
+      {
+        // If this slice hasn't been cleaned up...
+        if (m_slices.containsKey(s_id))
+        {
+          handleSliceOutput(s_id, pushToSlice(s_id, inputs), outputs);
+        }
+      }
+    }
+    m_inputCount++;
+    return produceReturn(outputs);
+  }
+
+  /**
+   * Evaluates the slicing function on an input front
+   * 
+   * @param inputs
+   *          The input front
+   * @return The slice IDs the front applies to, or <tt>null</tt> if it
+   *         applies to no slice
+   */
+  protected Object[] getSliceValues(Object[] inputs)
+  {
     Object[] f_value = new Object[1];
     try
     {
@@ -162,8 +505,7 @@ public abstract class AbstractSlice extends SynchronousProcessor
     Object slice_ids = f_value[0];
     if (slice_ids == null)
     {
-      // This event applies to no slice; don't bother processing it
-      return produceReturn(outputs);
+      return null;
     }
     Object[] slice_vals;
     if (m_explodeArrays)
@@ -192,105 +534,557 @@ public abstract class AbstractSlice extends SynchronousProcessor
     {
       slice_vals = new Object[] { slice_ids };
     }
-    for (Object slice_id : slice_vals)
+    return slice_vals;
+  }
+
+  /**
+   * Gets the slices an input front must be dispatched to for a given value of
+   * the slicing function, creating a new slice if this value is seen for the
+   * first time
+   * 
+   * @param slice_id
+   *          The value of the slicing function
+   * @return The IDs of the slices
+   */
+  protected List<Object> getSlicesToProcess(Object slice_id)
+  {
+    Set<Object> slices_to_process = new HashSet<Object>();
+    if (slice_id instanceof ToAllSlices || slice_id == null)
+    {
+      slices_to_process.addAll(m_slices.keySet());
+    }
+    else
     {
-      Set<Object> slices_to_process = new HashSet<Object>();
-      if (slice_id instanceof ToAllSlices || slice_id == null)
+      if (!m_slices.containsKey(slice_id))
       {
-        slices_to_process.addAll(m_slices.keySet());
+        // First time we see this value (or the slice was evicted): create
+        // new slice
+        Processor p = null;
+        QueueSink sink = null;
+        if (m_store != null)
+        {
+          p = m_store.remove(slice_id, m_processor);
+        }
+        if (p == null && !m_pool.isEmpty())
+        {
+          PooledSlice ps = m_pool.remove();
+          p = ps.m_processor;
+          sink = ps.m_sink;
+          m_recycledCount++;
+        }
+        if (p == null)
+        {
+          p = m_processor.duplicate();
+          m_createdCount++;
+        }
+        m_slices.put(slice_id, p);
+        addContextFromSlice(p, slice_id);
+        if (sink == null)
+        {
+          sink = new QueueSink(getOutputArity());
+          Connector.connect(p, sink);
+        }
+        m_sinks.put(slice_id, sink);
+        if (m_eventTracker != null)
+        {
+          p.setEventTracker(m_eventTracker.getCopy());
+          m_sliceIndices.put(slice_id, new ArrayList<Integer>());
+        }
       }
-      else
+      m_lastSeen.put(slice_id, m_clock);
+      slices_to_process.add(slice_id);
+      if (m_maxSlices > 0)
       {
-        if (!m_slices.containsKey(slice_id))
+        // The slice that was just used comes last in access order, and is
+        // not evicted
+        Iterator<Object> it = m_lastSeen.keySet().iterator();
+        while (m_slices.size() > m_maxSlices && it.hasNext())
         {
-          // First time we see this value: create new slice
-          Processor p = m_processor.duplicate();
-          m_slices.put(slice_id, p);
-          addContextFromSlice(p, slice_id);
-          QueueSink sink = new QueueSink(output_arity);
-          Connector.connect(p, sink);
-          m_sinks.put(slice_id, sink);
-          if (m_eventTracker != null)
-          {
-            p.setEventTracker(m_eventTracker.getCopy());
-            m_sliceIndices.put(slice_id, new ArrayList<Integer>());
-          }
+          Object s_id = it.next();
+          it.remove();
+          evictSlice(s_id);
         }
-        slices_to_process.add(slice_id);
       }
-      @SuppressWarnings("unchecked")
-      Future<Pushable>[] futures = new Future[slices_to_process.size()];
-      for (Object s_id : slices_to_process)
+    }
+    return new ArrayList<Object>(slices_to_process);
+  }
+
+  /**
+   * Updates the current time from an input front, and evicts the slices
+   * that have been idle for too long
+   * 
+   * @param inputs
+   *          The input front
+   */
+  protected void advanceClock(Object[] inputs)
+  {
+    if (m_timestampFunction == null)
+    {
+      m_clock = m_inputCount;
+    }
+    else
+    {
+      Object[] out = new Object[1];
+      try
       {
-        // Find processor corresponding to that slice
-        Processor slice_p = m_slices.get(s_id);
-        // If this slice hasn't been cleaned up...
-        if (slice_p != null)
+        m_timestampFunction.evaluate(inputs, out);
+      }
+      catch (FunctionException e)
+      {
+        throw new ProcessorException(e);
+      }
+      // Time never goes backwards, even if fronts are out of order
+      m_clock = Math.max(m_clock, ((Number) out[0]).longValue());
+    }
+    if (m_idleTimeout <= 0)
+    {
+      return;
+    }
+    // Slices are in access order, which is also the order of their last time
+    // unless the timestamps are out of order
+    Iterator<Map.Entry<Object, Long>> it = m_lastSeen.entrySet().iterator();
+    while (it.hasNext())
+    {
+      Map.Entry<Object, Long> e = it.next();
+      if (m_clock - e.getValue() <= m_idleTimeout)
+      {
+        break;
+      }
+      it.remove();
+      evictSlice(e.getKey());
+    }
+  }
+
+  /**
+   * Evicts a slice. Its processor is put in the slice store, if any, and
+   * {@link #removeSliceValue(Object)} is called for its slice ID.
+   * 
+   * @param s_id
+   *          The ID of the slice
+   */
+  protected void evictSlice(Object s_id)
+  {
+    Processor p = m_slices.remove(s_id);
+    QueueSink sink = m_sinks.remove(s_id);
+    m_sliceIndices.remove(s_id);
+    if (p == null)
+    {
+      return;
+    }
+    m_evictionCount++;
+    if (m_store != null)
+    {
+      m_store.put(s_id, p);
+    }
+    else
+    {
+      recycle(p, sink);
+    }
+    removeSliceValue(s_id);
+  }
+
+  /**
+   * Removes a slice whose processor is no longer needed, and puts this
+   * processor in the pool if it is not full
+   * 
+   * @param s_id
+   *          The ID of the slice
+   */
+  protected void removeSlice(Object s_id)
+  {
+    recycle(m_slices.remove(s_id), m_sinks.remove(s_id));
+    m_lastSeen.remove(s_id);
+  }
+
+  /**
+   * Resets the processor of a removed slice and its sink, and puts them in
+   * the pool if it is not full
+   * 
+   * @param p
+   *          The processor
+   * @param sink
+   *          The sink connected to the processor's output
+   */
+  protected void recycle(Processor p, QueueSink sink)
+  {
+    if (p == null || sink == null || m_pool.size() >= m_poolSize)
+    {
+      return;
+    }
+    p.reset();
+    sink.reset();
+    m_pool.add(new PooledSlice(p, sink));
+  }
+
+  /**
+   * Forgets whatever the slicer keeps about a slice that has been evicted.
+   * By default, nothing is done.
+   * 
+   * @param slice_id
+   *          The ID of the slice
+   * @since 0.11
+   */
+  protected void removeSliceValue(Object slice_id)
+  {
+    // By default, do nothing
+  }
+
+  /**
+   * Pushes an input front to the processor of a slice, and collects the
+   * output front it produces. The processors of different slices are
+   * independent, so this method can be called for different slices from
+   * different threads.
+   * 
+   * @param s_id
+   *          The ID of the slice
+   * @param inputs
+   *          The input front
+   * @return The output front of the slice's processor
+   */
+  protected Object[] pushToSlice(Object s_id, Object[] inputs)
+  {
+    // Find processor corresponding to that slice
+    Processor slice_p = m_slices.get(s_id);
+    QueueSink sink_p = m_sinks.get(s_id);
+    if (m_eventTracker != null)
+    {
+      m_sliceIndices.get(s_id).add(m_inputCount);
+    }
+    // Push the input into the processor
+    @SuppressWarnings("unchecked")
+    Future<Pushable>[] futures = new Future[inputs.length];
+    for (int i = 0; i < inputs.length; i++)
+    {
+      Object o_i = inputs[i];
+      Pushable p = slice_p.getPushableInput(i);
+      futures[i] = p.pushFast(o_i);
+    }
+    // Wait for all slices to be done
+    for (Future<Pushable> f : futures)
+    {
+      if (f != null)
+      {
+        try
         {
-          QueueSink sink_p = m_sinks.get(s_id);
-          if (m_eventTracker != null)
-          {
-            m_sliceIndices.get(s_id).add(m_inputCount);
-          }
-          // Push the input into the processor
-          // Pushable[] p_array = new Pushable[inputs.length];
-          for (int i = 0; i < inputs.length; i++)
-          {
-            Object o_i = inputs[i];
-            Pushable p = slice_p.getPushableInput(i);
-            Future<Pushable> f = p.pushFast(o_i);
-            futures[i] = f;
-            // p_array[i] = p;
-          }
-          // Wait for all slices to be done
-          for (Future<Pushable> f : futures)
-          {
-            if (f != null)
-            {
-              try
-              {
-                f.get();
-              }
-              catch (InterruptedException e)
-              {
-                throw new ProcessorException(e);
-              }
-              catch (ExecutionException e)
-              {
-                throw new ProcessorException(e);
-              }
-            }
-          }
-          // Collect the output from that processor
-          Object[] out = sink_p.remove();
-          // Can we clean that slice?
-          Object[] can_clean = new Object[1];
-          if (m_cleaningFunction != null)
+          f.get();
+        }
+        catch (InterruptedException e)
+        {
+          throw new ProcessorException(e);
+        }
+        catch (ExecutionException e)
+        {
+          throw new ProcessorException(e);
+        }
+      }
+    }
+    // Collect the output from that processor
+    return sink_p.remove();
+  }
+
+  /**
+   * Handles the output front produced by the processor of a slice, removing
+   * the slice if the cleaning function says so
+   * 
+   * @param s_id
+   *          The ID of the slice
+   * @param out
+   *          The output front
+   * @param outputs
+   *          A queue where to add the output fronts of this processor
+   */
+  protected void handleSliceOutput(Object s_id, Object[] out, Queue<Object[]> outputs)
+  {
+    // Can we clean that slice?
+    if (canClean(out))
+    {
+      // Yes: remove the processor for that slice
+      removeSlice(s_id);
+    }
+    handleNewSliceValue(s_id, out[0], outputs);
+  }
+
+  /**
+   * Pushes an input front to a set of slices, using multiple threads. The
+   * slices are split into shards according to the hash code of their ID;
+   * each shard is processed by a single thread. The output fronts of the
+   * slices are then handled in the same order as if the slices had been
+   * processed one by one.
+   * 
+   * @param slices
+   *          The IDs of the slices
+   * @param inputs
+   *          The input front
+   * @param outputs
+   *          A queue where to add the output fronts of this processor
+   */
+  protected void processInParallel(final List<Object> slices, final Object[] inputs,
+      Queue<Object[]> outputs)
+  {
+    final Object[][] outs = new Object[slices.size()][];
+    List<List<Integer>> shards = new ArrayList<List<Integer>>(m_parallelism);
+    for (int i = 0; i < m_parallelism; i++)
+    {
+      shards.add(new ArrayList<Integer>());
+    }
+    for (int i = 0; i < slices.size(); i++)
+    {
+      shards.get(getShard(slices.get(i))).add(i);
+    }
+    List<Runnable> tasks = new ArrayList<Runnable>(m_parallelism);
+    for (final List<Integer> shard : shards)
+    {
+      if (shard.isEmpty())
+      {
+        continue;
+      }
+      tasks.add(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          for (int i : shard)
           {
-            try
-            {
-              m_cleaningFunction.evaluate(out, can_clean);
-            }
-            catch (FunctionException e)
-            {
-              throw new ProcessorException(e);
-            }
+            outs[i] = pushToSlice(slices.get(i), inputs);
           }
-          if (can_clean != null && can_clean.length > 0 && can_clean[0] instanceof Boolean
-              && (Boolean) (can_clean[0]))
+        }
+      });
+    }
+    runAll(tasks);
+    for (int i = 0; i < outs.length; i++)
+    {
+      handleSliceOutput(slices.get(i), outs[i], outputs);
+    }
+  }
+
+  /**
+   * Processes a batch of input events, using multiple threads. All the
+   * events sent to the same slice are processed by the same thread, in the
+   * order in which they were received; the output fronts are then handled
+   * in the same order as if the events had been processed one by one. This
+   * method is only called when the processor has an input arity of 1, has
+   * no cleaning function, no event tracker and does not evict slices.
+   * 
+   * @param events
+   *          An array containing the events
+   * @param offset
+   *          The index in the array of the first event
+   * @param length
+   *          The number of events
+   * @param out
+   *          The pushable that sends the output fronts downstream; each
+   *          front is pushed before the next one is merged, as the
+   *          processor may modify an object it has already output
+   */
+  protected void computeInParallel(final Object[] events, final int offset, int length,
+      SlicePushable out)
+  {
+    // The slices of each event are determined first, as this creates new
+    // slices
+    final Object[][] slices = new Object[length][];
+    for (int i = 0; i < length; i++)
+    {
+      Object[] slice_vals = getSliceValues(new Object[] { events[offset + i] });
+      if (slice_vals == null)
+      {
+        continue;
+      }
+      List<Object> ids = new ArrayList<Object>();
+      for (Object slice_id : slice_vals)
+      {
+        ids.addAll(getSlicesToProcess(slice_id));
+      }
+      slices[i] = ids.toArray();
+    }
+    // Each shard gets the events of its slices, in the order of the batch
+    List<List<int[]>> shards = new ArrayList<List<int[]>>(m_parallelism);
+    for (int i = 0; i < m_parallelism; i++)
+    {
+      shards.add(new ArrayList<int[]>());
+    }
+    final Object[][][] outs = new Object[length][][];
+    for (int i = 0; i < length; i++)
+    {
+      if (slices[i] != null)
+      {
+        outs[i] = new Object[slices[i].length][];
+        for (int j = 0; j < slices[i].length; j++)
+        {
+          shards.get(getShard(slices[i][j])).add(new int[] { i, j });
+        }
+      }
+    }
+    List<Runnable> tasks = new ArrayList<Runnable>(m_parallelism);
+    for (final List<int[]> shard : shards)
+    {
+      if (shard.isEmpty())
+      {
+        continue;
+      }
+      tasks.add(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          for (int[] pos : shard)
           {
-            // Yes: remove the processor for that slice
-            m_slices.remove(s_id);
-            m_sinks.remove(s_id);
+            outs[pos[0]][pos[1]] = pushToSlice(slices[pos[0]][pos[1]],
+                new Object[] { events[offset + pos[0]] });
           }
-          handleNewSliceValue(s_id, out[0], outputs);
         }
+      });
+    }
+    runAll(tasks);
+    // Merge the results in the order of the input events
+    for (int i = 0; i < length; i++)
+    {
+      m_tempQueue.clear();
+      boolean b;
+      if (slices[i] == null)
+      {
+        b = produceReturn(m_tempQueue);
+      }
+      else
+      {
+        for (int j = 0; j < slices[i].length; j++)
+        {
+          handleSliceOutput(slices[i][j], outs[i][j], m_tempQueue);
+        }
+        m_inputCount++;
+        b = produceReturn(m_tempQueue);
       }
+      out.pushFronts(b);
+      m_tempQueue.clear();
+    }
+  }
+
+  /**
+   * Gets the shard a slice belongs to
+   * 
+   * @param s_id
+   *          The ID of the slice
+   * @return The index of the shard
+   */
+  protected int getShard(Object s_id)
+  {
+    int h = s_id == null ? 0 : s_id.hashCode();
+    // Spread the bits, as the hash codes of small integers are sequential
+    h ^= (h >>> 16);
+    return (h & 0x7fffffff) % m_parallelism;
+  }
+
+  /**
+   * Runs a set of tasks and waits until all of them are done. The last task
+   * is run by the calling thread.
+   * 
+   * @param tasks
+   *          The tasks
+   */
+  protected void runAll(List<Runnable> tasks)
+  {
+    List<FutureTask<Object>> futures = new ArrayList<FutureTask<Object>>(tasks.size());
+    for (int i = 0; i < tasks.size() - 1; i++)
+    {
+      FutureTask<Object> f = new FutureTask<Object>(tasks.get(i), null);
+      futures.add(f);
+      m_executor.execute(f);
+    }
+    RuntimeException ex = null;
+    if (!tasks.isEmpty())
+    {
+      try
+      {
+        tasks.get(tasks.size() - 1).run();
+      }
+      catch (RuntimeException e)
+      {
+        ex = e;
+      }
+    }
+    for (FutureTask<Object> f : futures)
+    {
+      try
+      {
+        f.get();
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        ex = new ProcessorException(e);
+      }
+      catch (ExecutionException e)
+      {
+        ex = new ProcessorException(e.getCause());
+      }
+    }
+    if (ex != null)
+    {
+      throw ex;
+    }
+  }
+
+  /**
+   * Passes the watermark on to the processor of each slice, and handles the
+   * output fronts these processors produce as a result, as if they came from
+   * an input event.
+   */
+  @Override
+  protected boolean onWatermark(long watermark, Queue<Object[]> outputs)
+  {
+    boolean produced = false;
+    // Iterate over a copy, as slices may be cleaned along the way
+    for (Object s_id : new ArrayList<Object>(m_slices.keySet()))
+    {
+      Processor slice_p = m_slices.get(s_id);
+      for (int i = 0; i < slice_p.getInputArity(); i++)
+      {
+        slice_p.getPushableInput(i).notifyWatermark(watermark);
+      }
+      QueueSink sink_p = m_sinks.get(s_id);
+      while (!sink_p.getQueue(0).isEmpty())
+      {
+        Object[] out = sink_p.remove();
+        if (canClean(out))
+        {
+          removeSlice(s_id);
+        }
+        handleNewSliceValue(s_id, out[0], outputs);
+        produced = true;
+      }
+    }
+    if (!produced)
+    {
+      return false;
     }
-    m_inputCount++;
     return produceReturn(outputs);
   }
 
+  /**
+   * Determines if the processor of a slice can be removed, by evaluating the
+   * cleaning function on the last front it produced
+   * 
+   * @param out
+   *          The front
+   * @return <tt>true</tt> if the slice can be removed, <tt>false</tt>
+   *         otherwise
+   */
+  protected boolean canClean(Object[] out)
+  {
+    Object[] can_clean = new Object[1];
+    if (m_cleaningFunction != null)
+    {
+      try
+      {
+        m_cleaningFunction.evaluate(out, can_clean);
+      }
+      catch (FunctionException e)
+      {
+        throw new ProcessorException(e);
+      }
+    }
+    return can_clean[0] instanceof Boolean && (Boolean) can_clean[0];
+  }
+
   /**
    * Sets whether a slice function that returns a collection of values must be
    * handled as individual slice IDs.
@@ -325,7 +1119,21 @@ public abstract class AbstractSlice extends SynchronousProcessor
   public void reset()
   {
     super.reset();
+    for (Object s_id : new ArrayList<Object>(m_slices.keySet()))
+    {
+      removeSlice(s_id);
+    }
     m_slices.clear();
+    m_sinks.clear();
+    m_lastSeen.clear();
+    m_clock = 0;
+    m_evictionCount = 0;
+    m_createdCount = 0;
+    m_recycledCount = 0;
+    if (m_store != null)
+    {
+      m_store.clear();
+    }
     m_slicingFunction.reset();
     if (m_cleaningFunction != null)
     {
@@ -333,6 +1141,77 @@ public abstract class AbstractSlice extends SynchronousProcessor
     }
   }
 
+  /**
+   * Adds the settings of the slicer that are common to all its descendants
+   * (parallelism, eviction and pooling) to the contents of its state, along
+   * with the order in which its slices were last used
+   * 
+   * @param contents
+   *          The contents of the state
+   * @since 0.11
+   */
+  protected void printSettings(Map<String, Object> contents)
+  {
+    contents.put("parallelism", m_parallelism);
+    contents.put("max-slices", m_maxSlices);
+    contents.put("idle-timeout", m_idleTimeout);
+    contents.put("timestamp-function", m_timestampFunction);
+    contents.put("pool-size", m_poolSize);
+    contents.put("clock", m_clock);
+    contents.put("last-seen", new LinkedHashMap<Object, Long>(m_lastSeen));
+  }
+
+  /**
+   * Restores the settings written by {@link #printSettings(Map)}. The
+   * slices must already be restored; those that are not in the saved order
+   * of use are considered as just used, so that the eviction policy can
+   * remove them.
+   * 
+   * @param contents
+   *          The contents of the state
+   * @since 0.11
+   */
+  @SuppressWarnings("unchecked")
+  protected void readSettings(Map<String, Object> contents)
+  {
+    if (contents.containsKey("max-slices"))
+    {
+      m_parallelism = ((Number) contents.get("parallelism")).intValue();
+      m_maxSlices = ((Number) contents.get("max-slices")).intValue();
+      m_idleTimeout = ((Number) contents.get("idle-timeout")).longValue();
+      m_timestampFunction = (Function) contents.get("timestamp-function");
+      m_poolSize = ((Number) contents.get("pool-size")).intValue();
+      long clock = ((Number) contents.get("clock")).longValue();
+      // Without a timestamp function, the clock is the number of input
+      // fronts, which starts again from 0: the times are shifted so that
+      // the slices keep their age
+      long shift = 0;
+      if (m_timestampFunction == null)
+      {
+        shift = clock;
+      }
+      else
+      {
+        m_clock = clock;
+      }
+      Map<Object, Object> last_seen = (Map<Object, Object>) contents.get("last-seen");
+      for (Map.Entry<Object, Object> entry : last_seen.entrySet())
+      {
+        if (m_slices.containsKey(entry.getKey()))
+        {
+          m_lastSeen.put(entry.getKey(), ((Number) entry.getValue()).longValue() - shift);
+        }
+      }
+    }
+    for (Object slice_id : m_slices.keySet())
+    {
+      if (!m_lastSeen.containsKey(slice_id))
+      {
+        m_lastSeen.put(slice_id, m_clock);
+      }
+    }
+  }
+
   /**
    * Gets the number of slices the slicer currently handles
    * 
@@ -344,6 +1223,93 @@ public abstract class AbstractSlice extends SynchronousProcessor
   }
 
 
+  /**
+   * Pushable for a slicer. When more than one thread is used, a batch of
+   * events is handed to
+   * {@link AbstractSlice#computeInParallel(Object[], int, int, SlicePushable)
+   * computeInParallel()} in a single call.
+   * 
+   * @since 0.11
+   */
+  protected class SlicePushable extends InputPushable
+  {
+    /**
+     * Creates a new slice pushable
+     * 
+     * @param index
+     *          The index of the slicer's input this pushable refers to
+     */
+    protected SlicePushable(int index)
+    {
+      super(index);
+    }
+
+    @Override
+    public synchronized Pushable pushAll(Object[] events, int offset, int length)
+    {
+      if (m_parallelism < 2 || length < 2 || getInputArity() != 1
+          || m_cleaningFunction != null || m_eventTracker != null || m_maxSlices > 0
+          || m_idleTimeout > 0)
+      {
+        return super.pushAll(events, offset, length);
+      }
+      try
+      {
+        computeInParallel(events, offset, length, this);
+      }
+      catch (ProcessorException e)
+      {
+        throw new PushableException(e);
+      }
+      return this;
+    }
+
+    /**
+     * Pushes downstream the output fronts produced so far
+     * 
+     * @param outs
+     *          The value returned by the computation of these fronts
+     */
+    protected void pushFronts(boolean outs)
+    {
+      outputEvent(outs);
+    }
+  }
+
+  /**
+   * The processor of a removed slice, together with the sink connected to
+   * its output, kept for reuse by a new slice
+   * 
+   * @since 0.11
+   */
+  protected static class PooledSlice
+  {
+    /**
+     * The processor
+     */
+    protected final Processor m_processor;
+
+    /**
+     * The sink connected to the processor's output
+     */
+    protected final QueueSink m_sink;
+
+    /**
+     * Creates a new pooled slice
+     * 
+     * @param p
+     *          The processor
+     * @param sink
+     *          The sink connected to the processor's output
+     */
+    protected PooledSlice(Processor p, QueueSink sink)
+    {
+      super();
+      m_processor = p;
+      m_sink = sink;
+    }
+  }
+
   /**
    * Dummy object telling the slicer that an event must be sent to all slices
    */
@@ -19,7 +19,7 @@ package ca.uqac.lif.cep.tmf;
 
 import ca.uqac.lif.cep.Processor;
 import ca.uqac.lif.cep.SynchronousProcessor;
-import java.util.LinkedList;
+import ca.uqac.lif.cep.util.CircularBuffer;
 
 /**
  * Simulates the application of a "sliding window" to a trace. It is represented
@@ -41,9 +41,9 @@ import java.util.LinkedList;
 public abstract class AbstractWindow extends SynchronousProcessor
 {
   /**
-   * The event windows
+   * The event windows, one for each input stream
    */
-  protected LinkedList<Object>[] m_window;
+  protected CircularBuffer[] m_window;
 
   /**
    * The window's width
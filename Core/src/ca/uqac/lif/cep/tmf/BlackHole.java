@@ -44,6 +44,12 @@ public class BlackHole extends Sink
     return false;
   }
 
+  @Override
+  protected void computeAll(Object[] events, int offset, int length)
+  {
+    // Nothing to do
+  }
+
   @Override
   public BlackHole duplicate(boolean with_state)
   {
@@ -160,12 +160,33 @@ public class Divert extends Processor
       return m_downstreamPushables.get(m_flowIndex).pushFast(o);
     }
 
+    @Override
+    public Pushable pushAll(Object[] events, int offset, int length)
+    {
+      m_downstreamPushables.get(m_flowIndex).pushAll(events, offset, length);
+      return this;
+    }
+
     @Override
     public void notifyEndOfTrace() throws PushableException
     {
       m_downstreamPushables.get(m_flowIndex).notifyEndOfTrace();
     }
 
+    @Override
+    public void notifyWatermark(long watermark) throws PushableException
+    {
+      // The watermark holds for all flows, whether they are active or not
+      if (watermark > m_outputWatermark)
+      {
+        m_outputWatermark = watermark;
+        for (Pushable p : m_downstreamPushables)
+        {
+          p.notifyWatermark(watermark);
+        }
+      }
+    }
+
     @Override
     public Divert getProcessor()
     {
@@ -222,6 +243,18 @@ public class Divert extends Processor
       return m_inputPullables[0].hasNext();
     }
 
+    @Override
+    public int pullBatch(Object[] dst, int max)
+    {
+      return m_inputPullables[0].pullBatch(dst, max);
+    }
+
+    @Override
+    public long getWatermark()
+    {
+      return m_inputPullables[0].getWatermark();
+    }
+
     @Override
     public Divert getProcessor()
     {
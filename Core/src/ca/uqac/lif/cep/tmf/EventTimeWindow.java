@@ -0,0 +1,573 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.tmf;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.BinaryFunction;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.functions.FunctionException;
+import java.util.Queue;
+
+/**
+ * Groups events into windows according to a timestamp taken from the events
+ * themselves, rather than from the system clock, and outputs an aggregate of
+ * each window once it is closed. Descendants of this class define how the
+ * windows are formed:
+ * <ul>
+ * <li>{@link TumblingWindow}: consecutive windows of fixed duration;</li>
+ * <li>{@link HoppingWindow}: windows of fixed duration that start at
+ * regular intervals, and may therefore overlap;</li>
+ * <li>{@link SessionWindow}: windows of activity separated by periods of
+ * inactivity, computed separately for each key.</li>
+ * </ul>
+ * The timestamp of an event is obtained by evaluating a {@link Function} on
+ * it, which must return a number. Events may arrive out of order: the
+ * processor keeps a <em>watermark</em>, which is a time before which no
+ * more events are expected. By default, the watermark is the largest
+ * timestamp seen so far, minus an allowed lateness (0 by default); it also
+ * moves forward when a watermark is received from upstream (see
+ * {@link ca.uqac.lif.cep.Pushable#notifyWatermark(long) notifyWatermark()}),
+ * but never backwards. A window is closed as soon as its end time is no later than
+ * the watermark; events that arrive after all their windows are closed are
+ * discarded and counted as late. All the windows still open are closed when
+ * the end of the trace is reached.
+ * <p>
+ * The events of a window are combined with a {@link BinaryFunction}, just
+ * like a {@link ca.uqac.lif.cep.functions.CumulativeFunction
+ * CumulativeFunction} would, optionally after applying a function to each
+ * event to get the value to combine. The values of a window are combined in
+ * the order in which they arrive: if events arrive out of order, the result
+ * is the same as if they had arrived in order only if the function is
+ * commutative. For each window, the processor outputs a
+ * {@link Result} giving the bounds of the window and the combined value.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public abstract class EventTimeWindow extends SynchronousProcessor
+{
+  /**
+   * The function giving the timestamp of an event
+   */
+  protected Function m_timestampFunction;
+
+  /**
+   * The function giving the value of an event to be combined, or
+   * <tt>null</tt> to combine the events themselves
+   */
+  protected Function m_valueFunction = null;
+
+  /**
+   * The function combining the values of a window
+   */
+  protected BinaryFunction<Object, Object, Object> m_function;
+
+  /**
+   * The delay by which the watermark lags behind the largest timestamp seen
+   */
+  protected long m_lateness = 0;
+
+  /**
+   * The current watermark
+   */
+  protected long m_watermark = Long.MIN_VALUE;
+
+  /**
+   * The number of events discarded because they arrived too late
+   */
+  protected long m_lateEvents = 0;
+
+  /**
+   * An array used to pass an event to the functions
+   */
+  protected transient Object[] m_argument = new Object[1];
+
+  /**
+   * An array used to get the value of the functions
+   */
+  protected transient Object[] m_return = new Object[1];
+
+  /**
+   * Creates a new event-time window processor
+   * 
+   * @param timestamp
+   *          The function giving the timestamp of an event
+   * @param function
+   *          The function combining the values of a window
+   */
+  @SuppressWarnings("unchecked")
+  public EventTimeWindow(Function timestamp, BinaryFunction<?, ?, ?> function)
+  {
+    super(1, 1);
+    m_timestampFunction = timestamp;
+    m_function = (BinaryFunction<Object, Object, Object>) function;
+  }
+
+  /**
+   * Sets the function giving the value of an event to be combined. For
+   * example, counting the events of each window can be done by combining
+   * with {@link ca.uqac.lif.cep.util.Numbers#addition} the value given by a
+   * {@link ca.uqac.lif.cep.functions.Constant Constant} 1.
+   * 
+   * @param f
+   *          The function, or <tt>null</tt> to combine the events themselves
+   * @return This processor
+   */
+  public EventTimeWindow setValueFunction(/*@ null @*/ Function f)
+  {
+    m_valueFunction = f;
+    return this;
+  }
+
+  /**
+   * Sets the delay by which the watermark lags behind the largest timestamp
+   * seen. An event can arrive out of order by up to this delay without being
+   * discarded.
+   * 
+   * @param lateness
+   *          The delay, in the unit of the timestamps
+   * @return This processor
+   */
+  public EventTimeWindow setAllowedLateness(long lateness)
+  {
+    m_lateness = lateness;
+    return this;
+  }
+
+  /**
+   * Gets the current watermark
+   * 
+   * @return The watermark, or <tt>Long.MIN_VALUE</tt> if no event has been
+   *         received yet
+   */
+  public long getWatermark()
+  {
+    return m_watermark;
+  }
+
+  /**
+   * Gets the number of events discarded because they arrived too late
+   * 
+   * @return The number of events
+   */
+  public long getLateEventCount()
+  {
+    return m_lateEvents;
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    m_inputCount++;
+    Object event = inputs[0];
+    long timestamp = getTimestamp(event);
+    Object value = event;
+    if (m_valueFunction != null)
+    {
+      value = evaluate(m_valueFunction, event);
+    }
+    if (!add(event, timestamp, value))
+    {
+      m_lateEvents++;
+    }
+    if (timestamp - m_lateness > m_watermark)
+    {
+      advanceWatermark(timestamp - m_lateness, outputs);
+    }
+    return true;
+  }
+
+  @Override
+  protected boolean onEndOfTrace(Queue<Object[]> outputs)
+  {
+    int size = outputs.size();
+    close(Long.MAX_VALUE, outputs);
+    return outputs.size() > size;
+  }
+
+  @Override
+  protected boolean onWatermark(long watermark, Queue<Object[]> outputs)
+  {
+    int size = outputs.size();
+    advanceWatermark(watermark, outputs);
+    return outputs.size() > size;
+  }
+
+  /**
+   * Moves the watermark forward, and outputs the windows it closes
+   * 
+   * @param watermark
+   *          The new watermark. If it is not later than the current one,
+   *          nothing happens.
+   * @param outputs
+   *          A queue where to add the output fronts
+   */
+  protected void advanceWatermark(long watermark, Queue<Object[]> outputs)
+  {
+    if (watermark <= m_watermark)
+    {
+      return;
+    }
+    m_watermark = watermark;
+    close(watermark, outputs);
+  }
+
+  /**
+   * Adds an event to the windows it belongs to
+   * 
+   * @param event
+   *          The event
+   * @param timestamp
+   *          The timestamp of the event
+   * @param value
+   *          The value of the event to be combined
+   * @return <tt>false</tt> if the event has been discarded because all its
+   *         windows are closed, <tt>true</tt> otherwise
+   */
+  protected abstract boolean add(Object event, long timestamp, Object value);
+
+  /**
+   * Outputs and forgets the windows whose end time is no later than a
+   * watermark
+   * 
+   * @param watermark
+   *          The watermark
+   * @param outputs
+   *          A queue where to add the output fronts
+   */
+  protected abstract void close(long watermark, Queue<Object[]> outputs);
+
+  /**
+   * Outputs the result of a window
+   * 
+   * @param key
+   *          The key of the window (can be null)
+   * @param start
+   *          The start time of the window
+   * @param end
+   *          The end time of the window
+   * @param value
+   *          The combined value of the window
+   * @param outputs
+   *          A queue where to add the output front
+   */
+  protected void output(Object key, long start, long end, Object value, Queue<Object[]> outputs)
+  {
+    m_outputCount++;
+    outputs.add(new Object[] { new Result(key, start, end, value) });
+  }
+
+  /**
+   * Gets the timestamp of an event
+   * 
+   * @param event
+   *          The event
+   * @return The timestamp
+   */
+  protected long getTimestamp(Object event)
+  {
+    Object o = evaluate(m_timestampFunction, event);
+    if (!(o instanceof Number))
+    {
+      throw new ProcessorException("The timestamp of " + event + " is not a number");
+    }
+    return ((Number) o).longValue();
+  }
+
+  /**
+   * Evaluates a unary function on an event
+   * 
+   * @param f
+   *          The function
+   * @param event
+   *          The event
+   * @return The value of the function
+   */
+  protected Object evaluate(Function f, Object event)
+  {
+    m_argument[0] = event;
+    try
+    {
+      f.evaluate(m_argument, m_return, m_context);
+    }
+    catch (FunctionException e)
+    {
+      throw new ProcessorException(e);
+    }
+    return m_return[0];
+  }
+
+  /**
+   * Copies the settings of this processor into another one
+   * 
+   * @param w
+   *          The other processor
+   */
+  protected void cloneInto(EventTimeWindow w)
+  {
+    super.duplicateInto(w);
+    if (m_valueFunction != null)
+    {
+      w.m_valueFunction = m_valueFunction.duplicate();
+    }
+    w.m_lateness = m_lateness;
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    m_watermark = Long.MIN_VALUE;
+    m_lateEvents = 0;
+  }
+
+  /**
+   * Divides two numbers, rounding the quotient towards negative infinity
+   * 
+   * @param x
+   *          The dividend
+   * @param y
+   *          The divisor, which must be positive
+   * @return The quotient
+   */
+  protected static long floorDiv(long x, long y)
+  {
+    long q = x / y;
+    if (x % y != 0 && x < 0)
+    {
+      q--;
+    }
+    return q;
+  }
+
+  /**
+   * The values of a window combined so far
+   */
+  protected class Aggregate
+  {
+    /**
+     * The combined value
+     */
+    protected Object m_value;
+
+    /**
+     * Whether at least one value has been combined
+     */
+    protected boolean m_empty;
+
+    /**
+     * Creates a new aggregate
+     * 
+     * @param with_start
+     *          Whether the aggregate starts from the start value of the
+     *          function. Otherwise, the start value is combined with the
+     *          aggregate by {@link #getResult()}, which is only possible if
+     *          the function is associative.
+     */
+    protected Aggregate(boolean with_start)
+    {
+      super();
+      m_empty = true;
+      if (with_start)
+      {
+        m_value = m_function.getStartValue();
+        m_empty = m_value == null;
+      }
+    }
+
+    /**
+     * Combines a value with the aggregate
+     * 
+     * @param value
+     *          The value
+     */
+    protected void add(Object value)
+    {
+      m_value = m_empty ? value : m_function.getValue(m_value, value);
+      m_empty = false;
+    }
+
+    /**
+     * Combines a value with the aggregate, as if it came before the values
+     * combined so far. This is only possible if the function is associative.
+     * 
+     * @param value
+     *          The value
+     */
+    protected void addFirst(Object value)
+    {
+      m_value = m_empty ? value : m_function.getValue(value, m_value);
+      m_empty = false;
+    }
+
+    /**
+     * Combines another aggregate with this one
+     * 
+     * @param a
+     *          The other aggregate, whose values come after those of this one
+     */
+    protected void add(Aggregate a)
+    {
+      if (!a.m_empty)
+      {
+        add(a.m_value);
+      }
+    }
+
+    /**
+     * Gets the result of the window
+     * 
+     * @param with_start
+     *          Whether to combine the start value of the function with the
+     *          aggregate
+     * @return The result
+     */
+    protected Object getResult(boolean with_start)
+    {
+      Object start = with_start ? m_function.getStartValue() : null;
+      return start == null ? m_value : m_function.getValue(start, m_value);
+    }
+  }
+
+  /**
+   * The result of a window
+   */
+  public static class Result
+  {
+    /**
+     * The key of the window
+     */
+    protected final Object m_key;
+
+    /**
+     * The start time of the window
+     */
+    protected final long m_start;
+
+    /**
+     * The end time of the window
+     */
+    protected final long m_end;
+
+    /**
+     * The combined value of the window
+     */
+    protected final Object m_value;
+
+    /**
+     * Creates a new result
+     * 
+     * @param key
+     *          The key of the window (can be null)
+     * @param start
+     *          The start time of the window, inclusive
+     * @param end
+     *          The end time of the window, exclusive
+     * @param value
+     *          The combined value of the window
+     */
+    public Result(/*@ null @*/ Object key, long start, long end, Object value)
+    {
+      super();
+      m_key = key;
+      m_start = start;
+      m_end = end;
+      m_value = value;
+    }
+
+    /**
+     * Gets the key of the window
+     * 
+     * @return The key, or <tt>null</tt> if the windows have no key
+     */
+    public Object getKey()
+    {
+      return m_key;
+    }
+
+    /**
+     * Gets the start time of the window
+     * 
+     * @return The start time, inclusive
+     */
+    public long getStart()
+    {
+      return m_start;
+    }
+
+    /**
+     * Gets the end time of the window
+     * 
+     * @return The end time, exclusive
+     */
+    public long getEnd()
+    {
+      return m_end;
+    }
+
+    /**
+     * Gets the combined value of the window
+     * 
+     * @return The value
+     */
+    public Object getValue()
+    {
+      return m_value;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof Result))
+      {
+        return false;
+      }
+      Result r = (Result) o;
+      return m_start == r.m_start && m_end == r.m_end && equals(m_key, r.m_key)
+          && equals(m_value, r.m_value);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return (int) (m_start ^ m_end) + (m_value == null ? 0 : m_value.hashCode());
+    }
+
+    @Override
+    public String toString()
+    {
+      return (m_key == null ? "" : m_key + " ") + "[" + m_start + "," + m_end + "): " + m_value;
+    }
+
+    /**
+     * Checks if two objects are equal
+     * 
+     * @param x
+     *          The first object (can be null)
+     * @param y
+     *          The second object (can be null)
+     * @return <tt>true</tt> if the objects are equal
+     */
+    protected static boolean equals(Object x, Object y)
+    {
+      return x == null ? y == null : x.equals(y);
+    }
+  }
+}
@@ -0,0 +1,192 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.tmf;
+
+import ca.uqac.lif.azrael.ObjectPrinter;
+import ca.uqac.lif.azrael.ObjectReader;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores the processors of evicted slices in files on the local disk. The
+ * state of a processor is obtained with
+ * {@link Processor#print(ObjectPrinter) print()}, which relies on the
+ * processor's <tt>printState</tt> method, and is read back with
+ * {@link Processor#read(ObjectReader, Object) read()}, which relies on
+ * <tt>readState</tt>. The object produced by the printer is written to the
+ * file using Java serialization; the printer must therefore produce
+ * serializable objects, such as strings or maps of primitive values.
+ * <p>
+ * Each stored processor occupies its own file, which is deleted as soon as
+ * the processor is retrieved.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class FileSliceStore implements SliceStore
+{
+  /**
+   * The folder where the files are written
+   */
+  protected File m_folder;
+
+  /**
+   * The printer used to serialize the processors
+   */
+  protected ObjectPrinter<?> m_printer;
+
+  /**
+   * The reader used to deserialize the processors
+   */
+  protected ObjectReader<?> m_reader;
+
+  /**
+   * A map associating slice IDs to the file containing their processor
+   */
+  protected Map<Object, File> m_files;
+
+  /**
+   * Creates a new file slice store
+   * 
+   * @param folder
+   *          The folder where the files are written. It must exist.
+   * @param printer
+   *          The printer used to serialize the processors
+   * @param reader
+   *          The reader used to deserialize the processors
+   */
+  public FileSliceStore(/* @ non_null @ */ File folder, /* @ non_null @ */ ObjectPrinter<?> printer,
+      /* @ non_null @ */ ObjectReader<?> reader)
+  {
+    super();
+    m_folder = folder;
+    m_printer = printer;
+    m_reader = reader;
+    m_files = new HashMap<Object, File>();
+  }
+
+  @Override
+  public void put(Object slice_id, Processor p)
+  {
+    Object printed = p.print(m_printer);
+    File f = m_files.get(slice_id);
+    ObjectOutputStream oos = null;
+    try
+    {
+      if (f == null)
+      {
+        f = File.createTempFile("slice", ".bin", m_folder);
+      }
+      oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+      oos.writeObject(printed);
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    finally
+    {
+      close(oos);
+    }
+    m_files.put(slice_id, f);
+  }
+
+  @Override
+  public Processor remove(Object slice_id, Processor prototype)
+  {
+    File f = m_files.remove(slice_id);
+    if (f == null)
+    {
+      return null;
+    }
+    ObjectInputStream ois = null;
+    Object printed;
+    try
+    {
+      ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(f)));
+      printed = ois.readObject();
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    catch (ClassNotFoundException e)
+    {
+      throw new ProcessorException(e);
+    }
+    finally
+    {
+      close(ois);
+      f.delete();
+    }
+    return prototype.read(m_reader, printed);
+  }
+
+  @Override
+  public int size()
+  {
+    return m_files.size();
+  }
+
+  /**
+   * Removes all the processors from the store, and deletes the files that
+   * contain them
+   */
+  @Override
+  public void clear()
+  {
+    for (File f : m_files.values())
+    {
+      f.delete();
+    }
+    m_files.clear();
+  }
+
+  /**
+   * Closes a stream, ignoring any exception
+   * 
+   * @param c
+   *          The stream to close, or <tt>null</tt>
+   */
+  protected static void close(/* @ null @ */ Closeable c)
+  {
+    if (c == null)
+    {
+      return;
+    }
+    try
+    {
+      c.close();
+    }
+    catch (IOException e)
+    {
+      // Nothing to do
+    }
+  }
+}
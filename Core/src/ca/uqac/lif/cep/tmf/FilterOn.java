@@ -18,6 +18,7 @@
 package ca.uqac.lif.cep.tmf;
 
 import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.CompiledFunction;
 import ca.uqac.lif.cep.functions.Function;
 import java.util.Queue;
 
@@ -41,6 +42,17 @@ public class FilterOn extends SynchronousProcessor
    * The condition to evaluate on each input event
    */
   protected Function m_condition;
+
+  /**
+   * The object actually evaluated on each input event: the condition, or its
+   * compiled version if it is a function tree
+   */
+  protected transient Function m_evaluator = null;
+
+  /**
+   * An array receiving the value of the condition
+   */
+  protected transient Object[] m_conditionOut = new Object[1];
   
   /**
    * Creates a new filter
@@ -59,10 +71,13 @@ public class FilterOn extends SynchronousProcessor
   protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
   {
     Object o = inputs[0];
-    Object[] f_cond_out = new Object[1];
-    m_condition.evaluate(inputs, f_cond_out);
+    if (m_evaluator == null)
+    {
+      m_evaluator = CompiledFunction.compile(m_condition);
+    }
+    m_evaluator.evaluate(inputs, m_conditionOut);
     Object[] out = new Object[1];
-    boolean b = (Boolean) f_cond_out[0];
+    boolean b = (Boolean) m_conditionOut[0];
     if (b)
     {
       out[0] = o;
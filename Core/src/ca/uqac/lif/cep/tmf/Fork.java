@@ -45,6 +45,16 @@ public class Fork extends UniformProcessor
     this(2);
   }
 
+  @Override
+  public synchronized Pushable getPushableInput(int index)
+  {
+    if (m_inputPushables[index] == null)
+    {
+      m_inputPushables[index] = new ForkPushable();
+    }
+    return m_inputPushables[index];
+  }
+
   @Override
   public Fork duplicate(boolean with_state)
   {
@@ -92,6 +102,44 @@ public class Fork extends UniformProcessor
     m_outputPushables = out_pushables;
   }
   
+  /**
+   * Pushable for a fork. Since a fork outputs its input events unchanged,
+   * a batch of events is passed as is to each downstream pushable, without
+   * any copying.
+   * 
+   * @since 0.11
+   */
+  protected class ForkPushable extends InputPushable
+  {
+    /**
+     * Creates a new fork pushable
+     */
+    protected ForkPushable()
+    {
+      super(0);
+    }
+
+    @Override
+    public synchronized Pushable pushAll(Object[] events, int offset, int length)
+    {
+      if (length <= 0)
+      {
+        return this;
+      }
+      for (int i = 0; i < m_outputPushables.length; i++)
+      {
+        Pushable p = m_outputPushables[i];
+        if (p == null)
+        {
+          throw new PushableException("Output " + i + " of processor " + Fork.this
+              + " is connected to nothing", Fork.this);
+        }
+        p.pushAll(events, offset, length);
+      }
+      return this;
+    }
+  }
+
   /**
    * @since 0.10.2
    */
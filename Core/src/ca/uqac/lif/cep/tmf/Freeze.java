@@ -19,6 +19,7 @@ package ca.uqac.lif.cep.tmf;
 
 import ca.uqac.lif.cep.UniformProcessor;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -59,7 +60,8 @@ public class Freeze extends UniformProcessor
   {
     if (m_output == null)
     {
-      m_output = inputs;
+      // The array of inputs may be reused by the caller
+      m_output = Arrays.copyOf(inputs, inputs.length);
     }
     outputs[0] = m_output[0];
     return true;
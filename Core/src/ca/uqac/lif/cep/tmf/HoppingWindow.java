@@ -0,0 +1,295 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.tmf;
+
+import ca.uqac.lif.cep.functions.BinaryFunction;
+import ca.uqac.lif.cep.functions.Function;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Groups events into windows of fixed duration that start at regular
+ * intervals, according to the timestamp of each event. With a width
+ * <i>w</i> and a slide <i>s</i>, the windows are the intervals
+ * [<i>ks</i>, <i>ks</i>+<i>w</i>[ for every integer <i>k</i>; when <i>s</i>
+ * is smaller than <i>w</i>, the windows overlap and each event belongs to
+ * several of them. A result is output for each window containing at least
+ * one event, in the order of their start time.
+ * <p>
+ * If the function combining the values is associative (see
+ * {@link BinaryFunction#isAssociative()}), overlapping windows share their
+ * work: time is cut into <em>panes</em> whose duration is the greatest
+ * common divisor of <i>w</i> and <i>s</i>, the values of each pane are
+ * combined once, and each window combines the aggregates of its panes.
+ * Adding an event therefore takes constant time, and the processor keeps a
+ * single aggregate per pane. The panes of a window are combined in time
+ * order, and the values of a pane in their order of arrival. Otherwise, each
+ * window keeps its own aggregate, which every event is added to, in its
+ * order of arrival.
+ * 
+ * @see TumblingWindow
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class HoppingWindow extends EventTimeWindow
+{
+  /**
+   * The duration of a window
+   */
+  protected final long m_width;
+
+  /**
+   * The interval between the start of two consecutive windows
+   */
+  protected final long m_slide;
+
+  /**
+   * The duration of a pane, or 0 if the windows do not share panes
+   */
+  protected final long m_pane;
+
+  /**
+   * The aggregates, indexed by pane or by window
+   */
+  protected TreeMap<Long, Aggregate> m_aggregates = new TreeMap<Long, Aggregate>();
+
+  /**
+   * The index of the first window that has not been output yet
+   */
+  protected long m_nextWindow = Long.MIN_VALUE;
+
+  /**
+   * Creates a new hopping window processor
+   * 
+   * @param timestamp
+   *          The function giving the timestamp of an event
+   * @param width
+   *          The duration of a window, in the unit of the timestamps
+   * @param slide
+   *          The interval between the start of two consecutive windows
+   * @param function
+   *          The function combining the values of a window
+   */
+  public HoppingWindow(Function timestamp, long width, long slide, BinaryFunction<?, ?, ?> function)
+  {
+    super(timestamp, function);
+    if (width <= 0 || slide <= 0)
+    {
+      throw new IllegalArgumentException("The width and slide of a window must be positive");
+    }
+    m_width = width;
+    m_slide = slide;
+    if (function.isAssociative() || width == slide)
+    {
+      // When windows do not overlap, each window is a single pane
+      m_pane = gcd(width, slide);
+    }
+    else
+    {
+      m_pane = 0;
+    }
+  }
+
+  /**
+   * Gets the duration of a window
+   * 
+   * @return The duration
+   */
+  public long getWidth()
+  {
+    return m_width;
+  }
+
+  /**
+   * Gets the interval between the start of two consecutive windows
+   * 
+   * @return The interval
+   */
+  public long getSlide()
+  {
+    return m_slide;
+  }
+
+  @Override
+  protected boolean add(Object event, long timestamp, Object value)
+  {
+    long last = floorDiv(timestamp, m_slide);
+    if (last < m_nextWindow || last * m_slide + m_width <= m_watermark)
+    {
+      // All the windows of this event are closed
+      return false;
+    }
+    if (m_pane > 0)
+    {
+      getAggregate(floorDiv(timestamp, m_pane)).add(value);
+      return true;
+    }
+    for (long k = Math.max(getFirstWindow(timestamp), m_nextWindow); k <= last; k++)
+    {
+      if (k * m_slide + m_width > m_watermark)
+      {
+        getAggregate(k).add(value);
+      }
+    }
+    return true;
+  }
+
+  @Override
+  protected void close(long watermark, Queue<Object[]> outputs)
+  {
+    if (m_pane > 0)
+    {
+      closePanes(watermark, outputs);
+      return;
+    }
+    while (!m_aggregates.isEmpty())
+    {
+      Map.Entry<Long, Aggregate> e = m_aggregates.firstEntry();
+      long k = e.getKey();
+      long start = k * m_slide;
+      if (start + m_width > watermark)
+      {
+        break;
+      }
+      m_aggregates.remove(k);
+      m_nextWindow = k + 1;
+      output(null, start, start + m_width, e.getValue().getResult(false), outputs);
+    }
+  }
+
+  /**
+   * Outputs and forgets the windows whose end time is no later than a
+   * watermark, when the windows share panes
+   * 
+   * @param watermark
+   *          The watermark
+   * @param outputs
+   *          A queue where to add the output fronts
+   */
+  protected void closePanes(long watermark, Queue<Object[]> outputs)
+  {
+    boolean shared = m_pane != m_width;
+    while (!m_aggregates.isEmpty())
+    {
+      // Skip the windows that contain no pane
+      long k = Math.max(getFirstWindow(m_aggregates.firstKey() * m_pane), m_nextWindow);
+      long start = k * m_slide;
+      long end = start + m_width;
+      if (end > watermark)
+      {
+        break;
+      }
+      Aggregate a;
+      if (shared)
+      {
+        a = new Aggregate(false);
+        for (Aggregate pane : m_aggregates.subMap(start / m_pane, end / m_pane).values())
+        {
+          a.add(pane);
+        }
+      }
+      else
+      {
+        a = m_aggregates.get(start / m_pane);
+      }
+      m_nextWindow = k + 1;
+      // The panes before the next window are no longer needed
+      m_aggregates.headMap(m_nextWindow * m_slide / m_pane).clear();
+      if (a != null && !a.m_empty)
+      {
+        output(null, start, end, a.getResult(shared || m_function.isAssociative()), outputs);
+      }
+    }
+  }
+
+  /**
+   * Gets the aggregate of a pane or a window, creating it if necessary
+   * 
+   * @param index
+   *          The index of the pane or the window
+   * @return The aggregate
+   */
+  protected Aggregate getAggregate(long index)
+  {
+    Aggregate a = m_aggregates.get(index);
+    if (a == null)
+    {
+      // Aggregates of panes are combined, so the start value must only be
+      // applied to the result of a window
+      a = new Aggregate(m_pane == 0 || !m_function.isAssociative());
+      m_aggregates.put(index, a);
+    }
+    return a;
+  }
+
+  /**
+   * Gets the index of the first window containing a timestamp
+   * 
+   * @param timestamp
+   *          The timestamp
+   * @return The index
+   */
+  protected long getFirstWindow(long timestamp)
+  {
+    return floorDiv(timestamp - m_width, m_slide) + 1;
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    m_aggregates.clear();
+    m_nextWindow = Long.MIN_VALUE;
+  }
+
+  @Override
+  public HoppingWindow duplicate(boolean with_state)
+  {
+    HoppingWindow w = new HoppingWindow(m_timestampFunction.duplicate(), m_width, m_slide,
+        m_function.duplicate(false));
+    cloneInto(w);
+    if (with_state)
+    {
+      throw new UnsupportedOperationException(
+          "Duplication with state not supported yet on this processor");
+    }
+    return w;
+  }
+
+  /**
+   * Computes the greatest common divisor of two positive numbers
+   * 
+   * @param x
+   *          The first number
+   * @param y
+   *          The second number
+   * @return The greatest common divisor
+   */
+  protected static long gcd(long x, long y)
+  {
+    while (y != 0)
+    {
+      long r = x % y;
+      x = y;
+      y = r;
+    }
+    return x;
+  }
+}
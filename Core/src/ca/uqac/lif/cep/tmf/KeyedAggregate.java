@@ -0,0 +1,475 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.tmf;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.BinaryFunction;
+import ca.uqac.lif.cep.functions.CompiledFunction;
+import ca.uqac.lif.cep.functions.DoubleBinaryFunction;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.functions.FunctionException;
+import ca.uqac.lif.cep.functions.LongBinaryFunction;
+import ca.uqac.lif.cep.functions.Primitives;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * Groups events by key, and cumulates a value for each key. For each input
+ * event, the processor evaluates a <i>key</i> function and a <i>value</i>
+ * function, and combines the value with the aggregate of that key using a
+ * binary function. It then outputs the key on its first output, and its new
+ * aggregate on its second output. An event whose key is <tt>null</tt> is
+ * discarded.
+ * <p>
+ * For a key whose first value is <i>v</i><sub>1</sub>, the aggregate is
+ * <i>f</i>(<i>s</i>, <i>v</i><sub>1</sub>), where <i>s</i> is the start
+ * value of the binary function, then <i>f</i>(<i>f</i>(<i>s</i>,
+ * <i>v</i><sub>1</sub>), <i>v</i><sub>2</sub>), and so on; if the function
+ * has no start value, the first aggregate is <i>v</i><sub>1</sub> itself.
+ * This is the same value as a {@link Slice} applying a
+ * {@link ca.uqac.lif.cep.functions.Cumulate Cumulate} on each key.
+ * <p>
+ * Rather than a processor, a sink and a couple of map entries for each key,
+ * the processor keeps the aggregates in an open-addressing hash table made
+ * of arrays. When the aggregate of a key is a {@link Long} or a
+ * {@link Double}, it is stored unboxed, and the binary function is
+ * evaluated on primitive values if it implements {@link LongBinaryFunction}
+ * or {@link DoubleBinaryFunction}. Each key then costs a few tens of bytes,
+ * plus the key object itself. When the function has such a primitive form,
+ * its start value is converted to the kind of the first value of the key:
+ * for example, the start value of
+ * {@link ca.uqac.lif.cep.util.Numbers#addition Numbers.addition} is the
+ * {@link Float} 0, but the aggregates of {@link Long} values are kept as
+ * <tt>long</tt>s. These aggregates are therefore output as {@link Long}s or
+ * {@link Double}s rather than {@link Float}s.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class KeyedAggregate extends SynchronousProcessor
+{
+  /**
+   * Kind of an empty slot of the table
+   */
+  protected static final byte EMPTY = -1;
+
+  /**
+   * The initial number of slots of the table; must be a power of 2
+   */
+  protected static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * The function computing the key of an input front
+   */
+  protected Function m_keyFunction;
+
+  /**
+   * The function computing the value of an input front
+   */
+  protected Function m_valueFunction;
+
+  /**
+   * The function combining a value with the aggregate of its key
+   */
+  protected BinaryFunction<Object, Object, Object> m_function;
+
+  /**
+   * The objects actually evaluated to get the key and the value: the
+   * functions, or their compiled version if they are function trees
+   */
+  protected transient Function m_keyEvaluator = null;
+
+  /**
+   * @see #m_keyEvaluator
+   */
+  protected transient Function m_valueEvaluator = null;
+
+  /**
+   * The keys in each slot of the table
+   */
+  protected Object[] m_keys;
+
+  /**
+   * The kind of the aggregate in each slot: {@link Primitives#LONG},
+   * {@link Primitives#DOUBLE}, {@link Primitives#OTHER}, or {@link #EMPTY}
+   */
+  protected byte[] m_kinds;
+
+  /**
+   * The aggregate in each slot, when it is a <tt>long</tt>, or the bits of
+   * the aggregate when it is a <tt>double</tt>
+   */
+  protected long[] m_bits;
+
+  /**
+   * The aggregate in each slot, when it is neither a <tt>long</tt> nor a
+   * <tt>double</tt>. This array is only created when such an aggregate
+   * appears.
+   */
+  protected Object[] m_objects = null;
+
+  /**
+   * The number of keys in the table
+   */
+  protected int m_size = 0;
+
+  /**
+   * An array receiving the value of the key and value functions
+   */
+  protected transient Object[] m_functionOut = new Object[1];
+
+  /**
+   * An array receiving the arguments of the binary function, when it is
+   * evaluated on objects
+   */
+  protected transient Object[] m_functionIn = new Object[2];
+
+  /**
+   * Creates a new keyed aggregation processor
+   * 
+   * @param key
+   *          The function computing the key of an input front
+   * @param value
+   *          The function computing the value of an input front. It must
+   *          have the same input arity as the key function.
+   * @param f
+   *          The function combining a value with the aggregate of its key
+   */
+  @SuppressWarnings("unchecked")
+  public KeyedAggregate(/* @ non_null @ */ Function key, /* @ non_null @ */ Function value,
+      /* @ non_null @ */ BinaryFunction<?, ?, ?> f)
+  {
+    super(key.getInputArity(), 2);
+    m_keyFunction = key;
+    m_valueFunction = value;
+    m_function = (BinaryFunction<Object, Object, Object>) f;
+    allocate(INITIAL_CAPACITY);
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    if (m_keyEvaluator == null)
+    {
+      m_keyEvaluator = CompiledFunction.compile(m_keyFunction);
+      m_valueEvaluator = CompiledFunction.compile(m_valueFunction);
+    }
+    try
+    {
+      m_keyEvaluator.evaluate(inputs, m_functionOut);
+      Object key = m_functionOut[0];
+      if (key == null)
+      {
+        return true;
+      }
+      m_valueEvaluator.evaluate(inputs, m_functionOut);
+      int slot = update(key, m_functionOut[0]);
+      outputs.add(new Object[] { key, getValue(slot) });
+    }
+    catch (FunctionException e)
+    {
+      throw new ProcessorException(e);
+    }
+    return true;
+  }
+
+  /**
+   * Gets the aggregate of a key
+   * 
+   * @param key
+   *          The key
+   * @return The aggregate, or <tt>null</tt> if no event with this key has
+   *         been received
+   */
+  /*@ pure null @*/ public Object get(Object key)
+  {
+    int slot = find(key);
+    if (m_kinds[slot] == EMPTY)
+    {
+      return null;
+    }
+    return getValue(slot);
+  }
+
+  /**
+   * Gets the number of keys for which an aggregate is kept
+   * 
+   * @return The number of keys
+   */
+  /*@ pure @*/ public int getKeyCount()
+  {
+    return m_size;
+  }
+
+  /**
+   * Combines a value with the aggregate of a key
+   * 
+   * @param key
+   *          The key
+   * @param value
+   *          The value
+   * @return The slot of the key in the table
+   */
+  protected int update(Object key, Object value)
+  {
+    int slot = find(key);
+    int v_kind = Primitives.getKind(value);
+    byte kind = m_kinds[slot];
+    if (kind == EMPTY)
+    {
+      if ((m_size + 1) * 4 > m_keys.length * 3)
+      {
+        // Keep the load factor under 3/4
+        grow();
+        slot = find(key);
+      }
+      m_keys[slot] = key;
+      m_size++;
+      Object start = m_function.getStartValue();
+      if (start == null)
+      {
+        setValue(slot, value, v_kind);
+        return slot;
+      }
+      // The aggregate starts from the start value, as in a cumulative function
+      kind = (byte) setStartValue(slot, start, v_kind);
+    }
+    if (kind == Primitives.LONG && v_kind == Primitives.LONG
+        && m_function instanceof LongBinaryFunction)
+    {
+      try
+      {
+        m_bits[slot] = ((LongBinaryFunction) m_function).getLongValue(m_bits[slot],
+            ((Long) value).longValue());
+        return slot;
+      }
+      catch (ArithmeticException e)
+      {
+        // The result overflows a long; fall back to the double form
+      }
+    }
+    if (kind != Primitives.OTHER && v_kind != Primitives.OTHER
+        && m_function instanceof DoubleBinaryFunction)
+    {
+      double x = kind == Primitives.LONG ? m_bits[slot]
+          : Double.longBitsToDouble(m_bits[slot]);
+      m_bits[slot] = Double.doubleToRawLongBits(((DoubleBinaryFunction) m_function)
+          .getDoubleValue(x, ((Number) value).doubleValue()));
+      m_kinds[slot] = Primitives.DOUBLE;
+      return slot;
+    }
+    m_functionIn[0] = getValue(slot);
+    m_functionIn[1] = value;
+    m_function.evaluate(m_functionIn, m_functionOut);
+    setValue(slot, m_functionOut[0], Primitives.getKind(m_functionOut[0]));
+    m_functionIn[0] = null;
+    m_functionIn[1] = null;
+    return slot;
+  }
+
+  /**
+   * Puts the start value of the function in a slot of the table. If the
+   * function can be evaluated on primitive values of the kind of the first
+   * value, the start value is converted to this kind.
+   * 
+   * @param slot
+   *          The slot
+   * @param start
+   *          The start value
+   * @param v_kind
+   *          The kind of the first value
+   * @return The kind of the aggregate put in the slot
+   */
+  protected int setStartValue(int slot, Object start, int v_kind)
+  {
+    int kind = Primitives.getKind(start);
+    if (v_kind != Primitives.OTHER && start instanceof Number)
+    {
+      Number n = (Number) start;
+      if (v_kind == Primitives.LONG && m_function instanceof LongBinaryFunction
+          && n.doubleValue() == n.longValue())
+      {
+        start = n.longValue();
+        kind = Primitives.LONG;
+      }
+      else if (m_function instanceof DoubleBinaryFunction)
+      {
+        start = n.doubleValue();
+        kind = Primitives.DOUBLE;
+      }
+    }
+    setValue(slot, start, kind);
+    return kind;
+  }
+
+  /**
+   * Finds the slot of a key in the table, using linear probing
+   * 
+   * @param key
+   *          The key
+   * @return The slot containing the key, or the empty slot where it should
+   *         be put
+   */
+  protected int find(Object key)
+  {
+    int mask = m_keys.length - 1;
+    int h = key.hashCode();
+    // Spread the bits, as the hash codes of small integers are sequential
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    int slot = h & mask;
+    while (m_kinds[slot] != EMPTY && !key.equals(m_keys[slot]))
+    {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Gets the aggregate in a slot of the table
+   * 
+   * @param slot
+   *          The slot
+   * @return The aggregate
+   */
+  protected Object getValue(int slot)
+  {
+    switch (m_kinds[slot])
+    {
+    case Primitives.LONG:
+      return m_bits[slot];
+    case Primitives.DOUBLE:
+      return Double.longBitsToDouble(m_bits[slot]);
+    default:
+      return m_objects[slot];
+    }
+  }
+
+  /**
+   * Puts an aggregate in a slot of the table
+   * 
+   * @param slot
+   *          The slot
+   * @param value
+   *          The aggregate
+   * @param kind
+   *          The kind of the aggregate
+   */
+  protected void setValue(int slot, Object value, int kind)
+  {
+    m_kinds[slot] = (byte) kind;
+    switch (kind)
+    {
+    case Primitives.LONG:
+      m_bits[slot] = ((Long) value).longValue();
+      break;
+    case Primitives.DOUBLE:
+      m_bits[slot] = Double.doubleToRawLongBits(((Double) value).doubleValue());
+      break;
+    default:
+      if (m_objects == null)
+      {
+        m_objects = new Object[m_keys.length];
+      }
+      m_objects[slot] = value;
+    }
+    if (kind != Primitives.OTHER && m_objects != null)
+    {
+      m_objects[slot] = null;
+    }
+  }
+
+  /**
+   * Allocates an empty table
+   * 
+   * @param capacity
+   *          The number of slots; must be a power of 2
+   */
+  protected void allocate(int capacity)
+  {
+    m_keys = new Object[capacity];
+    m_kinds = new byte[capacity];
+    Arrays.fill(m_kinds, EMPTY);
+    m_bits = new long[capacity];
+    m_objects = null;
+    m_size = 0;
+  }
+
+  /**
+   * Doubles the number of slots of the table
+   */
+  protected void grow()
+  {
+    Object[] keys = m_keys;
+    byte[] kinds = m_kinds;
+    long[] bits = m_bits;
+    Object[] objects = m_objects;
+    int size = m_size;
+    allocate(keys.length * 2);
+    if (objects != null)
+    {
+      m_objects = new Object[m_keys.length];
+    }
+    for (int i = 0; i < keys.length; i++)
+    {
+      if (kinds[i] == EMPTY)
+      {
+        continue;
+      }
+      int slot = find(keys[i]);
+      m_keys[slot] = keys[i];
+      m_kinds[slot] = kinds[i];
+      m_bits[slot] = bits[i];
+      if (objects != null)
+      {
+        m_objects[slot] = objects[i];
+      }
+    }
+    m_size = size;
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    allocate(INITIAL_CAPACITY);
+    m_function.reset();
+  }
+
+  @Override
+  public KeyedAggregate duplicate(boolean with_state)
+  {
+    KeyedAggregate ka = new KeyedAggregate(m_keyFunction.duplicate(with_state),
+        m_valueFunction.duplicate(with_state), m_function.duplicate(with_state));
+    if (with_state)
+    {
+      ka.m_keys = Arrays.copyOf(m_keys, m_keys.length);
+      ka.m_kinds = Arrays.copyOf(m_kinds, m_kinds.length);
+      ka.m_bits = Arrays.copyOf(m_bits, m_bits.length);
+      if (m_objects != null)
+      {
+        ka.m_objects = Arrays.copyOf(m_objects, m_objects.length);
+      }
+      ka.m_size = m_size;
+    }
+    return ka;
+  }
+}
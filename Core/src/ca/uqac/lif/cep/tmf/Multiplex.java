@@ -237,6 +237,29 @@ public class Multiplex extends Processor
       return false;
     }
 
+    @Override
+    public int pullBatch(Object[] dst, int max)
+    {
+      int n = 0;
+      while (n < max && hasNext())
+      {
+        dst[n++] = pull();
+      }
+      return n;
+    }
+
+    @Override
+    public long getWatermark()
+    {
+      long watermark = pullInputWatermark();
+      // The events waiting in the output queue come before the watermark
+      if (m_outputQueues[0].isEmpty())
+      {
+        m_outputWatermark = Math.max(m_outputWatermark, watermark);
+      }
+      return m_outputWatermark;
+    }
+
     @Override
     public Processor getProcessor()
     {
@@ -288,6 +311,13 @@ public class Multiplex extends Processor
       return m_outputPushables[0].pushFast(o);
     }
 
+    @Override
+    public Pushable pushAll(Object[] events, int offset, int length)
+    {
+      m_outputPushables[0].pushAll(events, offset, length);
+      return this;
+    }
+
     @Override
     public void notifyEndOfTrace() throws PushableException
     {
@@ -297,6 +327,9 @@ public class Multiplex extends Processor
       {
         if (!hasReachedEnd)
         {
+          // No event will come from this input anymore: it no longer
+          // holds back the watermark of the other ones
+          notifyWatermark(Long.MAX_VALUE);
           return;
         }
       }
@@ -304,6 +337,18 @@ public class Multiplex extends Processor
       m_outputPushables[0].notifyEndOfTrace();
     }
 
+    @Override
+    public void notifyWatermark(long watermark) throws PushableException
+    {
+      synchronized (Multiplex.this)
+      {
+        if (setInputWatermark(m_index, watermark))
+        {
+          forwardWatermark(getInputWatermark());
+        }
+      }
+    }
+
     @Override
     public Processor getProcessor()
     {
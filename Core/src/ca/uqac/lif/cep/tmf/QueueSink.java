@@ -74,6 +74,19 @@ public class QueueSink extends Sink
     return true;
   }
 
+  @Override
+  protected void computeAll(Object[] events, int offset, int length)
+  {
+    Queue<Object> q = m_queues[0];
+    for (int i = offset; i < offset + length; i++)
+    {
+      if (events[i] != null)
+      {
+        q.add(events[i]);
+      }
+    }
+  }
+
   /**
    * Gets the queue corresponding to the <i>i</i>-th output of the sink
    * 
@@ -0,0 +1,521 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.tmf;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.util.PendingQueue;
+import ca.uqac.lif.cep.util.RingBuffer;
+import ca.uqac.lif.cep.util.RingBuffer.WaitStrategy;
+import java.util.Iterator;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link Tank} whose events are stored in a lock-free {@link RingBuffer}
+ * instead of a synchronized queue. This tank is meant to be used when the
+ * events are pushed and pulled by different threads, typically when a
+ * {@link Pump} moves the events out of the tank in a thread of its own.
+ * <p>
+ * Contrary to a {@link Tank}, the capacity of a ring tank is bounded. A
+ * producer that pushes an event into a full tank waits until the consumer
+ * makes room for it. Conversely, the consumer waits when it calls
+ * {@link Pullable#hasNext() hasNext()} or {@link Pullable#pull() pull()} on an
+ * empty tank, until an event is pushed, the end of the trace is notified, or
+ * the tank is stopped. This is what allows a pump to keep running while the
+ * producer is late. The non-blocking methods
+ * {@link Pullable#pullSoft() pullSoft()} and
+ * {@link Pullable#hasNextSoft() hasNextSoft()} behave as in a tank. How a
+ * thread waits is determined by the tank's {@link WaitStrategy}.
+ * <p>
+ * A call to {@link Pushable#pushFast(Object) pushFast()} never waits. If the
+ * tank is full, the event is kept aside and the returned future is done only
+ * when the event has made it into the tank; see {@link PendingQueue}. A
+ * producer can therefore be slowed down to the pace of the consumer, either
+ * by waiting on the futures or by checking them.
+ * <p>
+ * By default, the tank accepts events pushed by multiple threads at the same
+ * time. When a single thread pushes events, the tank can be created in
+ * single-producer mode, which avoids the compare-and-set operations on the
+ * buffer.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class RingTank extends Tank
+{
+  /**
+   * The default capacity of the tank
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * The buffer containing the events
+   */
+  protected RingBuffer m_buffer;
+
+  /**
+   * The strategy used by threads waiting on the tank
+   */
+  protected WaitStrategy m_waitStrategy;
+
+  /**
+   * Whether multiple threads can push events at the same time
+   */
+  protected boolean m_multiProducer;
+
+  /**
+   * The events pushed with {@link Pushable#pushFast(Object) pushFast()} that
+   * have not been accepted by the buffer yet; <tt>null</tt> until the
+   * tank's pushable is created
+   */
+  protected PendingQueue m_pendingQueue = null;
+
+  /**
+   * Whether the tank has been stopped
+   */
+  protected volatile boolean m_stopped = false;
+
+  /**
+   * The last watermark notified to the tank
+   */
+  protected volatile long m_watermark = NO_WATERMARK;
+
+  /**
+   * Creates a new empty ring tank with the default capacity
+   */
+  public RingTank()
+  {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a new empty ring tank that accepts multiple producers and parks
+   * waiting threads
+   * 
+   * @param capacity
+   *          The minimum number of events the tank can hold; this value is
+   *          rounded up to the next power of two
+   */
+  public RingTank(int capacity)
+  {
+    this(capacity, true, WaitStrategy.PARK);
+  }
+
+  /**
+   * Creates a new empty ring tank
+   * 
+   * @param capacity
+   *          The minimum number of events the tank can hold; this value is
+   *          rounded up to the next power of two
+   * @param multi_producer
+   *          Set to <tt>true</tt> if events can be pushed by multiple threads
+   *          at the same time, <tt>false</tt> if a single thread pushes
+   *          events
+   * @param strategy
+   *          The strategy used by threads waiting on the tank
+   */
+  public RingTank(int capacity, boolean multi_producer, WaitStrategy strategy)
+  {
+    super();
+    m_multiProducer = multi_producer;
+    m_waitStrategy = strategy;
+    m_buffer = new RingBuffer(capacity, multi_producer);
+  }
+
+  /**
+   * Sets the strategy used by threads waiting on the tank
+   * 
+   * @param strategy
+   *          The strategy
+   * @return This tank
+   */
+  public RingTank setWaitStrategy(WaitStrategy strategy)
+  {
+    m_waitStrategy = strategy;
+    if (m_pendingQueue != null)
+    {
+      m_pendingQueue.setWaitStrategy(strategy);
+    }
+    return this;
+  }
+
+  /**
+   * Gets the strategy used by threads waiting on the tank
+   * 
+   * @return The strategy
+   */
+  public WaitStrategy getWaitStrategy()
+  {
+    return m_waitStrategy;
+  }
+
+  /**
+   * Gets the maximum number of events the tank can hold
+   * 
+   * @return The capacity
+   */
+  public int getCapacity()
+  {
+    return m_buffer.capacity();
+  }
+
+  /**
+   * Gets the number of events currently in the tank
+   * 
+   * @return The number of events
+   */
+  public int getSize()
+  {
+    return m_buffer.size();
+  }
+
+  /**
+   * Gets the number of events pushed with
+   * {@link Pushable#pushFast(Object) pushFast()} that are waiting for room
+   * in the tank
+   * 
+   * @return The number of events
+   */
+  public int getPendingSize()
+  {
+    return m_pendingQueue == null ? 0 : m_pendingQueue.size();
+  }
+
+  @Override
+  public RingTank duplicate(boolean with_state)
+  {
+    RingTank t = new RingTank(m_buffer.capacity(), m_multiProducer, m_waitStrategy);
+    if (with_state)
+    {
+      copyStateTo(t);
+    }
+    return t;
+  }
+
+  /**
+   * Puts in another ring tank the events that are in this tank. The events
+   * are copied without being removed, so this tank can be duplicated while
+   * other threads push and pull events; the copy then contains the events
+   * that were in this tank at some point during the call.
+   * 
+   * @param t
+   *          The other tank
+   */
+  protected void copyStateTo(RingTank t)
+  {
+    Object[] events = new Object[m_buffer.capacity()];
+    int n = m_buffer.peekTo(events, events.length);
+    t.m_buffer.offerAll(events, 0, n);
+  }
+
+  @Override
+  public Pushable getPushableInput(int index)
+  {
+    if (m_pushable == null)
+    {
+      m_pushable = new RingPushable();
+      m_pendingQueue = new PendingQueue(m_buffer, m_pushable, m_waitStrategy);
+    }
+    return m_pushable;
+  }
+
+  @Override
+  public Pullable getPullableOutput(int index)
+  {
+    if (m_pullable == null)
+    {
+      m_pullable = new RingPullable();
+    }
+    return m_pullable;
+  }
+
+  @Override
+  public void start()
+  {
+    super.start();
+    m_stopped = false;
+  }
+
+  /**
+   * Stops the tank. Threads waiting on the tank stop waiting: a consumer is
+   * told that there are no more events, and a producer drops the events it
+   * is trying to push. The futures of pending events are cancelled.
+   */
+  @Override
+  public void stop()
+  {
+    super.stop();
+    m_stopped = true;
+    if (m_pendingQueue != null)
+    {
+      m_pendingQueue.clear();
+    }
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    Object[] events = new Object[m_buffer.capacity()];
+    if (m_pendingQueue != null)
+    {
+      m_pendingQueue.clear();
+    }
+    while (m_buffer.drainTo(events, events.length) > 0)
+    {
+      // Discard the events
+    }
+    m_endOfTrace = false;
+    m_watermark = NO_WATERMARK;
+    m_stopped = false;
+  }
+
+  /**
+   * Adds an event to the buffer, waiting until there is room for it. The
+   * event is added after the events still pending, if any.
+   * 
+   * @param o
+   *          The event
+   */
+  protected void put(Object o)
+  {
+    Future<Pushable> f = m_pendingQueue.offer(o);
+    for (int idle = 0; !f.isDone(); idle++)
+    {
+      if (m_stopped)
+      {
+        f.cancel(false);
+        return;
+      }
+      m_waitStrategy.idle(idle);
+    }
+  }
+
+  /**
+   * Moves pending events into the buffer after the consumer has made room
+   * for them
+   */
+  protected void flushPending()
+  {
+    if (m_pendingQueue != null)
+    {
+      m_pendingQueue.flush();
+    }
+  }
+
+  /**
+   * Waits until the buffer contains an event, or until no event can be
+   * expected anymore.
+   * 
+   * @return <tt>true</tt> if the buffer contains an event, <tt>false</tt> if
+   *         the buffer is empty and the end of the trace has been notified
+   *         or the tank has been stopped
+   */
+  protected boolean await()
+  {
+    int idle = 0;
+    while (m_buffer.isEmpty())
+    {
+      if (m_endOfTrace || m_stopped)
+      {
+        // An event may have been pushed just before the notification
+        flushPending();
+        return !m_buffer.isEmpty();
+      }
+      flushPending();
+      m_waitStrategy.idle(idle++);
+    }
+    return true;
+  }
+
+  /**
+   * Pushable that puts events into the ring buffer
+   */
+  protected class RingPushable extends QueuePushable
+  {
+    /**
+     * Creates a new ring pushable
+     */
+    public RingPushable()
+    {
+      super(false);
+    }
+
+    @Override
+    public Pushable push(Object o)
+    {
+      put(o);
+      return this;
+    }
+
+    @Override
+    public Pushable pushAll(Object[] events, int offset, int length)
+    {
+      if (m_pendingQueue.size() > 0)
+      {
+        // Keep the order with respect to pending events
+        for (int i = offset; i < offset + length; i++)
+        {
+          put(events[i]);
+        }
+        return this;
+      }
+      int idle = 0;
+      while (length > 0)
+      {
+        int n = m_buffer.offerAll(events, offset, length);
+        offset += n;
+        length -= n;
+        if (n == 0)
+        {
+          if (m_stopped)
+          {
+            break;
+          }
+          m_waitStrategy.idle(idle++);
+        }
+        else
+        {
+          idle = 0;
+        }
+      }
+      return this;
+    }
+
+    @Override
+    public Future<Pushable> pushFast(Object o)
+    {
+      if (m_stopped)
+      {
+        return Pushable.NULL_FUTURE;
+      }
+      return m_pendingQueue.offer(o);
+    }
+
+    @Override
+    public void notifyEndOfTrace() throws PushableException
+    {
+      // The end of the trace is seen by the consumer when it pulls
+      m_endOfTrace = true;
+    }
+
+    @Override
+    public void notifyWatermark(long watermark)
+    {
+      // Like the end of the trace, the watermark is seen by the consumer
+      // once the events pushed before it have been pulled
+      if (watermark > m_watermark)
+      {
+        m_watermark = watermark;
+      }
+    }
+  }
+
+  /**
+   * Pullable that takes events from the ring buffer
+   */
+  protected class RingPullable extends QueuePullable
+  {
+    @Override
+    public Iterator<Object> iterator()
+    {
+      return this;
+    }
+
+    @Override
+    public Object pullSoft()
+    {
+      Object o = m_buffer.poll();
+      flushPending();
+      return o;
+    }
+
+    @Override
+    public Object pull()
+    {
+      if (!await())
+      {
+        return null;
+      }
+      Object o = m_buffer.poll();
+      flushPending();
+      return o;
+    }
+
+    @Override
+    public NextStatus hasNextSoft()
+    {
+      if (!m_buffer.isEmpty())
+      {
+        return NextStatus.YES;
+      }
+      if (m_endOfTrace)
+      {
+        return m_buffer.isEmpty() ? NextStatus.NO : NextStatus.YES;
+      }
+      return NextStatus.MAYBE;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return await();
+    }
+
+    @Override
+    public int pullBatch(Object[] dst, int max)
+    {
+      if (!await())
+      {
+        return 0;
+      }
+      int n = m_buffer.drainTo(dst, max);
+      flushPending();
+      return n;
+    }
+
+    @Override
+    public int awaitBatch(Object[] dst, int max)
+    {
+      return pullBatch(dst, max);
+    }
+
+    @Override
+    public int pullSoftBatch(Object[] dst, int max)
+    {
+      int n = m_buffer.drainTo(dst, max);
+      flushPending();
+      return n;
+    }
+
+    @Override
+    public long getWatermark()
+    {
+      // The watermark must be read before looking at the pending events,
+      // and these before looking at the buffer
+      long watermark = m_watermark;
+      if ((m_pendingQueue == null || m_pendingQueue.size() == 0) && m_buffer.isEmpty())
+      {
+        m_outputWatermark = Math.max(m_outputWatermark, watermark);
+      }
+      return m_outputWatermark;
+    }
+  }
+}
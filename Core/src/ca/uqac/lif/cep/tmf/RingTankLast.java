@@ -0,0 +1,160 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.tmf;
+
+import ca.uqac.lif.cep.util.RingBuffer;
+import ca.uqac.lif.cep.util.RingBuffer.WaitStrategy;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link RingTank} that, when pulled, creates an output event based on the
+ * last event received. This is the lock-free counterpart of
+ * {@link TankLast}: pushing an event replaces the event that has not been
+ * pulled yet, if any, and therefore never waits.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class RingTankLast extends RingTank
+{
+  /**
+   * Creates a new empty tank that parks waiting threads
+   */
+  public RingTankLast()
+  {
+    this(WaitStrategy.PARK);
+  }
+
+  /**
+   * Creates a new empty tank
+   * 
+   * @param strategy
+   *          The strategy used by threads waiting on the tank
+   */
+  public RingTankLast(WaitStrategy strategy)
+  {
+    super(1, true, strategy);
+    m_buffer = new LastBuffer();
+  }
+
+  @Override
+  public RingTankLast duplicate(boolean with_state)
+  {
+    RingTankLast t = new RingTankLast(m_waitStrategy);
+    if (with_state)
+    {
+      copyStateTo(t);
+    }
+    return t;
+  }
+
+  /**
+   * A buffer holding at most one element, which is replaced by every
+   * element added to it
+   */
+  protected static class LastBuffer extends RingBuffer
+  {
+    /**
+     * A marker indicating that the buffer is empty
+     */
+    protected static final Object EMPTY = new Object();
+
+    /**
+     * The element in the buffer
+     */
+    protected final AtomicReference<Object> m_last;
+
+    /**
+     * Creates a new empty buffer
+     */
+    public LastBuffer()
+    {
+      super(1, false);
+      m_last = new AtomicReference<Object>(EMPTY);
+    }
+
+    @Override
+    public boolean offer(Object o)
+    {
+      m_last.set(o);
+      return true;
+    }
+
+    @Override
+    public int offerAll(Object[] src, int offset, int length)
+    {
+      if (length > 0)
+      {
+        m_last.set(src[offset + length - 1]);
+      }
+      return length;
+    }
+
+    @Override
+    public Object poll()
+    {
+      Object o = m_last.getAndSet(EMPTY);
+      return o == EMPTY ? null : o;
+    }
+
+    @Override
+    public int drainTo(Object[] dst, int max)
+    {
+      if (max <= 0)
+      {
+        return 0;
+      }
+      Object o = m_last.getAndSet(EMPTY);
+      if (o == EMPTY)
+      {
+        return 0;
+      }
+      dst[0] = o;
+      return 1;
+    }
+
+    @Override
+    public int peekTo(Object[] dst, int max)
+    {
+      if (max <= 0)
+      {
+        return 0;
+      }
+      Object o = m_last.get();
+      if (o == EMPTY)
+      {
+        return 0;
+      }
+      dst[0] = o;
+      return 1;
+    }
+
+    @Override
+    public int size()
+    {
+      return m_last.get() == EMPTY ? 0 : 1;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+      return m_last.get() == EMPTY;
+    }
+  }
+}
@@ -0,0 +1,379 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.tmf;
+
+import ca.uqac.lif.cep.functions.BinaryFunction;
+import ca.uqac.lif.cep.functions.Function;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Groups events into sessions, according to the timestamp of each event.
+ * A session is a maximal sequence of events where no two consecutive events
+ * are separated by a gap of <i>g</i> or more; it spans from the timestamp
+ * of its first event to the timestamp of its last event plus <i>g</i>, and
+ * is closed once the watermark reaches that time. Optionally, a
+ * {@link Function} evaluated on each event gives it a key, and sessions are
+ * then formed separately for each key.
+ * <p>
+ * Since events can arrive out of order, an event can fall before a session,
+ * or between two sessions and merge them into one. Its value and the
+ * aggregates of the sessions are then combined in the order of their
+ * timestamps, which gives the proper result only if the function is
+ * associative (see {@link BinaryFunction#isAssociative()}). A late event
+ * that falls within the span of a session is combined after the values
+ * already in it, as in the other event time windows.
+ * Sessions are output in the order in which they are closed.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class SessionWindow extends EventTimeWindow
+{
+  /**
+   * The minimum duration of inactivity that separates two sessions
+   */
+  protected final long m_gap;
+
+  /**
+   * The function giving the key of an event, or <tt>null</tt> if the
+   * sessions have no key
+   */
+  protected Function m_keyFunction;
+
+  /**
+   * The open sessions of each key, indexed by their start time
+   */
+  protected Map<Object, TreeMap<Long, Session>> m_sessions = new HashMap<Object, TreeMap<Long, Session>>();
+
+  /**
+   * The end times of the open sessions, earliest first. An entry whose
+   * session has been closed, merged or extended since it was added is
+   * simply ignored.
+   */
+  protected PriorityQueue<Deadline> m_deadlines = new PriorityQueue<Deadline>();
+
+  /**
+   * A counter used to order deadlines with the same end time
+   */
+  protected long m_sequence = 0;
+
+  /**
+   * Creates a new session window processor
+   * 
+   * @param timestamp
+   *          The function giving the timestamp of an event
+   * @param key
+   *          The function giving the key of an event, or <tt>null</tt> to
+   *          form sessions regardless of any key
+   * @param gap
+   *          The minimum duration of inactivity that separates two sessions,
+   *          in the unit of the timestamps
+   * @param function
+   *          The function combining the values of a session
+   */
+  public SessionWindow(Function timestamp, /*@ null @*/ Function key, long gap,
+      BinaryFunction<?, ?, ?> function)
+  {
+    super(timestamp, function);
+    if (gap <= 0)
+    {
+      throw new IllegalArgumentException("The gap of a session must be positive");
+    }
+    m_keyFunction = key;
+    m_gap = gap;
+  }
+
+  /**
+   * Creates a new session window processor, forming sessions regardless of
+   * any key
+   * 
+   * @param timestamp
+   *          The function giving the timestamp of an event
+   * @param gap
+   *          The minimum duration of inactivity that separates two sessions,
+   *          in the unit of the timestamps
+   * @param function
+   *          The function combining the values of a session
+   */
+  public SessionWindow(Function timestamp, long gap, BinaryFunction<?, ?, ?> function)
+  {
+    this(timestamp, null, gap, function);
+  }
+
+  /**
+   * Gets the minimum duration of inactivity that separates two sessions
+   * 
+   * @return The duration
+   */
+  public long getGap()
+  {
+    return m_gap;
+  }
+
+  /**
+   * Gets the number of sessions currently open, for all keys
+   * 
+   * @return The number of sessions
+   */
+  public int getOpenSessionCount()
+  {
+    int count = 0;
+    for (TreeMap<Long, Session> sessions : m_sessions.values())
+    {
+      count += sessions.size();
+    }
+    return count;
+  }
+
+  @Override
+  protected boolean add(Object event, long timestamp, Object value)
+  {
+    Object key = m_keyFunction == null ? null : evaluate(m_keyFunction, event);
+    TreeMap<Long, Session> sessions = m_sessions.get(key);
+    if (sessions == null)
+    {
+      sessions = new TreeMap<Long, Session>();
+      m_sessions.put(key, sessions);
+    }
+    // Open sessions are disjoint: the ones that overlap the interval of the
+    // event are the last ones starting before the end of that interval
+    List<Session> overlapping = new ArrayList<Session>(2);
+    for (Session s : sessions.headMap(timestamp + m_gap, false).descendingMap().values())
+    {
+      if (s.getEnd() <= timestamp)
+      {
+        break;
+      }
+      overlapping.add(0, s);
+    }
+    Session session;
+    if (overlapping.isEmpty())
+    {
+      if (timestamp + m_gap <= m_watermark)
+      {
+        if (sessions.isEmpty())
+        {
+          m_sessions.remove(key);
+        }
+        return false;
+      }
+      session = new Session(key, timestamp);
+      session.m_aggregate.add(value);
+    }
+    else
+    {
+      session = overlapping.get(0);
+      sessions.remove(session.m_start);
+      boolean added = false;
+      if (timestamp < session.m_start)
+      {
+        // The event comes before all the values of the session
+        session.m_aggregate.addFirst(value);
+        added = true;
+      }
+      for (int i = 1; i < overlapping.size(); i++)
+      {
+        Session s = overlapping.get(i);
+        if (!added)
+        {
+          // The event falls between the first session and this one
+          session.m_aggregate.add(value);
+          added = true;
+        }
+        sessions.remove(s.m_start);
+        s.m_closed = true;
+        session.m_aggregate.add(s.m_aggregate);
+        session.m_last = Math.max(session.m_last, s.m_last);
+      }
+      if (!added)
+      {
+        session.m_aggregate.add(value);
+      }
+    }
+    long end = session.getEnd();
+    session.m_start = Math.min(session.m_start, timestamp);
+    session.m_last = Math.max(session.m_last, timestamp);
+    sessions.put(session.m_start, session);
+    if (overlapping.isEmpty() || session.getEnd() != end || overlapping.size() > 1)
+    {
+      m_deadlines.add(new Deadline(session.getEnd(), m_sequence++, session));
+    }
+    return true;
+  }
+
+  @Override
+  protected void close(long watermark, Queue<Object[]> outputs)
+  {
+    boolean with_start = m_function.isAssociative();
+    while (!m_deadlines.isEmpty() && m_deadlines.peek().m_end <= watermark)
+    {
+      Deadline d = m_deadlines.poll();
+      Session s = d.m_session;
+      if (s.m_closed || s.getEnd() != d.m_end)
+      {
+        continue;
+      }
+      s.m_closed = true;
+      TreeMap<Long, Session> sessions = m_sessions.get(s.m_key);
+      sessions.remove(s.m_start);
+      if (sessions.isEmpty())
+      {
+        m_sessions.remove(s.m_key);
+      }
+      output(s.m_key, s.m_start, s.getEnd(), s.m_aggregate.getResult(with_start), outputs);
+    }
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    m_sessions.clear();
+    m_deadlines.clear();
+    m_sequence = 0;
+  }
+
+  @Override
+  public SessionWindow duplicate(boolean with_state)
+  {
+    SessionWindow w = new SessionWindow(m_timestampFunction.duplicate(),
+        m_keyFunction == null ? null : m_keyFunction.duplicate(), m_gap,
+        m_function.duplicate(false));
+    cloneInto(w);
+    if (with_state)
+    {
+      throw new UnsupportedOperationException(
+          "Duplication with state not supported yet on this processor");
+    }
+    return w;
+  }
+
+  /**
+   * An open session
+   */
+  protected class Session
+  {
+    /**
+     * The key of the session
+     */
+    protected final Object m_key;
+
+    /**
+     * The timestamp of the first event of the session
+     */
+    protected long m_start;
+
+    /**
+     * The timestamp of the last event of the session
+     */
+    protected long m_last;
+
+    /**
+     * The values of the session combined so far
+     */
+    protected final Aggregate m_aggregate;
+
+    /**
+     * Whether the session has been output or merged into another one
+     */
+    protected boolean m_closed = false;
+
+    /**
+     * Creates a new session
+     * 
+     * @param key
+     *          The key of the session
+     * @param timestamp
+     *          The timestamp of its first event
+     */
+    protected Session(Object key, long timestamp)
+    {
+      super();
+      m_key = key;
+      m_start = timestamp;
+      m_last = timestamp;
+      m_aggregate = new Aggregate(!m_function.isAssociative());
+    }
+
+    /**
+     * Gets the end time of the session
+     * 
+     * @return The end time, exclusive
+     */
+    protected long getEnd()
+    {
+      return m_last + m_gap;
+    }
+  }
+
+  /**
+   * The time at which a session will be closed
+   */
+  protected static class Deadline implements Comparable<Deadline>
+  {
+    /**
+     * The end time of the session
+     */
+    protected final long m_end;
+
+    /**
+     * The order in which the deadline was created
+     */
+    protected final long m_sequence;
+
+    /**
+     * The session
+     */
+    protected final Session m_session;
+
+    /**
+     * Creates a new deadline
+     * 
+     * @param end
+     *          The end time of the session
+     * @param sequence
+     *          The order in which the deadline was created
+     * @param session
+     *          The session
+     */
+    protected Deadline(long end, long sequence, Session session)
+    {
+      super();
+      m_end = end;
+      m_sequence = sequence;
+      m_session = session;
+    }
+
+    @Override
+    public int compareTo(Deadline d)
+    {
+      if (m_end != d.m_end)
+      {
+        return m_end < d.m_end ? -1 : 1;
+      }
+      return m_sequence < d.m_sequence ? -1 : (m_sequence == d.m_sequence ? 0 : 1);
+    }
+  }
+}
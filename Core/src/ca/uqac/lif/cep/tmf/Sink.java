@@ -20,6 +20,7 @@ package ca.uqac.lif.cep.tmf;
 import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.Pullable;
 import ca.uqac.lif.cep.Pullable.PullableException;
+import ca.uqac.lif.cep.Pushable;
 import ca.uqac.lif.cep.SynchronousProcessor;
 
 /**
@@ -49,6 +50,39 @@ public abstract class Sink extends SynchronousProcessor
     super(in_arity, 0);
   }
 
+  @Override
+  public synchronized Pushable getPushableInput(int index)
+  {
+    if (m_inputPushables[index] == null)
+    {
+      m_inputPushables[index] = new SinkPushable(index);
+    }
+    return m_inputPushables[index];
+  }
+
+  /**
+   * Consumes a batch of events pushed to a sink of input arity 1. By default,
+   * this method calls {@link #compute(Object[], java.util.Queue) compute()}
+   * on each event of the batch; descendants can override it when they can
+   * consume the whole batch at once.
+   * 
+   * @param events
+   *          An array containing the events
+   * @param offset
+   *          The index in the array of the first event
+   * @param length
+   *          The number of events
+   * @since 0.11
+   */
+  protected void computeAll(Object[] events, int offset, int length)
+  {
+    for (int i = offset; i < offset + length; i++)
+    {
+      compute(new Object[] { events[i] }, m_tempQueue);
+    }
+    m_tempQueue.clear();
+  }
+
   /**
    * Tells the sink to pull events from the pipeline
    */
@@ -90,4 +124,99 @@ public abstract class Sink extends SynchronousProcessor
       throw new PullableException(e);
     }
   }
+
+  /**
+   * Tells the sink to pull a batch of events from the pipeline. For a sink
+   * of input arity 1, the events are obtained with a single call to
+   * {@link Pullable#pullBatch(Object[], int)} and consumed with a single call
+   * to {@link #computeAll(Object[], int, int) computeAll()}.
+   *
+   * @param max
+   *          The maximum number of events (or fronts of events) to pull
+   * @return The number of events (or fronts of events) consumed by the sink;
+   *         the value 0 indicates that the upstream pipeline will produce no
+   *         more events
+   * @since 0.11
+   */
+  public final int pullBatch(int max)
+  {
+    int arity = getInputArity();
+    if (arity == 1)
+    {
+      Object[] events = new Object[max];
+      int n = m_inputPullables[0].pullBatch(events, max);
+      try
+      {
+        computeAll(events, 0, n);
+      }
+      catch (ProcessorException e)
+      {
+        throw new PullableException(e);
+      }
+      return n;
+    }
+    int n = 0;
+    for (; n < max; n++)
+    {
+      Object[] inputs = new Object[arity];
+      for (int i = 0; i < arity; i++)
+      {
+        Pullable p = m_inputPullables[i];
+        if (!p.hasNext())
+        {
+          return n;
+        }
+        inputs[i] = p.pull();
+      }
+      try
+      {
+        compute(inputs, m_tempQueue);
+      }
+      catch (ProcessorException e)
+      {
+        throw new PullableException(e);
+      }
+      m_tempQueue.clear();
+    }
+    return n;
+  }
+
+  /**
+   * Pushable for a sink. For a sink of input arity 1, a batch of events is
+   * handed to {@link Sink#computeAll(Object[], int, int) computeAll()} in
+   * a single call.
+   * 
+   * @since 0.11
+   */
+  protected class SinkPushable extends InputPushable
+  {
+    /**
+     * Creates a new sink pushable
+     * 
+     * @param index
+     *          The index of the sink's input this pushable refers to
+     */
+    protected SinkPushable(int index)
+    {
+      super(index);
+    }
+
+    @Override
+    public synchronized Pushable pushAll(Object[] events, int offset, int length)
+    {
+      if (getInputArity() != 1)
+      {
+        return super.pushAll(events, offset, length);
+      }
+      try
+      {
+        computeAll(events, offset, length);
+      }
+      catch (ProcessorException e)
+      {
+        throw new PushableException(e);
+      }
+      return this;
+    }
+  }
 }
@@ -28,6 +28,15 @@ import java.util.Queue;
 /**
  * Concrete version of {@link AbstractSlice} whose output is an associative
  * map between slice IDs and the last event produced by that slice processor.
+ * <p>
+ * By default, the slicer outputs the same map instance on every input
+ * event, so that downstream processors must copy it if they need to keep
+ * it. In <em>delta</em> mode (see {@link #setDeltaMode(boolean)}), it rather
+ * outputs a new map containing only the slice IDs whose value changed with
+ * the current input event; a slice that was evicted appears in this map
+ * with the value <tt>null</tt>. Optionally, a full snapshot of the map can
+ * also be output at regular intervals (see
+ * {@link #setSnapshotInterval(int)}).
  * 
  * @author Sylvain Hallé
  * @since 0.3
@@ -40,6 +49,22 @@ public class Slice extends AbstractSlice
    */
   protected HashMap<Object, Object> m_lastValues;
 
+  /**
+   * Whether the slicer outputs only the values that changed
+   */
+  protected boolean m_deltaMode = false;
+
+  /**
+   * The values that changed since the last output front, in delta mode
+   */
+  protected HashMap<Object, Object> m_changes;
+
+  /**
+   * In delta mode, the number of output fronts between two full snapshots
+   * of the map; 0 means never
+   */
+  protected int m_snapshotInterval = 0;
+
   /**
    * Creates a dummy slice processor. This constructor is only used for
    * deserialization purposes.
@@ -61,6 +86,7 @@ public class Slice extends AbstractSlice
   {
     super(func, proc, clean_func);
     m_lastValues = new HashMap<Object, Object>();
+    m_changes = new HashMap<Object, Object>();
   }
 
   /**
@@ -73,6 +99,40 @@ public class Slice extends AbstractSlice
     this(func, proc, null);
   }
 
+  /**
+   * Sets whether the slicer outputs only the values that changed with each
+   * input event
+   * 
+   * @param b
+   *          Set to <tt>true</tt> to output a map of the changed values,
+   *          <tt>false</tt> (the default) to output the map of all values
+   * @return This slicer
+   * @since 0.11
+   */
+  public Slice setDeltaMode(boolean b)
+  {
+    m_deltaMode = b;
+    return this;
+  }
+
+  /**
+   * Sets how often a full snapshot of the map is output in delta mode.
+   * Every <i>n</i>-th output front is then a copy of the map of all values,
+   * which replaces whatever state a downstream processor has built from the
+   * previous deltas.
+   * 
+   * @param n
+   *          The number of output fronts between two snapshots; 0 (the
+   *          default) means never
+   * @return This slicer
+   * @since 0.11
+   */
+  public Slice setSnapshotInterval(int n)
+  {
+    m_snapshotInterval = n;
+    return this;
+  }
+
   /**
    * @since 0.10.2
    */
@@ -83,6 +143,9 @@ public class Slice extends AbstractSlice
     contents.put("cleaning-function", m_cleaningFunction);
     contents.put("explode-arrays", m_explodeArrays);
     contents.put("last-values", m_lastValues);
+    contents.put("delta-mode", m_deltaMode);
+    contents.put("snapshot-interval", m_snapshotInterval);
+    printSettings(contents);
     contents.put("sinks", m_sinks);
     contents.put("slices", m_slices);
     contents.put("processor", m_processor);
@@ -106,6 +169,12 @@ public class Slice extends AbstractSlice
     s.m_sinks = (HashMap<Object,QueueSink>) contents.get("sinks");
     s.m_slices = (HashMap<Object,Processor>) contents.get("slices");
     s.m_explodeArrays = (Boolean) contents.get("explode-arrays");
+    if (contents.containsKey("delta-mode"))
+    {
+      s.m_deltaMode = (Boolean) contents.get("delta-mode");
+      s.m_snapshotInterval = ((Number) contents.get("snapshot-interval")).intValue();
+    }
+    s.readSettings(contents);
     // Connect slices to sinks
     for (Map.Entry<Object,Processor> entry : s.m_slices.entrySet())
     {
@@ -135,6 +204,17 @@ public class Slice extends AbstractSlice
     }
     s.setContext(m_context);
     s.m_explodeArrays = m_explodeArrays;
+    s.m_deltaMode = m_deltaMode;
+    s.m_snapshotInterval = m_snapshotInterval;
+    s.m_parallelism = m_parallelism;
+    s.m_executor = m_executor;
+    s.m_maxSlices = m_maxSlices;
+    s.m_poolSize = m_poolSize;
+    s.m_idleTimeout = m_idleTimeout;
+    if (m_timestampFunction != null)
+    {
+      s.m_timestampFunction = m_timestampFunction.duplicate(with_state);
+    }
     if (with_state)
     {
       throw new UnsupportedOperationException(
@@ -148,13 +228,28 @@ public class Slice extends AbstractSlice
   {
     super.reset();
     m_lastValues.clear();
+    m_changes.clear();
   }
 
   @Override
   protected boolean produceReturn(Queue<Object[]> outputs)
   {
-    outputs.add(new Object[] {m_lastValues});
+    if (!m_deltaMode)
+    {
+      outputs.add(new Object[] {m_lastValues});
+      m_outputCount++;
+      return true;
+    }
     m_outputCount++;
+    if (m_snapshotInterval > 0 && m_outputCount % m_snapshotInterval == 0)
+    {
+      outputs.add(new Object[] {new HashMap<Object, Object>(m_lastValues)});
+    }
+    else
+    {
+      outputs.add(new Object[] {new HashMap<Object, Object>(m_changes)});
+    }
+    m_changes.clear();
     return true;
   }
 
@@ -164,6 +259,24 @@ public class Slice extends AbstractSlice
     if (value != null)
     {
       m_lastValues.put(slice_id, value);
+      if (m_deltaMode)
+      {
+        m_changes.put(slice_id, value);
+      }
+    }
+  }
+
+  /**
+   * Removes the last value of an evicted slice from the output map
+   * @since 0.11
+   */
+  @Override
+  protected void removeSliceValue(Object slice_id)
+  {
+    m_lastValues.remove(slice_id);
+    if (m_deltaMode)
+    {
+      m_changes.put(slice_id, null);
     }
   }
 
@@ -100,6 +100,7 @@ public class SliceLast extends AbstractSlice
     Map<String,Object> contents = new HashMap<String,Object>();
     contents.put("cleaning-function", m_cleaningFunction);
     contents.put("explode-arrays", m_explodeArrays);
+    printSettings(contents);
     contents.put("sinks", m_sinks);
     contents.put("slices", m_slices);
     contents.put("processor", m_processor);
@@ -124,6 +125,7 @@ public class SliceLast extends AbstractSlice
     s.m_slices = (HashMap<Object,Processor>) contents.get("slices");
     s.m_currentList = (List<Object>) contents.get("list");
     s.m_explodeArrays = (Boolean) contents.get("explode-arrays");
+    s.readSettings(contents);
     // Connect slices to sinks
     for (Map.Entry<Object,Processor> entry : s.m_slices.entrySet())
     {
@@ -0,0 +1,66 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.tmf;
+
+import ca.uqac.lif.cep.Processor;
+
+/**
+ * Keeps the processors of slices that have been evicted by an
+ * {@link AbstractSlice}, so that their state can be restored when their
+ * slice ID appears again.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public interface SliceStore
+{
+  /**
+   * Stores the processor of an evicted slice
+   * 
+   * @param slice_id
+   *          The ID of the slice
+   * @param p
+   *          The processor
+   */
+  public void put(Object slice_id, Processor p);
+
+  /**
+   * Retrieves and removes the processor of an evicted slice
+   * 
+   * @param slice_id
+   *          The ID of the slice
+   * @param prototype
+   *          The processor that the slicer applies to each slice. It can be
+   *          used to read back the state of the stored processor.
+   * @return The processor, or <tt>null</tt> if no processor is stored for
+   *         this slice ID
+   */
+  /*@ null @*/ public Processor remove(Object slice_id, Processor prototype);
+
+  /**
+   * Gets the number of processors currently kept in the store
+   * 
+   * @return The number of processors
+   */
+  public int size();
+
+  /**
+   * Removes all the processors from the store
+   */
+  public void clear();
+}
@@ -47,6 +47,22 @@ public abstract class Source extends SynchronousProcessor
     super(0, out_arity);
   }
 
+  /**
+   * Tells the source that no event older than a given timestamp will be
+   * produced from now on. In push mode, the watermark is sent immediately to
+   * the downstream processors; in pull mode, it is returned by
+   * {@link ca.uqac.lif.cep.Pullable#getWatermark() getWatermark()} once the
+   * events produced before it have been pulled.
+   * 
+   * @param watermark
+   *          The watermark
+   * @since 0.11
+   */
+  public final synchronized void pushWatermark(long watermark)
+  {
+    forwardWatermark(watermark);
+  }
+
   /**
    * Tells the source to push events into the pipeline
    */
@@ -67,16 +83,18 @@ public abstract class Source extends SynchronousProcessor
     }
     for (Object[] evt : output)
     {
-      @SuppressWarnings("unchecked")
-      Future<Pushable>[] futures = new Future[output.size()];
       if (evt != null && !allNull(evt))
       {
-        for (int i = 0; i < output.size(); i++)
+        @SuppressWarnings("unchecked")
+        Future<Pushable>[] futures = new Future[evt.length];
+        // Push to all outputs, then wait until every downstream pushable
+        // has accepted its event
+        for (int i = 0; i < evt.length; i++)
         {
           Pushable p = m_outputPushables[i];
           futures[i] = p.pushFast(evt[i]);
         }
-        for (int i = 0; i < output.size(); i++)
+        for (int i = 0; i < evt.length; i++)
         {
           try
           {
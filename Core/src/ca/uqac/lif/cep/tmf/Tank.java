@@ -50,6 +50,12 @@ public class Tank extends Processor
    */
   protected QueuePullable m_pullable = null;
 
+  /**
+   * Whether the end of the trace has been notified to the tank
+   * @since 0.11
+   */
+  protected volatile boolean m_endOfTrace = false;
+
   /**
    * Creates a new empty tank
    */
@@ -90,7 +96,7 @@ public class Tank extends Processor
     return m_pullable;
   }
 
-  protected class QueuePullable implements Pullable
+  public class QueuePullable implements Pullable
   {
     @Override
     public Iterator<Object> iterator()
@@ -151,6 +157,118 @@ public class Tank extends Processor
       }
     }
 
+    /**
+     * Pulls the events that are in the tank, without waiting. Like
+     * {@link #pull()} and {@link #hasNext()}, it considers an empty tank as
+     * the end of the stream: it returns 0 exactly when {@link #hasNext()}
+     * would return <code>false</code>. To wait for events pushed by another
+     * thread, use {@link #awaitBatch(Object[], int)}.
+     */
+    @Override
+    public int pullBatch(Object[] dst, int max)
+    {
+      synchronized (m_inputQueues[0])
+      {
+        return drain(dst, max);
+      }
+    }
+
+    /**
+     * Pulls a batch of events, waiting until the tank contains at least one
+     * event or until the end of the trace has been notified to it. It must
+     * therefore not be called from the thread that fills the tank.
+     * 
+     * @param dst
+     *          The array where the events are written. Its length must be at
+     *          least <code>max</code>.
+     * @param max
+     *          The maximum number of events to pull
+     * @return The number of events written to the array. The value 0
+     *         indicates that the end of the trace has been notified to the
+     *         tank, and that it is empty.
+     * @since 0.11
+     */
+    public int awaitBatch(Object[] dst, int max)
+    {
+      synchronized (m_inputQueues[0])
+      {
+        while (m_inputQueues[0].isEmpty())
+        {
+          if (m_endOfTrace)
+          {
+            return 0;
+          }
+          try
+          {
+            m_inputQueues[0].wait();
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+            throw new PullableException(e, Tank.this);
+          }
+        }
+        return drain(dst, max);
+      }
+    }
+
+    /**
+     * Pulls the events that are in the tank, without waiting. Contrary to
+     * {@link #awaitBatch(Object[], int)}, a return value of 0 only means that
+     * the tank is empty for the moment. For a tank, this is the same as
+     * {@link #pullBatch(Object[], int)}; a {@link RingTank} waits in
+     * {@link #pullBatch(Object[], int)}, but not in this method.
+     * 
+     * @param dst
+     *          The array where the events are written. Its length must be at
+     *          least <code>max</code>.
+     * @param max
+     *          The maximum number of events to pull
+     * @return The number of events written to the array
+     * @since 0.11
+     */
+    public int pullSoftBatch(Object[] dst, int max)
+    {
+      synchronized (m_inputQueues[0])
+      {
+        return drain(dst, max);
+      }
+    }
+
+    /**
+     * Moves events from the queue to an array. The caller must hold the
+     * queue's lock.
+     * 
+     * @param dst
+     *          The array
+     * @param max
+     *          The maximum number of events to move
+     * @return The number of events moved
+     */
+    private int drain(Object[] dst, int max)
+    {
+      int n = 0;
+      while (n < max && !m_inputQueues[0].isEmpty())
+      {
+        dst[n++] = m_inputQueues[0].remove();
+      }
+      return n;
+    }
+
+    @Override
+    public long getWatermark()
+    {
+      synchronized (m_inputQueues[0])
+      {
+        // The watermark holds once the events pushed before it are pulled
+        if (m_inputQueues[0].isEmpty())
+        {
+          m_outputWatermark = Math.max(m_outputWatermark, m_inputWatermarks[0]);
+        }
+        return m_outputWatermark;
+      }
+    }
+
     @Override
     public Processor getProcessor()
     {
@@ -204,6 +322,33 @@ public class Tank extends Processor
           m_inputQueues[0].clear();
         }
         m_inputQueues[0].add(o);
+        m_inputQueues[0].notifyAll();
+      }
+      return this;
+    }
+
+    @Override
+    public Pushable pushAll(Object[] events, int offset, int length)
+    {
+      if (length <= 0)
+      {
+        return this;
+      }
+      synchronized (m_inputQueues[0])
+      {
+        if (m_singleObject)
+        {
+          m_inputQueues[0].clear();
+          m_inputQueues[0].add(events[offset + length - 1]);
+        }
+        else
+        {
+          for (int i = offset; i < offset + length; i++)
+          {
+            m_inputQueues[0].add(events[i]);
+          }
+        }
+        m_inputQueues[0].notifyAll();
       }
       return this;
     }
@@ -218,8 +363,25 @@ public class Tank extends Processor
     @Override
     public void notifyEndOfTrace() throws PushableException
     {
+      synchronized (m_inputQueues[0])
+      {
+        m_endOfTrace = true;
+        m_inputQueues[0].notifyAll();
+      }
       // TODO: to be verified
-      m_outputPushables[0].notifyEndOfTrace();
+      if (m_outputPushables[0] != null)
+      {
+        m_outputPushables[0].notifyEndOfTrace();
+      }
+    }
+
+    @Override
+    public void notifyWatermark(long watermark)
+    {
+      synchronized (m_inputQueues[0])
+      {
+        setInputWatermark(0, watermark);
+      }
     }
 
     @Override
@@ -242,6 +404,7 @@ public class Tank extends Processor
     synchronized (m_inputQueues[0])
     {
       m_inputQueues[0].clear();
+      m_endOfTrace = false;
     }
   }
 }
@@ -0,0 +1,64 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.tmf;
+
+import ca.uqac.lif.cep.functions.BinaryFunction;
+import ca.uqac.lif.cep.functions.Function;
+
+/**
+ * Groups events into consecutive windows of fixed duration, according to the
+ * timestamp of each event. With a width <i>w</i>, the windows are the
+ * intervals [<i>kw</i>, <i>kw</i>+<i>w</i>[ for every integer <i>k</i>, so
+ * that each event belongs to exactly one window. This is a
+ * {@link HoppingWindow} whose slide is equal to its width.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+@SuppressWarnings("squid:S2160")
+public class TumblingWindow extends HoppingWindow
+{
+  /**
+   * Creates a new tumbling window processor
+   * 
+   * @param timestamp
+   *          The function giving the timestamp of an event
+   * @param width
+   *          The duration of a window, in the unit of the timestamps
+   * @param function
+   *          The function combining the values of a window
+   */
+  public TumblingWindow(Function timestamp, long width, BinaryFunction<?, ?, ?> function)
+  {
+    super(timestamp, width, width, function);
+  }
+
+  @Override
+  public TumblingWindow duplicate(boolean with_state)
+  {
+    TumblingWindow w = new TumblingWindow(m_timestampFunction.duplicate(), m_width,
+        m_function.duplicate(false));
+    cloneInto(w);
+    if (with_state)
+    {
+      throw new UnsupportedOperationException(
+          "Duplication with state not supported yet on this processor");
+    }
+    return w;
+  }
+}
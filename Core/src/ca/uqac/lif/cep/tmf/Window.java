@@ -21,8 +21,11 @@ import ca.uqac.lif.cep.Connector;
 import ca.uqac.lif.cep.Processor;
 import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.Pushable;
-import java.util.LinkedList;
-import java.util.List;
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.util.CircularBuffer;
+import ca.uqac.lif.cep.util.SlidingAggregator;
 import java.util.Queue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -37,6 +40,15 @@ import java.util.concurrent.Future;
  * <i>n</i>. It returns the result of &phi; after processing events 0 to
  * <i>n</i>-1&hellip; Then the result of (a new instance of &phi;) that processes
  * events 1 to <i>n</i>-1&hellip; and so on.
+ * <p>
+ * In general, this requires resetting &phi; and pushing the <i>n</i> events
+ * of the window into it for every input event. However, when &phi; is a
+ * {@link Cumulate} whose binary function is associative (see
+ * {@link ca.uqac.lif.cep.functions.BinaryFunction#isAssociative()
+ * isAssociative()}), such as the sum, maximum or conjunction of the events,
+ * the window is evaluated incrementally with a {@link SlidingAggregator}:
+ * each input event then takes a constant amortized time to process,
+ * whatever the width of the window.
  * 
  * @author Sylvain Hallé
  * @since 0.2.1
@@ -56,6 +68,18 @@ public class Window extends AbstractWindow
    */
   protected SinkLast m_sink = null;
 
+  /**
+   * The function cumulated by the internal processor, if the window is
+   * evaluated incrementally; <tt>null</tt> otherwise
+   */
+  protected transient CumulativeFunction<Object> m_cumulative = null;
+
+  /**
+   * The object combining the events of the window, if the window is
+   * evaluated incrementally; <tt>null</tt> otherwise
+   */
+  protected transient SlidingAggregator<Object> m_aggregator = null;
+
   /**
    * Creates a new window processor
    * @param in_processor The processor to run on each window
@@ -68,27 +92,123 @@ public class Window extends AbstractWindow
     reset();
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public void reset()
   {
     super.reset();
     int arity = getInputArity();
-    m_window = new LinkedList[arity];
+    m_cumulative = getCumulativeFunction(m_processor);
+    m_aggregator = m_cumulative == null ? null
+        : new SlidingAggregator<Object>(m_cumulative.getFunction(), m_width);
+    // The windows are only needed when the processor is run on them
+    m_window = new CircularBuffer[m_aggregator == null ? arity : 0];
     m_innerInputs = new Pushable[arity];
     m_processor.reset();
     for (int i = 0; i < arity; i++)
     {
-      m_window[i] = new LinkedList<Object>();
+      if (m_aggregator == null)
+      {
+        m_window[i] = new CircularBuffer(m_width);
+      }
       m_innerInputs[i] = m_processor.getPushableInput(i);
     }
     m_sink.reset();
     Connector.connect(m_processor, m_sink);
   }
 
+  /**
+   * Gets the function cumulated by a processor, if a window over this
+   * processor can be evaluated incrementally
+   * 
+   * @param p
+   *          The processor
+   * @return The function, or <tt>null</tt> if <tt>p</tt> is not a
+   *         {@link Cumulate} over an associative function
+   * @since 0.11
+   */
+  @SuppressWarnings("unchecked")
+  protected static CumulativeFunction<Object> getCumulativeFunction(Processor p)
+  {
+    // Descendants of these classes may behave differently
+    if (p.getClass() != Cumulate.class)
+    {
+      return null;
+    }
+    Function f = ((Cumulate) p).getFunction();
+    if (f.getClass() != CumulativeFunction.class)
+    {
+      return null;
+    }
+    CumulativeFunction<Object> cf = (CumulativeFunction<Object>) f;
+    if (!cf.getFunction().isAssociative())
+    {
+      return null;
+    }
+    return cf;
+  }
+
   @Override
   @SuppressWarnings("squid:S3516")
   protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    Object[] out = m_aggregator == null ? computeWindow(inputs) : computeIncremental(inputs);
+    if (out == null)
+    {
+      // Don't return false, otherwise it would signal that no
+      // event will every be produced in the future
+      return true;
+    }
+    else
+    {
+      m_outputCount++;
+      if (m_eventTracker != null)
+      {
+        for (int i = 1 - m_width; i <= 0; i++)
+        {
+          associateToInput(0, m_inputCount + i, 0, m_outputCount);
+        }
+      }
+    }
+    outputs.add(out);
+    return true;
+  }
+
+  /**
+   * Adds an input front to the window, and combines the events of the window
+   * with the {@link SlidingAggregator}
+   * 
+   * @param inputs
+   *          The input front
+   * @return The output front, or <tt>null</tt> if the window is not full
+   * @since 0.11
+   */
+  protected Object[] computeIncremental(Object[] inputs)
+  {
+    m_inputCount++;
+    m_aggregator.add(inputs[0]);
+    while (m_aggregator.size() > m_width)
+    {
+      m_aggregator.remove();
+    }
+    if (m_aggregator.size() < m_width)
+    {
+      return null;
+    }
+    // Since the function is associative, combining the start value with the
+    // combination of the window is the same as cumulating the window
+    m_cumulative.reset();
+    return new Object[] { m_cumulative.getValue(m_aggregator.getValue()) };
+  }
+
+  /**
+   * Adds an input front to the window, and pushes the whole window into a
+   * fresh instance of the internal processor
+   * 
+   * @param inputs
+   *          The input front
+   * @return The output front, or <tt>null</tt> if the window is not full
+   */
+  protected Object[] computeWindow(Object[] inputs)
   {
     // Add the inputs to each window
     m_inputCount++;
@@ -96,11 +216,9 @@ public class Window extends AbstractWindow
     int arity = inputs.length;
     for (int i = 0; i < arity; i++)
     {
-      LinkedList<Object> q = m_window[i];
+      CircularBuffer q = m_window[i];
       q.add(inputs[i]);
-      int size_diff = q.size() - m_width;
-      leftTrim(size_diff, q);
-      if (size_diff < 0)
+      if (!q.isFull())
       {
         // Window is still to small to compute
         windows_ok = false;
@@ -119,8 +237,7 @@ public class Window extends AbstractWindow
         for (int j = 0; j < input_arity; j++)
         {
           // Feed
-          LinkedList<Object> q = m_window[j];
-          Object o = q.get(i);
+          Object o = m_window[j].get(i);
           Pushable p = m_innerInputs[j];
           futures[i * input_arity + j] = p.pushFast(o);
           p.notifyEndOfTrace();
@@ -146,51 +263,7 @@ public class Window extends AbstractWindow
         out = m_sink.getLast();
       }
     }
-    if (out == null)
-    {
-      // Don't return false, otherwise it would signal that no
-      // event will every be produced in the future
-      return true;
-    }
-    else
-    {
-      m_outputCount++;
-      if (m_eventTracker != null)
-      {
-        for (int i = 1 - m_width; i <= 0; i++)
-        {
-          associateToInput(0, m_inputCount + i, 0, m_outputCount);
-        }
-      }
-    }
-    outputs.add(out);
-    return true;
-  }
-
-  /**
-   * Trims <i>n</i> events from the beginning of <tt>q</tt>
-   * 
-   * @param n
-   *          The number of events to trim. If <i>n</i>&nbsp;&lt;1, trims nothing.
-   *          If <i>n</i> is larger than the list's size, empties the list
-   * @param q
-   *          The queue to trim
-   */
-  protected static void leftTrim(int n, List<Object> q)
-  {
-    if (n <= 0)
-    {
-      return;
-    }
-    if (n >= q.size())
-    {
-      q.clear();
-      return;
-    }
-    for (int i = 0; i < n; i++)
-    {
-      q.remove(0);
-    }
+    return out;
   }
 
   @Override
@@ -224,5 +297,9 @@ public class Window extends AbstractWindow
   public void setWidth(int m_width)
   {
     this.m_width = m_width;
+    for (CircularBuffer q : m_window)
+    {
+      q.setCapacity(m_width);
+    }
   }
 }
@@ -19,15 +19,28 @@ package ca.uqac.lif.cep.tmf;
 
 import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.DoubleViewFunction;
 import ca.uqac.lif.cep.functions.Function;
 import ca.uqac.lif.cep.functions.FunctionException;
-import java.util.LinkedList;
+import ca.uqac.lif.cep.functions.LongViewFunction;
+import ca.uqac.lif.cep.functions.ViewFunction;
+import ca.uqac.lif.cep.util.CircularBuffer;
+import ca.uqac.lif.cep.util.DoubleCircularBuffer;
+import ca.uqac.lif.cep.util.LongCircularBuffer;
 import java.util.Queue;
 
 /**
  * Takes a sliding window of <i>n</i> successive input events, passes them to an
  * <i>n</i>-ary function and outputs the result. This currently only works for
  * functions with an output arity of 1.
+ * <p>
+ * The window is kept in a {@link CircularBuffer}, so that adding an event to
+ * it takes constant time. If the function is a {@link ViewFunction}, it
+ * reads the window directly from the buffer; otherwise, the window is copied
+ * into a new array of arguments. If the function is a
+ * {@link DoubleViewFunction} (or a {@link LongViewFunction}), the window
+ * holds <tt>double</tt>s (or <tt>long</tt>s) instead of objects, and the
+ * input events must be numbers.
  * 
  * @see Window
  * @author Sylvain Hallé
@@ -47,9 +60,19 @@ public class WindowFunction extends SynchronousProcessor
   protected Function m_function;
 
   /**
-   * The event window
+   * The event window, if it holds objects
    */
-  protected LinkedList<Object> m_window;
+  protected CircularBuffer m_window;
+
+  /**
+   * The event window, if the function is a {@link DoubleViewFunction}
+   */
+  protected DoubleCircularBuffer m_doubleWindow;
+
+  /**
+   * The event window, if the function is a {@link LongViewFunction}
+   */
+  protected LongCircularBuffer m_longWindow;
 
   WindowFunction()
   {
@@ -59,7 +82,7 @@ public class WindowFunction extends SynchronousProcessor
   WindowFunction(int width)
   {
     super(1, 1);
-    m_window = new LinkedList<Object>();
+    m_window = new CircularBuffer(width);
     m_width = width;
   }
 
@@ -73,56 +96,123 @@ public class WindowFunction extends SynchronousProcessor
   {
     this(f.getInputArity());
     m_function = f;
+    if (f instanceof DoubleViewFunction)
+    {
+      m_doubleWindow = new DoubleCircularBuffer(m_width);
+      m_window = null;
+    }
+    else if (f instanceof LongViewFunction)
+    {
+      m_longWindow = new LongCircularBuffer(m_width);
+      m_window = null;
+    }
   }
 
   @Override
   protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
   {
-    m_window.add(inputs[0]);
-    int size = m_window.size();
-    if (size == m_width + 1)
+    Object[] val = new Object[1];
+    try
     {
-      m_window.remove(0);
-      Object[] val = new Object[1];
-      try
-      {
-        m_function.evaluate(m_window.toArray(), val);
-      }
-      catch (FunctionException e)
+      if (m_doubleWindow != null)
       {
-        throw new ProcessorException(e);
+        m_doubleWindow.add(((Number) inputs[0]).doubleValue());
+        if (!m_doubleWindow.isFull())
+        {
+          return true;
+        }
+        val[0] = ((DoubleViewFunction) m_function).getDoubleValue(m_doubleWindow.getArray(),
+            m_doubleWindow.getOffset(), m_width);
       }
-      outputs.add(new Object[] {val[0]});
-      return true;
-    }
-    if (size == m_width)
-    {
-      Object[] val = new Object[1];
-      try
+      else if (m_longWindow != null)
       {
-        m_function.evaluate(m_window.toArray(), val);
+        m_longWindow.add(((Number) inputs[0]).longValue());
+        if (!m_longWindow.isFull())
+        {
+          return true;
+        }
+        val[0] = ((LongViewFunction) m_function).getLongValue(m_longWindow.getArray(),
+            m_longWindow.getOffset(), m_width);
       }
-      catch (FunctionException e)
+      else
       {
-        throw new ProcessorException(e);
+        m_window.add(inputs[0]);
+        if (!m_window.isFull())
+        {
+          return true;
+        }
+        if (m_function instanceof ViewFunction)
+        {
+          ((ViewFunction) m_function).evaluate(m_window.getArray(), m_window.getOffset(),
+              m_width, val, null);
+        }
+        else
+        {
+          Object[] args = new Object[m_width];
+          if (m_width > 0)
+          {
+            m_window.copyTo(args, 0);
+          }
+          m_function.evaluate(args, val);
+        }
       }
-      outputs.add(new Object[] {val[0]});
-      return true;
     }
+    catch (FunctionException e)
+    {
+      throw new ProcessorException(e);
+    }
+    outputs.add(val);
     return true;
   }
 
+  @Override
+  public void reset()
+  {
+    super.reset();
+    if (m_window != null)
+    {
+      m_window.clear();
+    }
+    if (m_doubleWindow != null)
+    {
+      m_doubleWindow.clear();
+    }
+    if (m_longWindow != null)
+    {
+      m_longWindow.clear();
+    }
+  }
+
   @Override
   public WindowFunction duplicate(boolean with_state)
   {
     WindowFunction wf = new WindowFunction(m_function.duplicate());
     if (with_state)
     {
-      wf.m_window.addAll(m_window);
+      if (m_window != null)
+      {
+        for (int i = 0; i < m_window.size(); i++)
+        {
+          wf.m_window.add(m_window.get(i));
+        }
+      }
+      if (m_doubleWindow != null)
+      {
+        for (int i = 0; i < m_doubleWindow.size(); i++)
+        {
+          wf.m_doubleWindow.add(m_doubleWindow.get(i));
+        }
+      }
+      if (m_longWindow != null)
+      {
+        for (int i = 0; i < m_longWindow.size(); i++)
+        {
+          wf.m_longWindow.add(m_longWindow.get(i));
+        }
+      }
     }
     return wf;
   }
-
   /**
    * Gets the width of the window for this processor
    * 
@@ -67,6 +67,12 @@ public class Booleans
     {
       return x.booleanValue() && y.booleanValue();
     }
+
+    @Override
+    public boolean isAssociative()
+    {
+      return true;
+    }
     
     @Override
     protected void trackAssociations(Boolean x, Boolean y, Boolean z, EventTracker tracker)
@@ -199,6 +205,12 @@ public class Booleans
     {
       return x.booleanValue() || y.booleanValue();
     }
+
+    @Override
+    public boolean isAssociative()
+    {
+      return true;
+    }
     
     @Override
     protected void trackAssociations(Boolean x, Boolean y, Boolean z, EventTracker tracker)
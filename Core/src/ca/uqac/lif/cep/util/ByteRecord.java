@@ -0,0 +1,191 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ByteSequence} made of fields delimited by a separator, such as
+ * a line of comma-separated values. The record is split into fields only
+ * when one of its fields is first asked for, and a field is itself a
+ * {@link ByteSequence}, whose bytes are decoded only if its characters are
+ * needed. A processor chain that reads a record and only looks at two of
+ * its fields hence never creates a string for the others.
+ * <p>
+ * {@link NthElement} returns the fields of a record, like it returns the
+ * elements of an array. The functions of {@link Strings} accept any
+ * {@link CharSequence}, and {@link Numbers#numberCast} reads a number
+ * directly from the characters of a field. Fields are delimited by every
+ * occurrence of the separator; quotes have no special meaning (use
+ * {@link ParseCsv} for values that may be enclosed in quotes).
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class ByteRecord extends ByteSequence
+{
+  /**
+   * The character separating the fields
+   */
+  protected final byte m_separator;
+
+  /**
+   * The position of the first byte of each field, relative to the offset of
+   * the record, followed by the length of the record plus one; or
+   * <tt>null</tt> if the record has not been split yet
+   */
+  protected transient int[] m_bounds = null;
+
+  /**
+   * The number of fields, once the record has been split
+   */
+  protected transient int m_fieldCount = 0;
+
+  /**
+   * The fields that have been asked for so far
+   */
+  protected transient ByteSequence[] m_fields = null;
+
+  /**
+   * Creates a new byte record
+   * 
+   * @param buffer
+   *          The buffer containing the bytes. Only its absolute get methods
+   *          are used; its position and limit are ignored.
+   * @param offset
+   *          The position of the first byte in the buffer
+   * @param length
+   *          The number of bytes
+   * @param separator
+   *          The character separating the fields; must be an ASCII
+   *          character
+   */
+  public ByteRecord(/* @ non_null @ */ ByteBuffer buffer, int offset, int length, char separator)
+  {
+    this(buffer, offset, length, null, separator);
+  }
+
+  /**
+   * Creates a new byte record followed by a string. The string is part of
+   * the characters of the record, but not of its last field.
+   * 
+   * @param buffer
+   *          The buffer containing the bytes. Only its absolute get methods
+   *          are used; its position and limit are ignored.
+   * @param offset
+   *          The position of the first byte in the buffer
+   * @param length
+   *          The number of bytes
+   * @param suffix
+   *          A string appended to the characters of the bytes, or
+   *          <tt>null</tt>
+   * @param separator
+   *          The character separating the fields; must be an ASCII
+   *          character
+   */
+  public ByteRecord(/* @ non_null @ */ ByteBuffer buffer, int offset, int length,
+      /* @ null @ */ String suffix, char separator)
+  {
+    super(buffer, offset, length, suffix);
+    if (separator > 127)
+    {
+      // In UTF-8, a byte below 128 is always a character by itself
+      throw new IllegalArgumentException("The separator must be an ASCII character");
+    }
+    m_separator = (byte) separator;
+  }
+
+  /**
+   * Gets the character separating the fields
+   * 
+   * @return The character
+   */
+  public char getSeparator()
+  {
+    return (char) m_separator;
+  }
+
+  /**
+   * Gets the number of fields of the record. An empty record has one empty
+   * field.
+   * 
+   * @return The number of fields
+   */
+  public int getFieldCount()
+  {
+    split();
+    return m_fieldCount;
+  }
+
+  /**
+   * Gets a field of the record
+   * 
+   * @param n
+   *          The index of the field, starting at 0
+   * @return The field
+   * @throws IndexOutOfBoundsException
+   *           If the record has no such field
+   */
+  public ByteSequence getField(int n)
+  {
+    split();
+    if (n < 0 || n >= m_fieldCount)
+    {
+      throw new IndexOutOfBoundsException("There is no field " + n + " in this record");
+    }
+    ByteSequence field = m_fields[n];
+    if (field == null)
+    {
+      int start = m_bounds[n];
+      field = new ByteSequence(m_buffer, m_offset + start, m_bounds[n + 1] - 1 - start);
+      m_fields[n] = field;
+    }
+    return field;
+  }
+
+  /**
+   * Splits the record into fields, if it has not been done yet
+   */
+  protected void split()
+  {
+    if (m_bounds != null)
+    {
+      return;
+    }
+    int[] bounds = new int[8];
+    int count = 1;
+    bounds[0] = 0;
+    for (int i = 0; i < m_length; i++)
+    {
+      if (m_buffer.get(m_offset + i) == m_separator)
+      {
+        if (count + 1 == bounds.length)
+        {
+          int[] b = new int[2 * bounds.length];
+          System.arraycopy(bounds, 0, b, 0, count);
+          bounds = b;
+        }
+        bounds[count++] = i + 1;
+      }
+    }
+    bounds[count] = m_length + 1;
+    m_fieldCount = count;
+    m_fields = new ByteSequence[count];
+    m_bounds = bounds;
+  }
+}
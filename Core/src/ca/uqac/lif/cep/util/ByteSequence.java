@@ -0,0 +1,326 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A sequence of characters backed by a range of UTF-8 encoded bytes in a
+ * {@link ByteBuffer}. The bytes are decoded only when needed:
+ * <ul>
+ * <li>if all the bytes are ASCII characters, which is checked on the first
+ * access, each byte is a character and no decoding ever takes place;</li>
+ * <li>otherwise, the bytes are decoded into a {@link String} on the first
+ * access, and this string is kept for subsequent accesses.</li>
+ * </ul>
+ * This allows a source to produce text lines from a file without creating
+ * a string for each of them, when the processors that follow only need to
+ * look at a few characters, or to pass the lines along. A byte sequence is
+ * immutable; the bytes it refers to must not be modified as long as it is
+ * in use.
+ * <p>
+ * Two byte sequences are equal if they contain the same characters, and the
+ * hash code of a byte sequence is the same as that of the corresponding
+ * {@link String}. However, a byte sequence is never equal to a string;
+ * use {@link #toString()} to compare it to one.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class ByteSequence implements CharSequence, Comparable<CharSequence>
+{
+  /**
+   * The UTF-8 character set
+   */
+  public static final transient Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * The buffer containing the bytes
+   */
+  protected final ByteBuffer m_buffer;
+
+  /**
+   * The position of the first byte in the buffer
+   */
+  protected final int m_offset;
+
+  /**
+   * The number of bytes
+   */
+  protected final int m_length;
+
+  /**
+   * A string appended to the characters of the bytes, or <tt>null</tt>
+   */
+  protected final String m_suffix;
+
+  /**
+   * The decoded characters, once they have been decoded
+   */
+  protected transient String m_string = null;
+
+  /**
+   * Whether all the bytes are ASCII characters: 0 if this has not been
+   * checked yet, 1 if they are, -1 if they are not
+   */
+  protected transient int m_ascii = 0;
+
+  /**
+   * Creates a new byte sequence
+   * 
+   * @param buffer
+   *          The buffer containing the bytes. Only its absolute get methods
+   *          are used; its position and limit are ignored.
+   * @param offset
+   *          The position of the first byte in the buffer
+   * @param length
+   *          The number of bytes
+   */
+  public ByteSequence(/* @ non_null @ */ ByteBuffer buffer, int offset, int length)
+  {
+    this(buffer, offset, length, null);
+  }
+
+  /**
+   * Creates a new byte sequence followed by a string
+   * 
+   * @param buffer
+   *          The buffer containing the bytes. Only its absolute get methods
+   *          are used; its position and limit are ignored.
+   * @param offset
+   *          The position of the first byte in the buffer
+   * @param length
+   *          The number of bytes
+   * @param suffix
+   *          A string appended to the characters of the bytes, or
+   *          <tt>null</tt>
+   */
+  public ByteSequence(/* @ non_null @ */ ByteBuffer buffer, int offset, int length,
+      /* @ null @ */ String suffix)
+  {
+    super();
+    m_buffer = buffer;
+    m_offset = offset;
+    m_length = length;
+    m_suffix = suffix == null || suffix.isEmpty() ? null : suffix;
+  }
+
+  /**
+   * Creates a new byte sequence from an array of bytes
+   * 
+   * @param bytes
+   *          The array
+   * @param offset
+   *          The position of the first byte in the array
+   * @param length
+   *          The number of bytes
+   */
+  public ByteSequence(/* @ non_null @ */ byte[] bytes, int offset, int length)
+  {
+    this(ByteBuffer.wrap(bytes), offset, length, null);
+  }
+
+  /**
+   * Gets the buffer containing the bytes
+   * 
+   * @return The buffer
+   */
+  public ByteBuffer getBuffer()
+  {
+    return m_buffer;
+  }
+
+  /**
+   * Gets the position of the first byte in the buffer
+   * 
+   * @return The position
+   */
+  public int getOffset()
+  {
+    return m_offset;
+  }
+
+  /**
+   * Gets the number of bytes of the sequence, not counting the suffix
+   * 
+   * @return The number of bytes
+   */
+  public int getByteLength()
+  {
+    return m_length;
+  }
+
+  /**
+   * Gets a byte of the sequence
+   * 
+   * @param index
+   *          The index of the byte, between 0 and {@link #getByteLength()}
+   *          - 1
+   * @return The byte
+   */
+  public byte byteAt(int index)
+  {
+    return m_buffer.get(m_offset + index);
+  }
+
+  /**
+   * Determines if all the bytes of the sequence are ASCII characters
+   * 
+   * @return <tt>true</tt> if they are, <tt>false</tt> otherwise
+   */
+  public boolean isAscii()
+  {
+    if (m_ascii == 0)
+    {
+      m_ascii = 1;
+      for (int i = m_offset; i < m_offset + m_length; i++)
+      {
+        if (m_buffer.get(i) < 0)
+        {
+          m_ascii = -1;
+          break;
+        }
+      }
+    }
+    return m_ascii > 0;
+  }
+
+  @Override
+  public int length()
+  {
+    if (isAscii())
+    {
+      return m_suffix == null ? m_length : m_length + m_suffix.length();
+    }
+    return toString().length();
+  }
+
+  @Override
+  public char charAt(int index)
+  {
+    if (isAscii())
+    {
+      if (index < 0 || index >= length())
+      {
+        throw new IndexOutOfBoundsException(Integer.toString(index));
+      }
+      if (index < m_length)
+      {
+        return (char) m_buffer.get(m_offset + index);
+      }
+      return m_suffix.charAt(index - m_length);
+    }
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end)
+  {
+    if (isAscii() && start >= 0 && start <= end && end <= m_length)
+    {
+      return new ByteSequence(m_buffer, m_offset + start, end - start);
+    }
+    return toString().subSequence(start, end);
+  }
+
+  /**
+   * Gets the characters of the sequence as a string. The bytes are decoded
+   * on the first call, and the resulting string is kept.
+   */
+  @Override
+  public String toString()
+  {
+    if (m_string == null)
+    {
+      String s = decode(m_buffer, m_offset, m_length);
+      m_string = m_suffix == null ? s : s + m_suffix;
+    }
+    return m_string;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    // Same as String.hashCode()
+    int h = 0;
+    int len = length();
+    for (int i = 0; i < len; i++)
+    {
+      h = 31 * h + charAt(i);
+    }
+    return h;
+  }
+
+  @Override
+  public boolean equals(Object o)
+  {
+    if (o == this)
+    {
+      return true;
+    }
+    if (!(o instanceof ByteSequence))
+    {
+      return false;
+    }
+    return compareTo((ByteSequence) o) == 0;
+  }
+
+  @Override
+  public int compareTo(CharSequence s)
+  {
+    int len1 = length();
+    int len2 = s.length();
+    int lim = Math.min(len1, len2);
+    for (int i = 0; i < lim; i++)
+    {
+      char c1 = charAt(i);
+      char c2 = s.charAt(i);
+      if (c1 != c2)
+      {
+        return c1 - c2;
+      }
+    }
+    return len1 - len2;
+  }
+
+  /**
+   * Decodes a range of UTF-8 bytes in a buffer
+   * 
+   * @param buffer
+   *          The buffer
+   * @param offset
+   *          The position of the first byte
+   * @param length
+   *          The number of bytes
+   * @return The decoded string
+   */
+  public static String decode(ByteBuffer buffer, int offset, int length)
+  {
+    if (buffer.hasArray())
+    {
+      return new String(buffer.array(), buffer.arrayOffset() + offset, length, UTF8);
+    }
+    byte[] bytes = new byte[length];
+    // Work on a duplicate, so that the position of the buffer is untouched
+    ByteBuffer b = buffer.duplicate();
+    b.position(offset);
+    b.get(bytes, 0, length);
+    return new String(bytes, UTF8);
+  }
+}
@@ -0,0 +1,253 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A circular buffer holding the last <i>n</i> objects it has been given.
+ * Adding an object to a full buffer overwrites the oldest one, without
+ * allocating or moving anything.
+ * <p>
+ * Each object is written twice in the underlying array: at its position
+ * <i>i</i> and at position <i>i</i>+<i>n</i>. Thanks to this mirroring, the
+ * content of the buffer, from the oldest object to the most recent, always
+ * occupies a contiguous range of the array, which starts at
+ * {@link #getOffset()}. The whole buffer can therefore be read through
+ * {@link #getArray()}, or through the list returned by {@link #asList()},
+ * without ever being copied.
+ * 
+ * @see DoubleCircularBuffer
+ * @see LongCircularBuffer
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class CircularBuffer
+{
+  /**
+   * The array containing the objects, written twice
+   */
+  protected Object[] m_array;
+
+  /**
+   * The maximum number of objects in the buffer
+   */
+  protected int m_capacity;
+
+  /**
+   * The position where the next object will be written
+   */
+  protected int m_position = 0;
+
+  /**
+   * The number of objects in the buffer
+   */
+  protected int m_size = 0;
+
+  /**
+   * A read-only view of the buffer
+   */
+  protected final List<Object> m_view = new View();
+
+  /**
+   * Creates a new empty buffer
+   * 
+   * @param capacity
+   *          The maximum number of objects in the buffer
+   */
+  public CircularBuffer(int capacity)
+  {
+    super();
+    m_capacity = Math.max(1, capacity);
+    m_array = new Object[2 * m_capacity];
+  }
+
+  /**
+   * Adds an object at the end of the buffer. If the buffer is full, its
+   * oldest object is discarded.
+   * 
+   * @param o
+   *          The object
+   * @return The object discarded, or <tt>null</tt> if the buffer was not
+   *         full
+   */
+  public Object add(Object o)
+  {
+    Object discarded = m_array[m_position];
+    m_array[m_position] = o;
+    m_array[m_position + m_capacity] = o;
+    m_position++;
+    if (m_position == m_capacity)
+    {
+      m_position = 0;
+    }
+    if (m_size < m_capacity)
+    {
+      m_size++;
+      return null;
+    }
+    return discarded;
+  }
+
+  /**
+   * Gets an object of the buffer
+   * 
+   * @param index
+   *          The index of the object, 0 being the oldest
+   * @return The object
+   */
+  public Object get(int index)
+  {
+    return m_array[getOffset() + index];
+  }
+
+  /**
+   * Gets the array containing the objects of the buffer. The objects, from
+   * the oldest to the most recent, are at indices {@link #getOffset()} to
+   * {@link #getOffset()}&nbsp;+&nbsp;{@link #size()}&nbsp;&minus;&nbsp;1. The
+   * array is not a copy: it must not be modified, and its content changes on
+   * the next call to {@link #add(Object) add()}.
+   * 
+   * @return The array
+   */
+  public Object[] getArray()
+  {
+    return m_array;
+  }
+
+  /**
+   * Gets the index, in the array returned by {@link #getArray()}, of the
+   * oldest object of the buffer
+   * 
+   * @return The index
+   */
+  public int getOffset()
+  {
+    return m_size < m_capacity ? 0 : m_position;
+  }
+
+  /**
+   * Gets a read-only list of the objects of the buffer, from the oldest to
+   * the most recent. The list is not a copy: it always reflects the current
+   * content of the buffer.
+   * 
+   * @return The list
+   */
+  public List<Object> asList()
+  {
+    return m_view;
+  }
+
+  /**
+   * Copies the objects of the buffer into an array
+   * 
+   * @param dst
+   *          The array
+   * @param offset
+   *          The index in the array where to write the oldest object
+   */
+  public void copyTo(Object[] dst, int offset)
+  {
+    System.arraycopy(m_array, getOffset(), dst, offset, m_size);
+  }
+
+  /**
+   * Gets the number of objects in the buffer
+   * 
+   * @return The number of objects
+   */
+  public int size()
+  {
+    return m_size;
+  }
+
+  /**
+   * Gets the maximum number of objects in the buffer
+   * 
+   * @return The capacity
+   */
+  public int getCapacity()
+  {
+    return m_capacity;
+  }
+
+  /**
+   * Determines if the buffer is full
+   * 
+   * @return <tt>true</tt> if the buffer holds as many objects as its
+   *         capacity, <tt>false</tt> otherwise
+   */
+  public boolean isFull()
+  {
+    return m_size == m_capacity;
+  }
+
+  /**
+   * Changes the maximum number of objects in the buffer. If the buffer holds
+   * more objects than the new capacity, only the most recent ones are kept.
+   * 
+   * @param capacity
+   *          The new capacity
+   */
+  public void setCapacity(int capacity)
+  {
+    capacity = Math.max(1, capacity);
+    int size = Math.min(m_size, capacity);
+    Object[] array = new Object[2 * capacity];
+    System.arraycopy(m_array, getOffset() + m_size - size, array, 0, size);
+    System.arraycopy(array, 0, array, capacity, size);
+    m_array = array;
+    m_capacity = capacity;
+    m_size = size;
+    m_position = size == capacity ? 0 : size;
+  }
+
+  /**
+   * Removes all the objects of the buffer
+   */
+  public void clear()
+  {
+    Arrays.fill(m_array, null);
+    m_position = 0;
+    m_size = 0;
+  }
+
+  /**
+   * A read-only list backed by the buffer
+   */
+  protected class View extends AbstractList<Object>
+  {
+    @Override
+    public Object get(int index)
+    {
+      if (index < 0 || index >= m_size)
+      {
+        throw new IndexOutOfBoundsException(Integer.toString(index));
+      }
+      return m_array[getOffset() + index];
+    }
+
+    @Override
+    public int size()
+    {
+      return m_size;
+    }
+  }
+}
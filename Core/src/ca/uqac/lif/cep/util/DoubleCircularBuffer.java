@@ -0,0 +1,202 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.util;
+
+/**
+ * A circular buffer holding the last <i>n</i> <tt>double</tt>s it has been
+ * given. It works like a {@link CircularBuffer}, but stores its values
+ * without boxing them.
+ * <p>
+ * Each value is written twice in the underlying array: at its position
+ * <i>i</i> and at position <i>i</i>+<i>n</i>. Thanks to this mirroring, the
+ * content of the buffer, from the oldest value to the most recent, always
+ * occupies a contiguous range of the array, which starts at
+ * {@link #getOffset()}. The whole buffer can therefore be read through
+ * {@link #getArray()} without ever being copied.
+ * 
+ * @see CircularBuffer
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class DoubleCircularBuffer
+{
+  /**
+   * The array containing the values, written twice
+   */
+  protected double[] m_array;
+
+  /**
+   * The maximum number of values in the buffer
+   */
+  protected int m_capacity;
+
+  /**
+   * The position where the next value will be written
+   */
+  protected int m_position = 0;
+
+  /**
+   * The number of values in the buffer
+   */
+  protected int m_size = 0;
+
+  /**
+   * Creates a new empty buffer
+   * 
+   * @param capacity
+   *          The maximum number of values in the buffer
+   */
+  public DoubleCircularBuffer(int capacity)
+  {
+    super();
+    m_capacity = Math.max(1, capacity);
+    m_array = new double[2 * m_capacity];
+  }
+
+  /**
+   * Adds a value at the end of the buffer. If the buffer is full, its
+   * oldest value is discarded.
+   * 
+   * @param x
+   *          The value
+   */
+  public void add(double x)
+  {
+    m_array[m_position] = x;
+    m_array[m_position + m_capacity] = x;
+    m_position++;
+    if (m_position == m_capacity)
+    {
+      m_position = 0;
+    }
+    if (m_size < m_capacity)
+    {
+      m_size++;
+    }
+  }
+
+  /**
+   * Gets a value of the buffer
+   * 
+   * @param index
+   *          The index of the value, 0 being the oldest
+   * @return The value
+   */
+  public double get(int index)
+  {
+    return m_array[getOffset() + index];
+  }
+
+  /**
+   * Gets the array containing the values of the buffer. The values, from
+   * the oldest to the most recent, are at indices {@link #getOffset()} to
+   * {@link #getOffset()}&nbsp;+&nbsp;{@link #size()}&nbsp;&minus;&nbsp;1. The
+   * array is not a copy: it must not be modified, and its content changes on
+   * the next call to {@link #add(double) add()}.
+   * 
+   * @return The array
+   */
+  public double[] getArray()
+  {
+    return m_array;
+  }
+
+  /**
+   * Gets the index, in the array returned by {@link #getArray()}, of the
+   * oldest value of the buffer
+   * 
+   * @return The index
+   */
+  public int getOffset()
+  {
+    return m_size < m_capacity ? 0 : m_position;
+  }
+
+  /**
+   * Copies the values of the buffer into an array
+   * 
+   * @param dst
+   *          The array
+   * @param offset
+   *          The index in the array where to write the oldest value
+   */
+  public void copyTo(double[] dst, int offset)
+  {
+    System.arraycopy(m_array, getOffset(), dst, offset, m_size);
+  }
+
+  /**
+   * Gets the number of values in the buffer
+   * 
+   * @return The number of values
+   */
+  public int size()
+  {
+    return m_size;
+  }
+
+  /**
+   * Gets the maximum number of values in the buffer
+   * 
+   * @return The capacity
+   */
+  public int getCapacity()
+  {
+    return m_capacity;
+  }
+
+  /**
+   * Determines if the buffer is full
+   * 
+   * @return <tt>true</tt> if the buffer holds as many values as its
+   *         capacity, <tt>false</tt> otherwise
+   */
+  public boolean isFull()
+  {
+    return m_size == m_capacity;
+  }
+
+  /**
+   * Changes the maximum number of values in the buffer. If the buffer holds
+   * more values than the new capacity, only the most recent ones are kept.
+   * 
+   * @param capacity
+   *          The new capacity
+   */
+  public void setCapacity(int capacity)
+  {
+    capacity = Math.max(1, capacity);
+    int size = Math.min(m_size, capacity);
+    double[] array = new double[2 * capacity];
+    System.arraycopy(m_array, getOffset() + m_size - size, array, 0, size);
+    System.arraycopy(array, 0, array, capacity, size);
+    m_array = array;
+    m_capacity = capacity;
+    m_size = size;
+    m_position = size == capacity ? 0 : size;
+  }
+
+  /**
+   * Removes all the values of the buffer
+   */
+  public void clear()
+  {
+    m_position = 0;
+    m_size = 0;
+  }
+}
@@ -89,6 +89,13 @@ public class Equals extends BinaryFunction<Object, Object, Boolean>
     {
       return ((String) x).compareTo((String) y) == 0;
     }
+    if ((x instanceof ByteSequence && y instanceof CharSequence)
+        || (y instanceof ByteSequence && x instanceof CharSequence))
+    {
+      // Compare the characters of a byte sequence to those of a string
+      return x instanceof ByteSequence ? ((ByteSequence) x).compareTo((CharSequence) y) == 0
+          : ((ByteSequence) y).compareTo((CharSequence) x) == 0;
+    }
     if (x instanceof Number && y instanceof Number)
     {
       return ((Number) x).floatValue() == ((Number) y).floatValue();
@@ -24,7 +24,7 @@ import java.util.List;
 
 /**
  * Function that returns the n-th element of an ordered collection (array or
- * list).
+ * list), or the n-th field of a {@link ByteRecord}.
  * 
  * @author Sylvain Hallé
  * @since 0.7
@@ -71,6 +71,16 @@ public class NthElement extends UnaryFunction<Object, Object>
         throw new FunctionException("There is no " + m_n + "th element in the input argument");
       }
     }
+    if (x instanceof ByteRecord)
+    {
+      // The field is returned as is: its bytes are decoded only if needed
+      ByteRecord record = (ByteRecord) x;
+      if (m_n >= record.getFieldCount())
+      {
+        throw new FunctionException("There is no " + m_n + "th element in the input argument");
+      }
+      return record.getField(m_n);
+    }
     if (x instanceof List<?>)
     {
       List<?> list = (List<?>) x;
@@ -20,11 +20,31 @@ package ca.uqac.lif.cep.util;
 import ca.uqac.lif.cep.Context;
 import ca.uqac.lif.cep.EventTracker;
 import ca.uqac.lif.cep.functions.BinaryFunction;
+import ca.uqac.lif.cep.functions.DoubleBinaryFunction;
+import ca.uqac.lif.cep.functions.DoubleBinaryPredicate;
+import ca.uqac.lif.cep.functions.DoubleUnaryFunction;
+import ca.uqac.lif.cep.functions.DoubleViewFunction;
+import ca.uqac.lif.cep.functions.Function;
 import ca.uqac.lif.cep.functions.FunctionException;
+import ca.uqac.lif.cep.functions.LongBinaryFunction;
+import ca.uqac.lif.cep.functions.LongBinaryPredicate;
+import ca.uqac.lif.cep.functions.LongUnaryFunction;
+import ca.uqac.lif.cep.functions.Primitives;
 import ca.uqac.lif.cep.functions.UnaryFunction;
+import java.util.Set;
 
 /**
  * A container object for functions applying to numbers.
+ * <p>
+ * Their regular evaluation computes on <tt>float</tt>s, whatever the kind of
+ * number they are given. Most of them also have a primitive form, which
+ * computes on <tt>long</tt>s or <tt>double</tt>s without boxing (see
+ * {@link Primitives}); it is only used by the evaluators that ask for it,
+ * and never changes the type of a boxed result. The exception are the
+ * aggregates of <i>n</i> numbers ({@link SumOf}, {@link AverageOf},
+ * {@link MaximumOf} and {@link MinimumOf}), which compute on
+ * <tt>double</tt>s so that a {@link ca.uqac.lif.cep.tmf.WindowFunction
+ * WindowFunction} can evaluate them on a window of unboxed values.
  * 
  * @author Sylvain Hallé
  * @since 0.7
@@ -94,6 +114,7 @@ public class Numbers
    * @since 0.7
    */
   public static final class AbsoluteValue extends UnaryFunction<Number, Number>
+      implements LongUnaryFunction, DoubleUnaryFunction
   {
     protected AbsoluteValue()
     {
@@ -106,6 +127,18 @@ public class Numbers
       return Math.abs(x.floatValue());
     }
 
+    @Override
+    public long getLongValue(long x)
+    {
+      return Math.abs(x);
+    }
+
+    @Override
+    public double getDoubleValue(double x)
+    {
+      return Math.abs(x);
+    }
+
     @Override
     public String toString()
     {
@@ -120,6 +153,7 @@ public class Numbers
    * @since 0.7
    */
   public static final class Addition extends BinaryFunction<Number, Number, Number>
+      implements LongBinaryFunction, DoubleBinaryFunction
   {
     /**
      * Make constructor private, to force users to refer to the static instance of
@@ -136,6 +170,28 @@ public class Numbers
       return x.floatValue() + y.floatValue();
     }
 
+    @Override
+    public boolean isAssociative()
+    {
+      return true;
+    }
+
+    /**
+     * @throws ArithmeticException
+     *           If the result overflows a <tt>long</tt>
+     */
+    @Override
+    public long getLongValue(long x, long y)
+    {
+      return addExact(x, y);
+    }
+
+    @Override
+    public double getDoubleValue(double x, double y)
+    {
+      return x + y;
+    }
+
     @Override
     public Number getStartValue()
     {
@@ -156,6 +212,7 @@ public class Numbers
    * @since 0.7
    */
   public static final class Division extends BinaryFunction<Number, Number, Number>
+      implements DoubleBinaryFunction
   {
     protected Division()
     {
@@ -168,6 +225,12 @@ public class Numbers
       return x.floatValue() / y.floatValue();
     }
 
+    @Override
+    public double getDoubleValue(double x, double y)
+    {
+      return x / y;
+    }
+
     @Override
     public Number getStartValue()
     {
@@ -218,6 +281,7 @@ public class Numbers
    * @since 0.7
    */
   public static final class IsGreaterOrEqual extends BinaryFunction<Number, Number, Boolean>
+      implements LongBinaryPredicate, DoubleBinaryPredicate
   {
     protected IsGreaterOrEqual()
     {
@@ -230,6 +294,18 @@ public class Numbers
       return x.floatValue() >= y.floatValue();
     }
 
+    @Override
+    public boolean test(long x, long y)
+    {
+      return x >= y;
+    }
+
+    @Override
+    public boolean test(double x, double y)
+    {
+      return x >= y;
+    }
+
     @Override
     public Boolean getStartValue()
     {
@@ -250,6 +326,7 @@ public class Numbers
    * @since 0.7
    */
   public static final class IsGreaterThan extends BinaryFunction<Number, Number, Boolean>
+      implements LongBinaryPredicate, DoubleBinaryPredicate
   {
     protected IsGreaterThan()
     {
@@ -262,6 +339,18 @@ public class Numbers
       return x.floatValue() > y.floatValue();
     }
 
+    @Override
+    public boolean test(long x, long y)
+    {
+      return x > y;
+    }
+
+    @Override
+    public boolean test(double x, double y)
+    {
+      return x > y;
+    }
+
     @Override
     public Boolean getStartValue()
     {
@@ -282,6 +371,7 @@ public class Numbers
    * @since 0.7
    */
   public static final class IsLessOrEqual extends BinaryFunction<Number, Number, Boolean>
+      implements LongBinaryPredicate, DoubleBinaryPredicate
   {
     private IsLessOrEqual()
     {
@@ -294,6 +384,18 @@ public class Numbers
       return x.floatValue() <= y.floatValue();
     }
 
+    @Override
+    public boolean test(long x, long y)
+    {
+      return x <= y;
+    }
+
+    @Override
+    public boolean test(double x, double y)
+    {
+      return x <= y;
+    }
+
     @Override
     public Boolean getStartValue()
     {
@@ -314,6 +416,7 @@ public class Numbers
    * @since 0.7
    */
   public static final class IsLessThan extends BinaryFunction<Number, Number, Boolean>
+      implements LongBinaryPredicate, DoubleBinaryPredicate
   {
     protected IsLessThan()
     {
@@ -326,6 +429,18 @@ public class Numbers
       return x.floatValue() < y.floatValue();
     }
 
+    @Override
+    public boolean test(long x, long y)
+    {
+      return x < y;
+    }
+
+    @Override
+    public boolean test(double x, double y)
+    {
+      return x < y;
+    }
+
     @Override
     public Boolean getStartValue()
     {
@@ -347,6 +462,7 @@ public class Numbers
    * @since 0.7
    */
   public static final class Maximum extends BinaryFunction<Number, Number, Number>
+      implements LongBinaryFunction, DoubleBinaryFunction
   {
     protected Maximum()
     {
@@ -359,6 +475,24 @@ public class Numbers
       return Math.max(x.floatValue(), y.floatValue());
     }
 
+    @Override
+    public boolean isAssociative()
+    {
+      return true;
+    }
+
+    @Override
+    public long getLongValue(long x, long y)
+    {
+      return Math.max(x, y);
+    }
+
+    @Override
+    public double getDoubleValue(double x, double y)
+    {
+      return Math.max(x, y);
+    }
+
     @Override
     public Number getStartValue()
     {
@@ -374,6 +508,7 @@ public class Numbers
    * @since 0.7
    */
   public static final class Minimum extends BinaryFunction<Number, Number, Number>
+      implements LongBinaryFunction, DoubleBinaryFunction
   {
     protected Minimum()
     {
@@ -386,6 +521,24 @@ public class Numbers
       return Math.min(x.floatValue(), y.floatValue());
     }
 
+    @Override
+    public boolean isAssociative()
+    {
+      return true;
+    }
+
+    @Override
+    public long getLongValue(long x, long y)
+    {
+      return Math.min(x, y);
+    }
+
+    @Override
+    public double getDoubleValue(double x, double y)
+    {
+      return Math.min(x, y);
+    }
+
     @Override
     public Number getStartValue()
     {
@@ -401,6 +554,7 @@ public class Numbers
    * @since 0.7
    */
   public static final class Multiplication extends BinaryFunction<Number, Number, Number>
+      implements LongBinaryFunction, DoubleBinaryFunction
   {
     protected Multiplication()
     {
@@ -412,6 +566,28 @@ public class Numbers
     {
       return x.floatValue() * y.floatValue();
     }
+
+    @Override
+    public boolean isAssociative()
+    {
+      return true;
+    }
+
+    /**
+     * @throws ArithmeticException
+     *           If the result overflows a <tt>long</tt>
+     */
+    @Override
+    public long getLongValue(long x, long y)
+    {
+      return multiplyExact(x, y);
+    }
+
+    @Override
+    public double getDoubleValue(double x, double y)
+    {
+      return x * y;
+    }
     
     @Override
     protected void trackAssociations(Number x, Number y, Number z, EventTracker tracker)
@@ -504,6 +680,23 @@ public class Numbers
       {
         return (Number) x;
       }
+      if (x instanceof ByteSequence)
+      {
+        // Read an integer from the bytes, without decoding them first
+        Integer n = parseInteger((ByteSequence) x);
+        if (n != null)
+        {
+          return n;
+        }
+        try
+        {
+          return Float.parseFloat(x.toString());
+        }
+        catch (NumberFormatException e)
+        {
+          throw new FunctionException(e);
+        }
+      }
       if (!(x instanceof String))
       {
         // Anything but a string: work on the value of toString
@@ -529,6 +722,61 @@ public class Numbers
       }
       throw new FunctionException("Object incompatible with Number");
     }
+
+    /**
+     * Reads an integer from a sequence of characters, in the same way as
+     * {@link Integer#parseInt(String)}
+     * 
+     * @param s
+     *          The characters
+     * @return The integer, or <tt>null</tt> if the characters do not
+     *         represent an integer
+     * @since 0.11
+     */
+    protected static Integer parseInteger(CharSequence s)
+    {
+      int len = s.length();
+      if (len == 0)
+      {
+        return null;
+      }
+      int i = 0;
+      char c = s.charAt(0);
+      boolean negative = c == '-';
+      if (negative || c == '+')
+      {
+        if (len == 1)
+        {
+          return null;
+        }
+        i++;
+      }
+      // The value is accumulated as a negative number, whose range includes
+      // that of the positive numbers
+      long x = 0;
+      for (; i < len; i++)
+      {
+        int d = s.charAt(i) - '0';
+        if (d < 0 || d > 9)
+        {
+          return null;
+        }
+        x = 10 * x - d;
+        if (x < Integer.MIN_VALUE)
+        {
+          return null;
+        }
+      }
+      if (!negative)
+      {
+        if (x == Integer.MIN_VALUE)
+        {
+          return null;
+        }
+        x = -x;
+      }
+      return (int) x;
+    }
   }
 
   /**
@@ -538,6 +786,7 @@ public class Numbers
    * @since 0.7
    */
   public static final class Power extends BinaryFunction<Number, Number, Number>
+      implements DoubleBinaryFunction
   {
     protected Power()
     {
@@ -550,6 +799,12 @@ public class Numbers
       return Math.pow(x.floatValue(), y.floatValue());
     }
 
+    @Override
+    public double getDoubleValue(double x, double y)
+    {
+      return Math.pow(x, y);
+    }
+
     @Override
     public Number getStartValue()
     {
@@ -598,6 +853,7 @@ public class Numbers
    * @since 0.7
    */
   public static final class SquareRoot extends UnaryFunction<Number, Number>
+      implements DoubleUnaryFunction
   {
     protected SquareRoot()
     {
@@ -610,6 +866,12 @@ public class Numbers
       return Math.sqrt(x.floatValue());
     }
 
+    @Override
+    public double getDoubleValue(double x)
+    {
+      return Math.sqrt(x);
+    }
+
     @Override
     public String toString()
     {
@@ -625,6 +887,7 @@ public class Numbers
    * @since 0.7
    */
   public static final class Subtraction extends BinaryFunction<Number, Number, Number>
+      implements LongBinaryFunction, DoubleBinaryFunction
   {
     private Subtraction()
     {
@@ -637,6 +900,22 @@ public class Numbers
       return x.floatValue() - y.floatValue();
     }
 
+    /**
+     * @throws ArithmeticException
+     *           If the result overflows a <tt>long</tt>
+     */
+    @Override
+    public long getLongValue(long x, long y)
+    {
+      return subtractExact(x, y);
+    }
+
+    @Override
+    public double getDoubleValue(double x, double y)
+    {
+      return x - y;
+    }
+
     @Override
     public Number getStartValue()
     {
@@ -656,6 +935,7 @@ public class Numbers
    * @since 0.10.2
    */
   public static final class Ceiling extends UnaryFunction<Number,Number>
+      implements LongUnaryFunction, DoubleUnaryFunction
   {
     private Ceiling()
     {
@@ -667,6 +947,18 @@ public class Numbers
     {
       return Math.ceil(x.floatValue());
     }
+
+    @Override
+    public long getLongValue(long x)
+    {
+      return x;
+    }
+
+    @Override
+    public double getDoubleValue(double x)
+    {
+      return Math.ceil(x);
+    }
     
     @Override
     public String toString()
@@ -681,6 +973,7 @@ public class Numbers
    * @since 0.10.2
    */
   public static final class Floor extends UnaryFunction<Number,Number>
+      implements LongUnaryFunction, DoubleUnaryFunction
   {
     private Floor()
     {
@@ -692,6 +985,18 @@ public class Numbers
     {
       return Math.floor(x.floatValue());
     }
+
+    @Override
+    public long getLongValue(long x)
+    {
+      return x;
+    }
+
+    @Override
+    public double getDoubleValue(double x)
+    {
+      return Math.floor(x);
+    }
     
     @Override
     public String toString()
@@ -699,4 +1004,384 @@ public class Numbers
       return "FLOOR";
     }
   }
+
+  /**
+   * A function aggregating a fixed number of numbers into a {@link Double}.
+   * Its input arity is the number of values it aggregates, and it
+   * implements {@link DoubleViewFunction}: given to a
+   * {@link ca.uqac.lif.cep.tmf.WindowFunction WindowFunction}, it is
+   * evaluated directly on the window's buffer of <tt>double</tt>s.
+   * 
+   * @author Sylvain Hallé
+   * @since 0.11
+   */
+  public abstract static class NumberAggregate extends Function implements DoubleViewFunction
+  {
+    /**
+     * The number of values to aggregate
+     */
+    protected final int m_arity;
+
+    /**
+     * Creates a new aggregate
+     * 
+     * @param arity
+     *          The number of values to aggregate
+     */
+    public NumberAggregate(int arity)
+    {
+      super();
+      m_arity = arity;
+    }
+
+    @Override
+    public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+    {
+      outputs[0] = getValue(inputs);
+    }
+
+    /**
+     * Computes the aggregate of the input arguments
+     * 
+     * @param inputs
+     *          The arguments
+     * @return The aggregate
+     */
+    protected abstract double getValue(Object[] inputs);
+
+    @Override
+    public int getInputArity()
+    {
+      return m_arity;
+    }
+
+    @Override
+    public int getOutputArity()
+    {
+      return 1;
+    }
+
+    @Override
+    public void getInputTypesFor(Set<Class<?>> classes, int index)
+    {
+      classes.add(Number.class);
+    }
+
+    @Override
+    public Class<?> getOutputTypeFor(int index)
+    {
+      return Number.class;
+    }
+
+    @Override
+    public Object printState()
+    {
+      return m_arity;
+    }
+  }
+
+  /**
+   * Computes the sum of <i>n</i> numbers
+   * 
+   * @author Sylvain Hallé
+   * @since 0.11
+   */
+  public static class SumOf extends NumberAggregate
+  {
+    /**
+     * Creates a new sum
+     * 
+     * @param arity
+     *          The number of values to add
+     */
+    public SumOf(int arity)
+    {
+      super(arity);
+    }
+
+    @Override
+    protected double getValue(Object[] inputs)
+    {
+      double sum = 0;
+      for (int i = 0; i < m_arity; i++)
+      {
+        sum += ((Number) inputs[i]).doubleValue();
+      }
+      return sum;
+    }
+
+    @Override
+    public double getDoubleValue(double[] values, int offset, int length)
+    {
+      double sum = 0;
+      for (int i = offset; i < offset + length; i++)
+      {
+        sum += values[i];
+      }
+      return sum;
+    }
+
+    @Override
+    public SumOf duplicate(boolean with_state)
+    {
+      return new SumOf(m_arity);
+    }
+
+    public SumOf readState(Object o)
+    {
+      return new SumOf(((Number) o).intValue());
+    }
+
+    @Override
+    public String toString()
+    {
+      return "SUM";
+    }
+  }
+
+  /**
+   * Computes the average of <i>n</i> numbers
+   * 
+   * @author Sylvain Hallé
+   * @since 0.11
+   */
+  public static class AverageOf extends NumberAggregate
+  {
+    /**
+     * Creates a new average
+     * 
+     * @param arity
+     *          The number of values to average
+     */
+    public AverageOf(int arity)
+    {
+      super(arity);
+    }
+
+    @Override
+    protected double getValue(Object[] inputs)
+    {
+      double sum = 0;
+      for (int i = 0; i < m_arity; i++)
+      {
+        sum += ((Number) inputs[i]).doubleValue();
+      }
+      return sum / m_arity;
+    }
+
+    @Override
+    public double getDoubleValue(double[] values, int offset, int length)
+    {
+      double sum = 0;
+      for (int i = offset; i < offset + length; i++)
+      {
+        sum += values[i];
+      }
+      return sum / length;
+    }
+
+    @Override
+    public AverageOf duplicate(boolean with_state)
+    {
+      return new AverageOf(m_arity);
+    }
+
+    public AverageOf readState(Object o)
+    {
+      return new AverageOf(((Number) o).intValue());
+    }
+
+    @Override
+    public String toString()
+    {
+      return "AVG";
+    }
+  }
+
+  /**
+   * Computes the maximum of <i>n</i> numbers
+   * 
+   * @author Sylvain Hallé
+   * @since 0.11
+   */
+  public static class MaximumOf extends NumberAggregate
+  {
+    /**
+     * Creates a new maximum
+     * 
+     * @param arity
+     *          The number of values to compare
+     */
+    public MaximumOf(int arity)
+    {
+      super(arity);
+    }
+
+    @Override
+    protected double getValue(Object[] inputs)
+    {
+      double max = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < m_arity; i++)
+      {
+        max = Math.max(max, ((Number) inputs[i]).doubleValue());
+      }
+      return max;
+    }
+
+    @Override
+    public double getDoubleValue(double[] values, int offset, int length)
+    {
+      double max = Double.NEGATIVE_INFINITY;
+      for (int i = offset; i < offset + length; i++)
+      {
+        max = Math.max(max, values[i]);
+      }
+      return max;
+    }
+
+    @Override
+    public MaximumOf duplicate(boolean with_state)
+    {
+      return new MaximumOf(m_arity);
+    }
+
+    public MaximumOf readState(Object o)
+    {
+      return new MaximumOf(((Number) o).intValue());
+    }
+
+    @Override
+    public String toString()
+    {
+      return "MAX";
+    }
+  }
+
+  /**
+   * Computes the minimum of <i>n</i> numbers
+   * 
+   * @author Sylvain Hallé
+   * @since 0.11
+   */
+  public static class MinimumOf extends NumberAggregate
+  {
+    /**
+     * Creates a new minimum
+     * 
+     * @param arity
+     *          The number of values to compare
+     */
+    public MinimumOf(int arity)
+    {
+      super(arity);
+    }
+
+    @Override
+    protected double getValue(Object[] inputs)
+    {
+      double min = Double.POSITIVE_INFINITY;
+      for (int i = 0; i < m_arity; i++)
+      {
+        min = Math.min(min, ((Number) inputs[i]).doubleValue());
+      }
+      return min;
+    }
+
+    @Override
+    public double getDoubleValue(double[] values, int offset, int length)
+    {
+      double min = Double.POSITIVE_INFINITY;
+      for (int i = offset; i < offset + length; i++)
+      {
+        min = Math.min(min, values[i]);
+      }
+      return min;
+    }
+
+    @Override
+    public MinimumOf duplicate(boolean with_state)
+    {
+      return new MinimumOf(m_arity);
+    }
+
+    public MinimumOf readState(Object o)
+    {
+      return new MinimumOf(((Number) o).intValue());
+    }
+
+    @Override
+    public String toString()
+    {
+      return "MIN";
+    }
+  }
+
+  /**
+   * Adds two <tt>long</tt>s, checking for an overflow
+   * 
+   * @param x
+   *          The first number
+   * @param y
+   *          The second number
+   * @return The sum
+   * @throws ArithmeticException
+   *           If the result overflows a <tt>long</tt>
+   * @since 0.11
+   */
+  public static long addExact(long x, long y)
+  {
+    long r = x + y;
+    if (((x ^ r) & (y ^ r)) < 0)
+    {
+      throw new ArithmeticException("long overflow");
+    }
+    return r;
+  }
+
+  /**
+   * Subtracts two <tt>long</tt>s, checking for an overflow
+   * 
+   * @param x
+   *          The first number
+   * @param y
+   *          The second number
+   * @return The difference
+   * @throws ArithmeticException
+   *           If the result overflows a <tt>long</tt>
+   * @since 0.11
+   */
+  public static long subtractExact(long x, long y)
+  {
+    long r = x - y;
+    if (((x ^ y) & (x ^ r)) < 0)
+    {
+      throw new ArithmeticException("long overflow");
+    }
+    return r;
+  }
+
+  /**
+   * Multiplies two <tt>long</tt>s, checking for an overflow
+   * 
+   * @param x
+   *          The first number
+   * @param y
+   *          The second number
+   * @return The product
+   * @throws ArithmeticException
+   *           If the result overflows a <tt>long</tt>
+   * @since 0.11
+   */
+  public static long multiplyExact(long x, long y)
+  {
+    long r = x * y;
+    long ax = Math.abs(x);
+    long ay = Math.abs(y);
+    if (((ax | ay) >>> 31) != 0
+        && ((y != 0 && r / y != x) || (x == Long.MIN_VALUE && y == -1)))
+    {
+      throw new ArithmeticException("long overflow");
+    }
+    return r;
+  }
 }
@@ -0,0 +1,348 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.util;
+
+import ca.uqac.lif.cep.ProcessorException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+/**
+ * Hands tasks to an {@link Executor}, and gives back their results either
+ * in the order in which the tasks were submitted (<em>ordered</em> mode) or
+ * in the order in which they complete. This is what a processor evaluating
+ * several events at the same time uses to produce its output fronts in the
+ * thread that calls it.
+ * <p>
+ * In ordered mode, the results of the tasks that complete before those
+ * submitted earlier are kept until these have completed. An exception
+ * thrown by a task is likewise only thrown, wrapped in a
+ * {@link ProcessorException}, when the result of this task is asked for.
+ * Tasks must not return <tt>null</tt>.
+ * <p>
+ * An instance of this class is meant to be used by a single thread.
+ * 
+ * @param <T> The type of the results of the tasks
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class OrderedCompletion<T>
+{
+  /**
+   * The service receiving the results of the tasks as they complete
+   */
+  protected final CompletionService<Completed<T>> m_completion;
+
+  /**
+   * Whether the results are given back in the order of the tasks
+   */
+  protected final boolean m_ordered;
+
+  /**
+   * The results that have been received but not given back yet, indexed by
+   * the sequence number of their task
+   */
+  protected final Map<Long, Completed<T>> m_reorder;
+
+  /**
+   * The number of tasks submitted so far
+   */
+  protected long m_submitted = 0;
+
+  /**
+   * The number of results received from the completion service so far
+   */
+  protected long m_received = 0;
+
+  /**
+   * The number of results given back so far
+   */
+  protected long m_emitted = 0;
+
+  /**
+   * Creates a new ordered completion
+   * 
+   * @param executor
+   *          The executor running the tasks
+   * @param ordered
+   *          <tt>true</tt> to give back the results in the order of the
+   *          tasks, <tt>false</tt> to give them back as they complete
+   */
+  public OrderedCompletion(/* @ non_null @ */ Executor executor, boolean ordered)
+  {
+    super();
+    m_completion = new ExecutorCompletionService<Completed<T>>(executor);
+    m_ordered = ordered;
+    m_reorder = new HashMap<Long, Completed<T>>();
+  }
+
+  /**
+   * Hands a task to the executor
+   * 
+   * @param task
+   *          The task
+   */
+  public void submit(/* @ non_null @ */ final Callable<T> task)
+  {
+    final long sequence = m_submitted++;
+    m_completion.submit(new Callable<Completed<T>>()
+    {
+      @Override
+      public Completed<T> call()
+      {
+        try
+        {
+          return new Completed<T>(sequence, task.call(), null);
+        }
+        catch (Exception e)
+        {
+          return new Completed<T>(sequence, null, e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Gives back the next result, if it is available
+   * 
+   * @return The result, or <tt>null</tt> if no result can be given back
+   *         without waiting
+   * @throws ProcessorException
+   *           If the task of this result threw an exception
+   */
+  /*@ null @*/ public T poll()
+  {
+    for (;;)
+    {
+      Completed<T> c = ready();
+      if (c != null)
+      {
+        return emit(c);
+      }
+      Future<Completed<T>> f = m_completion.poll();
+      if (f == null)
+      {
+        return null;
+      }
+      receive(f);
+    }
+  }
+
+  /**
+   * Gives back the next result, waiting for it if necessary
+   * 
+   * @return The result, or <tt>null</tt> if the results of all the tasks
+   *         submitted so far have been given back
+   * @throws ProcessorException
+   *           If the task of this result threw an exception
+   */
+  /*@ null @*/ public T take()
+  {
+    for (;;)
+    {
+      Completed<T> c = ready();
+      if (c != null)
+      {
+        return emit(c);
+      }
+      if (m_received == m_submitted)
+      {
+        return null;
+      }
+      receive(waitForNext());
+    }
+  }
+
+  /**
+   * Gets the number of tasks whose result has not been given back yet
+   * 
+   * @return The number of tasks
+   */
+  /*@ pure @*/ public long getInFlight()
+  {
+    return m_submitted - m_emitted;
+  }
+
+  /**
+   * Gets the number of tasks submitted so far
+   * 
+   * @return The number of tasks
+   */
+  /*@ pure @*/ public long getSubmitted()
+  {
+    return m_submitted;
+  }
+
+  /**
+   * Gets the number of results given back so far
+   * 
+   * @return The number of results
+   */
+  /*@ pure @*/ public long getEmitted()
+  {
+    return m_emitted;
+  }
+
+  /**
+   * Waits for the tasks still running, and drops all the results that have
+   * not been given back
+   */
+  public void clear()
+  {
+    while (m_received < m_submitted)
+    {
+      waitForNext();
+      m_received++;
+    }
+    m_reorder.clear();
+    m_submitted = 0;
+    m_received = 0;
+    m_emitted = 0;
+  }
+
+  /**
+   * Removes from the received results the one that can be given back next
+   * 
+   * @return The result, or <tt>null</tt> if there is none
+   */
+  protected Completed<T> ready()
+  {
+    if (m_ordered)
+    {
+      return m_reorder.remove(m_emitted);
+    }
+    // In unordered mode, a result is given back as soon as it is received;
+    // there is at most one
+    Iterator<Completed<T>> it = m_reorder.values().iterator();
+    if (!it.hasNext())
+    {
+      return null;
+    }
+    Completed<T> c = it.next();
+    it.remove();
+    return c;
+  }
+
+  /**
+   * Waits for the next task to complete
+   * 
+   * @return The future of this task
+   */
+  protected Future<Completed<T>> waitForNext()
+  {
+    try
+    {
+      return m_completion.take();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new ProcessorException(e);
+    }
+  }
+
+  /**
+   * Keeps the result of a completed task until it can be given back
+   * 
+   * @param f
+   *          The future of the task
+   */
+  protected void receive(Future<Completed<T>> f)
+  {
+    Completed<T> c;
+    try
+    {
+      c = f.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new ProcessorException(e);
+    }
+    catch (ExecutionException e)
+    {
+      throw new ProcessorException(e.getCause());
+    }
+    m_received++;
+    m_reorder.put(c.m_sequence, c);
+  }
+
+  /**
+   * Gives back a result
+   * 
+   * @param c
+   *          The result
+   * @return The value of the result
+   */
+  protected T emit(Completed<T> c)
+  {
+    m_emitted++;
+    if (c.m_exception != null)
+    {
+      throw new ProcessorException(c.m_exception);
+    }
+    return c.m_value;
+  }
+
+  /**
+   * The result of a task
+   * 
+   * @param <T> The type of the value of the result
+   */
+  protected static class Completed<T>
+  {
+    /**
+     * The position of the task in the order of submission
+     */
+    protected final long m_sequence;
+
+    /**
+     * The value returned by the task, if it succeeded
+     */
+    protected final T m_value;
+
+    /**
+     * The exception thrown by the task, if any
+     */
+    protected final Exception m_exception;
+
+    /**
+     * Creates a new result
+     * 
+     * @param sequence
+     *          The position of the task in the order of submission
+     * @param value
+     *          The value returned by the task
+     * @param exception
+     *          The exception thrown by the task, or <tt>null</tt>
+     */
+    protected Completed(long sequence, T value, Exception exception)
+    {
+      super();
+      m_sequence = sequence;
+      m_value = value;
+      m_exception = exception;
+    }
+  }
+}
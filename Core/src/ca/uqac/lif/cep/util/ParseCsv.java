@@ -0,0 +1,634 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.util;
+
+import ca.uqac.lif.cep.functions.FunctionException;
+import ca.uqac.lif.cep.functions.UnaryFunction;
+
+/**
+ * Parses a line of comma-separated values into an array of typed values.
+ * Contrarily to {@link Strings.SplitString}, which splits the line with a
+ * regular expression and then tries to parse each part as a number, this
+ * function is given the type of each field in advance (its <em>schema</em>),
+ * and reads the line character by character:
+ * <ul>
+ * <li>the fields of the line are delimited by a small state machine, which
+ * handles fields enclosed in double quotes; inside such a field, the
+ * separator is an ordinary character and two double quotes stand for one;</li>
+ * <li>numbers are computed directly from the characters of the line,
+ * without creating a string for each field;</li>
+ * <li>the characters of a quoted field are copied into a buffer that is
+ * reused from one line to the next.</li>
+ * </ul>
+ * The line can be any {@link CharSequence}; in particular, a
+ * {@link ByteSequence} produced by
+ * {@link ca.uqac.lif.cep.io.ReadFileLines ReadFileLines} is parsed without
+ * ever being decoded into a string, except for the fields of type
+ * {@link String}.
+ * <p>
+ * The supported types are {@link String}, {@link Integer}, {@link Long},
+ * {@link Float}, {@link Double} and {@link Boolean}. An empty field, or a
+ * field missing at the end of the line, is parsed as <tt>null</tt>; fields
+ * in excess are ignored. A field that cannot be parsed into its type
+ * causes a {@link FunctionException}. Since the function parses a single
+ * line, a quoted field cannot contain a line break.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class ParseCsv extends UnaryFunction<CharSequence, Object[]>
+{
+  /**
+   * State of the parser: at the start of a field
+   */
+  private static final int FIELD_START = 0;
+
+  /**
+   * State of the parser: in a field not enclosed in quotes
+   */
+  private static final int UNQUOTED = 1;
+
+  /**
+   * State of the parser: in a field enclosed in quotes
+   */
+  private static final int QUOTED = 2;
+
+  /**
+   * State of the parser: after a quote inside a quoted field
+   */
+  private static final int QUOTE = 3;
+
+  /**
+   * State of the parser: after the closing quote of a field
+   */
+  private static final int QUOTED_END = 4;
+
+  /**
+   * The powers of 10 that can be represented exactly by a double
+   */
+  private static final double[] POWERS = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+      1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+  /**
+   * The powers of 10 that can be represented exactly by a float
+   */
+  private static final float[] FLOAT_POWERS = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f,
+      1e7f, 1e8f, 1e9f, 1e10f };
+
+  /**
+   * The type of each field
+   */
+  protected Class<?>[] m_schema;
+
+  /**
+   * The character separating the fields
+   */
+  protected char m_separator = ',';
+
+  /**
+   * Whether to ignore the spaces around the fields that are not enclosed in
+   * quotes
+   */
+  protected boolean m_trim = true;
+
+  /**
+   * A buffer where the characters of a quoted field are copied
+   */
+  protected transient StringBuilder m_buffer = new StringBuilder();
+
+  /**
+   * An array where {@link #parseDecimal(CharSequence, int, int, long[])}
+   * writes its result
+   */
+  protected transient long[] m_decimal = new long[4];
+
+  /**
+   * Creates a new CSV parser
+   * 
+   * @param schema
+   *          The type of each field of a line
+   */
+  public ParseCsv(Class<?> ... schema)
+  {
+    super(CharSequence.class, Object[].class);
+    for (Class<?> c : schema)
+    {
+      if (c != String.class && c != Integer.class && c != Long.class && c != Float.class
+          && c != Double.class && c != Boolean.class)
+      {
+        throw new IllegalArgumentException("Unsupported field type: " + c.getName());
+      }
+    }
+    m_schema = schema;
+  }
+
+  /**
+   * Sets the character separating the fields
+   * 
+   * @param separator
+   *          The character; the default is a comma
+   * @return This function
+   */
+  public ParseCsv separator(char separator)
+  {
+    m_separator = separator;
+    return this;
+  }
+
+  /**
+   * Sets whether to ignore the spaces around the fields. Spaces inside a
+   * quoted field are always kept.
+   * 
+   * @param b
+   *          Set to <tt>true</tt> (the default) to ignore spaces,
+   *          <tt>false</tt> otherwise
+   * @return This function
+   */
+  public ParseCsv trim(boolean b)
+  {
+    m_trim = b;
+    return this;
+  }
+
+  /**
+   * Gets the type of each field of a line
+   * 
+   * @return The types
+   */
+  public Class<?>[] getSchema()
+  {
+    return m_schema;
+  }
+
+  @Override
+  public Object[] getValue(CharSequence line)
+  {
+    Object[] values = new Object[m_schema.length];
+    int field = 0;
+    int state = FIELD_START;
+    int start = 0;
+    int length = line.length();
+    for (int i = 0; i < length && field < values.length; i++)
+    {
+      char c = line.charAt(i);
+      switch (state)
+      {
+        case FIELD_START:
+          if (c == m_separator)
+          {
+            values[field] = parse(field, line, i, i);
+            field++;
+          }
+          else if (c == '"')
+          {
+            m_buffer.setLength(0);
+            state = QUOTED;
+          }
+          else if (!m_trim || c != ' ')
+          {
+            start = i;
+            state = UNQUOTED;
+          }
+          break;
+        case UNQUOTED:
+          if (c == m_separator)
+          {
+            values[field] = parse(field, line, start, i);
+            field++;
+            state = FIELD_START;
+          }
+          break;
+        case QUOTED:
+          if (c == '"')
+          {
+            state = QUOTE;
+          }
+          else
+          {
+            m_buffer.append(c);
+          }
+          break;
+        case QUOTE:
+          if (c == '"')
+          {
+            // Two quotes stand for one
+            m_buffer.append(c);
+            state = QUOTED;
+            break;
+          }
+          values[field] = parse(field, m_buffer, 0, m_buffer.length());
+          field++;
+          state = c == m_separator ? FIELD_START : QUOTED_END;
+          break;
+        default:
+          // Characters between a closing quote and the separator are ignored
+          if (c == m_separator)
+          {
+            state = FIELD_START;
+          }
+          break;
+      }
+    }
+    if (field < values.length)
+    {
+      // The last field ends with the line
+      if (state == UNQUOTED)
+      {
+        values[field] = parse(field, line, start, length);
+      }
+      else if (state == QUOTED || state == QUOTE)
+      {
+        // An unterminated quote extends to the end of the line
+        values[field] = parse(field, m_buffer, 0, m_buffer.length());
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Parses a field into a value of its type
+   * 
+   * @param field
+   *          The index of the field
+   * @param s
+   *          The characters containing the field
+   * @param start
+   *          The index of the first character of the field
+   * @param end
+   *          The index following the last character of the field
+   * @return The value, or <tt>null</tt> if the field is empty
+   */
+  protected Object parse(int field, CharSequence s, int start, int end)
+  {
+    Class<?> type = m_schema[field];
+    if (m_trim && s != m_buffer)
+    {
+      while (end > start && s.charAt(end - 1) == ' ')
+      {
+        end--;
+      }
+    }
+    if (end == start)
+    {
+      // Only a quoted field can be an empty string
+      return type == String.class && s == m_buffer ? "" : null;
+    }
+    if (type == String.class)
+    {
+      return s.subSequence(start, end).toString();
+    }
+    if (type == Integer.class)
+    {
+      long x = parseLong(field, s, start, end);
+      if (x < Integer.MIN_VALUE || x > Integer.MAX_VALUE)
+      {
+        throw invalid(field, s, start, end);
+      }
+      return (int) x;
+    }
+    if (type == Long.class)
+    {
+      return parseLong(field, s, start, end);
+    }
+    if (type == Double.class)
+    {
+      return parseDouble(field, s, start, end);
+    }
+    if (type == Float.class)
+    {
+      return parseFloat(field, s, start, end);
+    }
+    return parseBoolean(field, s, start, end);
+  }
+
+  /**
+   * Parses a field into a long
+   * 
+   * @param field
+   *          The index of the field
+   * @param s
+   *          The characters containing the field
+   * @param start
+   *          The index of the first character of the field
+   * @param end
+   *          The index following the last character of the field
+   * @return The value
+   */
+  protected long parseLong(int field, CharSequence s, int start, int end)
+  {
+    boolean negative = false;
+    int i = start;
+    char c = s.charAt(i);
+    if (c == '-' || c == '+')
+    {
+      negative = c == '-';
+      i++;
+    }
+    if (i == end)
+    {
+      throw invalid(field, s, start, end);
+    }
+    // The value is accumulated as a negative number, whose range includes
+    // that of the positive numbers
+    long x = 0;
+    for (; i < end; i++)
+    {
+      int d = s.charAt(i) - '0';
+      if (d < 0 || d > 9 || x < Long.MIN_VALUE / 10 || 10 * x < Long.MIN_VALUE + d)
+      {
+        throw invalid(field, s, start, end);
+      }
+      x = 10 * x - d;
+    }
+    if (!negative)
+    {
+      if (x == Long.MIN_VALUE)
+      {
+        throw invalid(field, s, start, end);
+      }
+      x = -x;
+    }
+    return x;
+  }
+
+  /**
+   * Parses a field into a double. A number with at most 15 significant
+   * digits and a small exponent is computed with a single multiplication or
+   * division, which gives the correctly rounded result; other numbers are
+   * handed to {@link Double#parseDouble(String)}.
+   * 
+   * @param field
+   *          The index of the field
+   * @param s
+   *          The characters containing the field
+   * @param start
+   *          The index of the first character of the field
+   * @param end
+   *          The index following the last character of the field
+   * @return The value
+   */
+  protected double parseDouble(int field, CharSequence s, int start, int end)
+  {
+    long[] decimal = m_decimal;
+    if (!parseDecimal(s, start, end, decimal) || decimal[1] > 15 || decimal[2] < -22
+        || decimal[2] > 22)
+    {
+      try
+      {
+        return Double.parseDouble(s.subSequence(start, end).toString());
+      }
+      catch (NumberFormatException e)
+      {
+        throw invalid(field, s, start, end);
+      }
+    }
+    double x = decimal[2] < 0 ? decimal[0] / POWERS[(int) -decimal[2]]
+        : decimal[0] * POWERS[(int) decimal[2]];
+    return decimal[3] != 0 ? -x : x;
+  }
+
+  /**
+   * Parses a field into a float, in the same way as
+   * {@link #parseDouble(int, CharSequence, int, int) parseDouble()}
+   * 
+   * @param field
+   *          The index of the field
+   * @param s
+   *          The characters containing the field
+   * @param start
+   *          The index of the first character of the field
+   * @param end
+   *          The index following the last character of the field
+   * @return The value
+   */
+  protected float parseFloat(int field, CharSequence s, int start, int end)
+  {
+    long[] decimal = m_decimal;
+    if (!parseDecimal(s, start, end, decimal) || decimal[1] > 7 || decimal[2] < -10
+        || decimal[2] > 10)
+    {
+      try
+      {
+        return Float.parseFloat(s.subSequence(start, end).toString());
+      }
+      catch (NumberFormatException e)
+      {
+        throw invalid(field, s, start, end);
+      }
+    }
+    float x = decimal[2] < 0 ? decimal[0] / FLOAT_POWERS[(int) -decimal[2]]
+        : decimal[0] * FLOAT_POWERS[(int) decimal[2]];
+    return decimal[3] != 0 ? -x : x;
+  }
+
+  /**
+   * Reads a decimal number of the form <tt>-123.45e6</tt>
+   * 
+   * @param s
+   *          The characters containing the number
+   * @param start
+   *          The index of the first character of the number
+   * @param end
+   *          The index following the last character of the number
+   * @param decimal
+   *          An array where to write the digits of the number as an
+   *          integer, the number of significant digits, the power of 10
+   *          by which to multiply this integer, and 1 if the number is
+   *          negative
+   * @return <tt>true</tt> if the number could be read, <tt>false</tt> if
+   *         it has an unexpected form or too many digits
+   */
+  protected static boolean parseDecimal(CharSequence s, int start, int end, long[] decimal)
+  {
+    int i = start;
+    char c = s.charAt(i);
+    decimal[3] = 0;
+    if (c == '-' || c == '+')
+    {
+      decimal[3] = c == '-' ? 1 : 0;
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean point = false;
+    boolean any = false;
+    for (; i < end; i++)
+    {
+      c = s.charAt(i);
+      if (c >= '0' && c <= '9')
+      {
+        any = true;
+        if (mantissa == 0 && c == '0')
+        {
+          // Leading zeros are not significant
+          if (point)
+          {
+            exponent--;
+          }
+          continue;
+        }
+        if (++digits > 18)
+        {
+          return false;
+        }
+        mantissa = 10 * mantissa + (c - '0');
+        if (point)
+        {
+          exponent--;
+        }
+      }
+      else if (c == '.' && !point)
+      {
+        point = true;
+      }
+      else
+      {
+        break;
+      }
+    }
+    if (!any)
+    {
+      return false;
+    }
+    if (i < end)
+    {
+      // Exponent
+      if (c != 'e' && c != 'E' || ++i == end)
+      {
+        return false;
+      }
+      c = s.charAt(i);
+      boolean negative = c == '-';
+      if (c == '-' || c == '+')
+      {
+        i++;
+      }
+      if (i == end || end - i > 3)
+      {
+        return false;
+      }
+      int e = 0;
+      for (; i < end; i++)
+      {
+        int d = s.charAt(i) - '0';
+        if (d < 0 || d > 9)
+        {
+          return false;
+        }
+        e = 10 * e + d;
+      }
+      exponent += negative ? -e : e;
+    }
+    decimal[0] = mantissa;
+    decimal[1] = digits;
+    decimal[2] = mantissa == 0 ? 0 : exponent;
+    return true;
+  }
+
+  /**
+   * Parses a field into a Boolean
+   * 
+   * @param field
+   *          The index of the field
+   * @param s
+   *          The characters containing the field
+   * @param start
+   *          The index of the first character of the field
+   * @param end
+   *          The index following the last character of the field
+   * @return The value
+   */
+  protected Boolean parseBoolean(int field, CharSequence s, int start, int end)
+  {
+    if (matches(s, start, end, "true"))
+    {
+      return Boolean.TRUE;
+    }
+    if (matches(s, start, end, "false"))
+    {
+      return Boolean.FALSE;
+    }
+    throw invalid(field, s, start, end);
+  }
+
+  /**
+   * Checks if a range of characters is equal to a word, ignoring case
+   * 
+   * @param s
+   *          The characters
+   * @param start
+   *          The index of the first character of the range
+   * @param end
+   *          The index following the last character of the range
+   * @param word
+   *          The word, in lowercase
+   * @return <tt>true</tt> if the range contains the word, <tt>false</tt>
+   *         otherwise
+   */
+  protected static boolean matches(CharSequence s, int start, int end, String word)
+  {
+    if (end - start != word.length())
+    {
+      return false;
+    }
+    for (int i = start; i < end; i++)
+    {
+      if (Character.toLowerCase(s.charAt(i)) != word.charAt(i - start))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Creates the exception thrown when a field cannot be parsed
+   * 
+   * @param field
+   *          The index of the field
+   * @param s
+   *          The characters containing the field
+   * @param start
+   *          The index of the first character of the field
+   * @param end
+   *          The index following the last character of the field
+   * @return The exception
+   */
+  protected FunctionException invalid(int field, CharSequence s, int start, int end)
+  {
+    return new FunctionException("Field " + field + " is not a valid "
+        + m_schema[field].getSimpleName() + ": " + s.subSequence(start, end));
+  }
+
+  @Override
+  public ParseCsv duplicate(boolean with_state)
+  {
+    // The copy has its own buffers, and can be used by another thread
+    ParseCsv p = new ParseCsv(m_schema);
+    p.m_separator = m_separator;
+    p.m_trim = m_trim;
+    return p;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "PARSE CSV";
+  }
+}
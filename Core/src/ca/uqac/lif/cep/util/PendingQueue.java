@@ -0,0 +1,314 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.util;
+
+import ca.uqac.lif.cep.FutureDone;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.util.RingBuffer.WaitStrategy;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Feeds events to a {@link RingBuffer} without ever waiting, and tells the
+ * producer through a {@link Future} when each event has been accepted. This
+ * is how a {@link Pushable} backed by a bounded buffer gives a meaning to
+ * {@link Pushable#pushFast(Object) pushFast()}:
+ * <ul>
+ * <li>if the buffer has room for the event, it is added right away and the
+ * future returned by {@link #offer(Object)} is already done;</li>
+ * <li>otherwise, the event is kept aside and the future is done only once
+ * the event has been moved to the buffer. A producer can either wait for the
+ * future, which slows it down to the pace of the consumer, or check it with
+ * {@link Future#isDone() isDone()} and do something else in the
+ * meantime.</li>
+ * </ul>
+ * Pending events are moved to the buffer, in the order in which they were
+ * offered, whenever a call to {@link #flush()} finds room for them; this is
+ * done by the methods of the futures and by every subsequent offer. The
+ * consumer of the buffer can also call {@link #flush()} after removing
+ * elements, so that pending events are accepted even if the producer does
+ * not look at its futures.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class PendingQueue
+{
+  /**
+   * The buffer that receives the events
+   */
+  protected final RingBuffer m_buffer;
+
+  /**
+   * The events that have not been accepted by the buffer yet
+   */
+  protected final Queue<PendingEvent> m_pending;
+
+  /**
+   * The number of events in {@link #m_pending}. This value can be read
+   * without acquiring the lock on the queue.
+   */
+  protected volatile int m_count;
+
+  /**
+   * The value returned by all the futures
+   */
+  protected final Pushable m_pushable;
+
+  /**
+   * The future returned for an event accepted right away
+   */
+  protected final FutureDone<Pushable> m_done;
+
+  /**
+   * The strategy used by a thread waiting for an event to be accepted
+   */
+  protected volatile WaitStrategy m_waitStrategy;
+
+  /**
+   * Creates a new empty pending queue
+   * 
+   * @param buffer
+   *          The buffer that receives the events
+   * @param p
+   *          The pushable returned by the futures
+   * @param strategy
+   *          The strategy used by a thread waiting for an event to be
+   *          accepted
+   */
+  public PendingQueue(RingBuffer buffer, Pushable p, WaitStrategy strategy)
+  {
+    super();
+    m_buffer = buffer;
+    m_pushable = p;
+    m_done = new FutureDone<Pushable>(p);
+    m_waitStrategy = strategy;
+    m_pending = new ArrayDeque<PendingEvent>();
+    m_count = 0;
+  }
+
+  /**
+   * Offers an event to the buffer. This method never waits.
+   * 
+   * @param o
+   *          The event
+   * @return A future that is done when the event has been accepted by the
+   *         buffer
+   */
+  public Future<Pushable> offer(Object o)
+  {
+    if (m_count == 0 && m_buffer.offer(o))
+    {
+      return m_done;
+    }
+    synchronized (m_pending)
+    {
+      // Events must be accepted in the order they were offered
+      flush();
+      if (m_count == 0 && m_buffer.offer(o))
+      {
+        return m_done;
+      }
+      PendingEvent e = new PendingEvent(o);
+      m_pending.add(e);
+      m_count++;
+      return e;
+    }
+  }
+
+  /**
+   * Moves as many pending events as possible to the buffer
+   * 
+   * @return <tt>true</tt> if no event is pending anymore, <tt>false</tt>
+   *         otherwise
+   */
+  public boolean flush()
+  {
+    if (m_count == 0)
+    {
+      return true;
+    }
+    synchronized (m_pending)
+    {
+      while (!m_pending.isEmpty())
+      {
+        PendingEvent e = m_pending.peek();
+        if (!m_buffer.offer(e.m_event))
+        {
+          return false;
+        }
+        m_pending.remove();
+        m_count--;
+        e.m_event = null;
+        e.m_accepted = true;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Sets the strategy used by a thread waiting for an event to be accepted
+   * 
+   * @param strategy
+   *          The strategy
+   */
+  public void setWaitStrategy(WaitStrategy strategy)
+  {
+    m_waitStrategy = strategy;
+  }
+
+  /**
+   * Gets the number of events that have not been accepted by the buffer yet
+   * 
+   * @return The number of events
+   */
+  public int size()
+  {
+    return m_count;
+  }
+
+  /**
+   * Discards all the pending events. Their futures are cancelled.
+   */
+  public void clear()
+  {
+    synchronized (m_pending)
+    {
+      for (PendingEvent e : m_pending)
+      {
+        e.m_event = null;
+        e.m_cancelled = true;
+      }
+      m_pending.clear();
+      m_count = 0;
+    }
+  }
+
+  /**
+   * The future of an event that has not been accepted by the buffer when it
+   * was offered
+   */
+  protected class PendingEvent implements Future<Pushable>
+  {
+    /**
+     * The event; set to <tt>null</tt> once accepted or cancelled
+     */
+    protected Object m_event;
+
+    /**
+     * Whether the event has been accepted by the buffer
+     */
+    protected volatile boolean m_accepted = false;
+
+    /**
+     * Whether the event has been discarded
+     */
+    protected volatile boolean m_cancelled = false;
+
+    /**
+     * Creates a new pending event
+     * 
+     * @param o
+     *          The event
+     */
+    protected PendingEvent(Object o)
+    {
+      super();
+      m_event = o;
+    }
+
+    @Override
+    public boolean cancel(boolean may_interrupt_if_running)
+    {
+      synchronized (m_pending)
+      {
+        if (m_accepted || m_cancelled)
+        {
+          return false;
+        }
+        m_pending.remove(this);
+        m_count--;
+        m_event = null;
+        m_cancelled = true;
+        return true;
+      }
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+      return m_cancelled;
+    }
+
+    @Override
+    public boolean isDone()
+    {
+      if (!m_accepted && !m_cancelled)
+      {
+        flush();
+      }
+      return m_accepted || m_cancelled;
+    }
+
+    @Override
+    public Pushable get() throws InterruptedException
+    {
+      for (int idle = 0; !isDone(); idle++)
+      {
+        if (Thread.interrupted())
+        {
+          throw new InterruptedException();
+        }
+        m_waitStrategy.idle(idle);
+      }
+      if (m_cancelled)
+      {
+        throw new CancellationException();
+      }
+      return m_pushable;
+    }
+
+    @Override
+    public Pushable get(long timeout, TimeUnit unit)
+        throws InterruptedException, TimeoutException
+    {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      for (int idle = 0; !isDone(); idle++)
+      {
+        if (Thread.interrupted())
+        {
+          throw new InterruptedException();
+        }
+        if (System.nanoTime() - deadline >= 0)
+        {
+          throw new TimeoutException();
+        }
+        m_waitStrategy.idle(idle);
+      }
+      if (m_cancelled)
+      {
+        throw new CancellationException();
+      }
+      return m_pushable;
+    }
+  }
+}
@@ -0,0 +1,492 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded first-in, first-out queue backed by an array used as a circular
+ * buffer. The queue does not use any lock. Elements can be removed by a
+ * single thread at a time; depending on how the buffer is created, they can
+ * be added either by a single thread (the fastest mode) or by multiple
+ * threads at the same time, which then compete for positions in the buffer
+ * with atomic compare-and-set operations.
+ * <p>
+ * The capacity of the buffer is always a power of two; a capacity given to
+ * the constructor is rounded up to the next power of two. The sequence
+ * numbers of the producer and consumer sides are padded so that they do not
+ * share the same cache line.
+ * <p>
+ * The buffer only provides non-blocking operations; a thread that must wait
+ * for the buffer to become non-empty (or non-full) can do so using one of the
+ * {@link WaitStrategy} values.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class RingBuffer
+{
+  /**
+   * The array containing the elements
+   */
+  protected final Object[] m_buffer;
+
+  /**
+   * A bit mask used to compute the position of a sequence number in the
+   * array
+   */
+  protected final int m_mask;
+
+  /**
+   * The sequence number of the next element to be removed
+   */
+  protected final AtomicLong m_head;
+
+  /**
+   * The sequence number of the next element to be added
+   */
+  protected final AtomicLong m_tail;
+
+  /**
+   * In multi-producer mode, the sequence number of the element last
+   * published at each position of the array; <tt>null</tt> in
+   * single-producer mode
+   */
+  protected final AtomicLongArray m_published;
+
+  /**
+   * The last value of the head read by the (single) producer. Since the head
+   * only moves forward, the producer only needs to read the actual value
+   * when this one indicates that the buffer is full.
+   */
+  protected long m_cachedHead;
+
+  /**
+   * Creates a new empty ring buffer accepting a single producer
+   * 
+   * @param capacity
+   *          The minimum number of elements the buffer can hold
+   */
+  public RingBuffer(int capacity)
+  {
+    this(capacity, false);
+  }
+
+  /**
+   * Creates a new empty ring buffer
+   * 
+   * @param capacity
+   *          The minimum number of elements the buffer can hold
+   * @param multi_producer
+   *          Set to <tt>true</tt> to allow multiple threads to add elements
+   *          at the same time, <tt>false</tt> if a single thread adds
+   *          elements
+   */
+  public RingBuffer(int capacity, boolean multi_producer)
+  {
+    super();
+    int size = powerOfTwo(capacity);
+    m_buffer = new Object[size];
+    m_mask = size - 1;
+    m_head = new PaddedAtomicLong();
+    m_tail = new PaddedAtomicLong();
+    m_cachedHead = 0;
+    if (multi_producer)
+    {
+      m_published = new AtomicLongArray(size);
+      for (int i = 0; i < size; i++)
+      {
+        // Position i was last "published" one lap before the start
+        m_published.set(i, i - (long) size);
+      }
+    }
+    else
+    {
+      m_published = null;
+    }
+  }
+
+  /**
+   * Determines if multiple threads can add elements at the same time
+   * 
+   * @return <tt>true</tt> if the buffer is in multi-producer mode,
+   *         <tt>false</tt> otherwise
+   */
+  public boolean isMultiProducer()
+  {
+    return m_published != null;
+  }
+
+  /**
+   * Adds an element at the end of the queue, if there is room for it.
+   * 
+   * @param o
+   *          The element
+   * @return <tt>true</tt> if the element was added, <tt>false</tt> if the
+   *         buffer is full
+   */
+  public boolean offer(Object o)
+  {
+    if (m_published != null)
+    {
+      return offerConcurrent(o);
+    }
+    long tail = m_tail.get();
+    if (tail - m_cachedHead >= m_buffer.length)
+    {
+      m_cachedHead = m_head.get();
+      if (tail - m_cachedHead >= m_buffer.length)
+      {
+        return false;
+      }
+    }
+    m_buffer[(int) tail & m_mask] = o;
+    // Makes the element visible to the consumer after it has been written
+    m_tail.lazySet(tail + 1);
+    return true;
+  }
+
+  /**
+   * Adds as many elements of an array as there is room for at the end of
+   * the queue.
+   * 
+   * @param src
+   *          The array containing the elements
+   * @param offset
+   *          The index of the first element to add
+   * @param length
+   *          The number of elements to add
+   * @return The number of elements actually added, starting from
+   *         <tt>offset</tt>
+   */
+  public int offerAll(Object[] src, int offset, int length)
+  {
+    if (m_published != null)
+    {
+      int n = 0;
+      while (n < length && offerConcurrent(src[offset + n]))
+      {
+        n++;
+      }
+      return n;
+    }
+    long tail = m_tail.get();
+    long free = m_buffer.length - (tail - m_cachedHead);
+    if (free < length)
+    {
+      m_cachedHead = m_head.get();
+      free = m_buffer.length - (tail - m_cachedHead);
+    }
+    int n = (int) Math.min(free, length);
+    for (int i = 0; i < n; i++)
+    {
+      m_buffer[(int) (tail + i) & m_mask] = src[offset + i];
+    }
+    if (n > 0)
+    {
+      // A single publication for the whole batch
+      m_tail.lazySet(tail + n);
+    }
+    return n;
+  }
+
+  /**
+   * Adds an element in multi-producer mode. The producer first claims a
+   * position by advancing the tail with a compare-and-set, then writes the
+   * element and publishes its sequence number for this position.
+   * 
+   * @param o
+   *          The element
+   * @return <tt>true</tt> if the element was added, <tt>false</tt> if the
+   *         buffer is full
+   */
+  protected boolean offerConcurrent(Object o)
+  {
+    long tail;
+    do
+    {
+      tail = m_tail.get();
+      if (tail - m_head.get() >= m_buffer.length)
+      {
+        return false;
+      }
+    } while (!m_tail.compareAndSet(tail, tail + 1));
+    int pos = (int) tail & m_mask;
+    m_buffer[pos] = o;
+    m_published.lazySet(pos, tail);
+    return true;
+  }
+
+  /**
+   * Determines if the element with a given sequence number can be read by
+   * the consumer
+   * 
+   * @param seq
+   *          The sequence number
+   * @return <tt>true</tt> if the element is available
+   */
+  protected boolean isAvailable(long seq)
+  {
+    if (m_published != null)
+    {
+      return m_published.get((int) seq & m_mask) == seq;
+    }
+    return seq < m_tail.get();
+  }
+
+  /**
+   * Removes up to a given number of elements from the front of the queue.
+   * Contrary to a call to {@link #poll()}, this method works even if some of
+   * the elements are <tt>null</tt>.
+   * 
+   * @param dst
+   *          The array where the elements are written, starting at index 0
+   * @param max
+   *          The maximum number of elements to remove
+   * @return The number of elements removed
+   */
+  public int drainTo(Object[] dst, int max)
+  {
+    long head = m_head.get();
+    int n;
+    if (m_published != null)
+    {
+      n = 0;
+      while (n < max && isAvailable(head + n))
+      {
+        n++;
+      }
+    }
+    else
+    {
+      n = (int) Math.min(max, m_tail.get() - head);
+    }
+    for (int i = 0; i < n; i++)
+    {
+      int pos = (int) (head + i) & m_mask;
+      dst[i] = m_buffer[pos];
+      m_buffer[pos] = null;
+    }
+    if (n > 0)
+    {
+      m_head.lazySet(head + n);
+    }
+    return n;
+  }
+
+  /**
+   * Copies up to a given number of elements from the front of the queue,
+   * without removing them. Contrary to {@link #drainTo(Object[], int)}, this
+   * method can be called by any thread, even while the consumer removes
+   * elements: the elements it copies are those that were in the queue at
+   * some point during the call.
+   * 
+   * @param dst
+   *          The array where the elements are written, starting at index 0
+   * @param max
+   *          The maximum number of elements to copy
+   * @return The number of elements copied
+   */
+  public int peekTo(Object[] dst, int max)
+  {
+    long head = m_head.get();
+    max = Math.min(max, m_buffer.length);
+    int n;
+    if (m_published != null)
+    {
+      n = 0;
+      while (n < max && isAvailable(head + n))
+      {
+        n++;
+      }
+    }
+    else
+    {
+      n = (int) Math.min(max, m_tail.get() - head);
+    }
+    for (int i = 0; i < n; i++)
+    {
+      dst[i] = m_buffer[(int) (head + i) & m_mask];
+    }
+    // The elements removed in the meantime may have been overwritten; since
+    // a position is reused only after the head has moved past it, those
+    // still ahead of the head are intact
+    int removed = (int) Math.min(n, m_head.get() - head);
+    if (removed > 0)
+    {
+      System.arraycopy(dst, removed, dst, 0, n - removed);
+      Arrays.fill(dst, n - removed, n, null);
+    }
+    return n - removed;
+  }
+
+  /**
+   * Removes the element at the front of the queue
+   * 
+   * @return The element, or <tt>null</tt> if the queue is empty
+   */
+  public Object poll()
+  {
+    long head = m_head.get();
+    if (!isAvailable(head))
+    {
+      return null;
+    }
+    int pos = (int) head & m_mask;
+    Object o = m_buffer[pos];
+    m_buffer[pos] = null;
+    m_head.lazySet(head + 1);
+    return o;
+  }
+
+  /**
+   * Gets the number of elements in the queue. In multi-producer mode, this
+   * includes elements that are being added but are not yet visible to the
+   * consumer.
+   * 
+   * @return The number of elements
+   */
+  public int size()
+  {
+    return (int) (m_tail.get() - m_head.get());
+  }
+
+  /**
+   * Determines if the queue has no element that can be removed
+   * 
+   * @return <tt>true</tt> if the queue is empty, <tt>false</tt> otherwise
+   */
+  public boolean isEmpty()
+  {
+    return !isAvailable(m_head.get());
+  }
+
+  /**
+   * Gets the maximum number of elements the buffer can hold
+   * 
+   * @return The capacity
+   */
+  public int capacity()
+  {
+    return m_buffer.length;
+  }
+
+  /**
+   * Computes the smallest power of two greater than or equal to a number
+   * 
+   * @param x
+   *          The number
+   * @return The power of two
+   */
+  protected static int powerOfTwo(int x)
+  {
+    if (x <= 1)
+    {
+      return 1;
+    }
+    return Integer.highestOneBit(x - 1) << 1;
+  }
+
+  /**
+   * The way a thread waits for a condition on the buffer (for example, that
+   * it becomes non-empty). The thread calls {@link #idle(int)} each time the
+   * condition is found to be false, with the number of times this has
+   * happened in a row.
+   */
+  public enum WaitStrategy
+  {
+    /**
+     * Busy-waits. This gives the lowest latency, at the price of keeping a
+     * core busy.
+     */
+    SPIN
+    {
+      @Override
+      public void idle(int count)
+      {
+        // Nothing to do: just try again
+      }
+    },
+
+    /**
+     * Lets other threads run before trying again.
+     */
+    YIELD
+    {
+      @Override
+      public void idle(int count)
+      {
+        Thread.yield();
+      }
+    },
+
+    /**
+     * Yields for a few attempts, and then parks the thread for a short
+     * time. This uses the least CPU when the waits are long.
+     */
+    PARK
+    {
+      @Override
+      public void idle(int count)
+      {
+        if (count < 100)
+        {
+          Thread.yield();
+        }
+        else
+        {
+          LockSupport.parkNanos(50000);
+        }
+      }
+    };
+
+    /**
+     * Waits before checking a condition again
+     * 
+     * @param count
+     *          The number of consecutive times the condition has been found
+     *          false so far
+     */
+    public abstract void idle(int count);
+  }
+
+  /**
+   * An atomic long padded so that it occupies its own cache line
+   */
+  @SuppressWarnings("serial")
+  protected static class PaddedAtomicLong extends AtomicLong
+  {
+    /**
+     * Padding; never used
+     */
+    public volatile long m_p1, m_p2, m_p3, m_p4, m_p5, m_p6, m_p7 = 7L;
+
+    /**
+     * Sums the padding fields, to prevent them from being optimized away
+     * 
+     * @return A meaningless value
+     */
+    public long sumPaddingToPreventOptimisation()
+    {
+      return m_p1 + m_p2 + m_p3 + m_p4 + m_p5 + m_p6 + m_p7;
+    }
+  }
+}
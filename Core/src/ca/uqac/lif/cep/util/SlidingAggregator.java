@@ -0,0 +1,220 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.util;
+
+import ca.uqac.lif.cep.functions.BinaryFunction;
+
+/**
+ * Combines the values of a first-in, first-out sequence with an associative
+ * {@link BinaryFunction}, in constant amortized time per value added or
+ * removed. This is the "two-stacks" algorithm used for sliding-window
+ * aggregation:
+ * <ul>
+ * <li>values are added to a <em>back</em> stack, along with the combination
+ * of all the values in that stack;</li>
+ * <li>values are removed from a <em>front</em> stack, which keeps, for each
+ * of its values, the combination of that value with all the more recent
+ * values of the stack;</li>
+ * <li>when the front stack is empty, the back stack is moved into it in a
+ * single pass.</li>
+ * </ul>
+ * Each value is therefore combined at most twice, whatever the size of the
+ * sequence, and the combination of the whole sequence is obtained with at
+ * most one call to the function. The values are always combined in their
+ * order of arrival, so the function need not be commutative.
+ * 
+ * @param <T>
+ *          The type of the values
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class SlidingAggregator<T>
+{
+  /**
+   * The function used to combine values
+   */
+  protected final BinaryFunction<T, T, T> m_function;
+
+  /**
+   * The values of the back stack, oldest first
+   */
+  protected Object[] m_back;
+
+  /**
+   * The number of values in the back stack
+   */
+  protected int m_backSize = 0;
+
+  /**
+   * The combination of all the values in the back stack
+   */
+  protected T m_backValue = null;
+
+  /**
+   * The front stack; element <i>i</i> is the combination of the values
+   * from the <i>i</i>-th most recent one to the most recent one of the stack
+   */
+  protected Object[] m_front;
+
+  /**
+   * The number of values in the front stack
+   */
+  protected int m_frontSize = 0;
+
+  /**
+   * Creates a new aggregator
+   * 
+   * @param function
+   *          The function used to combine values. It must be associative.
+   * @param capacity
+   *          The number of values the aggregator can hold before it needs to
+   *          grow
+   */
+  public SlidingAggregator(BinaryFunction<T, T, T> function, int capacity)
+  {
+    super();
+    m_function = function;
+    capacity = Math.max(1, capacity);
+    m_back = new Object[capacity];
+    m_front = new Object[capacity];
+  }
+
+  /**
+   * Adds a value at the end of the sequence
+   * 
+   * @param value
+   *          The value
+   */
+  public void add(T value)
+  {
+    if (m_backSize == m_back.length)
+    {
+      m_back = grow(m_back);
+    }
+    m_back[m_backSize] = value;
+    m_backValue = m_backSize == 0 ? value : m_function.getValue(m_backValue, value);
+    m_backSize++;
+  }
+
+  /**
+   * Removes the value at the beginning of the sequence
+   * 
+   * @throws IllegalStateException
+   *           If the sequence is empty
+   */
+  public void remove()
+  {
+    if (m_frontSize == 0)
+    {
+      if (m_backSize == 0)
+      {
+        throw new IllegalStateException("The sequence is empty");
+      }
+      flip();
+    }
+    m_frontSize--;
+    m_front[m_frontSize] = null;
+  }
+
+  /**
+   * Gets the combination of all the values of the sequence, in their order
+   * of arrival
+   * 
+   * @return The combination, or <tt>null</tt> if the sequence is empty
+   */
+  @SuppressWarnings("unchecked")
+  public T getValue()
+  {
+    if (m_frontSize == 0)
+    {
+      return m_backValue;
+    }
+    T front = (T) m_front[m_frontSize - 1];
+    if (m_backSize == 0)
+    {
+      return front;
+    }
+    return m_function.getValue(front, m_backValue);
+  }
+
+  /**
+   * Gets the number of values in the sequence
+   * 
+   * @return The number of values
+   */
+  public int size()
+  {
+    return m_frontSize + m_backSize;
+  }
+
+  /**
+   * Removes all the values of the sequence
+   */
+  public void clear()
+  {
+    for (int i = 0; i < m_backSize; i++)
+    {
+      m_back[i] = null;
+    }
+    for (int i = 0; i < m_frontSize; i++)
+    {
+      m_front[i] = null;
+    }
+    m_backSize = 0;
+    m_frontSize = 0;
+    m_backValue = null;
+  }
+
+  /**
+   * Moves the content of the back stack into the (empty) front stack. The
+   * most recent value ends up at the bottom of the front stack, and the
+   * oldest at its top.
+   */
+  @SuppressWarnings("unchecked")
+  protected void flip()
+  {
+    if (m_front.length < m_backSize)
+    {
+      m_front = new Object[m_back.length];
+    }
+    T value = null;
+    for (int i = m_backSize - 1; i >= 0; i--)
+    {
+      T o = (T) m_back[i];
+      value = i == m_backSize - 1 ? o : m_function.getValue(o, value);
+      m_front[m_frontSize++] = value;
+      m_back[i] = null;
+    }
+    m_backSize = 0;
+    m_backValue = null;
+  }
+
+  /**
+   * Doubles the size of an array
+   * 
+   * @param array
+   *          The array
+   * @return A new array with the same content
+   */
+  protected static Object[] grow(Object[] array)
+  {
+    Object[] new_array = new Object[array.length * 2];
+    System.arraycopy(array, 0, new_array, 0, array.length);
+    return new_array;
+  }
+}
@@ -17,9 +17,12 @@
  */
 package ca.uqac.lif.cep.util;
 
+import ca.uqac.lif.cep.Context;
+import ca.uqac.lif.cep.EventTracker;
 import ca.uqac.lif.cep.Processor;
 import ca.uqac.lif.cep.UniformProcessor;
 import ca.uqac.lif.cep.functions.BinaryFunction;
+import ca.uqac.lif.cep.functions.InvalidArgumentException;
 import ca.uqac.lif.cep.functions.UnaryFunction;
 import java.util.HashSet;
 import java.util.Set;
@@ -27,7 +30,12 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * A container object for string functions
+ * A container object for string functions. The functions that take strings as
+ * input also accept any {@link CharSequence}, such as a {@link ByteSequence}
+ * read from a file. Their signatures still declare strings; a sequence that
+ * is not a string is passed to an overload of <tt>getValue()</tt>, which
+ * looks at its characters without converting it into a string whenever
+ * possible.
  * 
  * @author Sylvain Hallé
  * @since 0.7
@@ -51,6 +59,36 @@ public class Strings
 
   public static final ToString toString = ToString.instance;
 
+  /**
+   * Checks if a sequence of characters contains another at a given position
+   * 
+   * @param s
+   *          The sequence of characters
+   * @param offset
+   *          The position
+   * @param t
+   *          The sequence of characters to look for
+   * @return <tt>true</tt> if <tt>s</tt> contains <tt>t</tt> at this
+   *         position, <tt>false</tt> otherwise
+   * @since 0.11
+   */
+  protected static boolean regionMatches(CharSequence s, int offset, CharSequence t)
+  {
+    int len = t.length();
+    if (offset < 0 || offset + len > s.length())
+    {
+      return false;
+    }
+    for (int i = 0; i < len; i++)
+    {
+      if (s.charAt(offset + i) != t.charAt(i))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Concatenates input strings into an output string
    */
@@ -132,18 +170,76 @@ public class Strings
     {
       return s1.toString() + s2.toString();
     }
+
+    @Override
+    public boolean isAssociative()
+    {
+      return true;
+    }
+  }
+
+  /**
+   * A binary function on strings that also accepts other sequences of
+   * characters, such as {@link ByteSequence}s. When both arguments are
+   * strings, the function is evaluated with {@link #getValue(String, String)};
+   * otherwise, it is evaluated with
+   * {@link #getValue(CharSequence, CharSequence)}.
+   * 
+   * @since 0.11
+   */
+  public abstract static class CharSequencePredicate extends BinaryFunction<String, String, Boolean>
+  {
+    protected CharSequencePredicate()
+    {
+      super(String.class, String.class, Boolean.class);
+    }
+
+    /**
+     * Evaluates the function on two sequences of characters that are not
+     * both strings
+     * 
+     * @param s1
+     *          The first sequence
+     * @param s2
+     *          The second sequence
+     * @return The value of the function
+     */
+    public abstract Boolean getValue(CharSequence s1, CharSequence s2);
+
+    @Override
+    public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+    {
+      if (inputs[0] instanceof String && inputs[1] instanceof String)
+      {
+        super.evaluate(inputs, outputs, context, tracker);
+        return;
+      }
+      for (int i = 0; i < 2; i++)
+      {
+        if (!(inputs[i] instanceof CharSequence))
+        {
+          throw new InvalidArgumentException(this, i);
+        }
+      }
+      outputs[0] = getValue((CharSequence) inputs[0], (CharSequence) inputs[1]);
+      if (tracker != null)
+      {
+        tracker.associateToOutput(-1, 0, 0, 0, 0);
+        tracker.associateToOutput(-1, 1, 0, 0, 0);
+      }
+    }
   }
 
   /**
    * Function that checks if a string contains another
    */
-  public static class Contains extends BinaryFunction<String, String, Boolean>
+  public static class Contains extends CharSequencePredicate
   {
     public static final Contains instance = new Contains();
 
     protected Contains()
     {
-      super(String.class, String.class, Boolean.class);
+      super();
     }
 
     @Override
@@ -151,18 +247,31 @@ public class Strings
     {
       return s1.contains(s2);
     }
+
+    @Override
+    public Boolean getValue(CharSequence s1, CharSequence s2)
+    {
+      for (int i = 0; i <= s1.length() - s2.length(); i++)
+      {
+        if (regionMatches(s1, i, s2))
+        {
+          return true;
+        }
+      }
+      return false;
+    }
   }
 
   /**
    * Function that checks if a string ends by another
    */
-  public static class EndsWith extends BinaryFunction<String, String, Boolean>
+  public static class EndsWith extends CharSequencePredicate
   {
     public static final EndsWith instance = new EndsWith();
 
     protected EndsWith()
     {
-      super(String.class, String.class, Boolean.class);
+      super();
     }
 
     @Override
@@ -170,18 +279,24 @@ public class Strings
     {
       return s1.endsWith(s2);
     }
+
+    @Override
+    public Boolean getValue(CharSequence s1, CharSequence s2)
+    {
+      return regionMatches(s1, s1.length() - s2.length(), s2);
+    }
   }
 
   /**
    * Checks if a string matches a regular expression
    */
-  public static class Matches extends BinaryFunction<String, String, Boolean>
+  public static class Matches extends CharSequencePredicate
   {
     public static final Matches instance = new Matches();
 
     protected Matches()
     {
-      super(String.class, String.class, Boolean.class);
+      super();
     }
 
     @Override
@@ -189,18 +304,24 @@ public class Strings
     {
       return s1.matches(s2);
     }
+
+    @Override
+    public Boolean getValue(CharSequence s1, CharSequence s2)
+    {
+      return Pattern.matches(s2.toString(), s1);
+    }
   }
 
   /**
    * Checks if a string starts by another
    */
-  public static class StartsWith extends BinaryFunction<String, String, Boolean>
+  public static class StartsWith extends CharSequencePredicate
   {
     public static final StartsWith instance = new StartsWith();
 
     protected StartsWith()
     {
-      super(String.class, String.class, Boolean.class);
+      super();
     }
 
     @Override
@@ -208,6 +329,12 @@ public class Strings
     {
       return s1.startsWith(s2);
     }
+
+    @Override
+    public Boolean getValue(CharSequence s1, CharSequence s2)
+    {
+      return regionMatches(s1, 0, s2);
+    }
   }
 
   /**
@@ -251,6 +378,17 @@ public class Strings
       return this;
     }
 
+    @Override
+    public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+    {
+      if (inputs[0] instanceof CharSequence && !(inputs[0] instanceof String))
+      {
+        // The sequence is split as a string
+        inputs = new Object[] { inputs[0].toString() };
+      }
+      super.evaluate(inputs, outputs, context, tracker);
+    }
+
     @Override
     public Object getValue(String s)
     {
@@ -348,8 +486,37 @@ public class Strings
       m_pattern = Pattern.compile(regex);
     }
 
+    @Override
+    public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+    {
+      if (inputs[0] instanceof CharSequence && !(inputs[0] instanceof String))
+      {
+        outputs[0] = getValue((CharSequence) inputs[0]);
+        if (tracker != null)
+        {
+          tracker.associateToOutput(-1, 0, 0, 0, 0);
+        }
+        return;
+      }
+      super.evaluate(inputs, outputs, context, tracker);
+    }
+
     @Override
     public Set getValue(String s)
+    {
+      return getValue((CharSequence) s);
+    }
+
+    /**
+     * Finds the substrings of a sequence of characters that match the
+     * regular expression
+     * 
+     * @param s
+     *          The sequence
+     * @return The set of substrings
+     * @since 0.11
+     */
+    public Set getValue(CharSequence s)
     {
       Matcher mat = m_pattern.matcher(s);
       Set<String> set = new HashSet<String>();
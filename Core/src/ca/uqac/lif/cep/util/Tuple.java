@@ -0,0 +1,297 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An event made of named fields, whose names and types are given by a
+ * {@link Schema}. Contrarily to a {@link Map}, a tuple stores its values in
+ * a plain array; the names of the fields are kept only once, in the schema
+ * shared by all the tuples of a stream. Getting a field by its index is
+ * an array access; functions such as {@link Tuples.Get} find the index of a
+ * field from its name once, rather than for every event.
+ * <p>
+ * A tuple is immutable.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class Tuple
+{
+  /**
+   * The schema of the tuple
+   */
+  protected final Schema m_schema;
+
+  /**
+   * The values of the fields
+   */
+  protected final Object[] m_values;
+
+  /**
+   * Creates a new tuple
+   * 
+   * @param schema
+   *          The schema of the tuple
+   * @param values
+   *          The values of the fields, in the order of the schema. The array
+   *          is used as is; it must not be modified afterwards.
+   */
+  public Tuple(/* @ non_null @ */ Schema schema, /* @ non_null @ */ Object ... values)
+  {
+    super();
+    if (values.length != schema.size())
+    {
+      throw new IllegalArgumentException("Expected " + schema.size() + " values, got "
+          + values.length);
+    }
+    m_schema = schema;
+    m_values = values;
+  }
+
+  /**
+   * Gets the schema of the tuple
+   * 
+   * @return The schema
+   */
+  public Schema getSchema()
+  {
+    return m_schema;
+  }
+
+  /**
+   * Gets the number of fields of the tuple
+   * 
+   * @return The number of fields
+   */
+  public int size()
+  {
+    return m_values.length;
+  }
+
+  /**
+   * Gets the value of a field from its index
+   * 
+   * @param index
+   *          The index of the field
+   * @return The value
+   */
+  public Object get(int index)
+  {
+    return m_values[index];
+  }
+
+  /**
+   * Gets the value of a field from its name. This looks up the name in the
+   * schema; when the same field is read from many tuples, it is faster to
+   * look up its index once with {@link Schema#indexOf(String)}.
+   * 
+   * @param name
+   *          The name of the field
+   * @return The value, or <tt>null</tt> if the tuple has no such field
+   */
+  public Object get(String name)
+  {
+    int index = m_schema.indexOf(name);
+    return index < 0 ? null : m_values[index];
+  }
+
+  @Override
+  public boolean equals(Object o)
+  {
+    if (!(o instanceof Tuple))
+    {
+      return false;
+    }
+    Tuple t = (Tuple) o;
+    return m_schema.equals(t.m_schema) && Arrays.equals(m_values, t.m_values);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Arrays.hashCode(m_values);
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder out = new StringBuilder();
+    out.append("(");
+    for (int i = 0; i < m_values.length; i++)
+    {
+      if (i > 0)
+      {
+        out.append(",");
+      }
+      out.append(m_schema.getName(i)).append("=").append(m_values[i]);
+    }
+    out.append(")");
+    return out.toString();
+  }
+
+  /**
+   * The names and types of the fields of a tuple.
+   * <p>
+   * When {@link ca.uqac.lif.cep.Connector Connector} connects two
+   * processors, it passes the schema of the tuples produced by the first
+   * one, if it is known, to the second one; see
+   * {@link Tuples#connectSchema(ca.uqac.lif.cep.Processor, int, ca.uqac.lif.cep.Processor, int)
+   * Tuples.connectSchema()}. This is how {@link Tuples.Get} finds the index
+   * of its field when it is connected, rather than when the first event
+   * arrives.
+   */
+  public static class Schema
+  {
+    /**
+     * The names of the fields
+     */
+    protected final String[] m_names;
+
+    /**
+     * The types of the fields
+     */
+    protected final Class<?>[] m_types;
+
+    /**
+     * The index of each field, from its name
+     */
+    protected final Map<String, Integer> m_indexes;
+
+    /**
+     * Creates a new schema whose fields can have any type
+     * 
+     * @param names
+     *          The names of the fields
+     */
+    public Schema(/* @ non_null @ */ String ... names)
+    {
+      this(names, null);
+    }
+
+    /**
+     * Creates a new schema
+     * 
+     * @param names
+     *          The names of the fields
+     * @param types
+     *          The types of the fields, or <tt>null</tt> if the fields can
+     *          have any type
+     */
+    public Schema(/* @ non_null @ */ String[] names, /* @ null @ */ Class<?>[] types)
+    {
+      super();
+      if (types == null)
+      {
+        types = new Class<?>[names.length];
+        Arrays.fill(types, Object.class);
+      }
+      if (types.length != names.length)
+      {
+        throw new IllegalArgumentException("A schema needs as many types as names");
+      }
+      m_names = names;
+      m_types = types;
+      m_indexes = new HashMap<String, Integer>();
+      for (int i = 0; i < names.length; i++)
+      {
+        if (m_indexes.put(names[i], i) != null)
+        {
+          throw new IllegalArgumentException("Duplicate field name: " + names[i]);
+        }
+      }
+    }
+
+    /**
+     * Gets the number of fields
+     * 
+     * @return The number of fields
+     */
+    public int size()
+    {
+      return m_names.length;
+    }
+
+    /**
+     * Gets the name of a field
+     * 
+     * @param index
+     *          The index of the field
+     * @return The name
+     */
+    public String getName(int index)
+    {
+      return m_names[index];
+    }
+
+    /**
+     * Gets the type of a field
+     * 
+     * @param index
+     *          The index of the field
+     * @return The type
+     */
+    public Class<?> getType(int index)
+    {
+      return m_types[index];
+    }
+
+    /**
+     * Gets the index of a field from its name
+     * 
+     * @param name
+     *          The name of the field
+     * @return The index, or -1 if there is no such field
+     */
+    public int indexOf(String name)
+    {
+      Integer index = m_indexes.get(name);
+      return index == null ? -1 : index;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (o == this)
+      {
+        return true;
+      }
+      if (!(o instanceof Schema))
+      {
+        return false;
+      }
+      Schema s = (Schema) o;
+      return Arrays.equals(m_names, s.m_names) && Arrays.equals(m_types, s.m_types);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return Arrays.hashCode(m_names);
+    }
+
+    @Override
+    public String toString()
+    {
+      return Arrays.toString(m_names);
+    }
+  }
+}
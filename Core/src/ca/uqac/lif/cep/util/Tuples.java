@@ -0,0 +1,473 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.util;
+
+import ca.uqac.lif.cep.Context;
+import ca.uqac.lif.cep.EventTracker;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.functions.FunctionException;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.InvalidArgumentException;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.util.Tuple.Schema;
+import java.util.Set;
+
+/**
+ * A container object for functions that create and read {@link Tuple}s.
+ * 
+ * @author Sylvain Hallé
+ * @since 0.11
+ */
+public class Tuples
+{
+  private Tuples()
+  {
+    // Utility class
+  }
+
+  /**
+   * Passes the schema of the tuples produced by the <i>i</i>-th output of
+   * <code>p1</code>, if it is known, to the {@link Get} functions that read
+   * the <i>j</i>-th input of <code>p2</code>. This method is called by
+   * {@link ca.uqac.lif.cep.Connector Connector} when it connects the two
+   * processors; it does nothing if either processor is not an
+   * {@link ApplyFunction}.
+   * 
+   * @param p1
+   *          The first processor
+   * @param i
+   *          The index of the output on the first processor
+   * @param p2
+   *          The second processor
+   * @param j
+   *          The index of the input on the second processor
+   */
+  public static void connectSchema(Processor p1, int i, Processor p2, int j)
+  {
+    if (!(p1 instanceof ApplyFunction) || !(p2 instanceof ApplyFunction))
+    {
+      return;
+    }
+    Schema s = getOutputSchema(((ApplyFunction) p1).getFunction(), i);
+    if (s != null)
+    {
+      setInputSchema(((ApplyFunction) p2).getFunction(), j, s);
+    }
+  }
+
+  /**
+   * Gets the schema of the tuples produced by an output of a function
+   * 
+   * @param f
+   *          The function
+   * @param index
+   *          The index of the output
+   * @return The schema, or <tt>null</tt> if it is not known
+   */
+  /* @ null @ */ protected static Schema getOutputSchema(Function f, int index)
+  {
+    if (f instanceof Create && index == 0)
+    {
+      return ((Create) f).getSchema();
+    }
+    if (f instanceof FromArray && index == 0)
+    {
+      return ((FromArray) f).getSchema();
+    }
+    if (f instanceof FunctionTree)
+    {
+      return getOutputSchema(((FunctionTree) f).getFunction(), index);
+    }
+    return null;
+  }
+
+  /**
+   * Passes a schema to the {@link Get} functions that read an input of a
+   * function
+   * 
+   * @param f
+   *          The function
+   * @param index
+   *          The index of the input
+   * @param s
+   *          The schema
+   */
+  protected static void setInputSchema(Function f, int index, Schema s)
+  {
+    if (f instanceof Get)
+    {
+      ((Get) f).setSchema(s);
+      return;
+    }
+    if (!(f instanceof FunctionTree))
+    {
+      return;
+    }
+    FunctionTree tree = (FunctionTree) f;
+    for (int k = 0; k < tree.getFunction().getInputArity(); k++)
+    {
+      Function child = tree.getChild(k);
+      if (child instanceof StreamVariable)
+      {
+        if (((StreamVariable) child).getIndex() == index)
+        {
+          setInputSchema(tree.getFunction(), k, s);
+        }
+      }
+      else
+      {
+        setInputSchema(child, index, s);
+      }
+    }
+  }
+
+  /**
+   * Gets the value of a field of a tuple, based on the name of the field.
+   * The name is looked up in the schema of the tuple only when this schema
+   * changes; for the other tuples, getting the field is an array access.
+   * <p>
+   * Moreover, when the function is connected to an output whose schema is
+   * known (such as that of a {@link Create} or {@link FromArray}), the name
+   * is looked up when the connection is made; see
+   * {@link Tuples#connectSchema(Processor, int, Processor, int)
+   * connectSchema()}. In such a case, the output type of the function is the
+   * type of the field in the schema.
+   */
+  public static class Get extends Function
+  {
+    /**
+     * The name of the field to get
+     */
+    protected String m_name;
+
+    /**
+     * The schema in which the name of the field has been looked up last
+     */
+    protected transient Schema m_schema = null;
+
+    /**
+     * The index of the field in this schema
+     */
+    protected transient int m_index = -1;
+
+    /**
+     * Creates a new get function
+     * 
+     * @param name
+     *          The name of the field to get
+     */
+    public Get(/* @ non_null @ */ String name)
+    {
+      super();
+      m_name = name;
+    }
+
+    /**
+     * Gets the name of the field to get
+     * 
+     * @return The name
+     */
+    public String getName()
+    {
+      return m_name;
+    }
+
+    /**
+     * Gets the index of the field in the last schema where its name has been
+     * looked up
+     * 
+     * @return The index, or -1 if the name has not been looked up yet, or if
+     *         it is not in the schema
+     */
+    public int getIndex()
+    {
+      return m_index;
+    }
+
+    @Override
+    public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+    {
+      if (!(inputs[0] instanceof Tuple))
+      {
+        throw new InvalidArgumentException(this, 0);
+      }
+      Tuple t = (Tuple) inputs[0];
+      Schema s = t.getSchema();
+      if (s != m_schema)
+      {
+        resolve(s);
+      }
+      if (m_index < 0)
+      {
+        throw new FunctionException("There is no field " + m_name + " in the input tuple");
+      }
+      outputs[0] = t.get(m_index);
+      if (tracker != null)
+      {
+        tracker.associateToOutput(-1, 0, 0, 0, 0);
+      }
+    }
+
+    /**
+     * Sets the schema of the input tuples, and looks up the name of the
+     * field in this schema
+     * 
+     * @param s
+     *          The schema
+     */
+    public void setSchema(/* @ non_null @ */ Schema s)
+    {
+      resolve(s);
+    }
+
+    /**
+     * Looks up the name of the field in a schema
+     * 
+     * @param s
+     *          The schema
+     */
+    protected void resolve(Schema s)
+    {
+      m_index = s.indexOf(m_name);
+      m_schema = s;
+    }
+
+    @Override
+    public int getInputArity()
+    {
+      return 1;
+    }
+
+    @Override
+    public int getOutputArity()
+    {
+      return 1;
+    }
+
+    @Override
+    public void getInputTypesFor(Set<Class<?>> classes, int index)
+    {
+      classes.add(Tuple.class);
+    }
+
+    @Override
+    public Class<?> getOutputTypeFor(int index)
+    {
+      if (m_schema != null && m_index >= 0)
+      {
+        return m_schema.getType(m_index);
+      }
+      return Object.class;
+    }
+
+    @Override
+    public Get duplicate(boolean with_state)
+    {
+      Get g = new Get(m_name);
+      g.m_schema = m_schema;
+      g.m_index = m_index;
+      return g;
+    }
+
+    @Override
+    public String toString()
+    {
+      return m_name;
+    }
+  }
+
+  /**
+   * Creates a tuple from a front of <i>n</i> events: field <i>i</i> of the
+   * tuple is the event of the <i>i</i>-th input stream.
+   */
+  public static class Create extends Function
+  {
+    /**
+     * The schema of the tuples
+     */
+    protected Schema m_schema;
+
+    /**
+     * Creates a new tuple creation function
+     * 
+     * @param schema
+     *          The schema of the tuples
+     */
+    public Create(/* @ non_null @ */ Schema schema)
+    {
+      super();
+      m_schema = schema;
+    }
+
+    /**
+     * Gets the schema of the tuples
+     * 
+     * @return The schema
+     */
+    public Schema getSchema()
+    {
+      return m_schema;
+    }
+
+    @Override
+    public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+    {
+      Object[] values = new Object[inputs.length];
+      System.arraycopy(inputs, 0, values, 0, inputs.length);
+      outputs[0] = new Tuple(m_schema, values);
+      if (tracker != null)
+      {
+        for (int i = 0; i < inputs.length; i++)
+        {
+          tracker.associateToOutput(-1, i, 0, 0, 0);
+        }
+      }
+    }
+
+    @Override
+    public int getInputArity()
+    {
+      return m_schema.size();
+    }
+
+    @Override
+    public int getOutputArity()
+    {
+      return 1;
+    }
+
+    @Override
+    public void getInputTypesFor(Set<Class<?>> classes, int index)
+    {
+      classes.add(m_schema.getType(index));
+    }
+
+    @Override
+    public Class<?> getOutputTypeFor(int index)
+    {
+      return Tuple.class;
+    }
+
+    @Override
+    public Create duplicate(boolean with_state)
+    {
+      return new Create(m_schema);
+    }
+
+    @Override
+    public String toString()
+    {
+      return "TUPLE " + m_schema;
+    }
+  }
+
+  /**
+   * Creates a tuple from an array of values, such as the arrays produced by
+   * {@link ParseCsv} or {@link Bags.ToArray}.
+   */
+  public static class FromArray extends Function
+  {
+    /**
+     * The schema of the tuples
+     */
+    protected Schema m_schema;
+
+    /**
+     * Creates a new tuple creation function
+     * 
+     * @param schema
+     *          The schema of the tuples
+     */
+    public FromArray(/* @ non_null @ */ Schema schema)
+    {
+      super();
+      m_schema = schema;
+    }
+
+    /**
+     * Gets the schema of the tuples
+     * 
+     * @return The schema
+     */
+    public Schema getSchema()
+    {
+      return m_schema;
+    }
+
+    @Override
+    public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+    {
+      if (!(inputs[0] instanceof Object[]))
+      {
+        throw new InvalidArgumentException(this, 0);
+      }
+      Object[] array = (Object[]) inputs[0];
+      if (array.length != m_schema.size())
+      {
+        throw new FunctionException("Expected an array of " + m_schema.size()
+            + " values, got " + array.length);
+      }
+      // The array is copied, as its producer may reuse it
+      Object[] values = new Object[array.length];
+      System.arraycopy(array, 0, values, 0, array.length);
+      outputs[0] = new Tuple(m_schema, values);
+      if (tracker != null)
+      {
+        tracker.associateToOutput(-1, 0, 0, 0, 0);
+      }
+    }
+
+    @Override
+    public int getInputArity()
+    {
+      return 1;
+    }
+
+    @Override
+    public int getOutputArity()
+    {
+      return 1;
+    }
+
+    @Override
+    public void getInputTypesFor(Set<Class<?>> classes, int index)
+    {
+      classes.add(Object[].class);
+    }
+
+    @Override
+    public Class<?> getOutputTypeFor(int index)
+    {
+      return Tuple.class;
+    }
+
+    @Override
+    public FromArray duplicate(boolean with_state)
+    {
+      return new FromArray(m_schema);
+    }
+
+    @Override
+    public String toString()
+    {
+      return "TUPLE " + m_schema;
+    }
+  }
+}
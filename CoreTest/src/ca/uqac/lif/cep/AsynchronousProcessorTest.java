@@ -0,0 +1,190 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Pushable.PushableException;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.QueueSource;
+
+/**
+ * Unit tests for the {@link AsynchronousProcessor} class.
+ */
+public class AsynchronousProcessorTest
+{
+	@Test
+	public void testPushFast() throws Exception
+	{
+		AsyncDoubler ad = new AsyncDoubler();
+		QueueSink sink = new QueueSink();
+		Connector.connect(ad, sink);
+		Pushable p = ad.getPushableInput();
+		Future<Pushable> last = null;
+		for (int i = 0; i < 1000; i++)
+		{
+			last = p.pushFast(i);
+		}
+		assertEquals(p, last.get());
+		assertTrue(last.isDone());
+		Queue<Object> queue = sink.getQueue();
+		assertEquals(1000, queue.size());
+		for (int i = 0; i < 1000; i++)
+		{
+			assertEquals(2 * i, queue.remove());
+		}
+	}
+	
+	@Test
+	public void testPushAndEndOfTrace()
+	{
+		AsyncDoubler ad = new AsyncDoubler();
+		QueueSink sink = new QueueSink();
+		Connector.connect(ad, sink);
+		Pushable p = ad.getPushableInput();
+		p.push(1);
+		assertEquals(1, sink.getQueue().size());
+		p.pushFast(2);
+		p.pushFast(3);
+		// The end of trace waits for all pending events
+		p.notifyEndOfTrace();
+		assertEquals(4, sink.getQueue().size());
+		assertEquals(-1, sink.getQueue().toArray()[3]);
+		assertEquals(0, ad.getMailboxSize());
+	}
+	
+	@Test
+	public void testCustomExecutor()
+	{
+		final AtomicInteger count = new AtomicInteger(0);
+		final ExecutorService service = Executors.newSingleThreadExecutor();
+		Executor ex = new Executor()
+		{
+			@Override
+			public void execute(Runnable r)
+			{
+				count.incrementAndGet();
+				service.execute(r);
+			}
+		};
+		AsyncDoubler ad = new AsyncDoubler(ex, 4);
+		assertEquals(ex, ad.getExecutor());
+		QueueSink sink = new QueueSink();
+		Connector.connect(ad, sink);
+		ad.getPushableInput().pushAll(new Object[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, 0, 10);
+		assertEquals(10, sink.getQueue().size());
+		assertEquals(20, sink.getQueue().toArray()[9]);
+		assertTrue(count.get() > 0);
+		service.shutdown();
+	}
+	
+	@Test(timeout = 10000)
+	public void testChainSingleThread()
+	{
+		ExecutorService service = Executors.newFixedThreadPool(1);
+		AsyncDoubler ad1 = new AsyncDoubler(service, 2);
+		AsyncDoubler ad2 = new AsyncDoubler(service, 2);
+		QueueSink sink = new QueueSink();
+		Connector.connect(ad1, ad2, sink);
+		Pushable p = ad1.getPushableInput();
+		for (int i = 0; i < 100; i++)
+		{
+			p.push(i);
+		}
+		p.notifyEndOfTrace();
+		Queue<Object> queue = sink.getQueue();
+		assertEquals(102, queue.size());
+		for (int i = 0; i < 100; i++)
+		{
+			assertEquals(4 * i, queue.remove());
+		}
+		assertEquals(-2, queue.remove());
+		assertEquals(-1, queue.remove());
+		service.shutdown();
+	}
+	
+	@Test
+	public void testPull()
+	{
+		QueueSource src = new QueueSource().setEvents(1, 2, 3).loop(false);
+		AsyncDoubler ad = new AsyncDoubler();
+		Connector.connect(src, ad);
+		Pullable p = ad.getPullableOutput();
+		assertEquals(2, p.pull());
+		assertEquals(4, p.pull());
+		assertEquals(6, p.pull());
+		assertTrue(p.hasNext());
+		assertEquals(-1, p.pull());
+		assertFalse(p.hasNext());
+	}
+	
+	@Test(expected=PushableException.class)
+	public void testException()
+	{
+		AsyncDoubler ad = new AsyncDoubler();
+		QueueSink sink = new QueueSink();
+		Connector.connect(ad, sink);
+		ad.getPushableInput().push("foo");
+	}
+	
+	/**
+	 * Asynchronous processor that doubles numbers, and outputs -1 at the end
+	 * of the trace
+	 */
+	protected static class AsyncDoubler extends AsynchronousProcessor
+	{
+		public AsyncDoubler()
+		{
+			super(1, 1);
+		}
+		
+		public AsyncDoubler(Executor ex, int capacity)
+		{
+			super(1, 1, ex, capacity);
+		}
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			outputs.add(new Object[] {((Integer) inputs[0]) * 2});
+			return true;
+		}
+		
+		@Override
+		protected boolean onEndOfTrace(Queue<Object[]> outputs)
+		{
+			outputs.add(new Object[] {-1});
+			return true;
+		}
+
+		@Override
+		public Processor duplicate(boolean with_state)
+		{
+			return new AsyncDoubler();
+		}
+	}
+}
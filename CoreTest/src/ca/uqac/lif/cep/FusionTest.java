@@ -0,0 +1,207 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.ProvenanceTest.DummyTracker;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.tmf.CountDecimate;
+import ca.uqac.lif.cep.tmf.Fork;
+import ca.uqac.lif.cep.tmf.Freeze;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Unit tests for {@link Fusion} and {@link FusedProcessor}.
+ */
+public class FusionTest
+{
+	@Test
+	public void testFusePush()
+	{
+		ApplyFunction plus = new ApplyFunction(new FunctionTree(Numbers.addition, StreamVariable.X, new Constant(1)));
+		Passthrough pt = new Passthrough();
+		Fork f = new Fork(1);
+		ApplyFunction times = new ApplyFunction(new FunctionTree(Numbers.multiplication, StreamVariable.X, new Constant(2)));
+		QueueSink sink = new QueueSink();
+		Connector.connect(plus, pt, f, times, sink);
+		List<FusedProcessor> fused = Fusion.fuse(plus);
+		assertEquals(1, fused.size());
+		FusedProcessor fp = fused.get(0);
+		assertEquals(4, fp.getChain().length);
+		assertEquals(plus, fp.getChain()[0]);
+		assertEquals(times, fp.getChain()[3]);
+		Pushable p = fp.getPushableInput();
+		Queue<Object> queue = sink.getQueue();
+		p.push(3);
+		Utilities.queueContains(8, queue);
+		p.pushAll(new Object[] {0, 1}, 0, 2);
+		assertEquals(2, queue.size());
+		Utilities.assertEquals(2, queue.remove());
+		Utilities.assertEquals(4, queue.remove());
+	}
+	
+	@Test
+	public void testFusePull()
+	{
+		QueueSource src = new QueueSource().setEvents(1, 2, 3);
+		Freeze fr = new Freeze();
+		ApplyFunction plus = new ApplyFunction(new FunctionTree(Numbers.addition, StreamVariable.X, new Constant(1)));
+		Passthrough pt = new Passthrough();
+		Connector.connect(src, fr, plus, pt);
+		List<FusedProcessor> fused = Fusion.fuse(src);
+		assertEquals(1, fused.size());
+		// The source is now connected to the fused processor
+		FusedProcessor fp = fused.get(0);
+		assertEquals(fp, src.getPushableOutput(0).getProcessor());
+		Pullable p = fp.getPullableOutput();
+		Utilities.assertEquals(2, p.pull());
+		Utilities.assertEquals(2, p.pull());
+		// Resetting the fused processor resets the chain
+		fp.reset();
+		Utilities.assertEquals(4, p.pull());
+	}
+	
+	@Test
+	public void testSuppression()
+	{
+		// The middle processor produces no output for odd numbers
+		ApplyFunction plus = new ApplyFunction(new FunctionTree(Numbers.addition, StreamVariable.X, new Constant(1)));
+		UniformProcessor even = new UniformProcessor(1, 1)
+		{
+			@Override
+			protected boolean compute(Object[] inputs, Object[] outputs)
+			{
+				outputs[0] = inputs[0];
+				return ((Number) inputs[0]).intValue() % 2 == 0;
+			}
+
+			@Override
+			public Processor duplicate(boolean with_state)
+			{
+				return this;
+			}
+		};
+		Freeze fr = new Freeze();
+		QueueSink sink = new QueueSink();
+		Connector.connect(plus, even, fr, sink);
+		FusedProcessor fp = Fusion.fuse(plus).get(0);
+		assertEquals(3, fp.getChain().length);
+		Pushable p = fp.getPushableInput();
+		Queue<Object> queue = sink.getQueue();
+		p.push(0);
+		assertTrue(queue.isEmpty());
+		p.push(1);
+		p.push(2);
+		assertEquals(1, queue.size());
+		Utilities.assertEquals(2, queue.remove());
+		p.pushAll(new Object[] {3, 4, 5}, 0, 3);
+		// Freeze still holds the first event, although the arrays are reused
+		assertEquals(2, queue.size());
+		Utilities.assertEquals(2, queue.remove());
+		Utilities.assertEquals(2, queue.remove());
+	}
+	
+	@Test
+	public void testChainsSplitByOtherProcessors()
+	{
+		QueueSource src = new QueueSource().setEvents(1, 2, 3, 4);
+		Passthrough pt1 = new Passthrough();
+		Passthrough pt2 = new Passthrough();
+		CountDecimate dec = new CountDecimate(2);
+		Passthrough pt3 = new Passthrough();
+		Passthrough pt4 = new Passthrough();
+		Passthrough pt5 = new Passthrough();
+		QueueSink sink = new QueueSink();
+		Connector.connect(src, pt1, pt2, dec, pt3, pt4, pt5, sink);
+		List<FusedProcessor> fused = Fusion.fuse(sink);
+		assertEquals(2, fused.size());
+		int total = fused.get(0).getChain().length + fused.get(1).getChain().length;
+		assertEquals(5, total);
+		for (int i = 0; i < 4; i++)
+		{
+			src.push();
+		}
+		Queue<Object> queue = sink.getQueue();
+		assertEquals(2, queue.size());
+		assertEquals(1, queue.remove());
+		assertEquals(3, queue.remove());
+	}
+	
+	@Test
+	public void testSingleProcessorNotFused()
+	{
+		QueueSource src = new QueueSource().setEvents(1);
+		Passthrough pt = new Passthrough();
+		QueueSink sink = new QueueSink();
+		Connector.connect(src, pt, sink);
+		assertTrue(Fusion.fuse(src).isEmpty());
+		assertTrue(Fusion.isFusable(pt));
+		assertFalse(Fusion.isFusable(sink));
+		assertFalse(Fusion.isFusable(new Fork(2)));
+	}
+	
+	@Test
+	public void testEventTracker()
+	{
+		DummyTracker tracker = new DummyTracker();
+		QueueSource src = new QueueSource().setEvents(1, 2);
+		Passthrough pt1 = new Passthrough();
+		Passthrough pt2 = new Passthrough();
+		QueueSink sink = new QueueSink();
+		Connector.connect(tracker, src, pt1, pt2, sink);
+		tracker.setTo(src, pt1, pt2, sink);
+		FusedProcessor fp = Fusion.fuse(src).get(0);
+		assertEquals(tracker, fp.getEventTracker());
+		src.push();
+		src.push();
+		// Each processor of the chain still records its own associations
+		assertTrue(tracker.containsInputAssociation(pt1.getId(), 0, 1, 0, 1));
+		assertTrue(tracker.containsInputAssociation(pt2.getId(), 0, 1, 0, 1));
+		assertEquals(2, sink.getQueue().size());
+	}
+	
+	@Test
+	public void testDuplicate()
+	{
+		Freeze fr = new Freeze();
+		Passthrough pt = new Passthrough();
+		FusedProcessor fp = new FusedProcessor(fr, pt);
+		QueueSink sink = new QueueSink();
+		Connector.connect(fp, sink);
+		fp.getPushableInput().push(7);
+		FusedProcessor copy = fp.duplicate(false);
+		assertEquals(2, copy.getChain().length);
+		assertNotSame(fr, copy.getChain()[0]);
+		QueueSink sink2 = new QueueSink();
+		Connector.connect(copy, sink2);
+		copy.getPushableInput().push(8);
+		assertEquals(8, sink2.getQueue().remove());
+	}
+}
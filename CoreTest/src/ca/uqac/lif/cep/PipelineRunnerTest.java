@@ -0,0 +1,142 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.tmf.Fork;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Unit tests for the {@link PipelineRunner} class.
+ */
+public class PipelineRunnerTest
+{
+	@Test
+	public void testPartition()
+	{
+		QueueSource src = new QueueSource().setEvents(1, 2, 3);
+		Passthrough pt1 = new Passthrough();
+		Passthrough pt2 = new Passthrough();
+		QueueSink sink = new QueueSink();
+		Connector.connect(src, pt1, pt2, sink);
+		PipelineRunner runner = new PipelineRunner(sink).setStages(2);
+		List<List<Processor>> stages = runner.getStages();
+		assertEquals(2, stages.size());
+		assertEquals(src, stages.get(0).get(0));
+		assertEquals(pt1, stages.get(0).get(1));
+		assertEquals(pt2, stages.get(1).get(0));
+		assertEquals(sink, stages.get(1).get(1));
+	}
+	
+	@Test
+	public void testDrain()
+	{
+		Object[] events = new Object[10000];
+		for (int i = 0; i < events.length; i++)
+		{
+			events[i] = i;
+		}
+		QueueSource src = new QueueSource().setEvents(events).loop(false);
+		ApplyFunction plus = new ApplyFunction(new FunctionTree(Numbers.addition, new StreamVariable(0), new Constant(1)));
+		Passthrough pt = new Passthrough();
+		EndSink sink = new EndSink();
+		Connector.connect(src, plus, pt, sink);
+		PipelineRunner runner = new PipelineRunner(src).setStages(3).setCapacity(16);
+		runner.start();
+		runner.drain();
+		assertFalse(runner.isRunning());
+		Queue<Object> queue = sink.getQueue();
+		assertEquals(events.length, queue.size());
+		for (int i = 0; i < events.length; i++)
+		{
+			assertEquals(i + 1, ((Number) queue.remove()).intValue());
+		}
+		assertTrue(sink.m_ended);
+		// The original connections are restored
+		assertEquals(pt, plus.getPushableOutput(0).getProcessor());
+		assertEquals(sink, pt.getPushableOutput(0).getProcessor());
+		assertTrue(plus.getPushableOutput(0) == pt.getPushableInput(0));
+	}
+	
+	@Test
+	public void testFork()
+	{
+		QueueSource src = new QueueSource().setEvents(1, 2, 3, 4).loop(false);
+		Fork f = new Fork(2);
+		QueueSink sink1 = new QueueSink();
+		Passthrough pt = new Passthrough();
+		QueueSink sink2 = new QueueSink();
+		Connector.connect(src, f);
+		Connector.connect(f, 0, sink1, 0);
+		Connector.connect(f, 1, pt, 0);
+		Connector.connect(pt, sink2);
+		PipelineRunner runner = new PipelineRunner(src).setStages(5);
+		runner.start();
+		runner.drain();
+		assertEquals(4, sink1.getQueue().size());
+		assertEquals(4, sink2.getQueue().size());
+		assertEquals(4, sink2.getQueue().toArray()[3]);
+	}
+	
+	@Test
+	public void testStop() throws InterruptedException
+	{
+		// An endless source
+		QueueSource src = new QueueSource().setEvents(1, 2, 3);
+		Passthrough pt = new Passthrough();
+		EndSink sink = new EndSink();
+		Connector.connect(src, pt, sink);
+		PipelineRunner runner = new PipelineRunner(src).setStages(2);
+		runner.start();
+		assertTrue(runner.isRunning());
+		Thread.sleep(50);
+		runner.stop();
+		assertFalse(runner.isRunning());
+		assertFalse(sink.getQueue().isEmpty());
+		assertFalse(sink.m_ended);
+		assertTrue(pt.getPushableOutput(0) == sink.getPushableInput(0));
+	}
+	
+	/**
+	 * A queue sink that records whether it received the end of the trace
+	 */
+	protected static class EndSink extends QueueSink
+	{
+		protected volatile boolean m_ended = false;
+		
+		@Override
+		protected boolean onEndOfTrace(Queue<Object[]> outputs)
+		{
+			m_ended = true;
+			return false;
+		}
+	}
+}
@@ -28,8 +28,13 @@ import ca.uqac.lif.cep.functions.ApplyFunction;
 import ca.uqac.lif.cep.functions.FunctionTree;
 import ca.uqac.lif.cep.util.Numbers;
 import ca.uqac.lif.cep.functions.TurnInto;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.Prefix;
 import ca.uqac.lif.cep.tmf.Pump;
+import ca.uqac.lif.cep.tmf.QueueSink;
 import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.tmf.Tank;
+import ca.uqac.lif.cep.tmf.Trim;
 
 /**
  * Unit tests for the {@link Pullable} interface.
@@ -162,4 +167,179 @@ public class PullableTest
 		}
 	}
 
+	
+	@Test
+	public void testPullBatchUnary()
+	{
+		QueueSource src = new QueueSource().setEvents(0, 1, 2, 3).loop(false);
+		ApplyFunction f = new ApplyFunction(new FunctionTree(Numbers.addition, new StreamVariable(0), new Constant(1)));
+		Connector.connect(src, f);
+		Pullable p = f.getPullableOutput();
+		Object[] dst = new Object[3];
+		assertEquals(3, p.pullBatch(dst, 3));
+		assertEquals(1f, ((Number) dst[0]).floatValue(), 0.0001);
+		assertEquals(3f, ((Number) dst[2]).floatValue(), 0.0001);
+		assertEquals(1, p.pullBatch(dst, 3));
+		assertEquals(4f, ((Number) dst[0]).floatValue(), 0.0001);
+		assertEquals(0, p.pullBatch(dst, 3));
+	}
+	
+	@Test
+	public void testPullBatchUnarySkip()
+	{
+		// Even numbers produce no output
+		QueueSource src = new QueueSource().setEvents(0, 2, 4, 1, 6, 8, 3, 5).loop(false);
+		UniformProcessor odd = new UniformProcessor(1, 1)
+		{
+			@Override
+			protected boolean compute(Object[] inputs, Object[] outputs)
+			{
+				outputs[0] = inputs[0];
+				return ((Integer) inputs[0]) % 2 == 1;
+			}
+
+			@Override
+			public Processor duplicate(boolean with_state)
+			{
+				return this;
+			}
+		};
+		Connector.connect(src, odd);
+		Pullable p = odd.getPullableOutput();
+		Object[] dst = new Object[3];
+		// The first batch has no output, but is not the end of the stream
+		assertEquals(1, p.pullBatch(dst, 3));
+		assertEquals(1, dst[0]);
+		assertEquals(2, p.pullBatch(dst, 3));
+		assertEquals(3, dst[0]);
+		assertEquals(5, dst[1]);
+		assertEquals(0, p.pullBatch(dst, 3));
+	}
+	
+	@Test(timeout = 10000)
+	public void testPullBatchTank() throws InterruptedException
+	{
+		final Tank tank = new Tank();
+		final Pushable in = tank.getPushableInput();
+		Tank.QueuePullable out = (Tank.QueuePullable) tank.getPullableOutput();
+		Object[] dst = new Object[4];
+		// Like hasNext, pullBatch does not wait on an empty tank
+		assertFalse(out.hasNext());
+		assertEquals(0, out.pullBatch(dst, 4));
+		assertEquals(0, out.pullSoftBatch(dst, 4));
+		in.push("a");
+		assertTrue(out.hasNext());
+		assertEquals(1, out.pullBatch(dst, 4));
+		assertEquals("a", dst[0]);
+		Thread producer = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Thread.sleep(50);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				in.push("b");
+				in.notifyEndOfTrace();
+			}
+		};
+		producer.start();
+		// awaitBatch waits for the other thread
+		assertEquals(1, out.awaitBatch(dst, 4));
+		assertEquals("b", dst[0]);
+		assertEquals(0, out.awaitBatch(dst, 4));
+		producer.join();
+	}
+	
+	@Test(timeout = 10000)
+	public void testPullBatchTankChain()
+	{
+		// A chain pulled from the same thread that fills the tank must not hang
+		Tank tank = new Tank();
+		Passthrough pt = new Passthrough();
+		Connector.connect(tank, pt);
+		Pushable in = tank.getPushableInput();
+		Pullable p = pt.getPullableOutput();
+		Object[] dst = new Object[4];
+		assertEquals(0, p.pullBatch(dst, 4));
+		in.push("a");
+		in.push("b");
+		assertEquals(2, p.pullBatch(dst, 4));
+		assertEquals("a", dst[0]);
+		assertEquals("b", dst[1]);
+		assertEquals(0, p.pullBatch(dst, 4));
+	}
+	
+	@Test
+	public void testPullBatchChain()
+	{
+		// Trim is not uniform and uses the generic output pullable
+		QueueSource src = new QueueSource().setEvents("a", "b", "c", "d", "e").loop(false);
+		Trim trim = new Trim(1);
+		Passthrough pt = new Passthrough();
+		Connector.connect(src, trim, pt);
+		Pullable p = pt.getPullableOutput();
+		Object[] dst = new Object[10];
+		assertEquals(4, p.pullBatch(dst, 10));
+		assertEquals("b", dst[0]);
+		assertEquals("e", dst[3]);
+		assertEquals(0, p.pullBatch(dst, 10));
+	}
+	
+	@Test
+	public void testPullBatchBinary()
+	{
+		QueueSource src1 = new QueueSource().setEvents(1, 2, 3).loop(false);
+		QueueSource src2 = new QueueSource().setEvents(10, 20).loop(false);
+		ApplyFunction f = new ApplyFunction(Numbers.addition);
+		Connector.connect(src1, 0, f, 0);
+		Connector.connect(src2, 0, f, 1);
+		Object[] dst = new Object[5];
+		Pullable p = f.getPullableOutput();
+		assertEquals(2, p.pullBatch(dst, 5));
+		assertEquals(11f, ((Number) dst[0]).floatValue(), 0.0001);
+		assertEquals(22f, ((Number) dst[1]).floatValue(), 0.0001);
+		assertEquals(0, p.pullBatch(dst, 5));
+	}
+	
+	@Test
+	public void testPullBatchGroup()
+	{
+		QueueSource src = new QueueSource().setEvents("a", "b", "c");
+		GroupProcessor g = new GroupProcessor(1, 1);
+		Prefix prefix = new Prefix(4);
+		g.addProcessor(prefix);
+		g.associateInput(0, prefix, 0);
+		g.associateOutput(0, prefix, 0);
+		Connector.connect(src, g);
+		Object[] dst = new Object[10];
+		Pullable p = g.getPullableOutput();
+		int n = p.pullBatch(dst, 10);
+		assertTrue(n > 0);
+		int total = n;
+		while (n > 0)
+		{
+			n = p.pullBatch(dst, 10);
+			total += n;
+		}
+		assertEquals(4, total);
+	}
+	
+	@Test
+	public void testSinkPullBatch()
+	{
+		QueueSource src = new QueueSource().setEvents("a", "b", "c").loop(false);
+		QueueSink sink = new QueueSink();
+		Connector.connect(src, sink);
+		assertEquals(2, sink.pullBatch(2));
+		assertEquals(1, sink.pullBatch(2));
+		assertEquals(0, sink.pullBatch(2));
+		assertEquals(3, sink.getQueue().size());
+		assertEquals("a", sink.getQueue().remove());
+	}
 }
@@ -18,6 +18,7 @@
 package ca.uqac.lif.cep;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
@@ -27,9 +28,19 @@ import ca.uqac.lif.cep.functions.StreamVariable;
 import ca.uqac.lif.cep.functions.Constant;
 import ca.uqac.lif.cep.functions.ApplyFunction;
 import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.IdentityFunction;
 import ca.uqac.lif.cep.util.Numbers;
 import ca.uqac.lif.cep.functions.TurnInto;
+import ca.uqac.lif.cep.tmf.Passthrough;
 import ca.uqac.lif.cep.tmf.Pump;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.Slice;
+import ca.uqac.lif.cep.tmf.Trim;
+import ca.uqac.lif.cep.util.Size;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class PushableTest
 {
@@ -121,4 +132,108 @@ public class PushableTest
 			PushableException pe = new PushableException(e, p);
 		}
 	}
+	
+	@Test
+	public void testPushAllUnary()
+	{
+		ApplyFunction f = new ApplyFunction(new FunctionTree(Numbers.addition, new StreamVariable(0), new Constant(1)));
+		QueueSink sink = new QueueSink();
+		Connector.connect(f, sink);
+		Queue<Object> queue = sink.getQueue();
+		Object[] events = new Object[] {0, 1, 2, 3, 4};
+		f.getPushableInput(0).pushAll(events, 1, 3);
+		assertEquals(3, queue.size());
+		assertEquals(2f, ((Number) queue.remove()).floatValue(), 0.0001);
+		assertEquals(3f, ((Number) queue.remove()).floatValue(), 0.0001);
+		assertEquals(4f, ((Number) queue.remove()).floatValue(), 0.0001);
+		assertEquals(0, events[0]);
+	}
+	
+	@Test
+	public void testPushAllBinary()
+	{
+		ApplyFunction f = new ApplyFunction(Numbers.addition);
+		QueueSink sink = new QueueSink();
+		Connector.connect(f, sink);
+		Queue<Object> queue = sink.getQueue();
+		Pushable p0 = f.getPushableInput(0);
+		Pushable p1 = f.getPushableInput(1);
+		p0.pushAll(new Object[] {1, 2, 3}, 0, 3);
+		assertTrue(queue.isEmpty());
+		p1.pushAll(new Object[] {10, 20}, 0, 2);
+		assertEquals(2, queue.size());
+		assertEquals(11f, ((Number) queue.remove()).floatValue(), 0.0001);
+		assertEquals(22f, ((Number) queue.remove()).floatValue(), 0.0001);
+		p1.push(30);
+		assertEquals(33f, ((Number) queue.remove()).floatValue(), 0.0001);
+	}
+	
+	@Test
+	public void testPushAllNoOutput()
+	{
+		// Trim discards its first events: the batch must only carry what is output
+		Trim trim = new Trim(2);
+		QueueSink sink = new QueueSink();
+		Connector.connect(trim, sink);
+		Queue<Object> queue = sink.getQueue();
+		trim.getPushableInput(0).pushAll(new Object[] {"a", "b", "c", "d"}, 0, 4);
+		assertEquals(2, queue.size());
+		assertEquals("c", queue.remove());
+		assertEquals("d", queue.remove());
+	}
+	
+	@Test
+	public void testPushAllStateful()
+	{
+		// Slice outputs the same map every time, updated with each event
+		Object[] events = new Object[] {"a", "b", "c", "a"};
+		for (int threads = 1; threads <= 2; threads++)
+		{
+			Slice by_push = new Slice(new IdentityFunction(1), new Passthrough());
+			by_push.setParallelism(threads);
+			ApplyFunction size_push = new ApplyFunction(Size.instance);
+			QueueSink sink_push = new QueueSink();
+			Connector.connect(by_push, size_push, sink_push);
+			Slice by_push_all = new Slice(new IdentityFunction(1), new Passthrough());
+			by_push_all.setParallelism(threads);
+			ApplyFunction size_push_all = new ApplyFunction(Size.instance);
+			QueueSink sink_push_all = new QueueSink();
+			Connector.connect(by_push_all, size_push_all, sink_push_all);
+			for (Object e : events)
+			{
+				by_push.getPushableInput().push(e);
+			}
+			by_push_all.getPushableInput().pushAll(events, 0, events.length);
+			assertEquals("[1, 2, 3, 3]", sink_push.getQueue().toString());
+			assertEquals(sink_push.getQueue().toString(), sink_push_all.getQueue().toString());
+		}
+	}
+	
+	@Test(timeout = 5000)
+	public void testCompoundFutureWaits() throws Exception
+	{
+		final FutureTask<Object> slow = new FutureTask<Object>(new Callable<Object>()
+		{
+			@Override
+			public Object call() throws Exception
+			{
+				Thread.sleep(50);
+				return 2;
+			}
+		});
+		@SuppressWarnings("unchecked")
+		Future<Object>[] futures = new Future[] {new FutureDone<Object>(1), slow};
+		CompoundFuture<Integer,Object> sum = new CompoundFuture<Integer,Object>(futures)
+		{
+			@Override
+			public Integer compute(Object[] values)
+			{
+				return (Integer) values[0] + (Integer) values[1];
+			}
+		};
+		assertFalse(sum.isDone());
+		new Thread(slow).start();
+		assertEquals(3, (int) sum.get());
+		assertTrue(sum.isDone());
+	}
 }
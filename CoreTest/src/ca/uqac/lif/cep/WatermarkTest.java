@@ -0,0 +1,220 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.tmf.EventTimeWindow.Result;
+import ca.uqac.lif.cep.tmf.Fork;
+import ca.uqac.lif.cep.tmf.Multiplex;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.Sink;
+import ca.uqac.lif.cep.tmf.Slice;
+import ca.uqac.lif.cep.tmf.Tank;
+import ca.uqac.lif.cep.tmf.TumblingWindow;
+import ca.uqac.lif.cep.util.NthElement;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Unit tests for the propagation of watermarks through processors
+ */
+public class WatermarkTest
+{
+	@Test
+	public void testPassThrough()
+	{
+		Passthrough pt = new Passthrough();
+		Fork f = new Fork(2);
+		QueueSink sink1 = new QueueSink();
+		QueueSink sink2 = new QueueSink();
+		Connector.connect(pt, f);
+		Connector.connect(f, 0, sink1, 0);
+		Connector.connect(f, 1, sink2, 0);
+		Pushable p = pt.getPushableInput();
+		assertEquals(Processor.NO_WATERMARK, sink1.getInputWatermark());
+		p.push(1);
+		p.notifyWatermark(5);
+		assertEquals(5, sink1.getInputWatermark());
+		assertEquals(5, sink2.getInputWatermark());
+		// Watermarks never move backwards
+		p.notifyWatermark(3);
+		assertEquals(5, sink1.getInputWatermark());
+	}
+
+	@Test
+	public void testDeferred()
+	{
+		// The watermark waits for the front it is received in the middle of
+		ApplyFunction add = new ApplyFunction(Numbers.addition);
+		Recorder rec = new Recorder();
+		Connector.connect(add, rec);
+		add.getPushableInput(0).push(1);
+		add.getPushableInput(0).notifyWatermark(10);
+		add.getPushableInput(1).notifyWatermark(10);
+		assertTrue(rec.m_events.isEmpty());
+		add.getPushableInput(1).push(2);
+		assertEquals("[3.0, W10]", rec.m_events.toString());
+	}
+
+	@Test
+	public void testMultiplex()
+	{
+		Multiplex mux = new Multiplex(2);
+		QueueSink sink = new QueueSink();
+		Connector.connect(mux, sink);
+		Pushable p0 = mux.getPushableInput(0);
+		Pushable p1 = mux.getPushableInput(1);
+		p0.notifyWatermark(5);
+		assertEquals(Processor.NO_WATERMARK, sink.getInputWatermark());
+		p1.notifyWatermark(7);
+		assertEquals(5, sink.getInputWatermark());
+		// An input that has ended no longer holds back the watermark
+		p0.notifyEndOfTrace();
+		assertEquals(7, sink.getInputWatermark());
+	}
+
+	@Test
+	public void testGroup()
+	{
+		Passthrough pt = new Passthrough();
+		GroupProcessor g = new GroupProcessor(1, 1);
+		g.addProcessor(pt);
+		g.associateInput(0, pt, 0);
+		g.associateOutput(0, pt, 0);
+		QueueSink sink = new QueueSink();
+		Connector.connect(g, sink);
+		g.getPushableInput(0).notifyWatermark(12);
+		assertEquals(12, sink.getInputWatermark());
+	}
+
+	@Test
+	public void testWindowPush()
+	{
+		TumblingWindow w = new TumblingWindow(new NthElement(0), 10, Numbers.addition);
+		w.setValueFunction(new NthElement(1)).setAllowedLateness(100);
+		Recorder rec = new Recorder();
+		Connector.connect(w, rec);
+		Pushable p = w.getPushableInput();
+		p.push(new Object[] {1, 1});
+		p.push(new Object[] {12, 2});
+		p.push(new Object[] {5, 3});
+		assertTrue(rec.m_events.isEmpty());
+		p.notifyWatermark(10);
+		assertEquals("[[0,10): 4.0, W10]", rec.m_events.toString());
+		p.notifyWatermark(20);
+		assertEquals("[[0,10): 4.0, W10, [10,20): 2.0, W20]", rec.m_events.toString());
+	}
+
+	@Test
+	public void testWindowPull()
+	{
+		Tank tank = new Tank();
+		TumblingWindow w = new TumblingWindow(new NthElement(0), 10, Numbers.addition);
+		w.setValueFunction(new NthElement(1)).setAllowedLateness(100);
+		Connector.connect(tank, w);
+		Pushable in = tank.getPushableInput();
+		Pullable out = w.getPullableOutput();
+		in.push(new Object[] {1, 1});
+		in.push(new Object[] {5, 3});
+		in.notifyWatermark(10);
+		// The watermark is not visible before the events pushed before it
+		assertEquals(Processor.NO_WATERMARK, tank.getPullableOutput().getWatermark());
+		assertEquals(Pullable.NextStatus.MAYBE, out.hasNextSoft());
+		assertEquals(Pullable.NextStatus.MAYBE, out.hasNextSoft());
+		assertEquals(Pullable.NextStatus.MAYBE, out.hasNextSoft());
+		// The window is closed, but not pulled yet
+		assertEquals(Processor.NO_WATERMARK, out.getWatermark());
+		Result r = (Result) out.pullSoft();
+		assertEquals(0, r.getStart());
+		assertEquals(4f, ((Number) r.getValue()).floatValue(), 0.0001);
+		assertEquals(10, out.getWatermark());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSlice()
+	{
+		TumblingWindow w = new TumblingWindow(new NthElement(0), 10, Numbers.addition);
+		w.setValueFunction(new NthElement(2)).setAllowedLateness(100);
+		Slice s = new Slice(new NthElement(1), w);
+		QueueSink sink = new QueueSink();
+		Connector.connect(s, sink);
+		Pushable p = s.getPushableInput();
+		p.push(new Object[] {1, "a", 1});
+		p.push(new Object[] {2, "b", 2});
+		p.push(new Object[] {3, "a", 3});
+		Queue<Object> queue = sink.getQueue();
+		queue.clear();
+		p.notifyWatermark(10);
+		assertEquals(1, queue.size());
+		Map<Object,Object> m = (Map<Object,Object>) queue.remove();
+		assertEquals("[0,10): 4.0", m.get("a").toString());
+		assertEquals("[0,10): 2.0", m.get("b").toString());
+		assertEquals(10, sink.getInputWatermark());
+	}
+
+	@Test
+	public void testBoundary()
+	{
+		Recorder rec = new Recorder();
+		PipelineRunner.Boundary b = new PipelineRunner.Boundary(new Passthrough(), 0, rec.getPushableInput(), 16);
+		b.push(1);
+		b.push(2);
+		b.notifyWatermark(5);
+		b.push(3);
+		b.deliver(new Object[16]);
+		assertEquals("[1, 2, W5, 3]", rec.m_events.toString());
+	}
+
+	/**
+	 * Sink that records the events and watermarks it receives
+	 */
+	protected static class Recorder extends Sink
+	{
+		protected List<Object> m_events = new ArrayList<Object>();
+
+		@Override
+		protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+		{
+			m_events.add(inputs[0]);
+			return true;
+		}
+
+		@Override
+		protected boolean onWatermark(long watermark, Queue<Object[]> outputs)
+		{
+			m_events.add("W" + watermark);
+			return false;
+		}
+
+		@Override
+		public Processor duplicate(boolean with_state)
+		{
+			return new Recorder();
+		}
+	}
+}
@@ -22,12 +22,23 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Test;
 
 import ca.uqac.lif.cep.ProcessorTest.Sum;
+import ca.uqac.lif.cep.functions.BinaryFunction;
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
 import ca.uqac.lif.cep.tmf.QueueSink;
 import ca.uqac.lif.cep.tmf.QueueSource;
 import ca.uqac.lif.cep.tmf.Window;
+import ca.uqac.lif.cep.util.Booleans;
+import ca.uqac.lif.cep.util.Numbers;
+import ca.uqac.lif.cep.util.SlidingAggregator;
+import ca.uqac.lif.cep.util.Strings;
 
 /**
  * Unit tests for the {@link Window}.
@@ -114,4 +125,92 @@ public class WindowTest
 			fail("Expected 3 on fourth push, got " + recv);
 		}
 	}
+	
+	@Test
+	public void testIncrementalSameResults()
+	{
+		Random r = new Random(0);
+		List<Object> numbers = new ArrayList<Object>();
+		List<Object> booleans = new ArrayList<Object>();
+		for (int i = 0; i < 200; i++)
+		{
+			numbers.add(r.nextInt(100) - 50);
+			booleans.add(r.nextInt(8) != 0);
+		}
+		assertSameResults(Numbers.addition, numbers, 7);
+		assertSameResults(Numbers.maximum, numbers, 10);
+		assertSameResults(Numbers.minimum, numbers, 1);
+		assertSameResults(Booleans.and, booleans, 5);
+	}
+	
+	@Test
+	public void testIncrementalWide()
+	{
+		int width = 20000;
+		QueueSource src = new QueueSource(1);
+		src.setEvents(1, 2, 3);
+		Window w = new Window(new Cumulate(new CumulativeFunction<Number>(Numbers.addition)), width);
+		Connector.connect(src, w);
+		Pullable p = w.getPullableOutput(0);
+		for (int i = 0; i < 100000; i++)
+		{
+			Number n = (Number) p.pull();
+			// The window contains the same number of 1s, 2s and 3s, give or take one
+			assertEquals(2 * width, n.floatValue(), 3);
+		}
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	@Test
+	public void testSlidingAggregatorOrder()
+	{
+		// Concatenation is associative but not commutative
+		SlidingAggregator<Object> agg = new SlidingAggregator<Object>((BinaryFunction) Strings.concat, 2);
+		assertNull(agg.getValue());
+		List<String> window = new ArrayList<String>();
+		for (int i = 0; i < 20; i++)
+		{
+			agg.add(Integer.toString(i));
+			window.add(Integer.toString(i));
+			if (agg.size() > 4)
+			{
+				agg.remove();
+				window.remove(0);
+			}
+			StringBuilder expected = new StringBuilder();
+			for (String e : window)
+			{
+				expected.append(e);
+			}
+			assertEquals(expected.toString(), agg.getValue());
+		}
+		agg.clear();
+		assertEquals(0, agg.size());
+		assertNull(agg.getValue());
+	}
+	
+	/**
+	 * Checks that a window over a {@link Cumulate} computed incrementally
+	 * produces the same output as when the window is recomputed on every
+	 * event
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	protected static void assertSameResults(BinaryFunction f, List<Object> events, int width)
+	{
+		Window incremental = new Window(new Cumulate(new CumulativeFunction(f)), width);
+		// A descendant of Cumulate forces the window to recompute everything
+		Window recomputed = new Window(new Cumulate(new CumulativeFunction(f)) {}, width);
+		QueueSource src1 = new QueueSource(1);
+		src1.setEvents(events.toArray());
+		QueueSource src2 = new QueueSource(1);
+		src2.setEvents(events.toArray());
+		Connector.connect(src1, incremental);
+		Connector.connect(src2, recomputed);
+		Pullable p1 = incremental.getPullableOutput(0);
+		Pullable p2 = recomputed.getPullableOutput(0);
+		for (int i = 0; i < events.size(); i++)
+		{
+			assertEquals(p2.pull(), p1.pull());
+		}
+	}
 }
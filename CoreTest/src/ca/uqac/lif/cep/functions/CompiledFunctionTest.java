@@ -0,0 +1,215 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.functions;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Context;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.FilterOn;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.Equals;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Unit tests for {@link CompiledFunction}.
+ */
+public class CompiledFunctionTest
+{
+	@Test
+	public void testSameResults()
+	{
+		// (abs(x) + 1) * (y - $a), where abs is evaluated on the inputs
+		FunctionTree tree = new FunctionTree(Numbers.multiplication,
+				new FunctionTree(Numbers.addition, Numbers.absoluteValue, new Constant(1)),
+				new FunctionTree(Numbers.subtraction, StreamVariable.Y, new ContextVariable("a")));
+		Function compiled = tree.compile();
+		assertTrue(compiled instanceof CompiledFunction);
+		assertEquals(tree, ((CompiledFunction) compiled).getTree());
+		assertEquals(2, compiled.getInputArity());
+		assertEquals(1, compiled.getOutputArity());
+		Context c = new Context();
+		c.put("a", 2);
+		for (int i = 0; i < 5; i++)
+		{
+			Object[] inputs = new Object[] {i, 10 * i};
+			Object[] expected = new Object[1];
+			Object[] actual = new Object[1];
+			tree.evaluate(inputs, expected, c);
+			compiled.evaluate(inputs, actual, c);
+			assertEquals(expected[0], actual[0]);
+			assertEquals(((Number) expected[0]).floatValue(), (float) ((i + 1) * (10 * i - 2)), 0.0001);
+		}
+	}
+	
+	@Test
+	public void testPrimitive()
+	{
+		// x * y + 1 > z
+		FunctionTree product = new FunctionTree(Numbers.addition,
+				new FunctionTree(Numbers.multiplication, StreamVariable.X, StreamVariable.Y), new Constant(1L));
+		FunctionTree tree = new FunctionTree(Numbers.isGreaterThan, product, StreamVariable.Z);
+		Function compiled_product = product.compile(true);
+		Function compiled_tree = tree.compile(true);
+		Object[][] inputs = new Object[][] {
+			{2L, 3L, 6L}, {2.5d, 2L, 6L}, {2, 3, 6}, {2L, 3.5f, 7L}};
+		// Same types as the tree, even though x * y is computed unboxed
+		Object[] expected = new Object[] {7f, 6f, 7f, 8f};
+		for (int i = 0; i < inputs.length; i++)
+		{
+			Object[] out_tree = new Object[1];
+			Object[] out_compiled = new Object[1];
+			product.evaluate(inputs[i], out_tree);
+			compiled_product.evaluate(inputs[i], out_compiled);
+			assertEquals(expected[i], out_tree[0]);
+			assertEquals(expected[i], out_compiled[0]);
+			tree.evaluate(inputs[i], out_tree);
+			compiled_tree.evaluate(inputs[i], out_compiled);
+			assertEquals(out_tree[0], out_compiled[0]);
+			assertEquals(i != 1, out_compiled[0]);
+		}
+	}
+	
+	@Test
+	public void testSameAsTreeWithFloats()
+	{
+		// The tree computes in float, and so does its default compiled form
+		FunctionTree greater = new FunctionTree(Numbers.isGreaterThan,
+				new FunctionTree(Numbers.addition, StreamVariable.X, StreamVariable.Y), new Constant(0.3d));
+		FunctionTree sum = new FunctionTree(Numbers.addition,
+				new FunctionTree(Numbers.addition, StreamVariable.X, StreamVariable.Y), new Constant(-16777218L));
+		Object[][] inputs = new Object[][] {{0.1d, 0.2d}, {16777217L, 1L}, {3, 4}, {2.5f, 1L}};
+		for (FunctionTree tree : new FunctionTree[] {greater, sum})
+		{
+			Function compiled = tree.compile();
+			for (Object[] in : inputs)
+			{
+				Object[] out_tree = new Object[1];
+				Object[] out_compiled = new Object[1];
+				tree.evaluate(in, out_tree);
+				compiled.evaluate(in, out_compiled);
+				assertEquals(out_tree[0], out_compiled[0]);
+			}
+		}
+		Object[] out = new Object[1];
+		greater.compile().evaluate(new Object[] {0.1d, 0.2d}, out);
+		assertEquals(false, out[0]);
+		sum.compile().evaluate(new Object[] {16777217L, 1L}, out);
+		assertEquals(-2f, out[0]);
+	}
+	
+	@Test
+	public void testPrimitiveMixed()
+	{
+		// abs(x - y) is evaluated on longs, and its result is boxed for
+		// Equals, which has no primitive form
+		Function f = new FunctionTree(Equals.instance,
+				new FunctionTree(Numbers.absoluteValue,
+						new FunctionTree(Numbers.subtraction, StreamVariable.X, StreamVariable.Y)),
+				new Constant(4L)).compile(true);
+		Object[] out = new Object[1];
+		f.evaluate(new Object[] {3L, 7L}, out);
+		assertEquals(true, out[0]);
+		f.evaluate(new Object[] {3L, 8L}, out);
+		assertEquals(false, out[0]);
+	}
+	
+	@Test
+	public void testMissingContext()
+	{
+		Function f = new FunctionTree(Equals.instance, new ContextVariable("a"), new Constant(1)).compile();
+		Object[] out = new Object[1];
+		f.evaluate(new Object[0], out, new Context());
+		assertEquals(false, out[0]);
+		Context c = new Context();
+		c.put("a", 1);
+		f.evaluate(new Object[0], out, c);
+		assertEquals(true, out[0]);
+	}
+	
+	@Test
+	public void testStatefulFunctions()
+	{
+		// A cumulative sum is evaluated once per call, as in the tree
+		FunctionTree tree = new FunctionTree(Numbers.addition,
+				new FunctionTree(new CumulativeFunction<Number>(Numbers.addition), StreamVariable.X),
+				new Constant(100));
+		Function compiled = tree.compile();
+		Object[] out = new Object[1];
+		compiled.evaluate(new Object[] {1}, out);
+		compiled.evaluate(new Object[] {2}, out);
+		assertEquals(103, ((Number) out[0]).intValue());
+		compiled.reset();
+		compiled.evaluate(new Object[] {5}, out);
+		assertEquals(105, ((Number) out[0]).intValue());
+		CompiledFunction copy = ((CompiledFunction) compiled).duplicate(true);
+		copy.evaluate(new Object[] {1}, out);
+		assertEquals(106, ((Number) out[0]).intValue());
+	}
+	
+	@Test
+	public void testNotCompiled()
+	{
+		FunctionTree incomplete = new FunctionTree(Numbers.addition);
+		assertSame(incomplete, incomplete.compile());
+		assertSame(Numbers.addition, CompiledFunction.compile(Numbers.addition));
+	}
+	
+	@Test
+	public void testApplyFunction()
+	{
+		ApplyFunction af = new ApplyFunction(new FunctionTree(Numbers.multiplication, StreamVariable.X, StreamVariable.X));
+		QueueSink sink = new QueueSink();
+		Connector.connect(af, sink);
+		Pushable p = af.getPushableInput();
+		Queue<Object> queue = sink.getQueue();
+		for (int i = 0; i < 3; i++)
+		{
+			p.push(i);
+			assertEquals(i * i, ((Number) queue.remove()).intValue());
+		}
+		ApplyFunction af2 = af.duplicate(false);
+		af2.setContext("a", 0);
+		QueueSink sink2 = new QueueSink();
+		Connector.connect(af2, sink2);
+		af2.getPushableInput().push(4);
+		assertEquals(16, ((Number) sink2.getQueue().remove()).intValue());
+	}
+	
+	@Test
+	public void testFilterOn()
+	{
+		FilterOn filter = new FilterOn(new FunctionTree(Numbers.isGreaterThan, StreamVariable.X, new Constant(2)));
+		QueueSink sink = new QueueSink();
+		Connector.connect(filter, sink);
+		Pushable p = filter.getPushableInput();
+		for (int i = 0; i < 5; i++)
+		{
+			p.push(i);
+		}
+		Queue<Object> queue = sink.getQueue();
+		assertEquals(2, queue.size());
+		assertEquals(3, queue.remove());
+		assertEquals(4, queue.remove());
+	}
+}
@@ -20,6 +20,7 @@ package ca.uqac.lif.cep.functions;
 import static org.junit.Assert.*;
 
 import java.util.HashSet;
+import java.util.Queue;
 import java.util.Set;
 
 import org.junit.Test;
@@ -35,6 +36,7 @@ import ca.uqac.lif.cep.util.Equals;
 import ca.uqac.lif.cep.util.Numbers;
 import ca.uqac.lif.cep.tmf.BlackHole;
 import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSink;
 
 /**
  * Unit tests for functions
@@ -303,6 +305,65 @@ public class FunctionsTest
 		assertEquals(evaluateFast(Booleans.and, true, false), evaluate(Booleans.and, true, false));
 	}
 	
+	@Test
+	public void testCumulativePrimitive()
+	{
+		CumulativeFunction<Number> sum = new CumulativeFunction<Number>(Numbers.addition);
+		// The regular evaluation keeps giving floats
+		assertEquals(3f, evaluate(sum, 3L));
+		assertEquals(4.5f, evaluate(sum, 1.5d));
+		sum.reset();
+		// The unboxed forms start from the start value 0f
+		assertEquals(3L, sum.getLongValue(3L));
+		assertEquals(100000003L, sum.getLongValue(100000000L));
+		assertEquals(100000004.5d, sum.getDoubleValue(1.5d), 0d);
+		CumulativeFunction<Number> dup = sum.duplicate(true);
+		assertEquals(100000005.5d, dup.getDoubleValue(1d), 0d);
+		assertEquals(100000005.5f, evaluate(sum, 1L));
+		CumulativeFunction<Number> max = new CumulativeFunction<Number>(Numbers.maximum);
+		assertEquals(2d, max.getDoubleValue(2d), 0d);
+		assertEquals(2f, evaluate(max, 1L));
+	}
+	
+	@Test
+	public void testCumulatePrimitive()
+	{
+		Cumulate sum = new Cumulate(new CumulativeFunction<Number>(Numbers.addition), true);
+		QueueSink sink = new QueueSink();
+		Connector.connect(sum, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = sum.getPushableInput();
+		p.push(3L);
+		assertEquals(3L, q.remove());
+		p.push(4L);
+		assertEquals(7L, q.remove());
+		p.push(1.5d);
+		assertEquals(8.5d, q.remove());
+		// The accumulated value is no longer a whole number
+		p.push(1L);
+		assertEquals(9.5d, q.remove());
+		// Other values go through the regular evaluation
+		p.push(1f);
+		assertEquals(10.5f, q.remove());
+		Cumulate dup = sum.duplicate(true);
+		Connector.connect(dup, sink);
+		dup.getPushableInput().push(1L);
+		assertEquals(11.5d, q.remove());
+		// Without primitive forms, the outputs are those of the function
+		sum = new Cumulate(new CumulativeFunction<Number>(Numbers.addition));
+		Connector.connect(sum, sink);
+		sum.getPushableInput().push(3L);
+		assertEquals(3f, q.remove());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testCumulativePrimitiveNotLong()
+	{
+		CumulativeFunction<Number> sum = new CumulativeFunction<Number>(Numbers.addition);
+		sum.getDoubleValue(0.5d);
+		sum.getLongValue(1L);
+	}
+	
 	@Test
 	public void testCumulative1() 
 	{
@@ -0,0 +1,194 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.functions;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Unit tests for the {@link ParallelApplyFunction} processor
+ */
+public class ParallelApplyFunctionTest
+{
+	@Test
+	public void testOrdered()
+	{
+		ParallelApplyFunction paf = new ParallelApplyFunction(new SlowDouble(), 4);
+		QueueSink sink = new QueueSink();
+		Connector.connect(paf, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = paf.getPushableInput();
+		for (int i = 0; i < 20; i++)
+		{
+			p.push(i);
+		}
+		Object[] batch = new Object[30];
+		for (int i = 0; i < batch.length; i++)
+		{
+			batch[i] = 20 + i;
+		}
+		p.pushAll(batch, 0, batch.length);
+		// No more than 4 fronts are waiting
+		assertTrue(q.size() >= 46);
+		p.notifyEndOfTrace();
+		assertEquals(50, q.size());
+		for (int i = 0; i < 50; i++)
+		{
+			assertEquals(2 * i, q.remove());
+		}
+	}
+
+	@Test
+	public void testSameAsApplyFunction()
+	{
+		// Values whose sums differ when computed as floats or as longs
+		FunctionTree tree = new FunctionTree(Numbers.isGreaterThan,
+				new FunctionTree(Numbers.addition, StreamVariable.X, new Constant(-16777218L)),
+				new Constant(0.5d));
+		FunctionTree sum = new FunctionTree(Numbers.addition,
+				new FunctionTree(Numbers.multiplication, StreamVariable.X, new Constant(3L)),
+				new Constant(0.1d));
+		for (FunctionTree f : new FunctionTree[] {tree, sum})
+		{
+			ApplyFunction af = new ApplyFunction(f);
+			ParallelApplyFunction paf = new ParallelApplyFunction(f.duplicate(), 4);
+			QueueSink sink1 = new QueueSink();
+			Connector.connect(af, sink1);
+			QueueSink sink2 = new QueueSink();
+			Connector.connect(paf, sink2);
+			for (int i = 0; i < 50; i++)
+			{
+				Object x = i % 3 == 0 ? (Object) (16777217L + i) : (i % 3 == 1 ? (Object) (i + 0.25d) : (Object) (i + 0.5f));
+				af.getPushableInput().push(x);
+				paf.getPushableInput().push(x);
+			}
+			paf.getPushableInput().notifyEndOfTrace();
+			assertEquals(new ArrayList<Object>(sink1.getQueue()), new ArrayList<Object>(sink2.getQueue()));
+		}
+	}
+
+	@Test
+	public void testUnordered()
+	{
+		ParallelApplyFunction paf = new ParallelApplyFunction(new SlowDouble(), 8);
+		paf.setOrdered(false);
+		QueueSink sink = new QueueSink();
+		Connector.connect(paf, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = paf.getPushableInput();
+		for (int i = 0; i < 50; i++)
+		{
+			p.push(i);
+		}
+		p.notifyEndOfTrace();
+		Set<Object> values = new HashSet<Object>();
+		values.addAll(q);
+		assertEquals(50, q.size());
+		assertEquals(50, values.size());
+		assertTrue(values.contains(98));
+	}
+
+	@Test
+	public void testPull()
+	{
+		QueueSource src = new QueueSource().setEvents(1, 2, 3);
+		ParallelApplyFunction paf = new ParallelApplyFunction(new SlowDouble(), 3);
+		Connector.connect(src, paf);
+		Pullable p = paf.getPullableOutput();
+		for (int i = 0; i < 10; i++)
+		{
+			assertEquals(2 * (i % 3 + 1), p.pull());
+		}
+		paf.reset();
+		src.reset();
+		assertEquals(2, p.pull());
+	}
+
+	@Test
+	public void testException()
+	{
+		ParallelApplyFunction paf = new ParallelApplyFunction(new SlowDouble(), 2);
+		QueueSink sink = new QueueSink();
+		Connector.connect(paf, sink);
+		Pushable p = paf.getPushableInput();
+		boolean got_exception = false;
+		try
+		{
+			p.push(1);
+			p.push(-1);
+			p.push(2);
+			p.push(3);
+			p.notifyEndOfTrace();
+		}
+		catch (RuntimeException e)
+		{
+			got_exception = true;
+		}
+		assertTrue(got_exception);
+	}
+
+	/**
+	 * Doubles a number, taking a variable amount of time to do so, so that
+	 * evaluations complete out of order. Throws an exception on negative
+	 * numbers.
+	 */
+	public static class SlowDouble extends UnaryFunction<Integer,Integer>
+	{
+		public SlowDouble()
+		{
+			super(Integer.class, Integer.class);
+		}
+
+		@Override
+		public Integer getValue(Integer x)
+		{
+			if (x < 0)
+			{
+				throw new FunctionException("Negative number");
+			}
+			try
+			{
+				Thread.sleep((x * 7) % 5);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			return 2 * x;
+		}
+
+		@Override
+		public SlowDouble duplicate(boolean with_state)
+		{
+			return new SlowDouble();
+		}
+	}
+}
@@ -21,19 +21,41 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
 
 import org.junit.Assume;
 import org.junit.Test;
 
+import ca.uqac.lif.cep.Connector;
 import ca.uqac.lif.cep.Pullable;
 import ca.uqac.lif.cep.Pullable.PullableException;
 import ca.uqac.lif.cep.Pushable;
 import ca.uqac.lif.cep.Pushable.PushableException;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.IdentityFunction;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.ByteRecord;
+import ca.uqac.lif.cep.util.ByteSequence;
 import ca.uqac.lif.cep.util.FileHelper;
+import ca.uqac.lif.cep.util.NthElement;
+import ca.uqac.lif.cep.util.Numbers;
+import ca.uqac.lif.cep.util.Strings;
 
 /**
  * Unit tests for input-output processors
@@ -269,6 +291,232 @@ public class IoTest
 		p.push(new Object());
 	}
 	
+	@Test
+	public void testFileLines() throws IOException
+	{
+		File f = writeTempFile("foo\r\n  bar \n\u00e9t\u00e9\n\nbaz");
+		ReadFileLines r = new ReadFileLines(f);
+		// Tiny regions to exercise remapping
+		r.setRegionSize(4);
+		Pullable p = r.getPullableOutput();
+		assertEquals("foo", p.pull());
+		assertEquals("  bar ", p.pull());
+		assertEquals("\u00e9t\u00e9", p.pull());
+		assertEquals("", p.pull());
+		assertEquals("baz", p.pull());
+		assertFalse(p.hasNext());
+		r.reset();
+		r.trim(true).addCrlf(true);
+		assertEquals("foo" + ReadLines.CRLF, p.pull());
+		assertEquals("bar" + ReadLines.CRLF, p.pull());
+		f.delete();
+	}
+
+	@Test
+	public void testFileLinesViews() throws IOException
+	{
+		File f = writeTempFile("foo\n\u00e9t\u00e9\n");
+		ReadFileLines r = new ReadFileLines(f).outputViews(true);
+		Pullable p = r.getPullableOutput();
+		ByteSequence s1 = (ByteSequence) p.pull();
+		assertTrue(s1.isAscii());
+		assertEquals(3, s1.length());
+		assertEquals('o', s1.charAt(2));
+		assertEquals("foo", s1.toString());
+		assertEquals("foo".hashCode(), s1.hashCode());
+		ByteSequence s2 = (ByteSequence) p.pull();
+		assertFalse(s2.isAscii());
+		assertEquals(3, s2.length());
+		assertEquals("\u00e9t\u00e9", s2.toString());
+		assertFalse(p.hasNext());
+		assertEquals(0, new ReadFileLines(writeTempFile("")).getPullableOutput().pullBatch(new Object[4], 4));
+		f.delete();
+	}
+
+	@Test
+	public void testFileLinesMapError() throws IOException
+	{
+		File f = writeTempFile("foo\nbar\n");
+		ReadFileLines r = new ReadFileLines(f)
+		{
+			@Override
+			protected void map(long start) throws IOException
+			{
+				throw new IOException("Cannot map");
+			}
+		};
+		try
+		{
+			r.open();
+			fail("The error of map() should have been thrown");
+		}
+		catch (IOException e)
+		{
+			assertEquals("Cannot map", e.getMessage());
+		}
+		// The file is closed
+		assertNull(r.m_channel);
+		f.delete();
+	}
+
+	@Test
+	public void testFileLinesSameAsReadLines() throws IOException
+	{
+		File f = writeTempFile(randomLines(2000));
+		ReadLines expected = new ReadLines(new FileInputStream(f));
+		expected.trim(true);
+		ReadFileLines actual = new ReadFileLines(f).setRegionSize(64).trim(true);
+		Pullable p1 = expected.getPullableOutput();
+		Pullable p2 = actual.getPullableOutput();
+		int lines = 0;
+		while (p1.hasNext())
+		{
+			assertEquals(p1.pull(), p2.pull());
+			lines++;
+		}
+		assertFalse(p2.hasNext());
+		assertEquals(2000, lines);
+		f.delete();
+	}
+
+	/**
+	 * Writes a string to a temporary file in UTF-8
+	 * @param contents The string
+	 * @return The file
+	 */
+	@Test
+	public void testFileLinesRecords() throws IOException
+	{
+		File f = writeTempFile("a,1,x\nb,2,y\nc,3,z\n");
+		ReadFileLines r = new ReadFileLines(f).outputRecords(',');
+		ApplyFunction second = new ApplyFunction(new FunctionTree(Numbers.numberCast,
+				new NthElement(1)));
+		Connector.connect(r, second);
+		Pullable p = second.getPullableOutput();
+		assertEquals(1, p.pull());
+		assertEquals(2, p.pull());
+		assertEquals(3, p.pull());
+		assertFalse(p.hasNext());
+		ByteRecord rec = (ByteRecord) new ReadFileLines(f).outputRecords(',').getPullableOutput().pull();
+		assertEquals("a,1,x", rec.toString());
+		assertEquals(3, rec.getFieldCount());
+		f.delete();
+	}
+
+	@Test
+	public void testFileLinesRanges() throws IOException
+	{
+		File f = writeTempFile("ab\ncd\n\nefgh\nij");
+		// Adjacent ranges read every line once, wherever their bounds fall
+		for (int cut = 0; cut <= 13; cut++)
+		{
+			List<Object> lines = new ArrayList<Object>();
+			Pullable p1 = new ReadFileLines(f).setRange(0, cut).getPullableOutput();
+			while (p1.hasNext())
+			{
+				lines.add(p1.pull());
+			}
+			Pullable p2 = new ReadFileLines(f).setRange(cut, 13).getPullableOutput();
+			while (p2.hasNext())
+			{
+				lines.add(p2.pull());
+			}
+			assertEquals(Arrays.asList("ab", "cd", "", "efgh", "ij"), lines);
+		}
+		f.delete();
+	}
+
+	@Test
+	public void testParallelLinesOrdered() throws IOException
+	{
+		File f = writeTempFile(randomLines(2000));
+		ParallelReadLines r = new ParallelReadLines(f,
+				new FunctionTree(Strings.concat, StreamVariable.X, new Constant("!")));
+		// Small ranges, so that many lines cross a range boundary
+		r.setRangeSize(100).setMaxInFlight(4).trim(true);
+		Pullable p1 = new ReadFileLines(f).trim(true).getPullableOutput();
+		Pullable p2 = r.getPullableOutput();
+		int lines = 0;
+		while (p1.hasNext())
+		{
+			assertEquals(p1.pull() + "!", p2.pull());
+			lines++;
+		}
+		assertFalse(p2.hasNext());
+		assertEquals(2000, lines);
+		r.reset();
+		assertEquals(p2.pull(), new ReadFileLines(f).trim(true).getPullableOutput().pull() + "!");
+		f.delete();
+	}
+
+	@Test
+	public void testParallelLinesUnordered() throws IOException
+	{
+		File f = writeTempFile(randomLines(2000));
+		ParallelReadLines r = new ParallelReadLines(f, new IdentityFunction(1));
+		r.setRangeSize(64).setOrdered(false);
+		Map<Object, Integer> counts = new HashMap<Object, Integer>();
+		Pullable p1 = new ReadFileLines(f).getPullableOutput();
+		while (p1.hasNext())
+		{
+			Object line = p1.pull();
+			Integer c = counts.get(line);
+			counts.put(line, c == null ? 1 : c + 1);
+		}
+		QueueSink sink = new QueueSink();
+		Connector.connect(r, sink);
+		for (int i = 0; i < 2000; i++)
+		{
+			r.push();
+		}
+		Queue<Object> queue = sink.getQueue();
+		assertEquals(2000, queue.size());
+		for (Object line : queue)
+		{
+			Integer c = counts.get(line);
+			assertNotNull(c);
+			counts.put(line, c - 1);
+		}
+		for (Integer c : counts.values())
+		{
+			assertEquals(0, c.intValue());
+		}
+		f.delete();
+	}
+
+	/**
+	 * Generates random lines of text. The text is pure ASCII, since
+	 * {@link ReadLines} decodes with the platform's charset.
+	 * @param num_lines The number of lines
+	 * @return The text
+	 */
+	protected static String randomLines(int num_lines)
+	{
+		Random rand = new Random(0);
+		StringBuilder contents = new StringBuilder();
+		for (int i = 0; i < num_lines; i++)
+		{
+			int len = rand.nextInt(40);
+			for (int j = 0; j < len; j++)
+			{
+				int c = rand.nextInt(30);
+				contents.append(c < 3 ? ' ' : (char) ('a' + c));
+			}
+			contents.append(i % 7 == 0 ? "\r\n" : "\n");
+		}
+		return contents.toString();
+	}
+
+	protected static File writeTempFile(String contents) throws IOException
+	{
+		File f = File.createTempFile("lines", ".txt");
+		f.deleteOnExit();
+		FileOutputStream fos = new FileOutputStream(f);
+		fos.write(contents.getBytes("UTF-8"));
+		fos.close();
+		return f;
+	}
+
 	/**
 	 * Dummy class to throw an exception
 	 */
@@ -0,0 +1,202 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.tmf;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.EventTimeWindow.Result;
+import ca.uqac.lif.cep.util.NthElement;
+import ca.uqac.lif.cep.util.Numbers;
+import ca.uqac.lif.cep.util.Strings;
+
+/**
+ * Unit tests for the {@link TumblingWindow}, {@link HoppingWindow} and
+ * {@link SessionWindow} processors
+ */
+public class EventTimeWindowTest
+{
+	@Test
+	public void testTumbling()
+	{
+		TumblingWindow w = new TumblingWindow(new NthElement(0), 10, Numbers.addition);
+		w.setValueFunction(new NthElement(1)).setAllowedLateness(5);
+		List<String> out = run(w, 1, 1, 5, 2, 12, 3, 3, 4);
+		assertTrue(out.isEmpty());
+		// Watermark moves to 11 and closes [0,10)
+		out = run(w, 16, 5);
+		assertEquals("[[0,10): 7.0]", out.toString());
+		// This event belongs to a closed window
+		out = run(w, 2, 1);
+		assertTrue(out.isEmpty());
+		assertEquals(1, w.getLateEventCount());
+		assertEquals(11, w.getWatermark());
+	}
+
+	@Test
+	public void testTumblingEndOfTrace()
+	{
+		TumblingWindow w = new TumblingWindow(new NthElement(0), 10, Numbers.addition);
+		w.setValueFunction(new NthElement(1));
+		QueueSink sink = new QueueSink();
+		Connector.connect(w, sink);
+		Pushable p = w.getPushableInput();
+		p.push(new Object[] {3, 1});
+		p.push(new Object[] {14, 2});
+		p.push(new Object[] {17, 3});
+		Queue<Object> queue = sink.getQueue();
+		assertEquals(1, queue.size());
+		p.notifyEndOfTrace();
+		assertEquals(2, queue.size());
+		queue.remove();
+		Result r = (Result) queue.remove();
+		assertEquals(10, r.getStart());
+		assertEquals(20, r.getEnd());
+		assertEquals(5f, ((Number) r.getValue()).floatValue(), 0.0001);
+	}
+
+	@Test
+	public void testHoppingPanes()
+	{
+		HoppingWindow w = new HoppingWindow(new NthElement(0), 10, 5, Numbers.addition);
+		w.setValueFunction(new NthElement(1));
+		List<String> out = run(w, 1, 1, 6, 1, 11, 1, 16, 1);
+		out.addAll(flush(w));
+		assertEquals("[[-5,5): 1.0, [0,10): 2.0, [5,15): 2.0, [10,20): 2.0, [15,25): 1.0]", out.toString());
+	}
+
+	@Test
+	public void testHoppingNotAssociative()
+	{
+		HoppingWindow w = new HoppingWindow(new NthElement(0), 10, 5, Numbers.subtraction);
+		w.setValueFunction(new NthElement(1));
+		List<String> out = run(w, 1, 1, 6, 1, 11, 1, 16, 1);
+		out.addAll(flush(w));
+		assertEquals("[[-5,5): -1.0, [0,10): -2.0, [5,15): -2.0, [10,20): -2.0, [15,25): -1.0]", out.toString());
+	}
+
+	@Test
+	public void testSessions()
+	{
+		SessionWindow w = new SessionWindow(new NthElement(0), new NthElement(2), 5, Numbers.addition);
+		w.setValueFunction(new NthElement(1)).setAllowedLateness(4);
+		List<String> out = run(w, 1, 1, "a", 2, 1, "b", 9, 1, "a", 4, 1, "b");
+		assertTrue(out.isEmpty());
+		assertEquals(3, w.getOpenSessionCount());
+		// Event 5 merges the two sessions of key a
+		out = run(w, 5, 1, "a");
+		assertEquals(2, w.getOpenSessionCount());
+		// Watermark moves to 11 and closes the session of b
+		out = run(w, 15, 1, "b");
+		assertEquals("[b [2,9): 2.0]", out.toString());
+		out = flush(w);
+		assertEquals("[a [1,14): 3.0, b [15,20): 1.0]", out.toString());
+		assertEquals(0, w.getOpenSessionCount());
+	}
+
+	@Test
+	public void testSessionsLate()
+	{
+		SessionWindow w = new SessionWindow(new NthElement(0), 5, Numbers.addition);
+		w.setValueFunction(new NthElement(1));
+		List<String> out = run(w, 1, 1, 3, 1, 20, 1);
+		assertEquals("[[1,8): 2.0]", out.toString());
+		// Too late to open a new session
+		out = run(w, 10, 1);
+		assertTrue(out.isEmpty());
+		assertEquals(1, w.getLateEventCount());
+		// Still part of the open session
+		out = run(w, 17, 1);
+		assertTrue(out.isEmpty());
+		assertEquals("[[17,25): 2.0]", flush(w).toString());
+	}
+
+	@Test
+	public void testSessionsOrder()
+	{
+		// Concatenation is associative but not commutative
+		SessionWindow w = new SessionWindow(new NthElement(0), 5, Strings.concat);
+		w.setValueFunction(new NthElement(1)).setAllowedLateness(20);
+		List<String> out = run(w, 10, "c", 11, "d", 19, "g");
+		assertEquals(2, w.getOpenSessionCount());
+		// Before the first session
+		out = run(w, 7, "b");
+		// Between the two sessions, which it merges
+		out = run(w, 15, "e");
+		assertEquals(1, w.getOpenSessionCount());
+		// After the last event
+		out = run(w, 22, "h");
+		assertTrue(out.isEmpty());
+		assertEquals("[[7,27): bcdegh]", flush(w).toString());
+	}
+
+	/**
+	 * Pushes events to a window, each made of a timestamp and a value (and
+	 * a key for session windows)
+	 * @param w The window
+	 * @param values The components of the events
+	 * @return The results output by the window
+	 */
+	protected static List<String> run(EventTimeWindow w, Object ... values)
+	{
+		int width = w instanceof SessionWindow && ((SessionWindow) w).m_keyFunction != null ? 3 : 2;
+		QueueSink sink = new QueueSink();
+		Connector.connect(w, sink);
+		Pushable p = w.getPushableInput();
+		for (int i = 0; i < values.length; i += width)
+		{
+			Object[] event = new Object[width];
+			for (int j = 0; j < width; j++)
+			{
+				event[j] = values[i + j];
+			}
+			p.push(event);
+		}
+		return toList(sink.getQueue());
+	}
+
+	/**
+	 * Notifies a window of the end of the trace
+	 * @param w The window
+	 * @return The results output by the window
+	 */
+	protected static List<String> flush(EventTimeWindow w)
+	{
+		QueueSink sink = new QueueSink();
+		Connector.connect(w, sink);
+		w.getPushableInput().notifyEndOfTrace();
+		return toList(sink.getQueue());
+	}
+
+	protected static List<String> toList(Queue<Object> queue)
+	{
+		List<String> list = new ArrayList<String>();
+		for (Object o : queue)
+		{
+			list.add(o.toString());
+		}
+		return list;
+	}
+}
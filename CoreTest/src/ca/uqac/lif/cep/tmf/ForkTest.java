@@ -153,4 +153,26 @@ public class ForkTest
 		Utilities.queueContains(0, q1);
 		assertEquals(0, q2.size());
 	}
+	
+	@Test
+	public void testForkPushAll()
+	{
+		Fork fork = new Fork(2);
+		QueueSink sink0 = new QueueSink();
+		BlackHole sink1 = new BlackHole();
+		QueueSink sink2 = new QueueSink();
+		Passthrough pt = new Passthrough();
+		Connector.connect(fork, 0, sink0, 0);
+		Connector.connect(fork, 1, pt, 0);
+		Connector.connect(pt, sink2);
+		Pushable p = fork.getPushableInput(0);
+		p.pushAll(new Object[] {"a", "b", "c"}, 0, 3);
+		p.push("d");
+		assertEquals(4, sink0.getQueue().size());
+		assertEquals(4, sink2.getQueue().size());
+		assertEquals("a", sink0.getQueue().remove());
+		assertEquals("a", sink2.getQueue().remove());
+		assertEquals("d", sink2.getQueue().toArray()[2]);
+		sink1.getPushableInput(0).pushAll(new Object[] {"a"}, 0, 1);
+	}
 }
@@ -0,0 +1,220 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.tmf;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.BinaryFunction;
+import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.functions.DoubleBinaryFunction;
+import ca.uqac.lif.cep.functions.FunctionException;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.LongBinaryFunction;
+import ca.uqac.lif.cep.functions.Primitives;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.util.NthElement;
+import ca.uqac.lif.cep.util.Numbers;
+import ca.uqac.lif.cep.util.Strings;
+
+/**
+ * Unit tests for the {@link KeyedAggregate} processor
+ */
+public class KeyedAggregateTest
+{
+	@Test
+	public void testSum()
+	{
+		KeyedAggregate ka = new KeyedAggregate(new NthElement(0), new NthElement(1), Numbers.addition);
+		QueueSink sink = new QueueSink(2);
+		Connector.connect(ka, sink);
+		Queue<Object> keys = sink.getQueue(0);
+		Queue<Object> values = sink.getQueue(1);
+		Pushable p = ka.getPushableInput();
+		// The aggregates start from 0, as in a cumulative function
+		p.push(new Object[] {"a", 1L});
+		assertEquals("a", keys.remove());
+		assertEquals(1L, values.remove());
+		p.push(new Object[] {"b", 2L});
+		assertEquals("b", keys.remove());
+		assertEquals(2L, values.remove());
+		p.push(new Object[] {"a", 3L});
+		assertEquals("a", keys.remove());
+		assertEquals(4L, values.remove());
+		p.push(new Object[] {"b", 0.5});
+		assertEquals(2.5, values.remove());
+		// Null keys are discarded
+		p.push(new Object[] {null, 1L});
+		assertTrue(values.isEmpty());
+		assertEquals(2, ka.getKeyCount());
+		assertEquals(4L, ka.get("a"));
+		assertNull(ka.get("c"));
+		ka.reset();
+		assertEquals(0, ka.getKeyCount());
+		assertNull(ka.get("a"));
+	}
+
+	@Test
+	public void testUnboxed()
+	{
+		KeyedAggregate ka = new KeyedAggregate(new NthElement(0), new NthElement(1), new LongSum());
+		Connector.connect(ka, new QueueSink(2));
+		Pushable p = ka.getPushableInput();
+		p.push(new Object[] {"a", 1L});
+		p.push(new Object[] {"a", 3L});
+		assertEquals(14L, ka.get("a"));
+		// The aggregate switches to double when it overflows
+		p.push(new Object[] {"a", Long.MAX_VALUE});
+		assertEquals(Long.MAX_VALUE + 14d, ka.get("a"));
+	}
+
+	@Test
+	public void testPrimitiveStartValue()
+	{
+		KeyedAggregate ka = new KeyedAggregate(new NthElement(0), new NthElement(1), Numbers.addition);
+		ka.update("a", 1L);
+		ka.update("a", 2L);
+		ka.update("b", 0.5);
+		ka.update("c", 1f);
+		// The start value 0f takes the kind of the first value of each key
+		assertEquals(Primitives.LONG, ka.m_kinds[ka.find("a")]);
+		assertEquals(3L, ka.get("a"));
+		assertEquals(Primitives.DOUBLE, ka.m_kinds[ka.find("b")]);
+		assertEquals(0.5, ka.get("b"));
+		assertEquals(Primitives.OTHER, ka.m_kinds[ka.find("c")]);
+		assertEquals(1f, ka.get("c"));
+		// A start value that is not a whole number goes to the double slots
+		ka = new KeyedAggregate(new NthElement(0), new NthElement(1), Numbers.maximum);
+		ka.update("a", 1L);
+		assertEquals(Primitives.DOUBLE, ka.m_kinds[ka.find("a")]);
+		assertEquals(1d, ka.get("a"));
+	}
+
+	@Test(expected = ProcessorException.class)
+	public void testFunctionException()
+	{
+		KeyedAggregate ka = new KeyedAggregate(new NthElement(0), new NthElement(1), new LongSum());
+		ka.compute(new Object[] {"a", null}, new ArrayDeque<Object[]>());
+	}
+
+	@Test
+	public void testObjects()
+	{
+		KeyedAggregate ka = new KeyedAggregate(new NthElement(0), new NthElement(1), Strings.concat);
+		QueueSink sink = new QueueSink(2);
+		Connector.connect(ka, sink);
+		Pushable p = ka.getPushableInput();
+		p.push(new Object[] {1, "a"});
+		p.push(new Object[] {2, "b"});
+		p.push(new Object[] {1, "c"});
+		assertEquals("ac", ka.get(1));
+		assertEquals("b", ka.get(2));
+		KeyedAggregate copy = ka.duplicate(true);
+		ka.getPushableInput().push(new Object[] {2, "d"});
+		assertEquals("bd", ka.get(2));
+		assertEquals("b", copy.get(2));
+		assertEquals(0, ka.duplicate(false).getKeyCount());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSameAsSlice()
+	{
+		// Enough keys to make the table grow several times
+		FunctionTree key = new FunctionTree(Numbers.floor, new FunctionTree(Numbers.division, StreamVariable.X, new Constant(3)));
+		KeyedAggregate ka = new KeyedAggregate(key, StreamVariable.X, Numbers.addition);
+		Slice sli = new Slice(key.duplicate(), new Cumulate(new CumulativeFunction<Number>(Numbers.addition)));
+		QueueSink sink1 = new QueueSink(2);
+		Connector.connect(ka, sink1);
+		QueueSink sink2 = new QueueSink();
+		Connector.connect(sli, sink2);
+		for (long i = 0; i < 3000; i++)
+		{
+			Long e = (i * 7919) % 4001;
+			ka.getPushableInput().push(e);
+			sli.getPushableInput().push(e);
+		}
+		Map<Object,Object> map = (Map<Object,Object>) sink2.getQueue().peek();
+		assertEquals(map.size(), ka.getKeyCount());
+		for (Map.Entry<Object,Object> entry : map.entrySet())
+		{
+			// Slice outputs Floats, and the keyed aggregate Longs
+			assertEquals(((Number) entry.getValue()).floatValue(), ((Number) ka.get(entry.getKey())).floatValue(), 0f);
+		}
+	}
+
+	/**
+	 * A sum of longs starting from 10, evaluated on primitive values
+	 */
+	protected static class LongSum extends BinaryFunction<Long,Long,Long>
+	implements LongBinaryFunction, DoubleBinaryFunction
+	{
+		public LongSum()
+		{
+			super(Long.class, Long.class, Long.class);
+		}
+
+		@Override
+		public Long getValue(Long x, Long y)
+		{
+			if (y == null)
+			{
+				throw new FunctionException("No value");
+			}
+			return x + y;
+		}
+
+		@Override
+		public long getLongValue(long x, long y)
+		{
+			if (y > 0 ? x > Long.MAX_VALUE - y : x < Long.MIN_VALUE - y)
+			{
+				throw new ArithmeticException("long overflow");
+			}
+			return x + y;
+		}
+
+		@Override
+		public double getDoubleValue(double x, double y)
+		{
+			return x + y;
+		}
+
+		@Override
+		public Long getStartValue()
+		{
+			return 10L;
+		}
+
+		@Override
+		public LongSum duplicate(boolean with_state)
+		{
+			return new LongSum();
+		}
+	}
+}
@@ -0,0 +1,321 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.tmf;
+
+import static org.junit.Assert.*;
+
+import java.util.Queue;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.util.RingBuffer;
+import ca.uqac.lif.cep.util.RingBuffer.WaitStrategy;
+
+/**
+ * Unit tests for the {@link RingTank} and {@link RingTankLast} processors.
+ */
+public class RingTankTest
+{
+	@Test
+	public void testPushPull()
+	{
+		RingTank tank = new RingTank(5);
+		assertEquals(8, tank.getCapacity());
+		Pushable p = tank.getPushableInput();
+		Pullable pl = tank.getPullableOutput();
+		assertEquals(Pullable.NextStatus.MAYBE, pl.hasNextSoft());
+		assertNull(pl.pullSoft());
+		p.push(1).push(2);
+		p.pushAll(new Object[] {3, 4, 5}, 0, 3);
+		assertEquals(5, tank.getSize());
+		assertEquals(Pullable.NextStatus.YES, pl.hasNextSoft());
+		assertEquals(1, pl.pull());
+		Object[] batch = new Object[10];
+		assertEquals(4, pl.pullBatch(batch, 10));
+		assertEquals(5, batch[3]);
+		p.notifyEndOfTrace();
+		assertEquals(Pullable.NextStatus.NO, pl.hasNextSoft());
+		assertFalse(pl.hasNext());
+		assertNull(pl.pull());
+	}
+	
+	@Test
+	public void testDuplicate()
+	{
+		RingTank tank = new RingTank(4, false, WaitStrategy.SPIN);
+		tank.getPushableInput().push(1).push(2);
+		RingTank copy = tank.duplicate(true);
+		assertEquals(4, copy.getCapacity());
+		assertEquals(WaitStrategy.SPIN, copy.getWaitStrategy());
+		assertEquals(2, tank.getSize());
+		assertEquals(1, copy.getPullableOutput().pull());
+		assertEquals(2, copy.getPullableOutput().pull());
+		assertEquals(0, tank.duplicate(false).getSize());
+		tank.reset();
+		assertEquals(0, tank.getSize());
+	}
+	
+	@Test(timeout = 10000)
+	public void testDuplicateWhileInUse() throws InterruptedException
+	{
+		final RingTank tank = new RingTank(16, false, WaitStrategy.YIELD);
+		final int events = 5000;
+		Pump pump = new Pump(-1);
+		QueueSink sink = new QueueSink();
+		Connector.connect(tank, pump, sink);
+		Thread consumer = new Thread(pump);
+		Thread producer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				Pushable p = tank.getPushableInput();
+				for (int i = 0; i < events; i++)
+				{
+					p.push(i);
+				}
+				p.notifyEndOfTrace();
+			}
+		});
+		consumer.start();
+		producer.start();
+		while (consumer.isAlive())
+		{
+			// Each copy holds consecutive events
+			RingTank copy = tank.duplicate(true);
+			Pullable pl = copy.getPullableOutput();
+			Object last = null;
+			Object o;
+			while ((o = pl.pullSoft()) != null)
+			{
+				if (last != null)
+				{
+					assertEquals((Integer) last + 1, o);
+				}
+				last = o;
+			}
+		}
+		producer.join();
+		// Duplicating the tank did not take events away from its consumer
+		Queue<Object> queue = sink.getQueue();
+		assertEquals(events, queue.size());
+		for (int i = 0; i < events; i++)
+		{
+			assertEquals(i, queue.remove());
+		}
+	}
+	
+	@Test(timeout = 10000)
+	public void testPumpAcrossThreads() throws InterruptedException
+	{
+		// A small capacity forces the producer to wait for the pump
+		final RingTank tank = new RingTank(16, false, WaitStrategy.YIELD);
+		Pump pump = new Pump(-1);
+		QueueSink sink = new QueueSink();
+		Connector.connect(tank, pump, sink);
+		Thread consumer = new Thread(pump);
+		consumer.start();
+		Pushable p = tank.getPushableInput();
+		for (int i = 0; i < 5000; i++)
+		{
+			p.push(i);
+		}
+		p.notifyEndOfTrace();
+		consumer.join();
+		Queue<Object> queue = sink.getQueue();
+		assertEquals(5000, queue.size());
+		for (int i = 0; i < 5000; i++)
+		{
+			assertEquals(i, queue.remove());
+		}
+	}
+	
+	@Test(timeout = 10000)
+	public void testMultiProducer() throws InterruptedException
+	{
+		final RingTank tank = new RingTank(64, true, WaitStrategy.YIELD);
+		final int producers = 4;
+		final int events = 5000;
+		Thread[] threads = new Thread[producers];
+		for (int t = 0; t < producers; t++)
+		{
+			final int id = t;
+			threads[t] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					Pushable p = tank.getPushableInput();
+					for (int i = 0; i < events; i++)
+					{
+						p.push(id * events + i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		Pullable pl = tank.getPullableOutput();
+		int[] last = new int[producers];
+		java.util.Arrays.fill(last, -1);
+		Object[] batch = new Object[32];
+		int received = 0;
+		while (received < producers * events)
+		{
+			int n = pl.pullBatch(batch, batch.length);
+			for (int i = 0; i < n; i++)
+			{
+				int x = (Integer) batch[i];
+				int id = x / events;
+				// Events of each producer arrive in order
+				assertTrue(x % events > last[id]);
+				last[id] = x % events;
+			}
+			received += n;
+		}
+		for (Thread t : threads)
+		{
+			t.join();
+		}
+		assertEquals(0, tank.getSize());
+	}
+	
+	@Test
+	public void testStopReleasesConsumer()
+	{
+		RingTank tank = new RingTank();
+		tank.stop();
+		assertFalse(tank.getPullableOutput().hasNext());
+		tank.start();
+		tank.getPushableInput().push(3);
+		assertTrue(tank.getPullableOutput().hasNext());
+	}
+	
+	@Test
+	public void testLast()
+	{
+		RingTankLast tank = new RingTankLast();
+		Pushable p = tank.getPushableInput();
+		Pullable pl = tank.getPullableOutput();
+		p.push(1).push(2);
+		p.pushAll(new Object[] {3, 4, 5}, 0, 2);
+		assertEquals(1, tank.getSize());
+		RingTankLast copy = tank.duplicate(true);
+		assertEquals(4, pl.pull());
+		assertNull(pl.pullSoft());
+		assertEquals(4, copy.getPullableOutput().pull());
+	}
+	
+	@Test
+	public void testRingBufferWraps()
+	{
+		for (boolean multi : new boolean[] {false, true})
+		{
+			RingBuffer rb = new RingBuffer(4, multi);
+			assertEquals(multi, rb.isMultiProducer());
+			Object[] out = new Object[4];
+			for (int lap = 0; lap < 10; lap++)
+			{
+				assertEquals(3, rb.offerAll(new Object[] {lap, null, lap}, 0, 3));
+				assertTrue(rb.offer(lap));
+				assertFalse(rb.offer(lap));
+				assertEquals(4, rb.drainTo(out, 4));
+				assertNull(out[1]);
+				assertEquals(lap, out[3]);
+				assertTrue(rb.isEmpty());
+			}
+		}
+	}
+	
+	@Test
+	public void testPushFastBackpressure() throws Exception
+	{
+		RingTank tank = new RingTank(2);
+		Pushable p = tank.getPushableInput();
+		Pullable pl = tank.getPullableOutput();
+		assertTrue(p.pushFast(1).isDone());
+		assertTrue(p.pushFast(2).isDone());
+		// The tank is full: the next events wait outside of it
+		Future<Pushable> f3 = p.pushFast(3);
+		Future<Pushable> f4 = p.pushFast(4);
+		assertFalse(f3.isDone());
+		assertEquals(2, tank.getPendingSize());
+		assertEquals(1, pl.pull());
+		// Pulling makes room, and pending events get in in order
+		assertTrue(f3.isDone());
+		assertFalse(f4.isDone());
+		assertEquals(2, pl.pull());
+		assertEquals(p, f4.get());
+		assertEquals(0, tank.getPendingSize());
+		assertEquals(3, pl.pull());
+		assertTrue(p.pushFast(5).isDone());
+		Future<Pushable> f6 = p.pushFast(6);
+		assertFalse(f6.isDone());
+		assertEquals(4, pl.pull());
+		assertEquals(5, pl.pull());
+		assertEquals(6, pl.pull());
+	}
+	
+	@Test
+	public void testStopCancelsPending()
+	{
+		RingTank tank = new RingTank(1);
+		Pushable p = tank.getPushableInput();
+		p.push(1);
+		Future<Pushable> f = p.pushFast(2);
+		assertFalse(f.isDone());
+		tank.stop();
+		assertTrue(f.isCancelled());
+		assertEquals(0, tank.getPendingSize());
+	}
+	
+	@Test(timeout = 10000)
+	public void testSourceSlowedDown() throws InterruptedException
+	{
+		// A source pushing into a small tank waits for the consumer
+		final QueueSource src = new QueueSource().setEvents(0, 1, 2, 3, 4, 5, 6, 7);
+		final RingTank tank = new RingTank(2, false, WaitStrategy.YIELD);
+		Connector.connect(src, tank);
+		Thread producer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for (int i = 0; i < 100; i++)
+				{
+					src.push();
+				}
+				tank.getPushableInput().notifyEndOfTrace();
+			}
+		});
+		producer.start();
+		Pullable pl = tank.getPullableOutput();
+		int count = 0;
+		while (pl.hasNext())
+		{
+			assertEquals(count % 8, pl.pull());
+			assertTrue(tank.getPendingSize() <= 1);
+			count++;
+		}
+		producer.join();
+		assertEquals(100, count);
+	}
+}
@@ -19,12 +19,16 @@ package ca.uqac.lif.cep.tmf;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 
 import org.junit.Test;
 
+import ca.uqac.lif.azrael.clone.ClonePrinter;
+import ca.uqac.lif.azrael.clone.CloneReader;
 import ca.uqac.lif.cep.Connector;
 import ca.uqac.lif.cep.Pullable;
 import ca.uqac.lif.cep.Pullable.PullableException;
@@ -293,6 +297,278 @@ public class SliceTest
     assertEquals(2, ol.size());
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSlicerParallelPushAll()
+	{
+		Object[] events = new Object[500];
+		for (int i = 0; i < events.length; i++)
+		{
+			events[i] = (i * 37) % 101;
+		}
+		Slice sequential = new Slice(Modulo.instance, new Sum());
+		QueueSink sink1 = new QueueSink();
+		Connector.connect(sequential, sink1);
+		sequential.getPushableInput().pushAll(events, 0, events.length);
+		Slice parallel = new Slice(Modulo.instance, new Sum());
+		parallel.setParallelism(4);
+		QueueSink sink2 = new QueueSink();
+		Connector.connect(parallel, sink2);
+		parallel.getPushableInput().pushAll(events, 0, 250);
+		parallel.getPushableInput().pushAll(events, 250, 250);
+		assertEquals(events.length, sink2.getQueue().size());
+		Map<Object,Object> map1 = (Map<Object,Object>) sink1.getQueue().peek();
+		Map<Object,Object> map2 = (Map<Object,Object>) sink2.getQueue().peek();
+		assertEquals(13, map2.size());
+		assertEquals(map1, map2);
+	}
+
+	@Test
+	public void testSliceLastParallel()
+	{
+		Object[] events = new Object[300];
+		for (int i = 0; i < events.length; i++)
+		{
+			// Every tenth event is sent to all slices
+			events[i] = i % 10 == 0 ? -1 : (i * 7) % 31;
+		}
+		SliceLast sequential = new SliceLast(Modulo.instance, new Sum());
+		QueueSink sink1 = new QueueSink();
+		Connector.connect(sequential, sink1);
+		SliceLast parallel = new SliceLast(Modulo.instance, new Sum());
+		parallel.setParallelism(3);
+		QueueSink sink2 = new QueueSink();
+		Connector.connect(parallel, sink2);
+		Pushable p1 = sequential.getPushableInput();
+		Pushable p2 = parallel.getPushableInput();
+		for (int i = 0; i < 150; i++)
+		{
+			p1.push(events[i]);
+			p2.push(events[i]);
+		}
+		p1.pushAll(events, 150, 150);
+		p2.pushAll(events, 150, 150);
+		assertEquals(sink1.getQueue().size(), sink2.getQueue().size());
+		while (!sink1.getQueue().isEmpty())
+		{
+			assertEquals(sink1.getQueue().remove(), sink2.getQueue().remove());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSlicerMaxSlices()
+	{
+		Slice sli = new Slice(Modulo.instance, new Sum());
+		sli.setMaxSlices(2);
+		QueueSink sink = new QueueSink();
+		Connector.connect(sli, sink);
+		Pushable p = sli.getPushableInput();
+		p.push(13);
+		p.push(1);
+		p.push(26);
+		p.push(2);
+		Map<Object,Object> map = (Map<Object,Object>) sink.getQueue().peek();
+		// Slice 1 is the least recently used
+		assertEquals(2, sli.getActiveSliceCount());
+		assertEquals(1, sli.getEvictedSliceCount());
+		assertEquals(2, map.size());
+		assertEquals(39f, map.get(0));
+		assertEquals(2f, map.get(2));
+		p.push(1);
+		assertEquals(2, map.size());
+		assertEquals(1f, map.get(1));
+		assertNull(map.get(0));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSlicerIdleTimeout()
+	{
+		Slice sli = new Slice(Modulo.instance, new Sum());
+		sli.setIdleTimeout(3);
+		QueueSink sink = new QueueSink();
+		Connector.connect(sli, sink);
+		Pushable p = sli.getPushableInput();
+		p.push(0);
+		p.push(1);
+		p.push(14);
+		p.push(27);
+		Map<Object,Object> map = (Map<Object,Object>) sink.getQueue().peek();
+		assertEquals(2, map.size());
+		p.push(40);
+		assertEquals(1, map.size());
+		assertEquals(82f, map.get(1));
+		assertEquals(1, sli.getActiveSliceCount());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSlicerIdleTimestamp()
+	{
+		Slice sli = new Slice(Modulo.instance, new Sum());
+		sli.setIdleTimeout(StreamVariable.X, 10);
+		QueueSink sink = new QueueSink();
+		Connector.connect(sli, sink);
+		Pushable p = sli.getPushableInput();
+		p.push(0);
+		p.push(1);
+		p.push(9);
+		Map<Object,Object> map = (Map<Object,Object>) sink.getQueue().peek();
+		assertEquals(3, map.size());
+		p.push(14);
+		// Slices 0 and 1 were last seen at times 0 and 1
+		assertEquals(2, map.size());
+		assertNull(map.get(0));
+		assertEquals(14f, map.get(1));
+		assertEquals(2, sli.getActiveSliceCount());
+	}
+
+	@Test
+	public void testSlicerStateEviction()
+	{
+		Slice sli = new Slice(Modulo.instance, new Sum());
+		sli.setMaxSlices(2).setPoolSize(4).setParallelism(2);
+		Connector.connect(sli, new QueueSink());
+		Pushable p = sli.getPushableInput();
+		p.push(0);
+		p.push(1);
+		p.push(13);
+		Slice copy = sli.readState(sli.printState());
+		assertEquals(2, copy.m_maxSlices);
+		assertEquals(4, copy.getPoolSize());
+		assertEquals(2, copy.getParallelism());
+		Connector.connect(copy, new QueueSink());
+		// Slice 1 is the least recently used slice of the restored slicer
+		copy.getPushableInput().push(2);
+		assertEquals(2, copy.getActiveSliceCount());
+		assertEquals(1, copy.getEvictedSliceCount());
+		assertFalse(copy.m_slices.containsKey(1));
+		// Restored slices keep their age
+		sli = new Slice(Modulo.instance, new Sum());
+		sli.setIdleTimeout(3);
+		Connector.connect(sli, new QueueSink());
+		p = sli.getPushableInput();
+		p.push(0);
+		p.push(1);
+		p.push(14);
+		copy = sli.readState(sli.printState());
+		assertEquals(3, copy.m_idleTimeout);
+		Connector.connect(copy, new QueueSink());
+		p = copy.getPushableInput();
+		p.push(27);
+		p.push(40);
+		assertEquals(2, copy.getActiveSliceCount());
+		p.push(53);
+		assertEquals(1, copy.getActiveSliceCount());
+		assertFalse(copy.m_slices.containsKey(0));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSlicerSpill() throws IOException
+	{
+		File folder = File.createTempFile("slices", "");
+		folder.delete();
+		folder.mkdir();
+		FileSliceStore store = new FileSliceStore(folder, new ClonePrinter(), new CloneReader());
+		Slice sli = new Slice(Modulo.instance, new CountDecimate(2));
+		sli.setMaxSlices(1).setSliceStore(store);
+		QueueSink sink = new QueueSink();
+		Connector.connect(sli, sink);
+		Pushable p = sli.getPushableInput();
+		p.push(0);
+		Map<Object,Object> map = (Map<Object,Object>) sink.getQueue().peek();
+		assertEquals(0, map.get(0));
+		p.push(1);
+		assertEquals(1, store.size());
+		assertEquals(1, map.size());
+		assertEquals(1, map.get(1));
+		// Slice 0 is brought back: its second event is not output
+		p.push(13);
+		assertTrue(map.isEmpty());
+		p.push(26);
+		assertEquals(1, map.size());
+		assertEquals(26, map.get(0));
+		sli.reset();
+		assertEquals(0, store.size());
+		assertEquals(0, folder.listFiles().length);
+		folder.delete();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSlicerDelta()
+	{
+		Slice sli = new Slice(Modulo.instance, new Sum());
+		sli.setDeltaMode(true).setSnapshotInterval(4).setMaxSlices(2);
+		QueueSink sink = new QueueSink();
+		Connector.connect(sli, sink);
+		Queue<Object> q = sink.getQueue();
+		Pushable p = sli.getPushableInput();
+		p.push(0);
+		Map<Object,Object> map = (Map<Object,Object>) q.remove();
+		assertEquals(1, map.size());
+		assertEquals(0f, map.get(0));
+		p.push(1);
+		map = (Map<Object,Object>) q.remove();
+		assertEquals(1, map.size());
+		assertEquals(1f, map.get(1));
+		p.push(14);
+		Map<Object,Object> map2 = (Map<Object,Object>) q.remove();
+		assertFalse(map == map2);
+		assertEquals(1, map2.size());
+		assertEquals(15f, map2.get(1));
+		// Fourth front is a snapshot; slice 0 is evicted
+		p.push(2);
+		map = (Map<Object,Object>) q.remove();
+		assertEquals(2, map.size());
+		assertEquals(15f, map.get(1));
+		assertEquals(2f, map.get(2));
+		p.push(3);
+		map = (Map<Object,Object>) q.remove();
+		assertEquals(2, map.size());
+		assertEquals(3f, map.get(3));
+		// Slice 1 is evicted
+		assertTrue(map.containsKey(1));
+		assertNull(map.get(1));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSlicerPool()
+	{
+		Slice sli = new Slice(Modulo.instance, new Sum(), new FunctionTree(Numbers.isGreaterThan, StreamVariable.X, new Constant(20)));
+		sli.setPoolSize(2);
+		QueueSink sink = new QueueSink();
+		Connector.connect(sli, sink);
+		Pushable p = sli.getPushableInput();
+		p.push(13);
+		p.push(2);
+		p.push(26);
+		// Slice 0 is cleaned and its processor goes to the pool
+		assertEquals(1, sli.getActiveSliceCount());
+		assertEquals(1, sli.getPooledCount());
+		p.push(1);
+		Map<Object,Object> map = (Map<Object,Object>) sink.getQueue().peek();
+		// The recycled processor starts from a clean state
+		assertEquals(1f, map.get(1));
+		assertEquals(2, sli.getCreatedCount());
+		assertEquals(1, sli.getRecycledCount());
+		assertEquals(0, sli.getPooledCount());
+		sli.reset();
+		assertEquals(0, sli.getActiveSliceCount());
+		assertEquals(2, sli.getPooledCount());
+		p.push(5);
+		p.push(6);
+		p.push(7);
+		map = (Map<Object,Object>) sink.getQueue().peek();
+		assertEquals(3, map.size());
+		assertEquals(6f, map.get(6));
+		assertEquals(1, sli.getCreatedCount());
+		assertEquals(2, sli.getRecycledCount());
+	}
+
 	public static class Sum extends Cumulate
 	{
 		public Sum()
@@ -338,6 +614,36 @@ public class SliceTest
 		}
 	}
 	
+	/**
+	 * Slicing function that returns the value of an integer modulo 13, or
+	 * {@link ToAllSlices} if the integer is negative.
+	 */
+	public static class Modulo extends UnaryFunction<Number,Object>
+	{
+		public static final Modulo instance = new Modulo();
+
+		protected Modulo()
+		{
+			super(Number.class, Object.class);
+		}
+
+		@Override
+		public Object getValue(Number x) 
+		{
+			if (x.intValue() < 0)
+			{
+				return Slice.ToAllSlices.instance;
+			}
+			return x.intValue() % 13;
+		}
+
+		@Override
+		public Modulo duplicate(boolean with_state)
+		{
+			return instance;
+		}
+	}
+
 	public static class ThrowException extends UnaryFunction<Number,Object>
 	{
 		public static final ThrowException instance = new ThrowException();
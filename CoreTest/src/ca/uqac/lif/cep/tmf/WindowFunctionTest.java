@@ -3,13 +3,21 @@ package ca.uqac.lif.cep.tmf;
 import static org.junit.Assert.*;
 
 import java.util.Queue;
+import java.util.Set;
 
 import org.junit.Test;
 
 import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Context;
+import ca.uqac.lif.cep.EventTracker;
 import ca.uqac.lif.cep.functions.BinaryFunction;
+import ca.uqac.lif.cep.functions.DoubleViewFunction;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.functions.LongViewFunction;
+import ca.uqac.lif.cep.functions.ViewFunction;
 import ca.uqac.lif.cep.tmf.QueueSink;
 import ca.uqac.lif.cep.tmf.WindowFunction;
+import ca.uqac.lif.cep.util.Numbers;
 import ca.uqac.lif.cep.Pushable;
 
 /**
@@ -40,6 +48,188 @@ public class WindowFunctionTest
 		assertEquals(12, ((Integer) value).intValue());
 	}
 	
+	@Test
+	public void testViews()
+	{
+		// The same function seen as a plain function, an object, a double and a long view
+		assertEquals("[3, 5, 7, 9, 11, 13, 15, 17]", run(new WindowSum(2)));
+		assertEquals("[10, 14, 18, 22, 26, 30]", run(new ObjectSum(4)));
+		assertEquals("[10.0, 14.0, 18.0, 22.0, 26.0, 30.0]", run(new DoubleSum(4)));
+		assertEquals("[10, 14, 18, 22, 26, 30]", run(new LongSum(4)));
+	}
+	
+	@Test
+	public void testNumberAggregates()
+	{
+		// The window holds doubles: no object window, no copy
+		WindowFunction wf = new WindowFunction(new Numbers.SumOf(3));
+		assertNotNull(wf.m_doubleWindow);
+		assertNull(wf.m_window);
+		assertEquals("[6.0, 9.0, 12.0, 15.0, 18.0, 21.0, 24.0]", run(new Numbers.SumOf(3)));
+		assertEquals("[2.0, 3.0, 4.0, 5.0, 6.0, 7.0, 8.0]", run(new Numbers.AverageOf(3)));
+		assertEquals("[3.0, 4.0, 5.0, 6.0, 7.0, 8.0, 9.0]", run(new Numbers.MaximumOf(3)));
+		assertEquals("[1.0, 2.0, 3.0, 4.0, 5.0, 6.0, 7.0]", run(new Numbers.MinimumOf(3)));
+		// The regular evaluation gives the same result
+		Object[] out = new Object[1];
+		new Numbers.AverageOf(4).evaluate(new Object[] {1, 2L, 3f, 6d}, out);
+		assertEquals(3d, out[0]);
+		new Numbers.MaximumOf(2).evaluate(new Object[] {-1, -2}, out);
+		assertEquals(-1d, out[0]);
+	}
+	
+	@Test
+	public void testDuplicateState()
+	{
+		WindowFunction wf = new WindowFunction(new DoubleSum(3));
+		QueueSink sink = new QueueSink(1);
+		Connector.connect(wf, sink);
+		wf.getPushableInput(0).push(1);
+		wf.getPushableInput(0).push(2);
+		WindowFunction wf2 = wf.duplicate(true);
+		QueueSink sink2 = new QueueSink(1);
+		Connector.connect(wf2, sink2);
+		wf2.getPushableInput(0).push(3);
+		assertEquals(6d, sink2.getQueue(0).remove());
+		wf.reset();
+		wf.getPushableInput(0).push(3);
+		assertTrue(sink.getQueue(0).isEmpty());
+	}
+	
+	/**
+	 * Pushes the numbers 1 to 9 into a window function and collects its
+	 * outputs
+	 */
+	protected static String run(Function f)
+	{
+		WindowFunction wf = new WindowFunction(f);
+		QueueSink sink = new QueueSink(1);
+		Connector.connect(wf, sink);
+		Pushable p = wf.getPushableInput(0);
+		for (long i = 1; i <= 9; i++)
+		{
+			p.push(i);
+		}
+		return sink.getQueue(0).toString();
+	}
+	
+	/**
+	 * Sums its arguments
+	 */
+	public static class WindowSum extends Function
+	{
+		protected final int m_arity;
+		
+		public WindowSum(int arity)
+		{
+			super();
+			m_arity = arity;
+		}
+
+		@Override
+		public void evaluate(Object[] inputs, Object[] outputs, Context context, EventTracker tracker)
+		{
+			long sum = 0;
+			for (Object o : inputs)
+			{
+				sum += ((Number) o).longValue();
+			}
+			outputs[0] = sum;
+		}
+
+		@Override
+		public int getInputArity()
+		{
+			return m_arity;
+		}
+
+		@Override
+		public int getOutputArity()
+		{
+			return 1;
+		}
+
+		@Override
+		public void getInputTypesFor(Set<Class<?>> classes, int index)
+		{
+			classes.add(Number.class);
+		}
+
+		@Override
+		public Class<?> getOutputTypeFor(int index)
+		{
+			return Number.class;
+		}
+
+		@Override
+		public Function duplicate(boolean with_state)
+		{
+			return this;
+		}
+	}
+	
+	public static class ObjectSum extends WindowSum implements ViewFunction
+	{
+		public ObjectSum(int arity)
+		{
+			super(arity);
+		}
+		
+		@Override
+		public void evaluate(Object[] values, int offset, int length, Object[] outputs, Context context)
+		{
+			long sum = 0;
+			for (int i = offset; i < offset + length; i++)
+			{
+				sum += ((Number) values[i]).longValue();
+			}
+			outputs[0] = sum;
+		}
+	}
+	
+	public static class DoubleSum extends WindowSum implements DoubleViewFunction
+	{
+		public DoubleSum(int arity)
+		{
+			super(arity);
+		}
+		
+		@Override
+		public double getDoubleValue(double[] values, int offset, int length)
+		{
+			double sum = 0;
+			for (int i = offset; i < offset + length; i++)
+			{
+				sum += values[i];
+			}
+			return sum;
+		}
+		
+		@Override
+		public Function duplicate(boolean with_state)
+		{
+			return new DoubleSum(m_arity);
+		}
+	}
+	
+	public static class LongSum extends WindowSum implements LongViewFunction
+	{
+		public LongSum(int arity)
+		{
+			super(arity);
+		}
+		
+		@Override
+		public long getLongValue(long[] values, int offset, int length)
+		{
+			long sum = 0;
+			for (int i = offset; i < offset + length; i++)
+			{
+				sum += values[i];
+			}
+			return sum;
+		}
+	}
+	
 	public static class DummyPlus extends BinaryFunction<Integer,Integer,Integer> 
 	{
 		public DummyPlus()
@@ -54,6 +54,35 @@ public class MathTest
 		assertEquals(0f, Numbers.addition.getStartValue());
 	}
 	
+	@Test
+	public void testPrimitiveForms()
+	{
+		// The regular evaluation gives the same types, whatever the numbers
+		assertEquals(8f, FunctionsTest.evaluate(Numbers.addition, 3L, 5L));
+		assertEquals(8.5f, FunctionsTest.evaluate(Numbers.addition, 3L, 5.5d));
+		assertEquals(8f, FunctionsTest.evaluate(Numbers.addition, 3, 5L));
+		assertEquals(15f, FunctionsTest.evaluate(Numbers.multiplication, 3L, 5L));
+		assertEquals(-2f, FunctionsTest.evaluate(Numbers.subtraction, 3L, 5L));
+		assertEquals(0.6f, FunctionsTest.evaluate(Numbers.division, 3L, 5L));
+		assertEquals(5f, FunctionsTest.evaluate(Numbers.maximum, 3L, 5L));
+		assertEquals(3f, FunctionsTest.evaluate(Numbers.absoluteValue, -3L));
+		assertEquals(2d, FunctionsTest.evaluate(Numbers.squareRoot, 4L));
+		assertEquals(3d, FunctionsTest.evaluate(Numbers.ceiling, 2.1d));
+		// The primitive forms themselves
+		assertEquals(8L, Numbers.addition.getLongValue(3L, 5L));
+		assertEquals(9007199254740993L, Numbers.addition.getLongValue(9007199254740992L, 1L));
+		assertEquals(0.75d, Numbers.division.getDoubleValue(3d, 4d), 0d);
+		assertTrue(Numbers.isGreaterOrEqual.test(5L, 5L));
+		assertTrue(Numbers.isLessThan.test(9007199254740992L, 9007199254740993L));
+		assertFalse(Numbers.isGreaterThan.test(5d, 5d));
+	}
+	
+	@Test(expected = ArithmeticException.class)
+	public void testPrimitiveOverflow()
+	{
+		Numbers.multiplication.getLongValue(Long.MAX_VALUE / 2, 3L);
+	}
+	
 	@Test
 	public void testSubtraction()
 	{
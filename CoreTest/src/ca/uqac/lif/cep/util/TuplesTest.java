@@ -0,0 +1,131 @@
+/*
+    BeepBeep, an event stream processor
+    Copyright (C) 2008-2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.util;
+
+import static org.junit.Assert.*;
+import static ca.uqac.lif.cep.functions.FunctionsTest.evaluate;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.functions.FunctionException;
+import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.tmf.QueueSource;
+import ca.uqac.lif.cep.util.Tuple.Schema;
+
+/**
+ * Unit tests for {@link Tuple} and the functions of {@link Tuples}
+ */
+public class TuplesTest
+{
+	@Test
+	public void testTuple()
+	{
+		Schema s = new Schema("a", "b");
+		Tuple t = new Tuple(s, 1, "x");
+		assertEquals(2, t.size());
+		assertEquals("x", t.get(1));
+		assertEquals(1, t.get("a"));
+		assertNull(t.get("c"));
+		assertEquals(new Tuple(new Schema("a", "b"), 1, "x"), t);
+		assertFalse(t.equals(new Tuple(new Schema("a", "c"), 1, "x")));
+		assertEquals("(a=1,b=x)", t.toString());
+	}
+
+	@Test
+	public void testGetResolvedAtConnect()
+	{
+		Schema s = new Schema(new String[] {"a", "b"}, new Class<?>[] {String.class, Integer.class});
+		QueueSource src = new QueueSource();
+		src.setEvents(new Object[] {"x", 1}, new Object[] {"y", 2});
+		ApplyFunction to_tuple = new ApplyFunction(new Tuples.FromArray(s));
+		Tuples.Get get = new Tuples.Get("b");
+		ApplyFunction af = new ApplyFunction(get);
+		Connector.connect(src, to_tuple, af);
+		// The index is known before any event is received
+		assertEquals(1, get.getIndex());
+		assertEquals(Integer.class, af.getOutputType(0));
+		Pullable p = af.getPullableOutput();
+		assertEquals(1, p.pull());
+		assertEquals(2, p.pull());
+	}
+
+	@Test
+	public void testGetInTree()
+	{
+		Schema s = new Schema("a", "b");
+		Tuples.Get get = new Tuples.Get("b");
+		ApplyFunction to_tuple = new ApplyFunction(new Tuples.Create(s));
+		ApplyFunction af = new ApplyFunction(new FunctionTree(get, StreamVariable.X));
+		Connector.connect(to_tuple, af);
+		assertEquals(1, get.getIndex());
+	}
+
+	@Test
+	public void testGetTypeCheckHasNoSideEffect()
+	{
+		Schema s = new Schema("a", "b");
+		Tuples.Get get = new Tuples.Get("b");
+		ApplyFunction to_tuple = new ApplyFunction(new Tuples.Create(s));
+		ApplyFunction af = new ApplyFunction(get);
+		// Asking for the types does not pass the schema around
+		assertTrue(Connector.isCompatible(to_tuple, 0, af, 0));
+		assertEquals(-1, get.getIndex());
+		assertEquals(Object.class, af.getOutputType(0));
+		Tuples.connectSchema(to_tuple, 0, af, 0);
+		assertEquals(1, get.getIndex());
+	}
+
+	@Test
+	public void testGetSchemaChange()
+	{
+		Tuples.Get get = new Tuples.Get("b");
+		assertEquals(-1, get.getIndex());
+		assertEquals(2, evaluate(get, new Tuple(new Schema("a", "b"), 1, 2)));
+		assertEquals(1, get.getIndex());
+		assertEquals(3, evaluate(get, new Tuple(new Schema("b", "c"), 3, 4)));
+		assertEquals(0, get.getIndex());
+		assertEquals(5, evaluate(get.duplicate(), new Tuple(new Schema("b", "c"), 5, 6)));
+	}
+
+	@Test
+	public void testFromCsv()
+	{
+		Schema s = new Schema(new String[] {"name", "x"}, new Class<?>[] {String.class, Double.class});
+		FunctionTree parse = new FunctionTree(new Tuples.FromArray(s),
+				new FunctionTree(new ParseCsv(String.class, Double.class), StreamVariable.X));
+		Tuple t = (Tuple) evaluate(parse, "foo,2.5");
+		assertEquals(2.5, evaluate(new Tuples.Get("x"), t));
+		assertEquals("foo", evaluate(new Tuples.Get("name"), t));
+	}
+
+	@Test(expected=FunctionException.class)
+	public void testGetMissing()
+	{
+		evaluate(new Tuples.Get("z"), new Tuple(new Schema("a"), 1));
+	}
+
+	@Test(expected=FunctionException.class)
+	public void testGetNotTuple()
+	{
+		evaluate(new Tuples.Get("a"), "a");
+	}
+}
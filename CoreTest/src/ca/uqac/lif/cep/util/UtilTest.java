@@ -17,23 +17,30 @@
  */
 package ca.uqac.lif.cep.util;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.junit.Test;
 
 import static ca.uqac.lif.cep.functions.FunctionsTest.evaluate;
 import static org.junit.Assert.*;
+import ca.uqac.lif.cep.AsynchronousProcessor;
 import ca.uqac.lif.cep.Connector;
 import ca.uqac.lif.cep.Pullable;
+import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.BinaryFunction;
 import ca.uqac.lif.cep.functions.CumulativeFunction;
 import ca.uqac.lif.cep.functions.Cumulate;
 import ca.uqac.lif.cep.functions.FunctionsTest;
@@ -53,6 +60,58 @@ import ca.uqac.lif.cep.util.Bags.ToSet;
  */
 public class UtilTest 
 {
+	@Test
+	public void testCircularBuffer()
+	{
+		CircularBuffer buf = new CircularBuffer(3);
+		List<Object> view = buf.asList();
+		assertNull(buf.add("a"));
+		assertNull(buf.add("b"));
+		assertFalse(buf.isFull());
+		assertEquals(2, view.size());
+		assertNull(buf.add("c"));
+		assertTrue(buf.isFull());
+		assertEquals("a", buf.add("d"));
+		assertEquals("b", buf.add("e"));
+		// The content is contiguous in the array, whatever the position
+		Object[] array = buf.getArray();
+		int offset = buf.getOffset();
+		assertEquals("c", array[offset]);
+		assertEquals("d", array[offset + 1]);
+		assertEquals("e", array[offset + 2]);
+		assertEquals("e", buf.get(2));
+		assertEquals("[c, d, e]", view.toString());
+		Object[] copy = new Object[4];
+		buf.copyTo(copy, 1);
+		assertEquals("e", copy[3]);
+		buf.setCapacity(2);
+		assertEquals("[d, e]", view.toString());
+		buf.add("f");
+		assertEquals("[e, f]", view.toString());
+		buf.setCapacity(4);
+		buf.add("g");
+		assertEquals("[e, f, g]", view.toString());
+		buf.clear();
+		assertEquals(0, view.size());
+	}
+	
+	@Test
+	public void testCircularBufferPrimitive()
+	{
+		DoubleCircularBuffer dbuf = new DoubleCircularBuffer(2);
+		LongCircularBuffer lbuf = new LongCircularBuffer(2);
+		for (int i = 0; i < 5; i++)
+		{
+			dbuf.add(i + 0.5);
+			lbuf.add(i);
+		}
+		assertEquals(2, dbuf.size());
+		assertEquals(3.5, dbuf.get(0), 0);
+		assertEquals(4.5, dbuf.getArray()[dbuf.getOffset() + 1], 0);
+		assertEquals(3, lbuf.get(0));
+		assertEquals(4, lbuf.getArray()[lbuf.getOffset() + 1]);
+	}
+	
 	@Test
 	public void testContains()
 	{
@@ -430,4 +489,187 @@ public class UtilTest
 		Bags.FilterElements gi = new Bags.FilterElements(Numbers.isEven);
 		FunctionsTest.evaluate(gi, new Object());
 	}
+	
+	@Test
+	public void testParseCsv()
+	{
+		ParseCsv f = new ParseCsv(Integer.class, String.class, Double.class, Boolean.class, Long.class);
+		Object[] a = (Object[]) evaluate(f, " 3 , abc ,-1.5e2,TRUE,12345678901");
+		assertEquals(3, a[0]);
+		assertEquals("abc", a[1]);
+		assertEquals(-150d, a[2]);
+		assertEquals(true, a[3]);
+		assertEquals(12345678901L, a[4]);
+		a = (Object[]) evaluate(f, "-7,\"x, \"\"y\"\"\" ,,false");
+		assertEquals(-7, a[0]);
+		assertEquals("x, \"y\"", a[1]);
+		assertNull(a[2]);
+		assertEquals(false, a[3]);
+		assertNull(a[4]);
+		a = (Object[]) evaluate(f.separator(';'), ";\"\";\"2.5\"");
+		assertNull(a[0]);
+		assertEquals("", a[1]);
+		assertEquals(2.5, a[2]);
+	}
+	
+	@Test
+	public void testParseCsvNumbers()
+	{
+		ParseCsv f = new ParseCsv(Double.class, Float.class);
+		Random r = new Random(0);
+		for (int i = 0; i < 10000; i++)
+		{
+			String d;
+			switch (i % 4)
+			{
+			case 0:
+				d = Double.toString(r.nextDouble() * Math.pow(10, r.nextInt(40) - 20));
+				break;
+			case 1:
+				d = Long.toString(r.nextLong());
+				break;
+			case 2:
+				d = String.format(Locale.US, "%.3f", r.nextGaussian() * 1000);
+				break;
+			default:
+				d = r.nextInt(100000) + "." + r.nextInt(1000) + "e-" + r.nextInt(12);
+			}
+			Object[] a = (Object[]) evaluate(f, d + "," + d);
+			assertEquals(d, Double.parseDouble(d), a[0]);
+			assertEquals(d, Float.parseFloat(d), a[1]);
+		}
+	}
+	
+	@Test
+	public void testParseCsvView()
+	{
+		byte[] bytes = "1,\u00e9t\u00e9,2.25".getBytes(ByteSequence.UTF8);
+		ByteSequence line = new ByteSequence(ByteBuffer.wrap(bytes), 0, bytes.length);
+		Object[] a = (Object[]) evaluate(new ParseCsv(Long.class, String.class, Float.class), line);
+		assertEquals(1L, a[0]);
+		assertEquals("\u00e9t\u00e9", a[1]);
+		assertEquals(2.25f, a[2]);
+	}
+	
+	@Test(expected=FunctionException.class)
+	public void testParseCsvInvalid()
+	{
+		evaluate(new ParseCsv(Integer.class), "3000000000");
+	}
+	
+	@Test
+	public void testStringsOnCharSequences()
+	{
+		byte[] bytes = "a1b22c".getBytes(ByteSequence.UTF8);
+		ByteSequence seq = new ByteSequence(ByteBuffer.wrap(bytes), 0, bytes.length);
+		Set<?> found = (Set<?>) evaluate(new Strings.FindRegex("(\\d+)"), seq);
+		assertEquals(2, found.size());
+		assertTrue(found.contains("22"));
+		Object[] parts = (Object[]) evaluate(new Strings.SplitString("b"), seq);
+		assertEquals("a1", parts[0]);
+		// The functions keep their string signatures
+		BinaryFunction<String,String,Boolean> f = new Strings.Contains()
+		{
+			@Override
+			public Boolean getValue(String s1, String s2)
+			{
+				return s1.equalsIgnoreCase(s2);
+			}
+		};
+		assertEquals(true, evaluate(f, "AB", "ab"));
+		assertEquals(true, evaluate(f, seq, "b2"));
+	}
+	
+	@Test
+	public void testByteRecord()
+	{
+		byte[] bytes = "12,\u00e9t\u00e9,,-4.5,foobar".getBytes(ByteSequence.UTF8);
+		ByteRecord r = new ByteRecord(ByteBuffer.wrap(bytes), 0, bytes.length, ',');
+		assertEquals(5, r.getFieldCount());
+		assertEquals("\u00e9t\u00e9", r.getField(1).toString());
+		assertEquals(0, r.getField(2).length());
+		assertSame(r.getField(4), evaluate(new NthElement(4), r));
+		assertEquals(12, evaluate(Numbers.numberCast, evaluate(new NthElement(0), r)));
+		assertEquals(-4.5f, evaluate(Numbers.numberCast, r.getField(3)));
+		assertEquals(true, evaluate(Strings.startsWith, r.getField(4), "foo"));
+		assertEquals(true, evaluate(Strings.endsWith, r.getField(4), "bar"));
+		assertEquals(true, evaluate(Strings.contains, r.getField(4), "oba"));
+		assertEquals(false, evaluate(Strings.contains, r.getField(4), "obo"));
+		assertEquals(true, evaluate(Strings.matches, r.getField(4), "f.*r"));
+		assertEquals(true, evaluate(Equals.instance, r.getField(4), "foobar"));
+		assertEquals(true, evaluate(Equals.instance, "12", r.getField(0)));
+		ByteRecord empty = new ByteRecord(ByteBuffer.wrap(bytes), 0, 0, ',');
+		assertEquals(1, empty.getFieldCount());
+	}
+	
+	@Test(expected=FunctionException.class)
+	public void testByteRecordNoField()
+	{
+		byte[] bytes = "a,b".getBytes(ByteSequence.UTF8);
+		evaluate(new NthElement(2), new ByteRecord(ByteBuffer.wrap(bytes), 0, bytes.length, ','));
+	}
+	
+	@Test(timeout = 10000)
+	public void testOrderedCompletion()
+	{
+		OrderedCompletion<Integer> oc = new OrderedCompletion<Integer>(AsynchronousProcessor.s_defaultExecutor, true);
+		// The first tasks take the longest to complete
+		for (int i = 0; i < 4; i++)
+		{
+			oc.submit(new Sleeper(i, 40 - 10 * i));
+		}
+		assertEquals(4, oc.getInFlight());
+		for (int i = 0; i < 4; i++)
+		{
+			assertEquals(i, oc.take().intValue());
+		}
+		assertNull(oc.take());
+		assertEquals(0, oc.getInFlight());
+		assertEquals(4, oc.getEmitted());
+		oc.submit(new Sleeper(-1, 0));
+		oc.submit(new Sleeper(5, 0));
+		try
+		{
+			oc.take();
+			fail("The exception of the task should have been thrown");
+		}
+		catch (ProcessorException e)
+		{
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		assertEquals(5, oc.take().intValue());
+		oc.submit(new Sleeper(6, 20));
+		oc.clear();
+		assertEquals(0, oc.getSubmitted());
+		assertNull(oc.poll());
+	}
+	
+	/**
+	 * A task that returns a number after some time, or throws an exception
+	 * if the number is negative
+	 */
+	protected static class Sleeper implements Callable<Integer>
+	{
+		protected final int m_value;
+		
+		protected final long m_delay;
+		
+		public Sleeper(int value, long delay)
+		{
+			super();
+			m_value = value;
+			m_delay = delay;
+		}
+		
+		@Override
+		public Integer call() throws InterruptedException
+		{
+			Thread.sleep(m_delay);
+			if (m_value < 0)
+			{
+				throw new IllegalArgumentException("Negative value");
+			}
+			return m_value;
+		}
+	}
 }